@@ -0,0 +1,44 @@
+package org.coda.api;
+
+import org.coda.config.AppConfig;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.PropertySource;
+
+import java.util.Arrays;
+
+/**
+ * The core services behind the HTTP API.
+ * No servlet container is started: ApiServer listens on the JDK HttpServer once the context is ready.
+ * AppConfig scans the packages of core that hold beans; core's console Main is not part of this context.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@Import(AppConfig.class)
+@ComponentScan(basePackages = {"org.coda.api"})
+@PropertySource("classpath:api.properties")
+public class ApiApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+    }
+
+    /**
+     * Start the services and the API
+     * Passed as command line arguments: default properties would lose to api.properties
+     * @param properties extra Spring properties in key=value form, e.g. calorietracker.api.port=0
+     * @return the running context
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(ApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(Arrays.stream(properties).map(property -> "--" + property).toArray(String[]::new));
+    }
+}
@@ -0,0 +1,20 @@
+package org.coda.api;
+
+/**
+ * Thrown by a route to answer with a given HTTP status and error message.
+ */
+public class ApiException extends RuntimeException{
+
+    private final int status;
+
+    public ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+
+}
@@ -0,0 +1,27 @@
+package org.coda.api;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * The JSON mapping shared by the server, its tests and the load test.
+ * Dates are written as ISO-8601 strings; unknown request fields are rejected.
+ */
+public final class ApiJson {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private ApiJson() {}
+
+    /**
+     * @return ObjectMapper thread-safe once configured, never reconfigure it
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+}
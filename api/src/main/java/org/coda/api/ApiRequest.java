@@ -0,0 +1,104 @@
+package org.coda.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A request as seen by a route: path variables, query parameters, the raw body and the caller address.
+ * Missing or malformed parameters and bodies are answered with 400.
+ */
+public record ApiRequest(Map<String, String> pathVariables, Map<String, String> query, byte[] body,
+                         String clientAddress) {
+
+    /**
+     * @param name the name of a numeric path variable, e.g. id for /users/{id}
+     * @return the value of the variable
+     */
+    public long pathId(String name) {
+        return parse(name, pathVariables.get(name), Long::parseLong);
+    }
+
+    /**
+     * @param name the query parameter
+     * @return the value, or null when absent
+     */
+    public String query(String name) {
+        return query.get(name);
+    }
+
+    /**
+     * @param name the query parameter
+     * @return the value
+     * @throws ApiException 400 when the parameter is absent
+     */
+    public String requiredQuery(String name) {
+        String value = query.get(name);
+        if (value == null || value.isBlank()) {
+            throw new ApiException(400, "Query parameter " + name + " is required");
+        }
+        return value;
+    }
+
+    public long queryLong(String name, long defaultValue) {
+        String value = query.get(name);
+        return value == null ? defaultValue : parse(name, value, Long::parseLong);
+    }
+
+    /**
+     * @param name the query parameter
+     * @param defaultValue the value when absent
+     * @param max the largest value accepted, larger values are capped
+     * @return a positive int
+     */
+    public int queryLimit(String name, int defaultValue, int max) {
+        String value = query.get(name);
+        int limit = value == null ? defaultValue : parse(name, value, Integer::parseInt);
+        if (limit <= 0) {
+            throw new ApiException(400, "Query parameter " + name + " must be positive");
+        }
+        return Math.min(limit, max);
+    }
+
+    public LocalDate queryDate(String name) {
+        return parse(name, requiredQuery(name), LocalDate::parse);
+    }
+
+    public LocalDateTime queryDateTime(String name) {
+        return parse(name, requiredQuery(name), LocalDateTime::parse);
+    }
+
+    /**
+     * @param type the request record
+     * @return the JSON body read into the record
+     * @throws ApiException 400 when the body is empty or does not match the record
+     */
+    public <T> T body(Class<T> type) {
+        if (body.length == 0) {
+            throw new ApiException(400, "A JSON body is required");
+        }
+        try {
+            return ApiJson.mapper().readValue(body, type);
+        } catch (JsonProcessingException e) {
+            throw new ApiException(400, "Malformed JSON body: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new ApiException(400, "Unreadable body");
+        }
+    }
+
+    private static <T> T parse(String name, String value, Function<String, T> parser) {
+        if (value == null) {
+            throw new ApiException(400, name + " is required");
+        }
+        try {
+            return parser.apply(value);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new ApiException(400, "Invalid " + name + ": " + value);
+        }
+    }
+}
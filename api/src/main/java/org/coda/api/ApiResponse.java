@@ -0,0 +1,23 @@
+package org.coda.api;
+
+/**
+ * What a route answers: a status and a body written as JSON, no body when null.
+ */
+public record ApiResponse(int status, Object body) {
+
+    public static ApiResponse ok(Object body) {
+        return new ApiResponse(200, body);
+    }
+
+    public static ApiResponse created(Object body) {
+        return new ApiResponse(201, body);
+    }
+
+    public static ApiResponse accepted(Object body) {
+        return new ApiResponse(202, body);
+    }
+
+    public static ApiResponse noContent() {
+        return new ApiResponse(204, null);
+    }
+}
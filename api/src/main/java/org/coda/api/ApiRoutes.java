@@ -0,0 +1,9 @@
+package org.coda.api;
+
+/**
+ * A group of routes over one service; every bean implementing it is registered by ApiServer.
+ */
+public interface ApiRoutes {
+
+    void register(Router router);
+}
@@ -0,0 +1,246 @@
+package org.coda.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.coda.core.exceptions.DuplicateEmailException;
+import org.coda.core.exceptions.IntakeQueueFullException;
+import org.coda.core.exceptions.LoginRejectedException;
+import org.coda.core.exceptions.UserNotFoundException;
+import org.coda.core.repository.routing.ReplicaSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP front of the services on the JDK HttpServer.
+ * With calorietracker.api.threads=VIRTUAL (the default) every request runs on its own virtual thread,
+ * so a request blocked on the database, the password pool or a write-behind commit holds no platform thread.
+ * PLATFORM runs requests on a fixed pool of calorietracker.api.platform-threads threads instead,
+ * kept for comparison in ApiLoadTest.
+ * Virtual threads do not bound concurrency, so at most calorietracker.api.max-concurrent-requests requests
+ * run at once and the others wait for a permit; without that bound thousands of requests would queue on
+ * the connection pool and fail on its timeout. 0 removes the bound.
+ * Each request runs in the ReplicaSession of its X-Session-Id header, or of the client address without one.
+ * Errors are answered as {"error": message} with a status mapped from the exception.
+ */
+@Slf4j
+@Component
+public class ApiServer {
+
+    public enum Threads {
+        //== one new virtual thread per request ==
+        VIRTUAL,
+        //== a fixed pool of platform threads ==
+        PLATFORM
+    }
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    //== without TCP_NODELAY, headers and body written apart wait on the client's delayed ACK: ~40 ms per response ==
+    static {
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Router router = new Router();
+
+    private final int port;
+
+    private final int backlog;
+
+    private final Threads threads;
+
+    private final int platformThreads;
+
+    private final Semaphore permits;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * Constructor based dependency injection
+     * @param routes every route group to expose
+     * @param port the port to listen on, 0 for any free port
+     * @param backlog the number of connections allowed to wait for accept
+     * @param threads whether requests run on virtual threads or a platform thread pool
+     * @param platformThreads the size of the platform thread pool
+     * @param maxConcurrentRequests the number of requests allowed to run at once, 0 for no limit
+     * @Autowired annotation to inject the ApiRoutes beans
+     */
+    @Autowired
+    public ApiServer(List<ApiRoutes> routes,
+                     @Value("${calorietracker.api.port:8080}") int port,
+                     @Value("${calorietracker.api.backlog:1024}") int backlog,
+                     @Value("${calorietracker.api.threads:VIRTUAL}") Threads threads,
+                     @Value("${calorietracker.api.platform-threads:200}") int platformThreads,
+                     @Value("${calorietracker.api.max-concurrent-requests:200}") int maxConcurrentRequests) {
+        this.port = port;
+        this.backlog = backlog;
+        this.threads = threads;
+        this.platformThreads = platformThreads;
+        this.permits = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests) : null;
+        routes.forEach(group -> group.register(router));
+    }
+
+    /**
+     * Start listening once the application, including the startup index rebuilds, is ready
+     * @throws IOException if the port cannot be bound
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        executor = threads == Threads.VIRTUAL ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(platformThreads, platformThreadFactory());
+        server = HttpServer.create(new InetSocketAddress(port), backlog);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        log.info("API listening on port {} with {} threads", getPort(), threads);
+    }
+
+    /**
+     * Stop accepting requests, give running ones a second to finish and stop the request threads
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * @return the port actually bound, useful when configured with 0
+     */
+    public synchronized int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    //== helpers ==
+
+    private void handle(HttpExchange exchange) throws IOException {
+        ApiResponse response;
+        try {
+            if (permits != null) {
+                permits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+            return;
+        }
+        //== the reads of a client after its writes stay on the primary until a replica has them ==
+        try (ReplicaSession.Scope session = ReplicaSession.bind(sessionOf(exchange))) {
+            response = dispatch(exchange);
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+        write(exchange, response);
+    }
+
+    private static String sessionOf(HttpExchange exchange) {
+        String session = exchange.getRequestHeaders().getFirst("X-Session-Id");
+        return session != null ? session : exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private ApiResponse dispatch(HttpExchange exchange) {
+        try {
+            URI uri = exchange.getRequestURI();
+            Router.Match match = router.match(exchange.getRequestMethod(), uri.getPath());
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            ApiRequest request = new ApiRequest(match.pathVariables(), queryOf(uri), body,
+                    exchange.getRemoteAddress().getAddress().getHostAddress());
+            return match.handler().handle(request);
+        } catch (Exception e) {
+            return errorResponse(exchange, e);
+        }
+    }
+
+    private static ApiResponse errorResponse(HttpExchange exchange, Exception e) {
+        int status;
+        if (e instanceof ApiException apiException) {
+            status = apiException.getStatus();
+        } else if (e instanceof UserNotFoundException) {
+            status = 404;
+        } else if (e instanceof DuplicateEmailException || e instanceof DataIntegrityViolationException
+                || e instanceof ConcurrentUpdateException || e instanceof OptimisticLockingFailureException) {
+            status = 409;
+        } else if (e instanceof LoginRejectedException || e instanceof IntakeQueueFullException) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            status = 429;
+        } else if (e instanceof IllegalArgumentException) {
+            status = 400;
+        } else {
+            log.error("Request {} {} failed", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            return new ApiResponse(500, Map.of("error", "Internal error"));
+        }
+        return new ApiResponse(status, Map.of("error", String.valueOf(e.getMessage())));
+    }
+
+    private static void write(HttpExchange exchange, ApiResponse response) throws IOException {
+        byte[] json = response.body() == null ? NO_BODY : ApiJson.mapper().writeValueAsBytes(response.body());
+        if (json.length > 0) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        }
+        exchange.sendResponseHeaders(response.status(), json.length == 0 ? -1 : json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static Map<String, String> queryOf(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "api-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package org.coda.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches a method and path against the registered routes.
+ * Patterns are slash separated segments where {name} captures one segment; routes are tried
+ * in registration order, so literal routes must be added before the variable routes they overlap.
+ */
+public class Router {
+
+    /**
+     * The work of one route, run on the request thread
+     */
+    @FunctionalInterface
+    public interface Handler {
+        ApiResponse handle(ApiRequest request) throws Exception;
+    }
+
+    /**
+     * A matched route and the path variables it captured
+     */
+    public record Match(Handler handler, Map<String, String> pathVariables) {
+    }
+
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * Register a route
+     * @param method the HTTP method
+     * @param pattern the path, e.g. /users/{id}/intakes
+     * @param handler the work to run
+     */
+    public void add(String method, String pattern, Handler handler) {
+        routes.add(new Route(method, segments(pattern), handler));
+    }
+
+    /**
+     * @param method the HTTP method of the request
+     * @param path the path of the request, without query string
+     * @return the first matching route
+     * @throws ApiException 404 if no route has this path, 405 if none accepts this method
+     */
+    public Match match(String method, String path) {
+        String[] segments = segments(path);
+        boolean pathMatched = false;
+        for (Route route : routes) {
+            Map<String, String> variables = route.match(segments);
+            if (variables != null) {
+                if (route.method().equals(method)) {
+                    return new Match(route.handler(), variables);
+                }
+                pathMatched = true;
+            }
+        }
+        throw pathMatched ? new ApiException(405, "Method " + method + " not allowed on " + path)
+                : new ApiException(404, "No route for " + path);
+    }
+
+    private static String[] segments(String path) {
+        return path.replaceAll("^/+|/+$", "").split("/+");
+    }
+
+    // == nested classes ==
+
+    private record Route(String method, String[] pattern, Handler handler) {
+
+        private Map<String, String> match(String[] segments) {
+            if (segments.length != pattern.length) {
+                return null;
+            }
+            Map<String, String> variables = new HashMap<>();
+            for (int i = 0; i < pattern.length; i++) {
+                String expected = pattern[i];
+                if (expected.startsWith("{") && expected.endsWith("}")) {
+                    variables.put(expected.substring(1, expected.length() - 1), segments[i]);
+                } else if (!expected.equals(segments[i])) {
+                    return null;
+                }
+            }
+            return variables;
+        }
+    }
+}
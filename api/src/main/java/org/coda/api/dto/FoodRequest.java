@@ -0,0 +1,18 @@
+package org.coda.api.dto;
+
+import org.coda.core.entities.Food;
+
+/**
+ * Body of POST /foods, nutrition values are grams
+ */
+public record FoodRequest(String name, String details, double calories, float protein, float fat,
+                          float carbohydrates) {
+
+    public Food toFood() {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(protein);
+        nutrition.setFat(fat);
+        nutrition.setCarbohydrates(carbohydrates);
+        return new Food(name, details, nutrition, calories);
+    }
+}
@@ -0,0 +1,16 @@
+package org.coda.api.dto;
+
+import org.coda.core.entities.Food;
+
+/**
+ * A food as returned by the API
+ */
+public record FoodResponse(long id, String name, String details, double calories, float protein, float fat,
+                           float carbohydrates) {
+
+    public static FoodResponse of(Food food) {
+        Food.Nutrition nutrition = food.getNutrition() == null ? new Food.Nutrition() : food.getNutrition();
+        return new FoodResponse(food.getId(), food.getName(), food.getDetails(), food.getCalories(),
+                nutrition.getProtein(), nutrition.getFat(), nutrition.getCarbohydrates());
+    }
+}
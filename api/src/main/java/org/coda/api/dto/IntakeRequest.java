@@ -0,0 +1,9 @@
+package org.coda.api.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Body of POST /intakes: a food or a meal eaten by a user, at dateTime or now when absent
+ */
+public record IntakeRequest(long userId, Long foodId, Long mealId, LocalDateTime dateTime) {
+}
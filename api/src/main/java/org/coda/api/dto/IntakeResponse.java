@@ -0,0 +1,19 @@
+package org.coda.api.dto;
+
+import org.coda.core.entities.CalorieInTake;
+
+import java.time.LocalDateTime;
+
+/**
+ * An intake as returned by the API; id is 0 while a write-behind intake is not yet committed
+ */
+public record IntakeResponse(long id, Long userId, Long foodId, Long mealId, LocalDateTime dateTime,
+                             double calories) {
+
+    public static IntakeResponse of(CalorieInTake intake) {
+        return new IntakeResponse(intake.getId(), intake.getUser() == null ? null : intake.getUser().getId(),
+                intake.getFood() == null ? null : intake.getFood().getId(),
+                intake.getMeal() == null ? null : intake.getMeal().getId(),
+                intake.getDateTime(), intake.calculateCalories());
+    }
+}
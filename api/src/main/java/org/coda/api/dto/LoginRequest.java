@@ -0,0 +1,7 @@
+package org.coda.api.dto;
+
+/**
+ * Body of POST /users/login
+ */
+public record LoginRequest(String email, String password) {
+}
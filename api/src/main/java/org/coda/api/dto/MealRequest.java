@@ -0,0 +1,9 @@
+package org.coda.api.dto;
+
+import java.util.List;
+
+/**
+ * Body of POST /meals
+ */
+public record MealRequest(String name, long userId, List<Long> foodIds) {
+}
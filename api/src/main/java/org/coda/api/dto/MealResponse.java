@@ -0,0 +1,34 @@
+package org.coda.api.dto;
+
+import org.coda.core.entities.Meal;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A meal as returned by the API, with its foods only when they were read with the meal
+ */
+public record MealResponse(long id, String name, Long userId, LocalDateTime dateTime, double totalCalories,
+                           double totalProtein, double totalFat, double totalCarbohydrates,
+                           List<FoodResponse> foods) {
+
+    /**
+     * @param meal a meal read with its foods, e.g. by MealService.getMealDetailById
+     */
+    public static MealResponse of(Meal meal) {
+        return of(meal, meal.getFoods() == null ? List.of() : meal.getFoods().stream().map(FoodResponse::of).toList());
+    }
+
+    /**
+     * @param meal a meal whose foods may not be loaded; they are left out, the totals are stored on the meal
+     */
+    public static MealResponse summary(Meal meal) {
+        return of(meal, null);
+    }
+
+    private static MealResponse of(Meal meal, List<FoodResponse> foods) {
+        return new MealResponse(meal.getId(), meal.getName(), meal.getUser() == null ? null : meal.getUser().getId(),
+                meal.getDateTime(), meal.getTotalCalories(), meal.getTotalProtein(), meal.getTotalFat(),
+                meal.getTotalCarbohydrates(), foods);
+    }
+}
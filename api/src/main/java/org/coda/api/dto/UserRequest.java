@@ -0,0 +1,17 @@
+package org.coda.api.dto;
+
+import org.coda.core.entities.User;
+
+/**
+ * Body of POST /users
+ */
+public record UserRequest(String name, String password, int age, int weight, double height,
+                          int calorieGoal, String email, String phone) {
+
+    public User toUser() {
+        User.Contact contact = new User.Contact();
+        contact.setEmail(email);
+        contact.setPhone(phone);
+        return new User(name, password, age, weight, height, calorieGoal, contact);
+    }
+}
@@ -0,0 +1,19 @@
+package org.coda.api.dto;
+
+import org.coda.core.entities.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * A user as returned by the API, never with its password hash
+ */
+public record UserResponse(long id, String name, int age, int weight, double height, int calorieGoal,
+                           String email, String phone, String role, LocalDateTime lastLogin) {
+
+    public static UserResponse of(User user) {
+        User.Contact contact = user.getContact();
+        return new UserResponse(user.getId(), user.getName(), user.getAge(), user.getWeight(), user.getHeight(),
+                user.getCalorieGoal(), contact == null ? null : contact.getEmail(),
+                contact == null ? null : contact.getPhone(), user.getRole(), user.getLastLogin());
+    }
+}
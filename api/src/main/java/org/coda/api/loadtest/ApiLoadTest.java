@@ -0,0 +1,202 @@
+package org.coda.api.loadtest;
+
+import org.coda.api.ApiApplication;
+import org.coda.api.ApiServer;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.User;
+import org.coda.core.service.CalorieInTakeService;
+import org.coda.core.service.FoodService;
+import org.coda.core.service.UserService;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local load test of the API: the same traffic against the server on virtual threads, then on a
+ * platform thread pool of calorietracker.api.platform-threads threads.
+ * Each level runs that many concurrent clients (themselves virtual threads); every client sends
+ * a fixed number of requests cycling through a food search, a range stats read and a new intake,
+ * spread over USERS users. Each user gets one intake up front so the day's rollup row already exists.
+ * Usage: ApiLoadTest [requests-per-client] [clients...], defaults 20 and 100 1000 5000.
+ * The database is in-memory H2 behind the default Hikari pool, so database work stays bounded by the
+ * pool size in both modes; what differs is how many requests the server admits while others wait.
+ * Clients and servers share the machine, so on few cores the figures measure CPU per request more than
+ * blocking; run it on the target hardware before choosing calorietracker.api.threads.
+ */
+public final class ApiLoadTest {
+
+    private static final String[] SEARCHES = {"chick", "rice", "bean", "salmon", "oat"};
+
+    private static final String[] FOOD_NAMES = {"Chicken breast", "Brown rice", "Black beans", "Salmon fillet",
+            "Rolled oats", "Greek yogurt", "Sweet potato", "Broccoli", "Almonds", "Banana"};
+
+    private static final int USERS = 100;
+
+    private static final int WARM_UP_ROUNDS = 3;
+
+    private ApiLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        int requestsPerClient = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int[] levels = args.length > 1 ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{100, 1000, 5000};
+        System.out.printf("%-9s %8s %9s %10s %9s %9s %9s %7s%n",
+                "threads", "clients", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        //== both servers run side by side and are measured in turn, so neither gets a colder JIT ==
+        ApiServer.Threads[] modes = ApiServer.Threads.values();
+        ConfigurableApplicationContext[] contexts = new ConfigurableApplicationContext[modes.length];
+        Seed[] seeds = new Seed[modes.length];
+        String[] bases = new String[modes.length];
+        try {
+            for (int mode = 0; mode < modes.length; mode++) {
+                contexts[mode] = start(modes[mode]);
+                seeds[mode] = seed(contexts[mode]);
+                bases[mode] = "http://localhost:" + contexts[mode].getBean(ApiServer.class).getPort();
+            }
+            for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                for (int mode = 0; mode < modes.length; mode++) {
+                    run(bases[mode], seeds[mode], 100, requestsPerClient);
+                }
+            }
+            for (int clients : levels) {
+                for (int mode = 0; mode < modes.length; mode++) {
+                    Result result = run(bases[mode], seeds[mode], clients, requestsPerClient);
+                    System.out.printf("%-9s %8d %9d %10.0f %9.1f %9.1f %9.1f %7d%n", modes[mode], clients,
+                            result.requests(), result.throughput(), result.percentileMillis(0.50),
+                            result.percentileMillis(0.99), result.percentileMillis(1.0), result.errors());
+                }
+            }
+        } finally {
+            for (ConfigurableApplicationContext context : contexts) {
+                if (context != null) {
+                    context.close();
+                }
+            }
+        }
+    }
+
+    //== helpers ==
+
+    private static ConfigurableApplicationContext start(ApiServer.Threads threads) {
+        return ApiApplication.start(
+                "calorietracker.api.port=0",
+                "calorietracker.api.threads=" + threads,
+                "spring.datasource.url=jdbc:h2:mem:load-" + threads + ";DB_CLOSE_DELAY=-1",
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                "calorietracker.password.strength=4",
+                "logging.level.root=WARN",
+                "logging.level.org.coda.core=WARN");
+    }
+
+    //== USERS users with one intake each and a small catalog ==
+    private static Seed seed(ConfigurableApplicationContext context) {
+        List<Food> foods = new ArrayList<>();
+        for (String name : FOOD_NAMES) {
+            Food.Nutrition nutrition = new Food.Nutrition();
+            nutrition.setProtein(10);
+            nutrition.setFat(5);
+            nutrition.setCarbohydrates(20);
+            foods.add(new Food(name, name, nutrition, 150));
+        }
+        List<Food> saved = context.getBean(FoodService.class).saveAllFoods(foods);
+        long[] userIds = new long[USERS];
+        for (int i = 0; i < USERS; i++) {
+            User.Contact contact = new User.Contact();
+            contact.setEmail("load" + i + "@test.org");
+            User user = context.getBean(UserService.class)
+                    .createUser(new User("Load " + i, "password", 30, 70, 175, 2200, contact)).orElseThrow();
+            context.getBean(CalorieInTakeService.class).saveCalorieInTake(new CalorieInTake(null, user, saved.get(0)));
+            userIds[i] = user.getId();
+        }
+        return new Seed(userIds, saved.stream().mapToLong(Food::getId).toArray());
+    }
+
+    private static Result run(String base, Seed ids, int clients, int requestsPerClient) throws InterruptedException {
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        long started = System.nanoTime();
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .connectTimeout(Duration.ofSeconds(30))
+                     .build()) {
+            for (int client = 0; client < clients; client++) {
+                int clientNumber = client;
+                clientThreads.execute(() -> {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        HttpRequest request = request(base, ids, clientNumber + i);
+                        long sent = System.nanoTime();
+                        try {
+                            int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            if (status >= 400) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[next.getAndIncrement()] = System.nanoTime() - sent;
+                    }
+                });
+            }
+            clientThreads.shutdown();
+            clientThreads.awaitTermination(10, TimeUnit.MINUTES);
+        }
+        return new Result(latencies, errors.get(), System.nanoTime() - started);
+    }
+
+    private static HttpRequest request(String base, Seed ids, int n) {
+        long userId = ids.userIds()[n % ids.userIds().length];
+        return switch (n % 3) {
+            case 0 -> HttpRequest.newBuilder(URI.create(base + "/foods/search?q=" + SEARCHES[n % SEARCHES.length]))
+                    .GET().build();
+            case 1 -> HttpRequest.newBuilder(URI.create(base + "/users/" + userId + "/intakes/stats?from="
+                            + LocalDateTime.now().minusDays(7).withNano(0) + "&to=" + LocalDateTime.now().withNano(0)))
+                    .GET().build();
+            default -> HttpRequest.newBuilder(URI.create(base + "/intakes"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"userId\":" + userId + ",\"foodId\":"
+                            + ids.foodIds()[n % ids.foodIds().length] + "}"))
+                    .build();
+        };
+    }
+
+    // == nested classes ==
+
+    private record Seed(long[] userIds, long[] foodIds) {
+    }
+
+    private record Result(long[] latencies, long errors, long elapsedNanos) {
+
+        Result {
+            Arrays.sort(latencies);
+        }
+
+        int requests() {
+            return latencies.length;
+        }
+
+        double throughput() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        double percentileMillis(double percentile) {
+            int index = (int) Math.ceil(percentile * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+    }
+}
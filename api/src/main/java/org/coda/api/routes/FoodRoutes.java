@@ -0,0 +1,71 @@
+package org.coda.api.routes;
+
+import org.coda.api.ApiException;
+import org.coda.api.ApiRequest;
+import org.coda.api.ApiResponse;
+import org.coda.api.ApiRoutes;
+import org.coda.api.Router;
+import org.coda.api.dto.FoodRequest;
+import org.coda.api.dto.FoodResponse;
+import org.coda.core.entities.Food;
+import org.coda.core.service.FoodService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * GET /foods/search?q=&limit=, GET /foods/{id}, GET /foods?after=&limit=, POST /foods and DELETE /foods/{id}
+ */
+@Component
+public class FoodRoutes implements ApiRoutes {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private static final int MAX_SEARCH_HITS = 50;
+
+    private final FoodService foodService;
+
+    @Autowired
+    public FoodRoutes(FoodService foodService) {
+        this.foodService = foodService;
+    }
+
+    @Override
+    public void register(Router router) {
+        //== before /foods/{id}, routes match in registration order ==
+        router.add("GET", "/foods/search", this::search);
+        router.add("GET", "/foods/{id}", this::get);
+        router.add("GET", "/foods", this::page);
+        router.add("POST", "/foods", this::create);
+        router.add("DELETE", "/foods/{id}", this::delete);
+    }
+
+    private ApiResponse search(ApiRequest request) {
+        return ApiResponse.ok(foodService.searchFoods(request.requiredQuery("q"),
+                request.queryLimit("limit", 10, MAX_SEARCH_HITS)));
+    }
+
+    private ApiResponse get(ApiRequest request) {
+        long id = request.pathId("id");
+        Food food = foodService.getFoodById(id);
+        if (food == null) {
+            throw new ApiException(404, "Food not found with id: " + id);
+        }
+        return ApiResponse.ok(FoodResponse.of(food));
+    }
+
+    private ApiResponse page(ApiRequest request) {
+        return ApiResponse.ok(foodService.getFoodsAfter(request.queryLong("after", 0),
+                request.queryLimit("limit", 50, MAX_PAGE_SIZE)).stream().map(FoodResponse::of).toList());
+    }
+
+    private ApiResponse create(ApiRequest request) {
+        Food food = request.body(FoodRequest.class).toFood();
+        foodService.saveFood(food);
+        return ApiResponse.created(FoodResponse.of(food));
+    }
+
+    private ApiResponse delete(ApiRequest request) {
+        foodService.deleteFoodById(request.pathId("id"));
+        return ApiResponse.noContent();
+    }
+}
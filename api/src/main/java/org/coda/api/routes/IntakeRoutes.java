@@ -0,0 +1,125 @@
+package org.coda.api.routes;
+
+import org.coda.api.ApiException;
+import org.coda.api.ApiRequest;
+import org.coda.api.ApiResponse;
+import org.coda.api.ApiRoutes;
+import org.coda.api.Router;
+import org.coda.api.dto.IntakeRequest;
+import org.coda.api.dto.IntakeResponse;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.coda.core.exceptions.UserNotFoundException;
+import org.coda.core.ingest.IntakeWriteBehind;
+import org.coda.core.service.CalorieInTakeService;
+import org.coda.core.service.FoodService;
+import org.coda.core.service.MealService;
+import org.coda.core.service.UserService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletionException;
+
+/**
+ * POST /intakes, GET /users/{id}/intakes?date=, GET /users/{id}/intakes/stats?from=&to=
+ * and GET /users/{id}/intakes/daily?from=&days=
+ * New intakes go through IntakeWriteBehind when it is enabled: the request thread, a virtual thread,
+ * simply blocks until the batch holding the intake commits (201), or returns at once with
+ * durability ENQUEUED (202, no id yet).
+ */
+@Component
+public class IntakeRoutes implements ApiRoutes {
+
+    private static final int MAX_DAYS = 366;
+
+    private final CalorieInTakeService calorieInTakeService;
+
+    private final UserService userService;
+
+    private final FoodService foodService;
+
+    private final MealService mealService;
+
+    private final ObjectProvider<IntakeWriteBehind> writeBehind;
+
+    @Autowired
+    public IntakeRoutes(CalorieInTakeService calorieInTakeService, UserService userService, FoodService foodService,
+                        MealService mealService, ObjectProvider<IntakeWriteBehind> writeBehind) {
+        this.calorieInTakeService = calorieInTakeService;
+        this.userService = userService;
+        this.foodService = foodService;
+        this.mealService = mealService;
+        this.writeBehind = writeBehind;
+    }
+
+    @Override
+    public void register(Router router) {
+        router.add("POST", "/intakes", this::create);
+        router.add("GET", "/users/{id}/intakes/stats", this::stats);
+        router.add("GET", "/users/{id}/intakes/daily", this::daily);
+        router.add("GET", "/users/{id}/intakes", this::day);
+    }
+
+    private ApiResponse create(ApiRequest request) {
+        IntakeRequest body = request.body(IntakeRequest.class);
+        CalorieInTake intake = toIntake(body);
+        IntakeWriteBehind writer = writeBehind.getIfAvailable();
+        if (writer == null) {
+            calorieInTakeService.saveCalorieInTake(intake);
+            return ApiResponse.created(IntakeResponse.of(intake));
+        }
+        CalorieInTake written;
+        try {
+            written = writer.submit(intake).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return written.getId() == 0 ? ApiResponse.accepted(IntakeResponse.of(written))
+                : ApiResponse.created(IntakeResponse.of(written));
+    }
+
+    private ApiResponse day(ApiRequest request) {
+        return ApiResponse.ok(calorieInTakeService.getDashboardCalorieInTake(request.pathId("id"),
+                request.queryDate("date")).stream().map(IntakeResponse::of).toList());
+    }
+
+    private ApiResponse stats(ApiRequest request) {
+        return ApiResponse.ok(calorieInTakeService.getIntakeStats(request.pathId("id"),
+                request.queryDateTime("from"), request.queryDateTime("to")));
+    }
+
+    private ApiResponse daily(ApiRequest request) {
+        int days = request.queryLimit("days", 7, MAX_DAYS);
+        return ApiResponse.ok(calorieInTakeService.getDailyCalories(request.pathId("id"),
+                request.queryDate("from"), days));
+    }
+
+    //== helpers ==
+
+    private CalorieInTake toIntake(IntakeRequest body) {
+        if (body.foodId() == null && body.mealId() == null) {
+            throw new ApiException(400, "An intake needs a foodId or a mealId");
+        }
+        User user = userService.getUserById(body.userId())
+                .orElseThrow(() -> new UserNotFoundException("User not found with id: " + body.userId()));
+        Food food = null;
+        if (body.foodId() != null) {
+            food = foodService.getFoodById(body.foodId());
+            if (food == null) {
+                throw new ApiException(400, "Food not found with id: " + body.foodId());
+            }
+        }
+        Meal meal = null;
+        if (body.mealId() != null) {
+            meal = mealService.getMealById(body.mealId());
+            if (meal == null) {
+                throw new ApiException(400, "Meal not found with id: " + body.mealId());
+            }
+        }
+        return new CalorieInTake(meal, user, food, body.dateTime() == null ? LocalDateTime.now() : body.dateTime());
+    }
+}
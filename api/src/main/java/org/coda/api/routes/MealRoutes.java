@@ -0,0 +1,81 @@
+package org.coda.api.routes;
+
+import org.coda.api.ApiException;
+import org.coda.api.ApiRequest;
+import org.coda.api.ApiResponse;
+import org.coda.api.ApiRoutes;
+import org.coda.api.Router;
+import org.coda.api.dto.MealRequest;
+import org.coda.api.dto.MealResponse;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.coda.core.exceptions.UserNotFoundException;
+import org.coda.core.service.FoodService;
+import org.coda.core.service.MealService;
+import org.coda.core.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GET /meals/{id}, GET /meals?after=&limit= and POST /meals
+ */
+@Component
+public class MealRoutes implements ApiRoutes {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final MealService mealService;
+
+    private final UserService userService;
+
+    private final FoodService foodService;
+
+    @Autowired
+    public MealRoutes(MealService mealService, UserService userService, FoodService foodService) {
+        this.mealService = mealService;
+        this.userService = userService;
+        this.foodService = foodService;
+    }
+
+    @Override
+    public void register(Router router) {
+        router.add("GET", "/meals/{id}", this::get);
+        router.add("GET", "/meals", this::page);
+        router.add("POST", "/meals", this::create);
+    }
+
+    private ApiResponse get(ApiRequest request) {
+        long id = request.pathId("id");
+        Meal meal = mealService.getMealDetailById(id);
+        if (meal == null) {
+            throw new ApiException(404, "Meal not found with id: " + id);
+        }
+        return ApiResponse.ok(MealResponse.of(meal));
+    }
+
+    private ApiResponse page(ApiRequest request) {
+        return ApiResponse.ok(mealService.getMealsAfter(request.queryLong("after", 0),
+                request.queryLimit("limit", 50, MAX_PAGE_SIZE)).stream().map(MealResponse::summary).toList());
+    }
+
+    private ApiResponse create(ApiRequest request) {
+        MealRequest body = request.body(MealRequest.class);
+        User user = userService.getUserById(body.userId())
+                .orElseThrow(() -> new UserNotFoundException("User not found with id: " + body.userId()));
+        List<Food> foods = new ArrayList<>();
+        for (long foodId : body.foodIds() == null ? List.<Long>of() : body.foodIds()) {
+            Food food = foodService.getFoodById(foodId);
+            if (food == null) {
+                throw new ApiException(400, "Food not found with id: " + foodId);
+            }
+            foods.add(food);
+        }
+        Meal meal = mealService.saveMeal(new Meal(body.name(), user, foods))
+                .orElseThrow(() -> new ApiException(400, "The meal could not be created"));
+        return ApiResponse.created(MealResponse.of(meal));
+    }
+}
@@ -0,0 +1,69 @@
+package org.coda.api.routes;
+
+import org.coda.api.ApiException;
+import org.coda.api.ApiRequest;
+import org.coda.api.ApiResponse;
+import org.coda.api.ApiRoutes;
+import org.coda.api.Router;
+import org.coda.api.dto.LoginRequest;
+import org.coda.api.dto.UserRequest;
+import org.coda.api.dto.UserResponse;
+import org.coda.core.entities.User;
+import org.coda.core.exceptions.UserNotFoundException;
+import org.coda.core.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * POST /users, POST /users/login, GET /users/{id} and GET /users?after=&limit=
+ */
+@Component
+public class UserRoutes implements ApiRoutes {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final UserService userService;
+
+    @Autowired
+    public UserRoutes(UserService userService) {
+        this.userService = userService;
+    }
+
+    @Override
+    public void register(Router router) {
+        router.add("POST", "/users/login", this::login);
+        router.add("POST", "/users", this::create);
+        router.add("GET", "/users/{id}", this::get);
+        router.add("GET", "/users", this::page);
+    }
+
+    private ApiResponse create(ApiRequest request) {
+        User user = userService.createUser(request.body(UserRequest.class).toUser())
+                .orElseThrow(() -> new ApiException(400, "The user could not be created"));
+        return ApiResponse.created(UserResponse.of(user));
+    }
+
+    private ApiResponse login(ApiRequest request) {
+        LoginRequest login = request.body(LoginRequest.class);
+        Optional<User> user = userService.loginUser(login.email(), login.password(), request.clientAddress());
+        if (user.isEmpty()) {
+            throw new ApiException(401, "Invalid email or password");
+        }
+        userService.updateUserLastLogin(user.get().getId());
+        return ApiResponse.ok(UserResponse.of(user.get()));
+    }
+
+    private ApiResponse get(ApiRequest request) {
+        long id = request.pathId("id");
+        return userService.getUserById(id)
+                .map(user -> ApiResponse.ok(UserResponse.of(user)))
+                .orElseThrow(() -> new UserNotFoundException("User not found with id: " + id));
+    }
+
+    private ApiResponse page(ApiRequest request) {
+        return ApiResponse.ok(userService.getUsersAfter(request.queryLong("after", 0),
+                request.queryLimit("limit", 50, MAX_PAGE_SIZE)).stream().map(UserResponse::of).toList());
+    }
+}
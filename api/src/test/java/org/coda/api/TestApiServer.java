@@ -0,0 +1,219 @@
+package org.coda.api;
+
+import org.coda.api.routes.FoodRoutes;
+import org.coda.api.routes.IntakeRoutes;
+import org.coda.api.routes.MealRoutes;
+import org.coda.api.routes.UserRoutes;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.User;
+import org.coda.core.exceptions.DuplicateEmailException;
+import org.coda.core.exceptions.LoginRejectedException;
+import org.coda.core.ingest.IntakeWriteBehind;
+import org.coda.core.projection.FoodSearchHit;
+import org.coda.core.service.CalorieInTakeService;
+import org.coda.core.service.FoodService;
+import org.coda.core.service.MealService;
+import org.coda.core.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for ApiServer.
+ * The server runs on a free port over mocked services and is called through java.net.http.
+ */
+@ExtendWith(MockitoExtension.class)
+class TestApiServer {
+
+    @Mock
+    UserService userService;
+
+    @Mock
+    FoodService foodService;
+
+    @Mock
+    MealService mealService;
+
+    @Mock
+    CalorieInTakeService calorieInTakeService;
+
+    @Mock
+    ObjectProvider<IntakeWriteBehind> writeBehind;
+
+    private ApiServer server;
+
+    private HttpClient http;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new ApiServer(List.of(new UserRoutes(userService), new FoodRoutes(foodService),
+                new MealRoutes(mealService, userService, foodService),
+                new IntakeRoutes(calorieInTakeService, userService, foodService, mealService, writeBehind)),
+                0, 50, ApiServer.Threads.VIRTUAL, 1, 10);
+        server.start();
+        http = HttpClient.newHttpClient();
+        User.Contact contact = new User.Contact();
+        contact.setEmail("john@doe.com");
+        user = new User("John", "hash", 30, 80, 180, 2500, contact);
+        user.setId(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        http.close();
+        server.stop();
+    }
+
+    @Test
+    void testCreateUser() throws Exception {
+        when(userService.createUser(any(User.class))).thenReturn(Optional.of(user));
+
+        HttpResponse<String> response = post("/users", "{\"name\":\"John\",\"password\":\"secret\",\"age\":30,"
+                + "\"weight\":80,\"height\":180,\"calorieGoal\":2500,\"email\":\"john@doe.com\"}");
+
+        assertEquals(201, response.statusCode());
+        Map<?, ?> body = ApiJson.mapper().readValue(response.body(), Map.class);
+        assertEquals("john@doe.com", body.get("email"));
+        assertFalse(body.containsKey("password"));
+    }
+
+    @Test
+    void testCreateUserWithDuplicateEmail() throws Exception {
+        when(userService.createUser(any(User.class))).thenThrow(new DuplicateEmailException("taken"));
+
+        HttpResponse<String> response = post("/users", "{\"name\":\"John\",\"password\":\"secret\",\"age\":30,"
+                + "\"email\":\"john@doe.com\"}");
+
+        assertEquals(409, response.statusCode());
+        assertTrue(response.body().contains("taken"));
+    }
+
+    @Test
+    void testLogin() throws Exception {
+        when(userService.loginUser(eq("john@doe.com"), eq("secret"), any())).thenReturn(Optional.of(user));
+
+        HttpResponse<String> response = post("/users/login", "{\"email\":\"john@doe.com\",\"password\":\"secret\"}");
+
+        assertEquals(200, response.statusCode());
+        verify(userService).updateUserLastLogin(1);
+    }
+
+    @Test
+    void testLoginWithWrongPassword() throws Exception {
+        when(userService.loginUser(any(), any(), any())).thenReturn(Optional.empty());
+
+        HttpResponse<String> response = post("/users/login", "{\"email\":\"john@doe.com\",\"password\":\"nope\"}");
+
+        assertEquals(401, response.statusCode());
+        verify(userService, never()).updateUserLastLogin(anyLong());
+    }
+
+    @Test
+    void testLoginThrottled() throws Exception {
+        when(userService.loginUser(any(), any(), any())).thenThrow(
+                new LoginRejectedException(LoginRejectedException.Reason.THROTTLED, "Too many login attempts"));
+
+        HttpResponse<String> response = post("/users/login", "{\"email\":\"john@doe.com\",\"password\":\"nope\"}");
+
+        assertEquals(429, response.statusCode());
+        assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+    }
+
+    @Test
+    void testSearchFoodsIsNotTakenForAFoodId() throws Exception {
+        when(foodService.searchFoods("chick", 10)).thenReturn(List.of(new FoodSearchHit(7, "Chicken breast", 0.9f)));
+
+        HttpResponse<String> response = get("/foods/search?q=chick");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("Chicken breast"));
+    }
+
+    @Test
+    void testGetMissingFood() throws Exception {
+        HttpResponse<String> response = get("/foods/42");
+
+        assertEquals(404, response.statusCode());
+    }
+
+    @Test
+    void testCreateIntakeWithoutWriteBehind() throws Exception {
+        Food food = new Food("Apple", "Fresh", new Food.Nutrition(), 95);
+        food.setId(3);
+        when(userService.getUserById(1)).thenReturn(Optional.of(user));
+        when(foodService.getFoodById(3)).thenReturn(food);
+
+        HttpResponse<String> response = post("/intakes", "{\"userId\":1,\"foodId\":3}");
+
+        assertEquals(201, response.statusCode());
+        verify(calorieInTakeService).saveCalorieInTake(any(CalorieInTake.class));
+    }
+
+    @Test
+    void testCreateIntakeEnqueued() throws Exception {
+        Food food = new Food("Apple", "Fresh", new Food.Nutrition(), 95);
+        food.setId(3);
+        IntakeWriteBehind writer = mock(IntakeWriteBehind.class);
+        when(writeBehind.getIfAvailable()).thenReturn(writer);
+        when(userService.getUserById(1)).thenReturn(Optional.of(user));
+        when(foodService.getFoodById(3)).thenReturn(food);
+        when(writer.submit(any(CalorieInTake.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(0)));
+
+        HttpResponse<String> response = post("/intakes", "{\"userId\":1,\"foodId\":3}");
+
+        assertEquals(202, response.statusCode());
+        verify(calorieInTakeService, never()).saveCalorieInTake(any());
+    }
+
+    @Test
+    void testMalformedBody() throws Exception {
+        HttpResponse<String> response = post("/intakes", "{\"userId\":");
+
+        assertEquals(400, response.statusCode());
+    }
+
+    @Test
+    void testUnknownRouteAndMethod() throws Exception {
+        assertEquals(404, get("/nothing").statusCode());
+        assertEquals(405, http.send(HttpRequest.newBuilder(uri("/foods")).PUT(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    //== helpers ==
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return http.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String json) throws Exception {
+        return http.send(HttpRequest.newBuilder(uri(path)).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
@@ -0,0 +1,80 @@
+package org.coda.benchmarks;
+
+import org.coda.core.analytics.IntakeColumnStore;
+import org.coda.core.repository.CalorieInTakeRepository;
+import org.coda.core.repository.ConditionalUpdates;
+import org.coda.core.repository.DailyIntakeSummaryRepository;
+import org.coda.core.repository.FoodRepository;
+import org.coda.core.repository.JournalCalorieInTakeRepository;
+import org.coda.core.repository.MealRepository;
+import org.coda.core.repository.PersistenceContextSupport;
+import org.coda.core.repository.SecondLevelCacheSupport;
+import org.coda.core.repository.UserRepository;
+import org.coda.core.repository.memory.InMemoryStorageConfig;
+import org.coda.core.search.FoodSearchIndex;
+import org.coda.core.service.CalorieInTakeService;
+import org.coda.core.service.FoodService;
+import org.coda.core.service.MealService;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.util.Arrays;
+
+/**
+ * Minimal Spring context for the benchmarks: JPA on an embedded H2 plus the services under test.
+ * Users are written through UserRepository so the context needs no password hashing beans.
+ * Every benchmark trial boots its own context, so properties can differ between trials.
+ * With spring.profiles.active=memory the repositories are the in-memory ones and no database is started.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EntityScan(basePackages = {"org.coda.core.entities"})
+@Import({PersistenceContextSupport.class, SecondLevelCacheSupport.class, ConditionalUpdates.class,
+        FoodSearchIndex.class, IntakeColumnStore.class, FoodService.class, MealService.class, CalorieInTakeService.class,
+        JournalCalorieInTakeRepository.class, InMemoryStorageConfig.class})
+public class BenchmarkApplication {
+
+    @Configuration
+    @Profile("!memory")
+    @EnableJpaRepositories(basePackages = {"org.coda.core.repository"},
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = {FoodRepository.class, MealRepository.class, UserRepository.class,
+                            CalorieInTakeRepository.class, DailyIntakeSummaryRepository.class}))
+    static class JpaRepositories {
+    }
+
+    /**
+     * Start a context on a fresh in-memory database
+     * With -Dh2.server=tcp://host:port, e.g. passed to the fork with -jvmArgsAppend, the in-memory database is
+     * created in that H2 server, so every statement pays a network round trip as against a database server
+     * @param properties extra Spring properties in key=value form
+     * @return the running context, to be closed in the benchmark tear down
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("spring.datasource.url=jdbc:h2:" + server() + "mem:bench-" + System.nanoTime()
+                                + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "logging.level.root=WARN",
+                        "logging.level.org.coda=WARN")
+                //== as arguments: builder properties are defaults that application.properties would override ==
+                .run(Arrays.stream(properties).map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    private static String server() {
+        String server = System.getProperty("h2.server");
+        return server == null || server.isBlank() ? "" : server + "/";
+    }
+}
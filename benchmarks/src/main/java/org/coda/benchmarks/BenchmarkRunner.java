@@ -0,0 +1,46 @@
+package org.coda.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the benchmarks with the GC profiler and writes the results as JMH JSON to
+ * benchmarks/results/&lt;label&gt;.json, so that two releases can be compared with CompareResults.
+ * The label is the system property label, by default the current time.
+ * Any JMH command line option is accepted, e.g. a benchmark regexp or -p foods=10000.
+ *
+ * java -Dlabel=1.4.0 -cp benchmarks/target/benchmarks.jar org.coda.benchmarks.BenchmarkRunner
+ * java -cp benchmarks/target/benchmarks.jar org.coda.benchmarks.CompareResults \
+ *      benchmarks/results/1.3.0.json benchmarks/results/1.4.0.json
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        String label = System.getProperty("label",
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Path results = Path.of(System.getProperty("results.dir", "benchmarks/results"));
+        Files.createDirectories(results);
+        Path file = results.resolve(label + ".json");
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(file.toString())
+                .build())
+                .run();
+        System.out.println("Results written to " + file);
+    }
+}
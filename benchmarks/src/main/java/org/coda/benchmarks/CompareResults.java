@@ -0,0 +1,96 @@
+package org.coda.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files, the baseline first, benchmark by benchmark and parameter set.
+ * Prints the score and the allocation per operation (gc.alloc.rate.norm, present when run with -prof gc)
+ * of both files and the change in percent, and exits with 1 when any score got worse by more than
+ * the threshold, 10% by default (system property threshold), so it can gate a release build.
+ * Scores are compared in the direction of the benchmark mode: lower is better for time modes,
+ * higher for throughput.
+ *
+ * java -cp benchmarks/target/benchmarks.jar org.coda.benchmarks.CompareResults baseline.json candidate.json
+ */
+public final class CompareResults {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private CompareResults() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <candidate.json>");
+            System.exit(2);
+        }
+        double threshold = Double.parseDouble(System.getProperty("threshold", "10"));
+        Map<String, JsonNode> baseline = read(Path.of(args[0]));
+        Map<String, JsonNode> candidate = read(Path.of(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %12s %12s %8s %12s %12s %8s%n",
+                "benchmark", "base", "new", "change", "base B/op", "new B/op", "change");
+        for (Map.Entry<String, JsonNode> entry : candidate.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode after = entry.getValue();
+            double score = after.path("primaryMetric").path("score").asDouble();
+            double bytes = allocation(after);
+            if (before == null) {
+                System.out.printf("%-70s %12s %12.3f %8s %12s %12.0f %8s%n", entry.getKey(), "-", score, "new",
+                        "-", bytes, "");
+                continue;
+            }
+            double baseScore = before.path("primaryMetric").path("score").asDouble();
+            double baseBytes = allocation(before);
+            double change = percent(baseScore, score);
+            boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+            boolean regression = higherIsBetter ? change < -threshold : change > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-70s %12.3f %12.3f %+7.1f%% %12.0f %12.0f %+7.1f%%%s%n", entry.getKey(),
+                    baseScore, score, change, baseBytes, bytes, percent(baseBytes, bytes),
+                    regression ? "  REGRESSION" : "");
+        }
+        for (String missing : baseline.keySet()) {
+            if (!candidate.containsKey(missing)) {
+                System.out.printf("%-70s only in baseline%n", missing);
+            }
+        }
+        System.out.printf("%d regression(s) beyond %.0f%%%n", regressions, threshold);
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    //== helpers ==
+
+    //== one entry per benchmark and parameter set, in file order ==
+    private static Map<String, JsonNode> read(Path file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText()
+                    .replace("org.coda.benchmarks.", ""));
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double allocation(JsonNode result) {
+        return result.path("secondaryMetrics").path(ALLOCATION).path("score").asDouble(Double.NaN);
+    }
+
+    private static double percent(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before * 100;
+    }
+}
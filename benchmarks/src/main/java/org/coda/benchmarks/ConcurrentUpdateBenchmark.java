@@ -0,0 +1,117 @@
+package org.coda.benchmarks;
+
+import org.coda.core.entities.Food;
+import org.coda.core.repository.ConditionalUpdates;
+import org.coda.core.repository.FoodRepository;
+import org.coda.core.repository.SecondLevelCacheSupport;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of concurrent increments of the calories of a food, 8 threads on an embedded H2, with every
+ * thread updating one of `rows` foods: rows=1 has every thread contend for the same row.
+ * <p>
+ * readThenWrite is the save based update the services used to run: findById, change, save, which merges the food
+ * with another SELECT and writes it with a versioned UPDATE; a conflict surfaces as an
+ * ObjectOptimisticLockingFailureException and the whole read-then-write is repeated.
+ * Without the @Version field, the same pattern would silently lose the increments of the threads it raced.
+ * conditionalUpdate reads with findCurrentById and writes with the single conditional UPDATE of
+ * updateIfUnchanged through ConditionalUpdates, as FoodService.modifyFood does, without the meal totals:
+ * the updated food is evicted from the second-level cache, and so is a cached food found behind on a conflict.
+ * The conflicts of each pattern are printed at the end of the trial.
+ * Both paths take a while to compile, hence the longer warmup.
+ * Against the embedded H2 a statement costs no round trip, which is most of what conditionalUpdate saves:
+ * start an H2 TCP server and pass -jvmArgsAppend -Dh2.server=tcp://localhost:9092 to measure over the network.
+ *
+ * java -jar benchmarks/target/benchmarks.jar ConcurrentUpdateBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+@Threads(8)
+@State(Scope.Benchmark)
+public class ConcurrentUpdateBenchmark {
+
+    @Param({"readThenWrite", "conditionalUpdate"})
+    private String pattern;
+
+    @Param({"1", "64"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private FoodRepository foodRepository;
+    private ConditionalUpdates conditionalUpdates;
+    private SecondLevelCacheSupport secondLevelCacheSupport;
+    private List<Long> ids;
+
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void seed() {
+        context = BenchmarkApplication.start("calorietracker.update.max-attempts=1000000");
+        foodRepository = context.getBean(FoodRepository.class);
+        conditionalUpdates = context.getBean(ConditionalUpdates.class);
+        secondLevelCacheSupport = context.getBean(SecondLevelCacheSupport.class);
+        List<Food> foods = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Food.Nutrition nutrition = new Food.Nutrition();
+            nutrition.setProtein(1);
+            foods.add(new Food("food-" + i, "contended food", nutrition, 100));
+        }
+        ids = foodRepository.saveAll(foods).stream().map(Food::getId).toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        long lost = updates.sum() + ids.size() * 100L - ids.stream()
+                .mapToLong(id -> (long) foodRepository.findById(id).orElseThrow().getCalories())
+                .sum();
+        long patternConflicts = "conditionalUpdate".equals(pattern) ? conditionalUpdates.getConflicts()
+                : conflicts.sum();
+        System.out.printf("%n%s rows=%d: %d updates, %d conflicts, %d lost%n", pattern, rows, updates.sum(),
+                patternConflicts, lost);
+        context.close();
+    }
+
+    @Benchmark
+    public Food increment() {
+        long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        Food food = "conditionalUpdate".equals(pattern) ? conditionalUpdate(id) : readThenWrite(id);
+        updates.increment();
+        return food;
+    }
+
+    //== helpers ==
+
+    private Food readThenWrite(long id) {
+        while (true) {
+            Food food = foodRepository.findById(id).orElseThrow();
+            food.setCalories(food.getCalories() + 1);
+            try {
+                return foodRepository.save(food);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                conflicts.increment();
+            }
+        }
+    }
+
+    private Food conditionalUpdate(long id) {
+        return conditionalUpdates.apply("Food", id, foodRepository::findCurrentById,
+                food -> food.setCalories(food.getCalories() + 1),
+                food -> {
+                    int updated = foodRepository.updateIfUnchanged(food);
+                    secondLevelCacheSupport.evictFood(id);
+                    return updated;
+                }).orElseThrow();
+    }
+}
@@ -0,0 +1,192 @@
+package org.coda.benchmarks;
+
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the entity methods hit on every load, save and collection operation:
+ * the meal totals (calculateTotalMealCalories through refreshTotals) and equals/hashCode of each entity.
+ * equals compares an entity with an equal instance that is not the same object, as a reload in
+ * another persistence context gives; the dedup benchmarks add count intakes or meals to a HashSet,
+ * as a persistence context or a Set-valued association would, and every entity appears twice.
+ * The count=1000000 runs need a larger heap, -jvmArgsAppend -Xmx4g.
+ *
+ * java -jar benchmarks/target/benchmarks.jar EntityBenchmark -prof gc
+ * java -jar benchmarks/target/benchmarks.jar "EntityBenchmark.dedup" -p count=1000000 -jvmArgsAppend -Xmx4g
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityBenchmark {
+
+    private static final LocalDateTime DATE_TIME = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Param({"5", "50"})
+    private int foodsPerMeal;
+
+    @Param({"1000", "1000000"})
+    private int count;
+
+    private Food food;
+    private Food foodCopy;
+    private User user;
+    private User userCopy;
+    private Meal meal;
+    private Meal mealCopy;
+    private CalorieInTake intake;
+    private CalorieInTake intakeCopy;
+    private List<Meal> meals;
+    private List<CalorieInTake> intakes;
+
+    @Setup(Level.Trial)
+    public void createEntities() {
+        food = food(1);
+        foodCopy = copy(food);
+        user = user(1);
+        userCopy = copy(user);
+        meal = meal(1, user, foods());
+        mealCopy = copy(meal);
+        intake = intake(1, meal, user, food);
+        intakeCopy = copy(intake);
+        //== count entries, each entity twice; the meals share one food list to keep the heap small ==
+        List<Food> sharedFoods = foods();
+        meals = new ArrayList<>(count);
+        intakes = new ArrayList<>(count);
+        for (int i = 0; i < count / 2; i++) {
+            Meal next = meal(i + 1, user, sharedFoods);
+            CalorieInTake nextIntake = intake(i + 1, next, user, food);
+            meals.add(next);
+            meals.add(next);
+            intakes.add(nextIntake);
+            intakes.add(nextIntake);
+        }
+    }
+
+    @Benchmark
+    public double mealTotals() {
+        meal.refreshTotals();
+        return meal.getTotalCalories();
+    }
+
+    @Benchmark
+    public int foodHashCode() {
+        return food.hashCode();
+    }
+
+    @Benchmark
+    public boolean foodEquals() {
+        return food.equals(foodCopy);
+    }
+
+    @Benchmark
+    public int userHashCode() {
+        return user.hashCode();
+    }
+
+    @Benchmark
+    public boolean userEquals() {
+        return user.equals(userCopy);
+    }
+
+    @Benchmark
+    public int mealHashCode() {
+        return meal.hashCode();
+    }
+
+    @Benchmark
+    public boolean mealEquals() {
+        return meal.equals(mealCopy);
+    }
+
+    @Benchmark
+    public int intakeHashCode() {
+        return intake.hashCode();
+    }
+
+    @Benchmark
+    public boolean intakeEquals() {
+        return intake.equals(intakeCopy);
+    }
+
+    @Benchmark
+    public Set<Meal> dedupMeals() {
+        return new HashSet<>(meals);
+    }
+
+    @Benchmark
+    public Set<CalorieInTake> dedupIntakes() {
+        return new HashSet<>(intakes);
+    }
+
+    //== helpers ==
+
+    private List<Food> foods() {
+        List<Food> foods = new ArrayList<>(foodsPerMeal);
+        for (int i = 0; i < foodsPerMeal; i++) {
+            foods.add(food(i + 1));
+        }
+        return foods;
+    }
+
+    private static Food food(long id) {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(id % 30);
+        nutrition.setFat(id % 20);
+        nutrition.setCarbohydrates(id % 50);
+        Food food = new Food("food-" + id, "benchmark food", nutrition, 50 + id % 900);
+        food.setId(id);
+        return food;
+    }
+
+    private static User user(long id) {
+        User.Contact contact = new User.Contact();
+        contact.setEmail("user" + id + "@bench.org");
+        User user = new User("user-" + id, "$2a$10$abcdefghijklmnopqrstuv", 30, 70, 175, 2200, contact);
+        user.setId(id);
+        return user;
+    }
+
+    private static Meal meal(long id, User user, List<Food> foods) {
+        Meal meal = new Meal("meal-" + id, user, foods);
+        meal.setId(id);
+        meal.refreshTotals();
+        return meal;
+    }
+
+    //== field by field, uuid included: what a reload of the same row in another persistence context gives ==
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T entity) {
+        try {
+            T copy = (T) entity.getClass().getDeclaredConstructor().newInstance();
+            for (Field field : entity.getClass().getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) continue;
+                field.setAccessible(true);
+                field.set(copy, field.get(entity));
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot copy " + entity.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static CalorieInTake intake(long id, Meal meal, User user, Food food) {
+        CalorieInTake intake = new CalorieInTake(meal, user, food, DATE_TIME);
+        intake.setId(id);
+        return intake;
+    }
+}
@@ -0,0 +1,91 @@
+package org.coda.benchmarks;
+
+import org.coda.core.entities.Food;
+import org.coda.core.repository.FoodRepository;
+import org.coda.core.service.FoodService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput of FoodService.saveAllFoods, in rows per second.
+ * Each invocation saves rows foods in one call and counts them: the rowsSaved row is the rows per second,
+ * the saveAllFoods row the calls per second. Building and deleting the foods is left out of the measured time.
+ * batchSize=1 sends one INSERT round trip per row, batchSize=50 is the default high-volume mode
+ * (JDBC batching, flush/clear per batch). Both take their ids from the pooled food_seq sequence,
+ * so batchSize=1 understates the cost of the former IDENTITY ids, which also cost a round trip per row to read
+ * the generated key and ruled batching out.
+ * Against the embedded H2 a round trip costs little; pass -jvmArgsAppend -Dh2.server=tcp://localhost:9092
+ * to insert into an H2 TCP server instead. At 1000000 rows, take fewer iterations, e.g. -wi 1 -i 3.
+ *
+ * java -jar benchmarks/target/benchmarks.jar FoodBatchInsertBenchmark -p rows=10000,100000,1000000
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class FoodBatchInsertBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"1", "50"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private FoodService foodService;
+    private FoodRepository foodRepository;
+    private List<Food> foods;
+
+    /**
+     * The rows saved by the measured invocations, reported by JMH per second of measured time
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rowsSaved;
+    }
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = BenchmarkApplication.start(
+                "calorietracker.batch-size=" + batchSize,
+                "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize);
+        foodService = context.getBean(FoodService.class);
+        foodRepository = context.getBean(FoodRepository.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void createFoods() {
+        foods = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Food.Nutrition nutrition = new Food.Nutrition();
+            nutrition.setProtein(i % 30);
+            nutrition.setFat(i % 20);
+            nutrition.setCarbohydrates(i % 50);
+            foods.add(new Food("food-" + i, "benchmark food", nutrition, i % 900));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFoods() {
+        foodRepository.deleteAllInBatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Food> saveAllFoods(Rows saved) {
+        List<Food> savedFoods = foodService.saveAllFoods(foods);
+        saved.rowsSaved += savedFoods.size();
+        return savedFoods;
+    }
+}
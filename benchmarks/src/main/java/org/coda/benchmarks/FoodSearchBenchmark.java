@@ -0,0 +1,70 @@
+package org.coda.benchmarks;
+
+import org.coda.core.projection.FoodSearchHit;
+import org.coda.core.search.FoodSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a type-ahead query against FoodSearchIndex.
+ * The catalog is synthetic: names of two to four words drawn from a fixed vocabulary,
+ * so the dictionary stays realistic while the number of foods grows.
+ *
+ * java -jar benchmarks/target/benchmarks.jar FoodSearchBenchmark -p foods=1000000
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class FoodSearchBenchmark {
+
+    private static final String[] WORDS = {
+            "chicken", "breast", "thigh", "wing", "beef", "steak", "mince", "pork", "chop", "bacon",
+            "salmon", "tuna", "cod", "prawn", "egg", "omelette", "milk", "yogurt", "cheese", "cheddar",
+            "mozzarella", "butter", "bread", "wholemeal", "bagel", "rice", "brown", "basmati", "pasta", "spaghetti",
+            "noodle", "oat", "porridge", "granola", "apple", "banana", "orange", "mango", "strawberry", "blueberry",
+            "grape", "pear", "peach", "avocado", "tomato", "potato", "sweet", "carrot", "broccoli", "spinach",
+            "lettuce", "onion", "garlic", "pepper", "mushroom", "bean", "lentil", "chickpea", "tofu", "almond",
+            "walnut", "peanut", "cashew", "chocolate", "dark", "cake", "cookie", "muffin", "pie", "soup",
+            "salad", "sandwich", "wrap", "burger", "pizza", "curry", "stew", "roast", "grilled", "fried",
+            "baked", "smoked", "raw", "frozen", "fresh", "organic", "low", "fat", "light", "spicy"};
+
+    @Param({"100000", "1000000"})
+    private int foods;
+
+    @Param({"chick brst", "chiken", "sw pot", "apple pie"})
+    private String query;
+
+    private FoodSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        SplittableRandom random = new SplittableRandom(42);
+        Map<Long, String> names = new HashMap<>(foods * 2);
+        for (long id = 1; id <= foods; id++) {
+            int words = 2 + random.nextInt(3);
+            StringBuilder name = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    name.append(' ');
+                }
+                name.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            names.put(id, name.toString());
+        }
+        index = new FoodSearchIndex();
+        index.rebuild(names);
+    }
+
+    @Benchmark
+    public List<FoodSearchHit> search() {
+        return index.search(query, 10);
+    }
+}
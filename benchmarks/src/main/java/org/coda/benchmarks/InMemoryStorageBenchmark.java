@@ -0,0 +1,126 @@
+package org.coda.benchmarks;
+
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.User;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.repository.CalorieInTakeRepository;
+import org.coda.core.repository.FoodRepository;
+import org.coda.core.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation latency of the repositories on H2 (jpa) and in the heap (the memory profile),
+ * for the lookups served by a secondary index: the user by email, the week of intakes of a user,
+ * the month sum of a user and the foods above a calorie threshold, plus the save of one intake.
+ *
+ * java -jar benchmarks/target/benchmarks.jar InMemoryStorageBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class InMemoryStorageBenchmark {
+
+    private static final int USERS = 1000;
+
+    private static final int FOODS = 2000;
+
+    private static final int INTAKES = 100_000;
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 1, 1, 0, 0);
+
+    @Param({"jpa", "memory"})
+    private String storage;
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private FoodRepository foodRepository;
+    private CalorieInTakeRepository calorieInTakeRepository;
+    private List<User> users;
+    private List<Food> foods;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = BenchmarkApplication.start("spring.profiles.active=" + (storage.equals("memory") ? "memory" : "default"));
+        userRepository = context.getBean(UserRepository.class);
+        foodRepository = context.getBean(FoodRepository.class);
+        calorieInTakeRepository = context.getBean(CalorieInTakeRepository.class);
+        List<User> newUsers = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            User.Contact contact = new User.Contact();
+            contact.setEmail("user-" + i + "@example.com");
+            newUsers.add(new User("user-" + i, "not a hash", 30, 70, 175, 2200, contact));
+        }
+        users = userRepository.saveAll(newUsers);
+        List<Food> newFoods = new ArrayList<>(FOODS);
+        for (int i = 0; i < FOODS; i++) {
+            newFoods.add(new Food("food-" + i, "benchmark food", new Food.Nutrition(), i % 900));
+        }
+        foods = foodRepository.saveAll(newFoods);
+        List<CalorieInTake> intakes = new ArrayList<>(INTAKES);
+        for (int i = 0; i < INTAKES; i++) {
+            intakes.add(randomIntake());
+        }
+        calorieInTakeRepository.saveAll(intakes);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<User> findUserByEmail() {
+        return userRepository.findUserByEmail("user-" + ThreadLocalRandom.current().nextInt(USERS) + "@example.com");
+    }
+
+    @Benchmark
+    public List<CalorieInTake> findWeekOfIntakes() {
+        LocalDateTime from = randomTime();
+        return calorieInTakeRepository.findAllCalorieIntakeByUserAndDateTimeRange(randomUser().getId(), from,
+                from.plusWeeks(1));
+    }
+
+    @Benchmark
+    public Optional<IntakeRangeStats> sumMonthOfIntakes() {
+        LocalDateTime from = randomTime();
+        return calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(randomUser().getId(), from,
+                from.plusMonths(1));
+    }
+
+    @Benchmark
+    public List<Food> findFoodsWithHighCalories() {
+        return foodRepository.findAllFoodsWithHighCalories(890);
+    }
+
+    @Benchmark
+    public CalorieInTake saveIntake() {
+        return calorieInTakeRepository.save(randomIntake());
+    }
+
+    //== helpers ==
+
+    private CalorieInTake randomIntake() {
+        return new CalorieInTake(null, randomUser(), foods.get(ThreadLocalRandom.current().nextInt(FOODS)),
+                randomTime());
+    }
+
+    private User randomUser() {
+        return users.get(ThreadLocalRandom.current().nextInt(USERS));
+    }
+
+    private static LocalDateTime randomTime() {
+        return START.plusMinutes(ThreadLocalRandom.current().nextInt(365 * 24 * 60));
+    }
+}
@@ -0,0 +1,113 @@
+package org.coda.benchmarks;
+
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.User;
+import org.coda.core.repository.CalorieInTakeRepository;
+import org.coda.core.repository.FoodRepository;
+import org.coda.core.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Ingest throughput of CalorieInTakeRepository on H2 and on the intake journal.
+ * save commits one intake per call, from one thread and from eight; saveAll commits BATCH intakes per call.
+ * journal forces the segments to disk on every commit, journal-noforce leaves that to the operating system.
+ *
+ * java -jar benchmarks/target/benchmarks.jar IntakeJournalBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class IntakeJournalBenchmark {
+
+    private static final int USERS = 100;
+
+    private static final int FOODS = 200;
+
+    private static final int BATCH = 1000;
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 1, 1, 0, 0);
+
+    @Param({"h2", "journal", "journal-noforce"})
+    private String backend;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private CalorieInTakeRepository calorieInTakeRepository;
+    private List<User> users;
+    private List<Food> foods;
+
+    @Setup(Level.Trial)
+    public void startContext() throws IOException {
+        directory = Files.createTempDirectory("intake-journal");
+        context = BenchmarkApplication.start(
+                "calorietracker.intake.storage=" + (backend.equals("h2") ? "jpa" : "journal"),
+                "calorietracker.journal.directory=" + directory,
+                "calorietracker.journal.force=" + backend.equals("journal"));
+        calorieInTakeRepository = context.getBean(CalorieInTakeRepository.class);
+        List<User> newUsers = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            newUsers.add(new User("user-" + i, "not a hash", 30, 70, 175, 2200, new User.Contact()));
+        }
+        users = context.getBean(UserRepository.class).saveAll(newUsers);
+        List<Food> newFoods = new ArrayList<>(FOODS);
+        for (int i = 0; i < FOODS; i++) {
+            newFoods.add(new Food("food-" + i, "benchmark food", new Food.Nutrition(), i % 900));
+        }
+        foods = context.getBean(FoodRepository.class).saveAll(newFoods);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() throws IOException {
+        context.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public CalorieInTake save() {
+        return calorieInTakeRepository.save(randomIntake());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public CalorieInTake saveConcurrently() {
+        return calorieInTakeRepository.save(randomIntake());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<CalorieInTake> saveAll() {
+        List<CalorieInTake> intakes = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            intakes.add(randomIntake());
+        }
+        return calorieInTakeRepository.saveAll(intakes);
+    }
+
+    //== helpers ==
+
+    private CalorieInTake randomIntake() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new CalorieInTake(null, users.get(random.nextInt(USERS)), foods.get(random.nextInt(FOODS)),
+                START.plusMinutes(random.nextInt(365 * 24 * 60)));
+    }
+}
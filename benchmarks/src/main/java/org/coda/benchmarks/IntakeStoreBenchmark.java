@@ -0,0 +1,61 @@
+package org.coda.benchmarks;
+
+import org.coda.core.analytics.IntakeColumnStore;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Latency of a range sum over one user's intakes in IntakeColumnStore.
+ * Each user logs six intakes a day for the given number of days; the query covers the last 365 days.
+ *
+ * java -jar benchmarks/target/benchmarks.jar IntakeStoreBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class IntakeStoreBenchmark {
+
+    private static final int USERS = 100;
+
+    private static final int INTAKES_PER_DAY = 6;
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    @Param({"365", "3650"})
+    private int days;
+
+    private IntakeColumnStore store;
+
+    private LocalDateTime from;
+
+    private LocalDateTime to;
+
+    @Setup(Level.Trial)
+    public void loadStore() {
+        SplittableRandom random = new SplittableRandom(42);
+        long perUser = (long) days * INTAKES_PER_DAY;
+        store = new IntakeColumnStore(true);
+        store.rebuild(LongStream.range(0, USERS * perUser).mapToObj(i -> {
+            long intake = i % perUser;
+            LocalDateTime dateTime = START.plusDays(intake / INTAKES_PER_DAY).plusHours(7 + 2 * (intake % INTAKES_PER_DAY));
+            return new IntakeRow(i + 1, i / perUser + 1, dateTime, 50 + random.nextInt(600),
+                    random.nextInt(40), random.nextInt(30), random.nextInt(80));
+        }).iterator());
+        to = START.plusDays(days);
+        from = to.minusDays(365);
+    }
+
+    @Benchmark
+    public IntakeRangeStats sumLastYear() {
+        return store.sum(USERS / 2, from, to);
+    }
+}
@@ -0,0 +1,176 @@
+package org.coda.benchmarks;
+
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.repository.UserRepository;
+import org.coda.core.service.CalorieInTakeService;
+import org.coda.core.service.FoodService;
+import org.coda.core.service.MealService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the service save and query paths through Spring, Hibernate and an embedded H2:
+ * one call per operation, each in its own transaction as the console and the API make them.
+ * The database is seeded with a catalog, USERS users, their meals and DAYS days of intakes;
+ * the save benchmarks keep adding rows during the trial, which is small next to the seeded data.
+ *
+ * java -jar benchmarks/target/benchmarks.jar ServiceBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+
+    private static final int USERS = 100;
+
+    private static final int DAYS = 60;
+
+    private static final int INTAKES_PER_DAY = 6;
+
+    private static final int FOODS_PER_MEAL = 5;
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    @Param({"1000"})
+    private int foods;
+
+    private ConfigurableApplicationContext context;
+    private FoodService foodService;
+    private MealService mealService;
+    private CalorieInTakeService calorieInTakeService;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private List<Food> catalog;
+    private List<User> users;
+    private List<Meal> meals;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        context = BenchmarkApplication.start();
+        foodService = context.getBean(FoodService.class);
+        mealService = context.getBean(MealService.class);
+        calorieInTakeService = context.getBean(CalorieInTakeService.class);
+
+        List<Food> newFoods = new ArrayList<>(foods);
+        for (int i = 0; i < foods; i++) {
+            newFoods.add(food(i));
+        }
+        catalog = foodService.saveAllFoods(newFoods);
+
+        List<User> newUsers = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            User.Contact contact = new User.Contact();
+            contact.setEmail("user" + i + "@bench.org");
+            newUsers.add(new User("user-" + i, "not a hash", 30, 70, 175, 2200, contact));
+        }
+        users = context.getBean(UserRepository.class).saveAll(newUsers);
+
+        List<Meal> newMeals = new ArrayList<>(USERS);
+        for (User user : users) {
+            newMeals.add(new Meal("meal of " + user.getName(), user, someFoods()));
+        }
+        meals = mealService.saveAllMeals(newMeals);
+
+        List<CalorieInTake> intakes = new ArrayList<>(USERS * DAYS * INTAKES_PER_DAY);
+        for (int u = 0; u < USERS; u++) {
+            for (int day = 0; day < DAYS; day++) {
+                for (int i = 0; i < INTAKES_PER_DAY; i++) {
+                    LocalDateTime dateTime = FIRST_DAY.plusDays(day).atTime(7 + 2 * i, 0);
+                    intakes.add(i == 0 ? new CalorieInTake(meals.get(u), users.get(u), null, dateTime)
+                            : new CalorieInTake(null, users.get(u), randomFood(), dateTime));
+                }
+            }
+        }
+        calorieInTakeService.saveAllCalorieInTake(intakes);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    @Benchmark
+    public Food saveFood() {
+        Food food = food(random.nextInt(1_000_000));
+        foodService.saveFood(food);
+        return food;
+    }
+
+    @Benchmark
+    public Food getFoodById() {
+        return foodService.getFoodById(randomFood().getId());
+    }
+
+    @Benchmark
+    public Optional<Meal> saveMeal() {
+        return mealService.saveMeal(new Meal("meal", randomUser(), someFoods()));
+    }
+
+    @Benchmark
+    public Meal getMealDetailById() {
+        return mealService.getMealDetailById(meals.get(random.nextInt(meals.size())).getId());
+    }
+
+    @Benchmark
+    public CalorieInTake saveCalorieInTake() {
+        CalorieInTake intake = new CalorieInTake(null, randomUser(), randomFood(), randomDay().atTime(21, 0));
+        calorieInTakeService.saveCalorieInTake(intake);
+        return intake;
+    }
+
+    @Benchmark
+    public List<CalorieInTake> getDashboardCalorieInTake() {
+        return calorieInTakeService.getDashboardCalorieInTake(randomUser().getId(), randomDay());
+    }
+
+    @Benchmark
+    public IntakeRangeStats getIntakeStatsForAMonth() {
+        LocalDateTime from = FIRST_DAY.atStartOfDay();
+        return calorieInTakeService.getIntakeStats(randomUser().getId(), from, from.plusDays(30));
+    }
+
+    //== helpers ==
+
+    private static Food food(int i) {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(i % 30);
+        nutrition.setFat(i % 20);
+        nutrition.setCarbohydrates(i % 50);
+        return new Food("food-" + i, "benchmark food", nutrition, 50 + i % 900);
+    }
+
+    private List<Food> someFoods() {
+        List<Food> someFoods = new ArrayList<>(FOODS_PER_MEAL);
+        for (int i = 0; i < FOODS_PER_MEAL; i++) {
+            someFoods.add(randomFood());
+        }
+        return someFoods;
+    }
+
+    private Food randomFood() {
+        return catalog.get(random.nextInt(catalog.size()));
+    }
+
+    private User randomUser() {
+        return users.get(random.nextInt(users.size()));
+    }
+
+    private LocalDate randomDay() {
+        return FIRST_DAY.plusDays(random.nextInt(DAYS));
+    }
+}
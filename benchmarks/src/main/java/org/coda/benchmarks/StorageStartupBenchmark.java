@@ -0,0 +1,29 @@
+package org.coda.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to start and stop the benchmark context on H2 (jpa) and in the heap (the memory profile),
+ * which leaves out the DataSource, Hibernate and the Spring Data JPA repositories.
+ * Each measurement is one cold start in an already warmed up JVM.
+ *
+ * java -jar benchmarks/target/benchmarks.jar StorageStartupBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class StorageStartupBenchmark {
+
+    @Param({"jpa", "memory"})
+    private String storage;
+
+    @Benchmark
+    public void startAndStop() {
+        BenchmarkApplication.start("spring.profiles.active=" + (storage.equals("memory") ? "memory" : "default")).close();
+    }
+}
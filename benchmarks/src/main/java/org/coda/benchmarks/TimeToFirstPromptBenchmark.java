@@ -0,0 +1,104 @@
+package org.coda.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a new JVM with the console Main to its first menu prompt, the start a user waits for:
+ * eager is the default context, lazy adds the lazy profile (beans created on first use, deferred JPA repositories),
+ * and the -cds modes map the classes from an AppCDS archive recorded once per trial, as mvn -P appcds does for
+ * the consoleUI jar. Each measurement is one cold JVM, answered with Exit once the prompt shows.
+ *
+ * java -jar benchmarks/target/benchmarks.jar TimeToFirstPromptBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class TimeToFirstPromptBenchmark {
+
+    private static final String PROMPT = "Please select an option";
+
+    @Param({"eager", "lazy", "eager-cds", "lazy-cds"})
+    private String mode;
+
+    private Path archive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (!mode.endsWith("-cds")) {
+            return;
+        }
+        archive = Files.createTempFile("console-", ".jsa");
+        Files.delete(archive);
+        //== the same profile as the measured runs, up to the end of the refresh ==
+        Process dump = new ProcessBuilder(command("-XX:ArchiveClassesAtExit=" + archive,
+                "-Dspring.context.exit=onRefresh"))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (dump.waitFor() != 0 || !Files.exists(archive)) {
+            throw new IllegalStateException("The AppCDS archive was not created, exit code " + dump.exitValue());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (archive != null) {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    @Benchmark
+    public long firstPrompt() throws Exception {
+        List<String> command = archive == null ? command() : command("-XX:SharedArchiveFile=" + archive);
+        Process console = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(console.getInputStream(),
+                StandardCharsets.UTF_8));
+             OutputStream in = console.getOutputStream()) {
+            long lines = 0;
+            String line;
+            while ((line = out.readLine()) != null) {
+                lines++;
+                if (line.contains(PROMPT)) {
+                    in.write("3\n".getBytes(StandardCharsets.UTF_8));
+                    in.flush();
+                    out.transferTo(Writer.nullWriter());
+                    console.waitFor();
+                    return lines;
+                }
+            }
+            throw new IllegalStateException("The console exited before its prompt, exit code " + console.waitFor());
+        } finally {
+            console.destroyForcibly();
+        }
+    }
+
+    //== helpers ==
+
+    private List<String> command(String... jvmOptions) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(List.of(jvmOptions));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("org.coda.core.Main");
+        if (mode.startsWith("lazy")) {
+            command.add("--spring.profiles.active=lazy");
+        }
+        return command;
+    }
+}
@@ -3,7 +3,6 @@ package org.coda;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
-import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 /**
@@ -14,17 +13,18 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
  * @EnableWebMvc: Activates Spring MVC for the application.
  * @ComponentScan: Tells Spring to look for other components, configurations, and services in the org.coda package, letting it find the controllers.
  * @EnableTransactionManagement: Enables Spring's annotation-driven transaction management capability.
- * @EnableJpaRepositories: Enables Spring Data JPA repositories.
+ * The Spring Data JPA repositories are enabled by JpaStorageConfig, found by the scan of org.coda.core.
  * @Slf4j: Lombok annotation to generate a logger field.
+ * main starts the console menu of core's Main, with its startup report; the consoleUI jar is built around it,
+ * and mvn -P appcds package adds the class data sharing archive used by java -XX:SharedArchiveFile.
  */
 
 @SpringBootApplication
 @EnableTransactionManagement
 @ComponentScan(basePackages = {"org.coda.core, org.coda.core.service, org.coda.core.repository"})
-@EnableJpaRepositories(basePackages = {"org.coda.core.repository"})
 @Slf4j
 public class Main {
     public static void main(String[] args) {
-
+        org.coda.core.Main.main(args);
     }
 }
\ No newline at end of file
@@ -1,12 +1,40 @@
 package org.coda.config;
+import org.coda.core.metrics.PrometheusScrapeServer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+/**
+ * The packages of core that hold beans, listed one by one: entities, projections and exceptions are not scanned,
+ * nor is org.coda.core itself, so the console Main is only registered by the application that runs it.
+ */
 @Configuration
-@ComponentScan(basePackages = {"org.coda.core, org.coda.core.repository, " +
-        "org.coda.core.service, org.coda.core.entities"})
+@ComponentScan(basePackages = {"org.coda.config", "org.coda.core.analytics", "org.coda.core.export",
+        "org.coda.core.importer", "org.coda.core.ingest", "org.coda.core.metrics", "org.coda.core.repository",
+        "org.coda.core.search", "org.coda.core.security", "org.coda.core.service"})
 public class AppConfig{
 
+    /**
+     * Password encoder shared by UserService (hashing) and PasswordVerifier (checking)
+     * @param strength the BCrypt log rounds, each step doubles the cost of a login
+     * @return BCryptPasswordEncoder
+     */
+    @Bean
+    public BCryptPasswordEncoder passwordEncoder(@Value("${calorietracker.password.strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
+    }
 
+    /**
+     * Beans created on refresh even with spring.main.lazy-initialization=true, as nothing injects them
+     * Static so the filter is read without creating AppConfig before the other bean factory post processors
+     * @return LazyInitializationExcludeFilter for the metrics endpoint
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(PrometheusScrapeServer.class);
+    }
 
 }
@@ -0,0 +1,68 @@
+package org.coda.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import jakarta.persistence.SharedCacheMode;
+import org.coda.core.entities.Food;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Opt-in Hibernate second-level cache for the food catalog, enabled with calorietracker.cache.enabled=true.
+ * Caches live in an in-process Caffeine JCache manager sized and expired from
+ * calorietracker.cache.max-entries and calorietracker.cache.ttl.
+ */
+@Configuration
+@ConditionalOnProperty(name = "calorietracker.cache.enabled", havingValue = "true")
+public class SecondLevelCacheConfig {
+
+    /**
+     * JCache manager holding the food entity and meal foods collection regions
+     * @param maxEntries the maximum number of entries per region
+     * @param ttl how long an entry lives after it was written
+     * @return CacheManager private to this application context
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager(@Value("${calorietracker.cache.max-entries:100000}") long maxEntries,
+                                                @Value("${calorietracker.cache.ttl:PT1H}") Duration ttl) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("calorietracker-" + UUID.randomUUID()), getClass().getClassLoader());
+        for (String region : new String[]{Food.CACHE_REGION, Food.MEALS_FOODS_CACHE_REGION}) {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(maxEntries));
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+            configuration.setStatisticsEnabled(true);
+            cacheManager.createCache(region, configuration);
+        }
+        return cacheManager;
+    }
+
+    /**
+     * Switch Hibernate to the JCache region factory backed by secondLevelCacheManager
+     * @param secondLevelCacheManager the cache manager holding the regions
+     * @return HibernatePropertiesCustomizer applied when the entity manager factory is built
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager secondLevelCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(AvailableSettings.JAKARTA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "create");
+        };
+    }
+}
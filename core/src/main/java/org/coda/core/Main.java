@@ -2,25 +2,25 @@ package org.coda.core;
 import lombok.extern.slf4j.Slf4j;
 import org.coda.core.entities.Food;
 import org.coda.core.entities.Meal;
+import org.coda.core.metrics.StartupReport;
 import org.coda.core.service.FoodService;
 import org.coda.core.service.MealService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.ComponentScan;
-import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import java.util.*;
 
 @SpringBootApplication
 @EnableTransactionManagement
-@ComponentScan(basePackages = {"org.coda.core, org.coda.core.service, org.coda.core.repository"})
-@EnableJpaRepositories(basePackages = {"org.coda.core.repository"})
+@ComponentScan(basePackages = {"org.coda.config"})
 
 @Slf4j
 public class Main {
+    private static final int PAGE_SIZE = 50;
     private final Scanner scanner = new Scanner(System.in);
     @Autowired
     private MealService mealService;
@@ -29,7 +29,10 @@ public class Main {
     private FoodService foodService;
 
     public static void main(String[] args) {
-        ApplicationContext context = SpringApplication.run(Main.class, args);
+        //== records the startup steps for StartupReport ==
+        ApplicationContext context = new SpringApplicationBuilder(Main.class)
+                .applicationStartup(StartupReport.buffering())
+                .run(args);
         Main main = context.getBean(Main.class);
         //== call main menu ==
         main.mainMenu();
@@ -279,8 +282,12 @@ public class Main {
 
     public void viewAllMealsMenu(){
         try{
-            List<Meal> meals = mealService.getAllMeals();
-            meals.forEach(meal -> log.info(meal.toString()));
+            //== walk the meals page by page so long histories never load at once ==
+            List<Meal> meals = mealService.getMealsAfter(0, PAGE_SIZE);
+            while (!meals.isEmpty()) {
+                meals.forEach(meal -> log.info(meal.toString()));
+                meals = mealService.getMealsAfter(meals.get(meals.size() - 1).getId(), PAGE_SIZE);
+            }
         } catch (Exception e) {
             log.info("Error occurred while viewing all meals");
             log.info(e.getMessage());
@@ -426,8 +433,11 @@ public class Main {
         }
         //== view all foods menu ==
         public void viewAllFoodsMenu(){
-            List<Food> foods = foodService.getAllFoods();
-            foods.forEach(food -> log.info(food.toString()));
+            List<Food> foods = foodService.getFoodsAfter(0, PAGE_SIZE);
+            while (!foods.isEmpty()) {
+                foods.forEach(food -> log.info(food.toString()));
+                foods = foodService.getFoodsAfter(foods.get(foods.size() - 1).getId(), PAGE_SIZE);
+            }
         }
         //== delete all foods menu ==
         public void deleteAllFoodsMenu(){
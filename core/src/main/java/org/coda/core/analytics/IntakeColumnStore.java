@@ -0,0 +1,410 @@
+package org.coda.core.analytics;
+
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.coda.core.projection.IntakeStoreStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Opt-in columnar copy of calorie_intake for analytics, enabled with calorietracker.intake-store.enabled=true.
+ * Each user has a segment of parallel primitive arrays (epoch minute, id, calories, protein, fat, carbohydrates)
+ * sorted by time, so a range query is two binary searches and a sequential scan of a few float columns:
+ * no entity is loaded and nothing is allocated per intake.
+ * Timestamps are kept to the minute and ranges are resolved to whole minutes.
+ * Reads of a segment run concurrently, writes of a segment take its exclusive lock.
+ * The store is loaded by rebuild; writes made while a rebuild runs are replayed onto the new segments.
+ */
+@Component
+public class IntakeColumnStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final boolean enabled;
+
+    private volatile Map<Long, Segment> segments = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    //== writes take the read side, the end of a rebuild takes the write side to swap the segments ==
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    //== writes made while a rebuild streams the table, guarded by rebuildLock ==
+    private List<Consumer<Map<Long, Segment>>> pendingWrites;
+
+    /**
+     * Constructor based dependency injection
+     * @param enabled whether the store is kept, when false every write is ignored and the store is never ready
+     * @Autowired annotation to inject the calorietracker.intake-store.enabled property
+     */
+    @Autowired
+    public IntakeColumnStore(@Value("${calorietracker.intake-store.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return true if the store is switched on
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true once the store has been loaded and answers queries
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Replace the content of the store with the given rows and mark it ready, nothing happens when disabled
+     * @param rows every calorie_intake row, ideally ordered by user then time
+     * @return the number of rows loaded
+     */
+    public synchronized long rebuild(Iterator<IntakeRow> rows) {
+        if (!enabled) {
+            return 0;
+        }
+        rebuildLock.writeLock().lock();
+        try {
+            pendingWrites = new ArrayList<>();
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        Map<Long, Segment> rebuilt = new ConcurrentHashMap<>();
+        long loaded = 0;
+        try {
+            while (rows.hasNext()) {
+                IntakeRow row = rows.next();
+                rebuilt.computeIfAbsent(row.userId(), userId -> new Segment()).add(row);
+                loaded++;
+            }
+        } catch (RuntimeException e) {
+            rebuildLock.writeLock().lock();
+            pendingWrites = null;
+            rebuildLock.writeLock().unlock();
+            throw e;
+        }
+        rebuildLock.writeLock().lock();
+        try {
+            //== adds are idempotent and removes of missing rows are ignored, so replaying is safe ==
+            pendingWrites.forEach(write -> write.accept(rebuilt));
+            pendingWrites = null;
+            rebuilt.values().forEach(Segment::trim);
+            segments = rebuilt;
+            ready = true;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        return loaded;
+    }
+
+    /**
+     * Add a committed intake, an intake already in the store is not added twice
+     * @param row the values of the intake
+     */
+    public void add(IntakeRow row) {
+        write(target -> target.computeIfAbsent(row.userId(), userId -> new Segment()).add(row));
+    }
+
+    /**
+     * Remove a committed intake, nothing happens if it is not in the store
+     * @param id the id of the intake
+     * @param userId the id of its user
+     * @param dateTime its time, as stored
+     */
+    public void remove(long id, long userId, LocalDateTime dateTime) {
+        int minute = minuteOf(dateTime);
+        write(target -> {
+            Segment segment = target.get(userId);
+            if (segment != null) {
+                segment.remove(id, minute);
+            }
+        });
+    }
+
+    /**
+     * Remove every intake
+     */
+    public void clear() {
+        write(Map::clear);
+    }
+
+    /**
+     * Sum the intakes of a user over a time range
+     * @param userId the id of the user
+     * @param from the start of the range, inclusive, truncated to the minute
+     * @param to the end of the range, exclusive, truncated to the minute
+     * @return IntakeRangeStats with the totals, zero when the user has no intake in the range
+     * @throws IllegalStateException if the store is not ready
+     */
+    public IntakeRangeStats sum(long userId, LocalDateTime from, LocalDateTime to) {
+        checkReady();
+        Segment segment = segments.get(userId);
+        if (segment == null) {
+            return new IntakeRangeStats(userId, from, to, 0, 0, 0, 0, 0, 0);
+        }
+        return segment.sum(userId, from, to);
+    }
+
+    /**
+     * Calories of a user per day
+     * @param userId the id of the user
+     * @param from the first day
+     * @param days the number of days
+     * @return double[] of the calories of each day, the first element is the from day
+     * @throws IllegalStateException if the store is not ready
+     */
+    public double[] dailyCalories(long userId, LocalDate from, int days) {
+        checkReady();
+        double[] calories = new double[days];
+        Segment segment = segments.get(userId);
+        if (segment != null) {
+            segment.dailyCalories(minuteOf(from.atStartOfDay()), calories);
+        }
+        return calories;
+    }
+
+    /**
+     * @return IntakeStoreStats with the number of users and intakes held and the memory of the columns
+     */
+    public IntakeStoreStats getStats() {
+        long entries = 0;
+        long bytes = 0;
+        Map<Long, Segment> current = segments;
+        for (Segment segment : current.values()) {
+            entries += segment.size();
+            bytes += segment.allocatedBytes();
+        }
+        return new IntakeStoreStats(enabled, ready, current.size(), entries, bytes);
+    }
+
+    //== helpers ==
+
+    private void write(Consumer<Map<Long, Segment>> write) {
+        if (!enabled) {
+            return;
+        }
+        rebuildLock.readLock().lock();
+        try {
+            write.accept(segments);
+            if (pendingWrites != null) {
+                synchronized (pendingWrites) {
+                    pendingWrites.add(write);
+                }
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    private void checkReady() {
+        if (!ready) {
+            throw new IllegalStateException("The intake store is " + (enabled ? "still loading" : "disabled"));
+        }
+    }
+
+    //== minutes since 1970-01-01T00:00, the time zone plays no part as calorie_intake stores local times ==
+    static int minuteOf(LocalDateTime dateTime) {
+        return Math.toIntExact(Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60));
+    }
+
+    // == nested classes ==
+
+    /**
+     * The intakes of one user, sorted by (minute, id)
+     */
+    private static final class Segment {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private int[] minutes = new int[INITIAL_CAPACITY];
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private float[] calories = new float[INITIAL_CAPACITY];
+        private float[] protein = new float[INITIAL_CAPACITY];
+        private float[] fat = new float[INITIAL_CAPACITY];
+        private float[] carbohydrates = new float[INITIAL_CAPACITY];
+        private int size;
+
+        private void add(IntakeRow row) {
+            int minute = minuteOf(row.dateTime());
+            lock.writeLock().lock();
+            try {
+                //== rows mostly arrive in time order: append without searching ==
+                int at = size == 0 || after(minute, row.id(), size - 1) ? size : insertionPoint(minute, row.id());
+                if (at < size && minutes[at] == minute && ids[at] == row.id()) {
+                    return;
+                }
+                if (size == minutes.length) {
+                    grow(size * 2);
+                }
+                shift(at, at + 1, size - at);
+                minutes[at] = minute;
+                ids[at] = row.id();
+                calories[at] = (float) row.calories();
+                protein[at] = (float) row.protein();
+                fat[at] = (float) row.fat();
+                carbohydrates[at] = (float) row.carbohydrates();
+                size++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long id, int minute) {
+            lock.writeLock().lock();
+            try {
+                for (int i = lowerBound(minute); i < size && minutes[i] == minute; i++) {
+                    if (ids[i] == id) {
+                        shift(i + 1, i, size - i - 1);
+                        size--;
+                        return;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private IntakeRangeStats sum(long userId, LocalDateTime from, LocalDateTime to) {
+            lock.readLock().lock();
+            try {
+                int start = lowerBound(minuteOf(from));
+                int end = lowerBound(minuteOf(to));
+                double totalCalories = 0;
+                double totalProtein = 0;
+                double totalFat = 0;
+                double totalCarbohydrates = 0;
+                long days = 0;
+                int lastDay = Integer.MIN_VALUE;
+                for (int i = start; i < end; i++) {
+                    int day = Math.floorDiv(minutes[i], MINUTES_PER_DAY);
+                    if (day != lastDay) {
+                        days++;
+                        lastDay = day;
+                    }
+                    totalCalories += calories[i];
+                }
+                //== one column per loop keeps every pass a sequential read of a single array ==
+                for (int i = start; i < end; i++) {
+                    totalProtein += protein[i];
+                }
+                for (int i = start; i < end; i++) {
+                    totalFat += fat[i];
+                }
+                for (int i = start; i < end; i++) {
+                    totalCarbohydrates += carbohydrates[i];
+                }
+                return new IntakeRangeStats(userId, from, to, Math.max(0, end - start), days,
+                        totalCalories, totalProtein, totalFat, totalCarbohydrates);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void dailyCalories(int fromMinute, double[] perDay) {
+            lock.readLock().lock();
+            try {
+                long toMinute = fromMinute + (long) perDay.length * MINUTES_PER_DAY;
+                for (int i = lowerBound(fromMinute); i < size && minutes[i] < toMinute; i++) {
+                    perDay[(minutes[i] - fromMinute) / MINUTES_PER_DAY] += calories[i];
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private long allocatedBytes() {
+            lock.readLock().lock();
+            try {
+                return (long) minutes.length * (Integer.BYTES + Long.BYTES + 4 * Float.BYTES);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void trim() {
+            lock.writeLock().lock();
+            try {
+                grow(Math.max(INITIAL_CAPACITY, size));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        //== first index whose minute is not before the given one ==
+        private int lowerBound(int minute) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (minutes[middle] < minute) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        //== first index not before (minute, id) ==
+        private int insertionPoint(int minute, long id) {
+            int i = lowerBound(minute);
+            while (i < size && minutes[i] == minute && ids[i] < id) {
+                i++;
+            }
+            return i;
+        }
+
+        private boolean after(int minute, long id, int index) {
+            return minute > minutes[index] || (minute == minutes[index] && id > ids[index]);
+        }
+
+        private void shift(int from, int to, int length) {
+            if (length <= 0) {
+                return;
+            }
+            System.arraycopy(minutes, from, minutes, to, length);
+            System.arraycopy(ids, from, ids, to, length);
+            System.arraycopy(calories, from, calories, to, length);
+            System.arraycopy(protein, from, protein, to, length);
+            System.arraycopy(fat, from, fat, to, length);
+            System.arraycopy(carbohydrates, from, carbohydrates, to, length);
+        }
+
+        private void grow(int capacity) {
+            if (capacity == minutes.length) {
+                return;
+            }
+            minutes = Arrays.copyOf(minutes, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            calories = Arrays.copyOf(calories, capacity);
+            protein = Arrays.copyOf(protein, capacity);
+            fat = Arrays.copyOf(fat, capacity);
+            carbohydrates = Arrays.copyOf(carbohydrates, capacity);
+        }
+    }
+}
@@ -1,30 +1,59 @@
 package org.coda.core.entities;
 
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+import java.io.Serializable;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Objects;
+import java.util.UUID;
 
 @Entity(name = "calorie_intake")
+@NamedEntityGraph(name = CalorieInTake.HISTORY_GRAPH, attributeNodes = {
+        @NamedAttributeNode("meal"),
+        @NamedAttributeNode("food")
+})
+@NamedEntityGraph(name = CalorieInTake.DASHBOARD_GRAPH, attributeNodes = {
+        @NamedAttributeNode("user"),
+        @NamedAttributeNode("meal"),
+        @NamedAttributeNode("food")
+})
+@Table(indexes = {
+        @Index(name = "idx_calorie_intake_user_date_time", columnList = "user_id, date_time"),
+        @Index(name = "idx_calorie_intake_date_time_id", columnList = "date_time, id")
+})
 @Getter
 @Setter
 @ToString
-public class CalorieInTake {
+public class CalorieInTake implements Serializable {
+
+    //== fetch plans: associations are lazy, these graphs load them in the same select ==
+    public static final String HISTORY_GRAPH = "calorie_intake.history";
+    public static final String DASHBOARD_GRAPH = "calorie_intake.dashboard";
 
     // == fields ==
 
+    //== pooled sequence ids let Hibernate batch inserts, IDENTITY would force one round trip per row ==
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "calorie_intake_seq")
+    @SequenceGenerator(name = "calorie_intake_seq", sequenceName = "calorie_intake_seq", allocationSize = 50)
     private long id;
-    @ManyToOne
+    //== assigned on creation and stored, so equals/hashCode do not change when the id is generated ==
+    @Column(nullable = false, updatable = false)
+    @Setter(AccessLevel.NONE)
+    private UUID uuid = EntityUuids.next();
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     private Meal meal;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     private User user;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     private Food food;
     private final LocalDateTime dateTime;
 
@@ -34,25 +63,70 @@ public class CalorieInTake {
     }
 
     public CalorieInTake(Meal meal, User user, Food food) {
+        this(meal, user, food, LocalDateTime.now());
+    }
+
+    public CalorieInTake(Meal meal, User user, Food food, LocalDateTime dateTime) {
         this.meal = meal;
         this.user = user;
         this.food = food;
-        this.dateTime = LocalDateTime.now();
+        this.dateTime = dateTime;
+    }
+
+    //== for storage backends that keep the uuid themselves ==
+    public CalorieInTake(UUID uuid, Meal meal, User user, Food food, LocalDateTime dateTime) {
+        this(meal, user, food, dateTime);
+        this.uuid = uuid;
+    }
+
+    // == methods ==
+
+    /**
+     * Calories of this intake: the food if one is attached, otherwise the meal total
+     */
+    public double calculateCalories() {
+        if (food != null) return food.getCalories();
+        return meal != null ? meal.getTotalCalories() : 0.0;
+    }
+
+    /**
+     * Macros of this intake: the nutrition of the food if it has one, otherwise the meal totals,
+     * as the aggregate queries of CalorieInTakeRepository count them
+     */
+    public double calculateProtein() {
+        if (nutrition() != null) return nutrition().getProtein();
+        return meal != null ? meal.getTotalProtein() : 0.0;
+    }
+
+    public double calculateFat() {
+        if (nutrition() != null) return nutrition().getFat();
+        return meal != null ? meal.getTotalFat() : 0.0;
+    }
+
+    public double calculateCarbohydrates() {
+        if (nutrition() != null) return nutrition().getCarbohydrates();
+        return meal != null ? meal.getTotalCarbohydrates() : 0.0;
+    }
+
+    public LocalDate getIntakeDate() {
+        return dateTime.toLocalDate();
+    }
+
+    private Food.Nutrition nutrition() {
+        return food != null ? food.getNutrition() : null;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof CalorieInTake)) return false;
-        CalorieInTake calorieInTake = (CalorieInTake) o;
-        return id == calorieInTake.id && meal.equals(calorieInTake.meal)
-                && user.equals(calorieInTake.user)
-                && food.equals(calorieInTake.food);
+        //== uuid only: meal, user and food may be null or unloaded proxies ==
+        return uuid.equals(((CalorieInTake) o).getUuid());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, meal, user, food);
+        return uuid.hashCode();
     }
 
 }
@@ -0,0 +1,89 @@
+package org.coda.core.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Per-(user, day) rollup of calorie intake, kept current by CalorieInTakeService
+ * in the same transaction as the intake writes so that daily totals are a
+ * single primary-key lookup.
+ */
+@Entity(name = "daily_intake_summary")
+@Getter
+@Setter
+@ToString
+public class DailyIntakeSummary implements Serializable {
+
+    // == fields ==
+    @EmbeddedId
+    private Key id;
+
+    private double calories;
+    private double protein;
+    private double fat;
+    private double carbohydrates;
+    private long entryCount;
+
+    // == constructor ==
+    public DailyIntakeSummary() {}
+
+    public DailyIntakeSummary(Key id, double calories, double protein,
+                              double fat, double carbohydrates, long entryCount) {
+        this.id = id;
+        this.calories = calories;
+        this.protein = protein;
+        this.fat = fat;
+        this.carbohydrates = carbohydrates;
+        this.entryCount = entryCount;
+    }
+
+    // == nested class ==
+
+    @Embeddable
+    @Getter
+    @Setter
+    @ToString
+    public static class Key implements Serializable {
+        private long userId;
+        private LocalDate intakeDate;
+
+        public Key() {}
+
+        public Key(long userId, LocalDate intakeDate) {
+            this.userId = userId;
+            this.intakeDate = intakeDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return userId == key.userId && Objects.equals(intakeDate, key.intakeDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, intakeDate);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DailyIntakeSummary)) return false;
+        DailyIntakeSummary summary = (DailyIntakeSummary) o;
+        return Objects.equals(id, summary.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+}
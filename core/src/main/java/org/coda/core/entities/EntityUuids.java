@@ -0,0 +1,22 @@
+package org.coda.core.entities;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generator of the assigned uuid that equals and hashCode of the entities are based on.
+ * Version 4 layout from ThreadLocalRandom rather than UUID.randomUUID: the uuid only identifies
+ * an entity, it is not a secret, and every entity Hibernate instantiates on a load builds one
+ * before the stored value replaces it, so it has to stay as cheap as the field initializer it sits in.
+ */
+final class EntityUuids {
+
+    private EntityUuids() {}
+
+    static UUID next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSignificant = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSignificant = (random.nextLong() & ~(0xC0L << 56)) | (0x80L << 56);
+        return new UUID(mostSignificant, leastSignificant);
+    }
+}
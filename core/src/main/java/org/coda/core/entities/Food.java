@@ -2,18 +2,36 @@ package org.coda.core.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import java.io.Serializable;
 import java.util.List;
-import java.util.Objects;
+import java.util.UUID;
 
 @Entity(name = "food")
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Food.CACHE_REGION)
 @Getter
 @Setter
-public class Food {
+public class Food implements Serializable {
+    //== second-level cache regions, only used when calorietracker.cache.enabled=true ==
+    public static final String CACHE_REGION = "food";
+    public static final String MEALS_FOODS_CACHE_REGION = "meal.foods";
+
     // == fields ==
+    //== pooled sequence ids let Hibernate batch inserts, IDENTITY would force one round trip per row ==
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "food_seq")
+    @SequenceGenerator(name = "food_seq", sequenceName = "food_seq", allocationSize = 50)
     private long id;
+    //== assigned on creation and stored, so equals/hashCode do not change when the id is generated ==
+    @Column(nullable = false, updatable = false)
+    @Setter(AccessLevel.NONE)
+    private UUID uuid = EntityUuids.next();
+
+    //== optimistic locking: an update only applies to the version it was read at, and increments it ==
+    @Version
+    private long version;
     private String name;
     private String details;
 
@@ -43,7 +61,7 @@ public class Food {
     @Getter
     @Setter
     @ToString
-     public static class Nutrition {
+     public static class Nutrition implements Serializable {
         private float protein;
         private float fat;
         private float carbohydrates;
@@ -53,15 +71,13 @@ public class Food {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Food)) return false;
-        Food food = (Food) o;
-        return id == food.id && Double.compare(food.calories, calories) == 0
-                && Objects.equals(name, food.name) && Objects.equals(details, food.details)
-                && Objects.equals(nutrition, food.nutrition);
+        //== through the getter: o may be an uninitialized lazy proxy ==
+        return uuid.equals(((Food) o).getUuid());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, details, nutrition, calories);
+        return uuid.hashCode();
     }
 
     @Override
@@ -2,33 +2,63 @@ package org.coda.core.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Objects;
+import java.util.UUID;
 
 @Entity(name = "meal")
+@NamedEntityGraph(name = Meal.DETAIL_GRAPH, attributeNodes = {
+        @NamedAttributeNode("user"),
+        @NamedAttributeNode("foods")
+})
+@Table(indexes = {
+        @Index(name = "idx_meal_total_calories", columnList = "total_calories")
+})
 @Getter
 @Setter
-public class Meal {
+public class Meal implements Serializable {
+
+    //== fetch plan for the meal detail view: user and foods in the same select ==
+    public static final String DETAIL_GRAPH = "meal.detail";
 
     // == fields ==
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "meal_seq")
+    @SequenceGenerator(name = "meal_seq", sequenceName = "meal_seq", allocationSize = 50)
     private long id;
 
+    //== assigned on creation and stored, so equals/hashCode do not change when the id is generated ==
+    @Column(nullable = false, updatable = false)
+    @Setter(AccessLevel.NONE)
+    private UUID uuid = EntityUuids.next();
+
+    //== optimistic locking: an update only applies to the version it was read at, and increments it ==
+    @Version
+    private long version;
+
     private String name;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private  User user;
 
-    @EqualsAndHashCode.Include
     @ManyToMany
+    @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE,
+            region = Food.MEALS_FOODS_CACHE_REGION)
+    @JoinTable(name = "meal_foods",
+            joinColumns = @JoinColumn(name = "meal_id"),
+            inverseJoinColumns = @JoinColumn(name = "foods_id"))
     private List<Food> foods;
 
     private final LocalDateTime dateTime;
 
+    //== totals derived from the foods, persisted so threshold queries can use an index ==
     private double totalCalories;
+    private double totalProtein;
+    private double totalFat;
+    private double totalCarbohydrates;
 
     // == constructor ==
     public Meal() {
@@ -46,6 +76,7 @@ public class Meal {
     // == methods ==
     private double calculateTotalMealCalories(){
         double totalCalories = 0.0;
+        if (foods == null) return totalCalories;
         for (Food food : foods) {
             totalCalories += food.getCalories();
         }
@@ -53,24 +84,45 @@ public class Meal {
     }
 
     public void setTotalCalories() {
+        refreshTotals();
+    }
+
+    /**
+     * Recompute the calorie and macro totals from the foods.
+     * Runs automatically before the meal is inserted or updated.
+     */
+    @PrePersist
+    @PreUpdate
+    public void refreshTotals() {
         this.totalCalories = calculateTotalMealCalories();
+        double protein = 0.0;
+        double fat = 0.0;
+        double carbohydrates = 0.0;
+        if (foods != null) {
+            for (Food food : foods) {
+                Food.Nutrition nutrition = food.getNutrition();
+                if (nutrition == null) continue;
+                protein += nutrition.getProtein();
+                fat += nutrition.getFat();
+                carbohydrates += nutrition.getCarbohydrates();
+            }
+        }
+        this.totalProtein = protein;
+        this.totalFat = fat;
+        this.totalCarbohydrates = carbohydrates;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Meal)) return false;
-        Meal meal = (Meal) o;
-        return id == meal.id &&
-                Double.compare(meal.totalCalories, totalCalories) == 0 &&
-                Objects.equals(name, meal.name) &&
-                Objects.equals(user, meal.user) &&
-                Objects.equals(foods, meal.foods);
+        //== uuid only: no walk of the user and foods graph, which may not even be loaded ==
+        return uuid.equals(((Meal) o).getUuid());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, user, foods, totalCalories);
+        return uuid.hashCode();
     }
 
     @Override
@@ -80,6 +132,9 @@ public class Meal {
                 ", name='" + name + '\'' +
                 ", dateTime=" + dateTime +
                 ", totalCalories=" + totalCalories +
+                ", totalProtein=" + totalProtein +
+                ", totalFat=" + totalFat +
+                ", totalCarbohydrates=" + totalCarbohydrates +
                 '}';
     }
 }
@@ -2,6 +2,7 @@ package org.coda.core.entities;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
@@ -11,21 +12,35 @@ import javax.validation.constraints.Email;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.Pattern;
+import java.io.Serializable;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
 
 @Entity(name = "user_table")
+//== one account per email: also serves the login and signup lookups by email ==
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_user_email", columnNames = "email"))
 @Getter
 @Setter
 @ToString
-public class User {
+public class User implements Serializable {
 
     // == fields ==
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
+    //== assigned on creation and stored, so equals/hashCode do not change when the id is generated ==
+    @Column(nullable = false, updatable = false)
+    @Setter(AccessLevel.NONE)
+    private UUID uuid = EntityUuids.next();
+
+    //== optimistic locking: an update only applies to the version it was read at, and increments it ==
+    @Version
+    private long version;
+
     //== validation (mandatory fields)==
     @NotBlank(message = "Please input your name")
     private String name;
@@ -41,16 +56,22 @@ public class User {
 
     private int calorieGoal;
 
+    private String role;
+
+    private LocalDateTime lastLogin;
+
     @Embedded
     private Contact contact;
 
 
     //== database mapping of the relationship between user and calorie intake ==
     @OneToMany(mappedBy = "user")
+    @ToString.Exclude
     private List<CalorieInTake> calorieInTakes = new ArrayList<>();
 
     //==database mapping of the relationship between user and meal one user can have many meals ==
     @OneToMany(mappedBy = "user")
+    @ToString.Exclude
     private List<Meal> meals = new ArrayList<>();
 
 
@@ -77,7 +98,7 @@ public class User {
     @Getter
     @Setter
     @ToString
-    public static class Contact {
+    public static class Contact implements Serializable {
         private static final String UK_PHONE_NUMBER_REGEX = "^(\\+44\\s?7\\d{3}|\\(?07\\d{3}\\)?)\\s?\\d{3}\\s?\\d{3}$";
         @Email(message = "Please input a valid email")
         private String email;
@@ -90,7 +111,7 @@ public class User {
             if (this == o) return true;
             if (!(o instanceof Contact)) return false;
             Contact contact = (Contact) o;
-            return email.equals(contact.email) && phone.equals(contact.phone);
+            return Objects.equals(email, contact.email) && Objects.equals(phone, contact.phone);
         }
 
         @Override
@@ -105,18 +126,13 @@ public class User {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof User)) return false;
-        User user = (User) o;
-        return id == user.id && age == user.age && weight == user.weight
-                && Double.compare(user.height, height) == 0
-                && calorieGoal == user.calorieGoal
-                && name.equals(user.name)
-                && password.equals(user.password)
-                && Objects.equals(contact, user.contact); // Include null check for Contact
+        //== through the getter: o may be an uninitialized lazy proxy ==
+        return uuid.equals(((User) o).getUuid());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, password, age, weight, height, calorieGoal, contact);
+        return uuid.hashCode();
     }
 
 
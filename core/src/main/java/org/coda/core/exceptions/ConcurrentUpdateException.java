@@ -0,0 +1,16 @@
+package org.coda.core.exceptions;
+
+/**
+ * Thrown when a conditional update finds the entity changed since it was read, and no retry is left.
+ */
+public class ConcurrentUpdateException extends RuntimeException{
+    public ConcurrentUpdateException(String message) {
+        super(message);
+    }
+
+    public ConcurrentUpdateException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+
+}
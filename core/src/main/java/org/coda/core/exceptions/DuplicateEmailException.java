@@ -0,0 +1,13 @@
+package org.coda.core.exceptions;
+
+public class DuplicateEmailException extends RuntimeException{
+    public DuplicateEmailException(String message) {
+        super(message);
+    }
+
+    public DuplicateEmailException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+
+}
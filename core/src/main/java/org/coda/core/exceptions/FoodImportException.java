@@ -0,0 +1,13 @@
+package org.coda.core.exceptions;
+
+public class FoodImportException extends RuntimeException{
+    public FoodImportException(String message) {
+        super(message);
+    }
+
+    public FoodImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+
+}
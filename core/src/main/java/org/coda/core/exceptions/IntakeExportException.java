@@ -0,0 +1,17 @@
+package org.coda.core.exceptions;
+
+/**
+ * Thrown when an intake export cannot read its rows or write its file.
+ * The rows written up to the last checkpoint are kept and the next export to the same file resumes after them.
+ */
+public class IntakeExportException extends RuntimeException{
+    public IntakeExportException(String message) {
+        super(message);
+    }
+
+    public IntakeExportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+
+}
@@ -0,0 +1,16 @@
+package org.coda.core.exceptions;
+
+/**
+ * Thrown when the intake journal cannot read, write or force its segment files.
+ */
+public class IntakeJournalException extends RuntimeException{
+    public IntakeJournalException(String message) {
+        super(message);
+    }
+
+    public IntakeJournalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+
+}
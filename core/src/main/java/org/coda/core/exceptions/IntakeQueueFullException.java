@@ -0,0 +1,13 @@
+package org.coda.core.exceptions;
+
+/**
+ * Thrown when the write-behind intake queue stays full for longer than the enqueue timeout.
+ * The intake was not accepted; callers should slow down and retry.
+ */
+public class IntakeQueueFullException extends RuntimeException{
+    public IntakeQueueFullException(String message) {
+        super(message);
+    }
+
+
+}
@@ -0,0 +1,29 @@
+package org.coda.core.exceptions;
+
+/**
+ * Thrown when a login attempt is refused before the password is checked,
+ * either because the caller is throttled or because password verification is saturated.
+ * Callers should answer with a retry-later response, not with a wrong-password one.
+ */
+public class LoginRejectedException extends RuntimeException{
+
+    public enum Reason {
+        //== too many attempts for the account or the client address ==
+        THROTTLED,
+        //== the password verification queue is full or did not answer in time ==
+        OVERLOADED
+    }
+
+    private final Reason reason;
+
+    public LoginRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+
+}
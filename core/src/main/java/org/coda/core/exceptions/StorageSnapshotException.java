@@ -0,0 +1,16 @@
+package org.coda.core.exceptions;
+
+/**
+ * Thrown when the snapshot of the in-memory repositories cannot be read or written.
+ */
+public class StorageSnapshotException extends RuntimeException{
+    public StorageSnapshotException(String message) {
+        super(message);
+    }
+
+    public StorageSnapshotException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+
+}
@@ -0,0 +1,153 @@
+package org.coda.core.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes UTF-8 text to a FileChannel as a sequence of gzip members, through two fixed size buffers:
+ * the encoded text and the compressed bytes waiting for the channel.
+ * Every endMember call completes a member, so the file is a valid gzip stream up to the channel position
+ * and a later run can append more members after it; gzip readers decompress concatenated members as one stream.
+ * The channel is not closed by this writer.
+ */
+final class GzipChannelWriter implements Closeable {
+
+    //== magic, deflate, no flags, no mtime, no extra flags, unknown OS ==
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int TRAILER_LENGTH = 8;
+
+    private final FileChannel channel;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final CRC32 crc = new CRC32();
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final ByteBuffer text;
+
+    private final ByteBuffer compressed;
+
+    private boolean inMember;
+
+    private long memberLength;
+
+    private long bytesWritten;
+
+    /**
+     * @param channel the channel to write to, at the position the first member starts
+     * @param bufferSize the size of each of the two buffers
+     */
+    GzipChannelWriter(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.text = ByteBuffer.allocate(bufferSize);
+        this.compressed = ByteBuffer.allocateDirect(Math.max(bufferSize, HEADER.length + TRAILER_LENGTH))
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Encode and compress text, starting a member if none is open
+     * @param chars the text to write
+     * @throws IOException if the channel cannot be written
+     */
+    void write(CharSequence chars) throws IOException {
+        CharBuffer input = CharBuffer.wrap(chars);
+        while (true) {
+            CoderResult result = encoder.encode(input, text, false);
+            if (!result.isOverflow()) {
+                break;
+            }
+            compressText();
+        }
+    }
+
+    /**
+     * Complete the open member and write everything to the channel, a no-op when no member is open
+     * @throws IOException if the channel cannot be written
+     */
+    void endMember() throws IOException {
+        compressText();
+        if (!inMember) {
+            return;
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (!compressed.hasRemaining()) {
+                drain();
+            }
+            deflater.deflate(compressed);
+        }
+        if (compressed.remaining() < TRAILER_LENGTH) {
+            drain();
+        }
+        compressed.putInt((int) crc.getValue()).putInt((int) memberLength);
+        drain();
+        deflater.reset();
+        crc.reset();
+        memberLength = 0;
+        inMember = false;
+    }
+
+    /**
+     * @return the number of compressed bytes written to the channel
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Release the deflater, dropping the text of an open member
+     */
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    //== helpers ==
+
+    private void compressText() throws IOException {
+        if (text.position() == 0) {
+            return;
+        }
+        text.flip();
+        if (!inMember) {
+            if (compressed.remaining() < HEADER.length) {
+                drain();
+            }
+            compressed.put(HEADER);
+            inMember = true;
+        }
+        //== the array form, a ByteBuffer input would be read again from its new position after clear ==
+        crc.update(text.array(), 0, text.limit());
+        memberLength += text.limit();
+        deflater.setInput(text.array(), 0, text.limit());
+        while (!deflater.needsInput()) {
+            if (!compressed.hasRemaining()) {
+                drain();
+            }
+            deflater.deflate(compressed);
+        }
+        text.clear();
+    }
+
+    private void drain() throws IOException {
+        compressed.flip();
+        while (compressed.hasRemaining()) {
+            bytesWritten += channel.write(compressed);
+        }
+        compressed.clear();
+    }
+}
@@ -0,0 +1,148 @@
+package org.coda.core.export;
+
+import org.coda.core.projection.IntakeExportRow;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Supported intake export file formats, both gzip compressed.
+ */
+public enum IntakeExportFormat {
+
+    /**
+     * Comma separated values with a header row, fields quoted when they contain a comma, quote or line break
+     */
+    CSV(".csv.gz") {
+        @Override
+        public String header() {
+            return "id,date_time,meal,food,food_details,calories,protein,fat,carbohydrates\n";
+        }
+
+        @Override
+        public void appendRow(StringBuilder line, IntakeExportRow row) {
+            line.append(row.id()).append(',').append(row.dateTime()).append(',');
+            csv(line, row.meal());
+            line.append(',');
+            csv(line, row.food());
+            line.append(',');
+            csv(line, row.foodDetails());
+            line.append(',').append(row.calories()).append(',').append(row.protein())
+                    .append(',').append(row.fat()).append(',').append(row.carbohydrates()).append('\n');
+        }
+    },
+
+    /**
+     * Newline delimited JSON, one object per intake
+     */
+    NDJSON(".ndjson.gz") {
+        @Override
+        public String header() {
+            return "";
+        }
+
+        @Override
+        public void appendRow(StringBuilder line, IntakeExportRow row) {
+            line.append("{\"id\":").append(row.id())
+                    .append(",\"dateTime\":\"").append(row.dateTime()).append('"')
+                    .append(",\"meal\":");
+            json(line, row.meal());
+            line.append(",\"food\":");
+            json(line, row.food());
+            line.append(",\"foodDetails\":");
+            json(line, row.foodDetails());
+            line.append(",\"calories\":").append(row.calories())
+                    .append(",\"protein\":").append(row.protein())
+                    .append(",\"fat\":").append(row.fat())
+                    .append(",\"carbohydrates\":").append(row.carbohydrates()).append("}\n");
+        }
+    };
+
+    private final String extension;
+
+    IntakeExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return the text written once at the start of the file, before the first row
+     */
+    public abstract String header();
+
+    /**
+     * Append one row, terminated by a line break
+     * @param line the buffer to append to
+     * @param row the intake to write
+     */
+    public abstract void appendRow(StringBuilder line, IntakeExportRow row);
+
+    /**
+     * @return the file extension, including the .gz suffix
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Guess the format from the file extension
+     * @param target the export file
+     * @return IntakeExportFormat matching .csv.gz or .ndjson.gz
+     * @throws IllegalArgumentException for any other extension
+     */
+    public static IntakeExportFormat of(Path target) {
+        String fileName = target.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (IntakeExportFormat format : values()) {
+            if (fileName.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported intake export format: " + target);
+    }
+
+    //== helpers ==
+
+    private static void csv(StringBuilder line, String value) {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static void json(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,34 @@
+package org.coda.core.export;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Outcome of one run of the intake exporter.
+ * @param target the written file
+ * @param userId the exported user
+ * @param resumed intakes already written by a previous, interrupted run
+ * @param exported intakes written by this run
+ * @param bytes compressed bytes written by this run
+ * @param checkpoints the number of checkpoints written by this run
+ * @param elapsed wall clock time of this run
+ */
+public record IntakeExportReport(Path target, long userId, long resumed, long exported, long bytes,
+                                 long checkpoints, Duration elapsed) {
+
+    /**
+     * @return intakes written by this run per second
+     */
+    public double rowsPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds == 0 ? 0 : exported / seconds;
+    }
+
+    /**
+     * @return compressed bytes written by this run per second
+     */
+    public double bytesPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds == 0 ? 0 : bytes / seconds;
+    }
+}
@@ -0,0 +1,238 @@
+package org.coda.core.export;
+
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.exceptions.IntakeExportException;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.repository.CalorieInTakeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Streaming export of the full intake history of a user to a gzip compressed CSV or NDJSON file.
+ * The rows are read as projections through a JDBC cursor, so no entity enters the persistence context,
+ * and written through GzipChannelWriter's fixed size buffers: memory use does not grow with the history.
+ * Every calorietracker.export.checkpoint-rows rows the gzip member is completed, the file is forced to disk
+ * and a checkpoint next to it records the file length and the (dateTime, id) of the last row.
+ * After a failure, exporting the same user to the same file again truncates it to the checkpoint
+ * and resumes after that row; the checkpoint is deleted once the whole history has been written.
+ */
+@Slf4j
+@Service
+public class IntakeExporter {
+
+    static final String CHECKPOINT_SUFFIX = ".export-checkpoint";
+
+    private final CalorieInTakeRepository calorieInTakeRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int checkpointRows;
+
+    private final int bufferSize;
+
+    /**
+     * Constructor based dependency injection
+     * @param calorieInTakeRepository to stream the rows of the user
+     * @param transactionManager to keep the cursor open in a read-only transaction
+     * @param checkpointRows the number of rows between checkpoints
+     * @param bufferSize the size of the text and compressed buffers, in bytes
+     * @Autowired annotation to inject the CalorieInTakeRepository and PlatformTransactionManager dependency
+     */
+
+    @Autowired
+    public IntakeExporter(CalorieInTakeRepository calorieInTakeRepository, PlatformTransactionManager transactionManager,
+                          @Value("${calorietracker.export.checkpoint-rows:10000}") int checkpointRows,
+                          @Value("${calorietracker.export.buffer-size:65536}") int bufferSize) {
+        if (checkpointRows <= 0) {
+            throw new IllegalArgumentException("calorietracker.export.checkpoint-rows must be positive: " + checkpointRows);
+        }
+        this.calorieInTakeRepository = calorieInTakeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.checkpointRows = checkpointRows;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Method to export the intakes of a user, the format is taken from the extension
+     * @param userId the id of the user
+     * @param target the .csv.gz or .ndjson.gz file, replaced unless an export to it is being resumed
+     * @return IntakeExportReport with the counts and throughput of this run
+     * @throws IntakeExportException if the rows cannot be read or the file cannot be written;
+     * the rows written up to the last checkpoint are kept and the next export to the file resumes after them
+     */
+    public IntakeExportReport exportIntakes(long userId, Path target) {
+        return exportIntakes(userId, target, IntakeExportFormat.of(target));
+    }
+
+    /**
+     * Method to export the intakes of a user
+     * @param userId the id of the user
+     * @param target the export file, replaced unless an export to it is being resumed
+     * @param format the format of the file
+     * @return IntakeExportReport with the counts and throughput of this run
+     * @throws IntakeExportException if the rows cannot be read or the file cannot be written;
+     * the rows written up to the last checkpoint are kept and the next export to the file resumes after them
+     */
+    public IntakeExportReport exportIntakes(long userId, Path target, IntakeExportFormat format) {
+        long started = System.nanoTime();
+        Path checkpoint = checkpointOf(target);
+        Checkpoint resume = readCheckpoint(userId, format, target, checkpoint);
+        Progress progress = new Progress(resume);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             GzipChannelWriter writer = new GzipChannelWriter(channel, bufferSize)) {
+            if (resume == null) {
+                channel.truncate(0);
+                writer.write(format.header());
+            } else {
+                log.info("Resuming export of user {} to {} after intake {}", userId, target, resume.rows());
+                channel.truncate(resume.bytes());
+                channel.position(resume.bytes());
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<IntakeExportRow> rows = resume == null ? calorieInTakeRepository.streamExportRows(userId)
+                        : calorieInTakeRepository.streamExportRowsAfter(userId, resume.dateTime(), resume.id())) {
+                    writeRows(rows.iterator(), format, channel, writer, checkpoint, userId, progress);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.endMember();
+            channel.force(false);
+            Files.deleteIfExists(checkpoint);
+            progress.bytes = writer.getBytesWritten();
+        } catch (IOException | UncheckedIOException e) {
+            throw new IntakeExportException("Failed to write intake export " + target + resumeHint(progress), e);
+        } catch (DataAccessException e) {
+            throw new IntakeExportException("Failed to read the intakes of user " + userId + resumeHint(progress), e);
+        }
+        IntakeExportReport report = new IntakeExportReport(target, userId, resume == null ? 0 : resume.rows(),
+                progress.exported, progress.bytes, progress.checkpoints, Duration.ofNanos(System.nanoTime() - started));
+        log.info("Intakes of user {} exported to {}: {} rows, {} bytes, {} rows/s, {} KB/s", userId, target,
+                report.exported(), report.bytes(), Math.round(report.rowsPerSecond()),
+                Math.round(report.bytesPerSecond() / 1024));
+        return report;
+    }
+
+    //== helpers ==
+
+    private void writeRows(Iterator<IntakeExportRow> rows, IntakeExportFormat format, FileChannel channel,
+                           GzipChannelWriter writer, Path checkpoint, long userId, Progress progress) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        int sinceCheckpoint = 0;
+        while (rows.hasNext()) {
+            IntakeExportRow row = rows.next();
+            line.setLength(0);
+            format.appendRow(line, row);
+            writer.write(line);
+            progress.exported++;
+            if (++sinceCheckpoint == checkpointRows) {
+                writer.endMember();
+                channel.force(false);
+                writeCheckpoint(checkpoint, new Checkpoint(userId, format, channel.position(),
+                        progress.rows(), row.dateTime(), row.id()));
+                progress.committed = progress.rows();
+                progress.checkpoints++;
+                sinceCheckpoint = 0;
+            }
+        }
+    }
+
+    private static String resumeHint(Progress progress) {
+        return progress.committed > 0 ? ", the next export resumes after intake " + progress.committed : "";
+    }
+
+    static Path checkpointOf(Path target) {
+        return target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    //== the checkpoint is only trusted for the same user, format and a file at least as long as it recorded ==
+    private static Checkpoint readCheckpoint(long userId, IntakeExportFormat format, Path target, Path checkpoint) {
+        if (!Files.exists(checkpoint)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        Checkpoint resume;
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+            resume = new Checkpoint(Long.parseLong(properties.getProperty("user.id")),
+                    IntakeExportFormat.valueOf(properties.getProperty("format")),
+                    Long.parseLong(properties.getProperty("bytes.committed")),
+                    Long.parseLong(properties.getProperty("rows.committed")),
+                    LocalDateTime.parse(properties.getProperty("last.date-time")),
+                    Long.parseLong(properties.getProperty("last.id")));
+        } catch (IOException | RuntimeException e) {
+            throw new IntakeExportException("Unreadable export checkpoint " + checkpoint, e);
+        }
+        try {
+            if (resume.userId() == userId && resume.format() == format && Files.size(target) >= resume.bytes()) {
+                return resume;
+            }
+        } catch (IOException e) {
+            //== a missing or unreadable target cannot be resumed either ==
+        }
+        throw new IntakeExportException("Checkpoint " + checkpoint + " was written for a different export to "
+                + target + ", delete it to export from the start");
+    }
+
+    //== written to a temporary file and moved, so a crash never leaves a truncated checkpoint ==
+    private static void writeCheckpoint(Path checkpoint, Checkpoint committed) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("user.id", Long.toString(committed.userId()));
+        properties.setProperty("format", committed.format().name());
+        properties.setProperty("bytes.committed", Long.toString(committed.bytes()));
+        properties.setProperty("rows.committed", Long.toString(committed.rows()));
+        properties.setProperty("last.date-time", committed.dateTime().toString());
+        properties.setProperty("last.id", Long.toString(committed.id()));
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            properties.store(out, "intake export checkpoint");
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // == nested classes ==
+
+    /**
+     * Position of the last completed gzip member: the file length and the last row written before it
+     */
+    record Checkpoint(long userId, IntakeExportFormat format, long bytes, long rows, LocalDateTime dateTime, long id) {
+    }
+
+    private static final class Progress {
+        private final long resumed;
+        private long exported;
+        private long committed;
+        private long bytes;
+        private long checkpoints;
+
+        private Progress(Checkpoint resume) {
+            this.resumed = resume == null ? 0 : resume.rows();
+            this.committed = resumed;
+        }
+
+        //== rows in the file: resumed and written by this run ==
+        private long rows() {
+            return resumed + exported;
+        }
+    }
+}
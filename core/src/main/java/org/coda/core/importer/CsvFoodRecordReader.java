@@ -0,0 +1,104 @@
+package org.coda.core.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming RFC 4180 reader: quoted fields may contain commas, doubled quotes and line breaks.
+ * The header row names the columns, matched case-insensitively: name, details, calories,
+ * protein, fat, carbohydrates. Only name is required, unknown columns are ignored.
+ */
+class CsvFoodRecordReader implements FoodRecordReader {
+
+    private final BufferedReader reader;
+
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    private final StringBuilder field = new StringBuilder();
+
+    private long number;
+
+    CsvFoodRecordReader(Reader source) throws IOException {
+        this.reader = source instanceof BufferedReader buffered ? buffered : new BufferedReader(source);
+        List<String> header = readRow();
+        if (header == null) {
+            throw new IOException("Empty CSV file, a header row is required");
+        }
+        for (int i = 0; i < header.size(); i++) {
+            columns.putIfAbsent(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("name")) {
+            throw new IOException("CSV header has no name column: " + header);
+        }
+    }
+
+    @Override
+    public FoodRecord next() throws IOException {
+        List<String> row = readRow();
+        //== blank lines between records are skipped ==
+        while (row != null && row.size() == 1 && row.get(0).isBlank()) {
+            row = readRow();
+        }
+        if (row == null) {
+            return null;
+        }
+        return new FoodRecord(++number, column(row, "name"), column(row, "details"), column(row, "calories"),
+                column(row, "protein"), column(row, "fat"), column(row, "carbohydrates"));
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String column(List<String> row, String name) {
+        Integer index = columns.get(name);
+        return index == null || index >= row.size() ? null : row.get(index);
+    }
+
+    //== null at the end of the input ==
+    private List<String> readRow() throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> row = new ArrayList<>();
+        boolean quoted = false;
+        field.setLength(0);
+        for (; c != -1; c = reader.read()) {
+            if (quoted) {
+                if (c != '"') {
+                    field.append((char) c);
+                    continue;
+                }
+                reader.mark(1);
+                if (reader.read() == '"') {
+                    field.append('"');
+                } else {
+                    reader.reset();
+                    quoted = false;
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quoted field in CSV record " + (number + 1));
+        }
+        row.add(field.toString());
+        return row;
+    }
+}
@@ -0,0 +1,302 @@
+package org.coda.core.importer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.entities.Food;
+import org.coda.core.exceptions.FoodImportException;
+import org.coda.core.service.FoodService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Streaming importer for large food catalog files (CSV or JSON).
+ * The file is read one record at a time and processed in chunks of calorietracker.import.chunk-size records:
+ * each chunk is validated in parallel, its valid records are saved through FoodService.saveAllFoods
+ * in a transaction of its own, and a checkpoint next to the file records the last committed record.
+ * Memory use is bounded by the chunk size whatever the size of the file.
+ * After a failure, importing the same file again resumes after the checkpoint;
+ * the checkpoint is deleted once the whole file has been imported.
+ * The checkpoint is a file, written after the transaction of the chunk commits and not in it: the import is
+ * at-least-once. A crash or a failed checkpoint write between the two leaves a committed chunk the next import
+ * saves again, so foods may be duplicated, by one chunk at most; no record is ever skipped without being saved.
+ */
+@Slf4j
+@Service
+public class FoodCatalogImporter {
+
+    static final String CHECKPOINT_SUFFIX = ".import-checkpoint";
+
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private final FoodService foodService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int chunkSize;
+
+    private final int validationThreads;
+
+    private final int maxReportedRejections;
+
+    /**
+     * Constructor based dependency injection
+     * @param foodService to save the valid foods of each chunk
+     * @param transactionManager to commit every chunk in a new transaction
+     * @param chunkSize the number of records per transaction
+     * @param validationThreads the number of threads validating a chunk, 0 for one per processor
+     * @param maxReportedRejections the number of rejected records kept in the report
+     * @Autowired annotation to inject the FoodService and PlatformTransactionManager dependency
+     */
+
+    @Autowired
+    public FoodCatalogImporter(FoodService foodService, PlatformTransactionManager transactionManager,
+                               @Value("${calorietracker.import.chunk-size:1000}") int chunkSize,
+                               @Value("${calorietracker.import.validation-threads:0}") int validationThreads,
+                               @Value("${calorietracker.import.max-reported-rejections:100}") int maxReportedRejections) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("calorietracker.import.chunk-size must be positive: " + chunkSize);
+        }
+        this.foodService = foodService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.chunkSize = chunkSize;
+        this.validationThreads = validationThreads > 0 ? validationThreads : Runtime.getRuntime().availableProcessors();
+        this.maxReportedRejections = maxReportedRejections;
+    }
+
+    /**
+     * Method to import a food catalog file, the format is taken from the extension
+     * @param source the .csv or .json file
+     * @return FoodImportReport with the counts, throughput and rejected records of this run
+     * @throws FoodImportException if the file cannot be read, a chunk cannot be committed or its checkpoint
+     * written; the foods committed so far are kept and the next import of the file resumes after the checkpoint,
+     * saving again a chunk committed after it
+     */
+    public FoodImportReport importFoods(Path source) {
+        return importFoods(source, FoodImportFormat.of(source));
+    }
+
+    /**
+     * Method to import a food catalog file
+     * @param source the catalog file
+     * @param format the format of the file
+     * @return FoodImportReport with the counts, throughput and rejected records of this run
+     * @throws FoodImportException if the file cannot be read, a chunk cannot be committed or its checkpoint
+     * written; the foods committed so far are kept and the next import of the file resumes after the checkpoint,
+     * saving again a chunk committed after it
+     */
+    public FoodImportReport importFoods(Path source, FoodImportFormat format) {
+        long started = System.nanoTime();
+        Path checkpoint = checkpointOf(source);
+        long resumeAfter = readCheckpoint(source, checkpoint);
+        if (resumeAfter > 0) {
+            log.info("Resuming import of {} after record {}", source, resumeAfter);
+        }
+        Progress progress = new Progress();
+        ForkJoinPool validators = new ForkJoinPool(validationThreads);
+        try (FoodRecordReader reader = format.open(Files.newBufferedReader(source, StandardCharsets.UTF_8))) {
+            List<FoodRecord> chunk = new ArrayList<>(chunkSize);
+            for (FoodRecord record = reader.next(); record != null; record = reader.next()) {
+                if (record.number() <= resumeAfter) {
+                    progress.skipped++;
+                    continue;
+                }
+                chunk.add(record);
+                if (chunk.size() == chunkSize) {
+                    importChunk(source, checkpoint, chunk, validators, progress);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(source, checkpoint, chunk, validators, progress);
+            }
+            Files.deleteIfExists(checkpoint);
+        } catch (IOException e) {
+            throw new FoodImportException("Failed to read food catalog " + source, e);
+        } finally {
+            validators.shutdown();
+        }
+        FoodImportReport report = new FoodImportReport(source, progress.skipped, progress.imported, progress.rejected,
+                List.copyOf(progress.rejections), progress.chunks, Duration.ofNanos(System.nanoTime() - started));
+        log.info("Food catalog {} imported: {} foods, {} rejected, {} skipped, {} records/s",
+                source, report.imported(), report.rejected(), report.skipped(), Math.round(report.recordsPerSecond()));
+        return report;
+    }
+
+    /**
+     * Validate and map one record
+     * @param record the raw record
+     * @return the Food to save, or the reason the record is rejected
+     */
+    static Validated validate(FoodRecord record) {
+        if (record.name() == null || record.name().isBlank()) {
+            return Validated.rejected(record, "name is required");
+        }
+        if (record.name().length() > MAX_NAME_LENGTH) {
+            return Validated.rejected(record, "name is longer than " + MAX_NAME_LENGTH + " characters");
+        }
+        if (record.details() != null && record.details().length() > MAX_NAME_LENGTH) {
+            return Validated.rejected(record, "details are longer than " + MAX_NAME_LENGTH + " characters");
+        }
+        try {
+            double calories = amount("calories", record.calories(), true);
+            Food.Nutrition nutrition = new Food.Nutrition();
+            nutrition.setProtein((float) amount("protein", record.protein(), false));
+            nutrition.setFat((float) amount("fat", record.fat(), false));
+            nutrition.setCarbohydrates((float) amount("carbohydrates", record.carbohydrates(), false));
+            Food food = new Food(record.name().trim(), blankToNull(record.details()), nutrition, calories);
+            return new Validated(record, food, null);
+        } catch (IllegalArgumentException e) {
+            return Validated.rejected(record, e.getMessage());
+        }
+    }
+
+    //== helpers ==
+
+    private void importChunk(Path source, Path checkpoint, List<FoodRecord> chunk,
+                             ForkJoinPool validators, Progress progress) {
+        List<Validated> validated = validateInParallel(chunk, validators);
+        List<Food> foods = new ArrayList<>(validated.size());
+        for (Validated result : validated) {
+            if (result.food() != null) {
+                foods.add(result.food());
+            } else {
+                progress.reject(new FoodImportRejection(result.record(), result.rejection()), maxReportedRejections);
+            }
+        }
+        long lastRecord = chunk.get(chunk.size() - 1).number();
+        if (!foods.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> foodService.saveAllFoods(foods));
+            } catch (RuntimeException e) {
+                throw new FoodImportException("Failed to commit records " + chunk.get(0).number() + " to "
+                        + lastRecord + " of " + source + ", the next import resumes after record "
+                        + (chunk.get(0).number() - 1), e);
+            }
+        }
+        try {
+            writeCheckpoint(source, checkpoint, lastRecord);
+        } catch (IOException e) {
+            throw new FoodImportException("Records " + chunk.get(0).number() + " to " + lastRecord + " of " + source
+                    + " were committed but the checkpoint could not be written, the next import saves them again", e);
+        }
+        progress.imported += foods.size();
+        progress.chunks++;
+        log.debug("Committed records up to {} of {}", lastRecord, source);
+    }
+
+    private static List<Validated> validateInParallel(List<FoodRecord> chunk, ForkJoinPool validators) {
+        try {
+            //== a parallel stream started inside a pool runs on that pool, not on the common one ==
+            return validators.submit(() -> chunk.parallelStream().map(FoodCatalogImporter::validate).toList()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FoodImportException("Interrupted while validating food records", e);
+        } catch (ExecutionException e) {
+            throw new FoodImportException("Failed to validate food records", e.getCause());
+        }
+    }
+
+    private static double amount(String field, String value, boolean required) {
+        if (value == null || value.isBlank()) {
+            if (required) {
+                throw new IllegalArgumentException(field + " is required");
+            }
+            return 0;
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " is not a number: " + value);
+        }
+        if (!Double.isFinite(amount) || amount < 0) {
+            throw new IllegalArgumentException(field + " must be a non-negative number: " + value);
+        }
+        return amount;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    static Path checkpointOf(Path source) {
+        return source.resolveSibling(source.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    //== the checkpoint is only trusted for the exact file it was written for ==
+    private static long readCheckpoint(Path source, Path checkpoint) {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+            if (Files.size(source) != Long.parseLong(properties.getProperty("source.size", "-1"))
+                    || Files.getLastModifiedTime(source).toMillis()
+                    != Long.parseLong(properties.getProperty("source.modified", "-1"))) {
+                throw new FoodImportException("Checkpoint " + checkpoint + " was written for a different version of "
+                        + source + ", delete it to import the file from the start");
+            }
+            return Long.parseLong(properties.getProperty("records.committed", "0"));
+        } catch (IOException | NumberFormatException e) {
+            throw new FoodImportException("Unreadable import checkpoint " + checkpoint, e);
+        }
+    }
+
+    //== written to a temporary file and moved, so a crash never leaves a truncated checkpoint ==
+    private static void writeCheckpoint(Path source, Path checkpoint, long committed) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("source.size", Long.toString(Files.size(source)));
+        properties.setProperty("source.modified", Long.toString(Files.getLastModifiedTime(source).toMillis()));
+        properties.setProperty("records.committed", Long.toString(committed));
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            properties.store(out, "food catalog import checkpoint");
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // == nested classes ==
+
+    /**
+     * Result of validating one record: either food or rejection is set
+     */
+    record Validated(FoodRecord record, Food food, String rejection) {
+        static Validated rejected(FoodRecord record, String reason) {
+            return new Validated(record, null, reason);
+        }
+    }
+
+    private static final class Progress {
+        private long skipped;
+        private long imported;
+        private long rejected;
+        private long chunks;
+        private final List<FoodImportRejection> rejections = new ArrayList<>();
+
+        private void reject(FoodImportRejection rejection, int maxReported) {
+            rejected++;
+            if (rejections.size() < maxReported) {
+                rejections.add(rejection);
+            }
+        }
+    }
+}
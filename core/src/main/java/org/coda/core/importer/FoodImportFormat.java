@@ -0,0 +1,57 @@
+package org.coda.core.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Supported food catalog file formats.
+ */
+public enum FoodImportFormat {
+
+    /**
+     * Comma separated values with a header row naming the columns
+     */
+    CSV {
+        @Override
+        public FoodRecordReader open(Reader reader) throws IOException {
+            return new CsvFoodRecordReader(reader);
+        }
+    },
+
+    /**
+     * A JSON array of food objects
+     */
+    JSON {
+        @Override
+        public FoodRecordReader open(Reader reader) throws IOException {
+            return new JsonFoodRecordReader(reader);
+        }
+    };
+
+    /**
+     * Open a streaming record reader over a character stream
+     * @param reader the source, closed together with the returned reader
+     * @return FoodRecordReader positioned before the first record
+     * @throws IOException if the start of the source cannot be read
+     */
+    public abstract FoodRecordReader open(Reader reader) throws IOException;
+
+    /**
+     * Guess the format from the file extension
+     * @param source the catalog file
+     * @return FoodImportFormat matching .csv or .json
+     * @throws IllegalArgumentException for any other extension
+     */
+    public static FoodImportFormat of(Path source) {
+        String fileName = source.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (fileName.endsWith(".csv")) {
+            return CSV;
+        }
+        if (fileName.endsWith(".json")) {
+            return JSON;
+        }
+        throw new IllegalArgumentException("Unsupported food catalog format: " + source);
+    }
+}
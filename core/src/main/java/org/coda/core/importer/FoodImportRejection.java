@@ -0,0 +1,9 @@
+package org.coda.core.importer;
+
+/**
+ * A record that failed validation and was not imported.
+ * @param record the record as read from the source
+ * @param reason why it was rejected
+ */
+public record FoodImportRejection(FoodRecord record, String reason) {
+}
@@ -0,0 +1,29 @@
+package org.coda.core.importer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of one run of the food catalog importer.
+ * The import is at-least-once: a run resumed after a crash between the commit of a chunk and its checkpoint
+ * counts that chunk in imported again, and saves its foods a second time.
+ * @param source the imported file
+ * @param skipped records committed by a previous, interrupted run, as far as its checkpoint recorded them
+ * @param imported records saved as foods by this run
+ * @param rejected records that failed validation in this run
+ * @param rejections the first rejected records, capped by calorietracker.import.max-reported-rejections
+ * @param chunks the number of committed transactions
+ * @param elapsed wall clock time of this run
+ */
+public record FoodImportReport(Path source, long skipped, long imported, long rejected,
+                               List<FoodImportRejection> rejections, long chunks, Duration elapsed) {
+
+    /**
+     * @return records processed by this run (imported or rejected) per second
+     */
+    public double recordsPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds == 0 ? 0 : (imported + rejected) / seconds;
+    }
+}
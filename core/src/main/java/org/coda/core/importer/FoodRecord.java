@@ -0,0 +1,10 @@
+package org.coda.core.importer;
+
+/**
+ * One raw row of a food catalog file, before validation.
+ * Values are kept as read so that rejected rows can be reported as they appear in the source.
+ * @param number the 1-based position of the record in the source, header excluded
+ */
+public record FoodRecord(long number, String name, String details, String calories,
+                         String protein, String fat, String carbohydrates) {
+}
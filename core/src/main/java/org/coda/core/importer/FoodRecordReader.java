@@ -0,0 +1,16 @@
+package org.coda.core.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Incremental reader of a food catalog file, one record at a time.
+ */
+public interface FoodRecordReader extends Closeable {
+
+    /**
+     * @return the next record, null at the end of the source
+     * @throws IOException if the source cannot be read or is structurally malformed
+     */
+    FoodRecord next() throws IOException;
+}
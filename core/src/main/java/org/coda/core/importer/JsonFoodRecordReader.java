@@ -0,0 +1,67 @@
+package org.coda.core.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming reader of a JSON array of foods, one object in memory at a time.
+ * Each object may carry name, details, calories, protein, fat and carbohydrates, the last three
+ * either at the top level or inside a nested "nutrition" object as in the Food entity.
+ * Unknown fields are skipped.
+ */
+class JsonFoodRecordReader implements FoodRecordReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+
+    private long number;
+
+    JsonFoodRecordReader(Reader source) throws IOException {
+        this.parser = JSON_FACTORY.createParser(source);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("A food catalog JSON file must be an array of objects");
+        }
+    }
+
+    @Override
+    public FoodRecord next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY || token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a food object at " + parser.currentLocation());
+        }
+        Map<String, String> fields = new HashMap<>();
+        readObject(fields);
+        return new FoodRecord(++number, fields.get("name"), fields.get("details"), fields.get("calories"),
+                fields.get("protein"), fields.get("fat"), fields.get("carbohydrates"));
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    //== flattens the nested nutrition object into the same field map ==
+    private void readObject(Map<String, String> fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT && name.equals("nutrition")) {
+                readObject(fields);
+            } else if (value.isScalarValue()) {
+                fields.put(name, value == JsonToken.VALUE_NULL ? null : parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package org.coda.core.ingest;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.exceptions.IntakeQueueFullException;
+import org.coda.core.projection.WriteBehindStats;
+import org.coda.core.service.CalorieInTakeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in write-behind logging of new intakes, enabled with calorietracker.intake.write-behind.enabled=true.
+ * Callers enqueue intakes into a bounded queue; a single writer thread saves them through
+ * CalorieInTakeService.saveAllCalorieInTake in one transaction per batch, flushing when the batch is full
+ * or when its oldest intake has waited for the flush interval, whichever comes first.
+ * Durability is chosen per call: ENQUEUED acknowledges as soon as the intake is queued
+ * (it is lost if the process dies before the flush), COMMITTED acknowledges once its batch has committed.
+ * When the queue stays full for the enqueue timeout the intake is refused with IntakeQueueFullException.
+ * If a batch fails, its intakes are retried one transaction each so a single bad intake fails alone.
+ * On shutdown new intakes are refused and the queue is drained before the writer stops.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "calorietracker.intake.write-behind.enabled", havingValue = "true")
+public class IntakeWriteBehind {
+
+    public enum Durability {
+        //== acknowledged once queued ==
+        ENQUEUED,
+        //== acknowledged once the batch holding the intake has committed ==
+        COMMITTED
+    }
+
+    //== offered on shutdown to wake an idle writer, never written ==
+    private static final Pending WAKE_UP = new Pending(null, 0, null);
+
+    private final CalorieInTakeService calorieInTakeService;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final long enqueueTimeoutMillis;
+
+    private final long shutdownTimeoutMillis;
+
+    private final Durability defaultDurability;
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    //== metrics ==
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final LongAccumulator maxFlushNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder commitLagNanos = new LongAdder();
+    private final LongAccumulator maxCommitLagNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor based dependency injection
+     * @param calorieInTakeService to save each batch in one transaction
+     * @param queueCapacity the number of intakes allowed to wait for the writer
+     * @param batchSize the largest number of intakes saved in one transaction
+     * @param flushIntervalMillis the longest an intake waits for its batch to fill up
+     * @param enqueueTimeoutMillis the longest a caller waits for room in a full queue
+     * @param shutdownTimeoutMillis the longest shutdown waits for the queue to drain
+     * @param defaultDurability the durability of submit(CalorieInTake)
+     * @Autowired annotation to inject the CalorieInTakeService dependency
+     */
+    @Autowired
+    public IntakeWriteBehind(CalorieInTakeService calorieInTakeService,
+                             @Value("${calorietracker.intake.write-behind.queue-capacity:10000}") int queueCapacity,
+                             @Value("${calorietracker.intake.write-behind.batch-size:500}") int batchSize,
+                             @Value("${calorietracker.intake.write-behind.flush-interval-millis:200}") long flushIntervalMillis,
+                             @Value("${calorietracker.intake.write-behind.enqueue-timeout-millis:100}") long enqueueTimeoutMillis,
+                             @Value("${calorietracker.intake.write-behind.shutdown-timeout-millis:30000}") long shutdownTimeoutMillis,
+                             @Value("${calorietracker.intake.write-behind.durability:COMMITTED}") Durability defaultDurability) {
+        if (queueCapacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid write-behind settings: capacity " + queueCapacity
+                    + ", batch size " + batchSize + ", flush interval " + flushIntervalMillis + " ms");
+        }
+        this.calorieInTakeService = calorieInTakeService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.defaultDurability = defaultDurability;
+        this.writer = new Thread(this::writeLoop, "intake-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Start the writer thread
+     */
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Queue a new intake with the configured default durability
+     * @param calorieInTake the intake to save, it must not have an id yet
+     * @return CompletableFuture<CalorieInTake> completed according to the durability
+     * @throws IntakeQueueFullException if the queue stays full for the enqueue timeout
+     */
+    public CompletableFuture<CalorieInTake> submit(CalorieInTake calorieInTake) {
+        return submit(calorieInTake, defaultDurability);
+    }
+
+    /**
+     * Queue a new intake
+     * @param calorieInTake the intake to save, it must not have an id yet
+     * @param durability ENQUEUED to complete the future at once, COMMITTED to complete it when its batch commits
+     * @return CompletableFuture<CalorieInTake> completed according to the durability;
+     * with COMMITTED it completes exceptionally if the intake could not be saved
+     * @throws IntakeQueueFullException if the queue stays full for the enqueue timeout
+     * @throws IllegalStateException if the writer is shutting down
+     */
+    public CompletableFuture<CalorieInTake> submit(CalorieInTake calorieInTake, Durability durability) {
+        if (calorieInTake.getId() != 0) {
+            throw new IllegalArgumentException("Only new intakes can be written behind, got id " + calorieInTake.getId());
+        }
+        if (!running) {
+            throw new IllegalStateException("The intake writer is shutting down");
+        }
+        Pending pending = new Pending(calorieInTake, System.nanoTime(), new CompletableFuture<>());
+        try {
+            if (!queue.offer(pending, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new IntakeQueueFullException("The intake queue is full (" + queue.size()
+                        + " waiting), try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new IntakeQueueFullException("Interrupted while waiting for room in the intake queue");
+        }
+        enqueued.increment();
+        return durability == Durability.ENQUEUED ? CompletableFuture.completedFuture(calorieInTake) : pending.committed();
+    }
+
+    /**
+     * @return WriteBehindStats snapshot of the queue and the counters since startup
+     */
+    public WriteBehindStats getStats() {
+        long batchCount = batches.sum();
+        long writtenCount = written.sum();
+        return new WriteBehindStats(queue.size(), queue.size() + queue.remainingCapacity(), enqueued.sum(),
+                rejected.sum(), writtenCount, failed.sum(), batchCount,
+                batchCount == 0 ? 0 : (double) (writtenCount + failed.sum()) / batchCount,
+                meanMillis(flushNanos, batchCount), maxFlushNanos.get() / 1e6,
+                meanMillis(commitLagNanos, writtenCount), maxCommitLagNanos.get() / 1e6);
+    }
+
+    /**
+     * Refuse new intakes, drain the queue and stop the writer
+     * Intakes still queued after the shutdown timeout are failed and logged.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        queue.offer(WAKE_UP);
+        try {
+            writer.join(shutdownTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.interrupt();
+        List<Pending> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.remove(WAKE_UP);
+        if (!abandoned.isEmpty()) {
+            log.error("Intake writer stopped with {} intakes not written", abandoned.size());
+            failed.add(abandoned.size());
+            abandoned.forEach(pending -> pending.committed().completeExceptionally(
+                    new IllegalStateException("The intake writer stopped before the intake was written")));
+        }
+    }
+
+    //== helpers ==
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null || first == WAKE_UP) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch, first.enqueuedNanos() + flushIntervalNanos);
+            } catch (InterruptedException e) {
+                if (batch.isEmpty()) {
+                    break;
+                }
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    //== wait for more intakes until the batch is full or its oldest intake is due; once stopping, flush what is there ==
+    private void fillBatch(List<Pending> batch, long deadline) throws InterruptedException {
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.remove(WAKE_UP)) {
+                return;
+            }
+            long wait = deadline - System.nanoTime();
+            if (batch.size() == batchSize || wait <= 0 || !running) {
+                return;
+            }
+            Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null || next == WAKE_UP) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        long started = System.nanoTime();
+        try {
+            calorieInTakeService.saveAllCalorieInTake(batch.stream().map(Pending::calorieInTake).toList());
+            committed(batch);
+        } catch (RuntimeException e) {
+            log.warn("Batch of {} intakes failed, retrying them one by one: {}", batch.size(), e.getMessage());
+            for (Pending pending : batch) {
+                flushOne(pending);
+            }
+        } finally {
+            long nanos = System.nanoTime() - started;
+            batches.increment();
+            flushNanos.add(nanos);
+            maxFlushNanos.accumulate(nanos);
+        }
+    }
+
+    private void flushOne(Pending pending) {
+        //== the rolled back batch may have assigned an id ==
+        pending.calorieInTake().setId(0);
+        try {
+            calorieInTakeService.saveCalorieInTake(pending.calorieInTake());
+            committed(List.of(pending));
+        } catch (RuntimeException e) {
+            log.error("Intake could not be written: {}", pending.calorieInTake(), e);
+            failed.increment();
+            pending.committed().completeExceptionally(e);
+        }
+    }
+
+    private void committed(List<Pending> pendings) {
+        long now = System.nanoTime();
+        for (Pending pending : pendings) {
+            long lag = now - pending.enqueuedNanos();
+            commitLagNanos.add(lag);
+            maxCommitLagNanos.accumulate(lag);
+            written.increment();
+            pending.committed().complete(pending.calorieInTake());
+        }
+    }
+
+    private static double meanMillis(LongAdder totalNanos, long count) {
+        return count == 0 ? 0 : totalNanos.sum() / 1e6 / count;
+    }
+
+    // == nested classes ==
+
+    private record Pending(CalorieInTake calorieInTake, long enqueuedNanos, CompletableFuture<CalorieInTake> committed) {
+    }
+}
@@ -0,0 +1,698 @@
+package org.coda.core.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.exceptions.IntakeJournalException;
+import org.coda.core.projection.JournalStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of intakes in segmented memory-mapped files, the storage of JournalCalorieInTakeRepository.
+ * Every record is RECORD_BYTES wide: id, user, meal, food, time in epoch microseconds, uuid, type and a CRC32C
+ * of the rest. An update appends a newer version of the intake and a delete appends a tombstone; the in-memory
+ * index (by id, by time and per user by time) always points at the latest version inside the mapped segments.
+ * Appends only write to the mapped memory; sync forces everything appended so far to disk, and callers that
+ * arrive while a force is running wait for it and share the next one, so concurrent commits are grouped.
+ * Opening the journal replays the segments to rebuild the index. A record whose checksum does not match,
+ * a write torn by a crash, ends the journal: it and everything after it are discarded.
+ * When superseded versions and tombstones reach compaction-ratio of the records, and at least a segment's worth,
+ * the live records are copied into new segments and the old ones are deleted. Appends wait for a compaction.
+ * Reads use the index and absolute reads of the mapped buffers and take no lock.
+ */
+@Slf4j
+public class IntakeJournal implements Closeable {
+
+    //== id, user, meal, food, epoch micros, uuid high and low bits, then the type and the checksum ==
+    static final int RECORD_BYTES = 64;
+
+    private static final int TYPE_OFFSET = 56;
+
+    private static final int CHECKSUM_OFFSET = 60;
+
+    //== record types, 0 is the unwritten end of a segment ==
+    private static final int INTAKE = 1;
+    private static final int DELETE = 2;
+    private static final int CLEAR = 3;
+
+    private static final String SEGMENT_PREFIX = "intake-";
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final String COMPACTING_SUFFIX = ".compacting";
+
+    private static final Comparator<Entry> TIME_ORDER = Comparator.comparingLong(Entry::micros)
+            .thenComparingLong(Entry::id);
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final boolean force;
+
+    private final double compactionRatio;
+
+    //== appends, compaction and the fields below are guarded by appendLock; readers only use the volatile ones ==
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32C checksum = new CRC32C();
+    private volatile List<Segment> segments;
+    private volatile Index index = new Index();
+    private Segment active;
+    private long nextId = 1;
+    private long nextSegment = 1;
+    private long appended;
+    private long records;
+    private long dead;
+    private boolean closed;
+
+    //== group commit: one force at a time, the records appended before it started are durable after it ==
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncing;
+    private long durable;
+
+    //== metrics ==
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder syncedRecords = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    /**
+     * Open the journal in a directory, replaying its segments
+     * @param directory the directory of the segment files, created if missing
+     * @param segmentBytes the size of a new segment file, a multiple of RECORD_BYTES
+     * @param force whether sync forces the segments to disk, false leaves it to the operating system
+     * @param compactionRatio the share of dead records that triggers a compaction, 0 or less to only compact on demand
+     * @throws IntakeJournalException if the segments cannot be read or mapped
+     */
+    public IntakeJournal(Path directory, int segmentBytes, boolean force, double compactionRatio) {
+        if (segmentBytes < RECORD_BYTES || segmentBytes % RECORD_BYTES != 0) {
+            throw new IllegalArgumentException("Journal segment size must be a multiple of " + RECORD_BYTES
+                    + " bytes: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.force = force;
+        this.compactionRatio = compactionRatio;
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            throw new IntakeJournalException("Cannot open intake journal " + directory, e);
+        }
+    }
+
+    /**
+     * Append an intake, a new one when its id is 0 or not in the journal, otherwise a newer version of it.
+     * The record is visible to readers at once and durable after the next sync.
+     * @param record the intake to store
+     * @return IntakeRecord as stored, with the id assigned by the journal
+     */
+    public IntakeRecord append(IntakeRecord record) {
+        appendLock.lock();
+        try {
+            ensureOpen();
+            IntakeRecord stored = record.id() == 0 ? record.withId(nextId) : record;
+            index(write(active(), INTAKE, stored.id(), stored.userId(), stored.mealId(), stored.foodId(),
+                    toMicros(stored.dateTime()), stored.uuid().getMostSignificantBits(),
+                    stored.uuid().getLeastSignificantBits()));
+            compactIfNeeded();
+            return stored;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Delete an intake by appending a tombstone
+     * @param id the id of the intake
+     * @return true if the intake was in the journal
+     */
+    public boolean delete(long id) {
+        appendLock.lock();
+        try {
+            ensureOpen();
+            Entry previous = index.byId.get(id);
+            if (previous == null) {
+                return false;
+            }
+            write(active(), DELETE, id, previous.userId(), 0, 0, previous.micros(), 0, 0);
+            index.remove(previous);
+            //== the tombstone and the version it deletes ==
+            dead += 2;
+            compactIfNeeded();
+            return true;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Delete every intake with a single record; ids keep growing from where they were
+     */
+    public void clear() {
+        appendLock.lock();
+        try {
+            ensureOpen();
+            write(active(), CLEAR, nextId - 1, 0, 0, 0, 0, 0, 0);
+            index = new Index();
+            dead = records;
+            compactIfNeeded();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Make every record appended before this call durable, sharing the force with concurrent callers
+     * @throws IntakeJournalException if the segments cannot be forced
+     */
+    public void sync() {
+        if (!force) {
+            return;
+        }
+        long target;
+        appendLock.lock();
+        try {
+            target = appended;
+        } finally {
+            appendLock.unlock();
+        }
+        syncLock.lock();
+        try {
+            while (durable < target) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long from = durable;
+                long reached = -1;
+                syncLock.unlock();
+                try {
+                    reached = forceAppended(from);
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    durable = Math.max(durable, reached);
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Copy the live records into new segments and delete the old ones; appends wait until it is done.
+     * A crash during compaction leaves either the old segments or the new ones, never a mix that loses intakes.
+     * @throws IntakeJournalException if the new segments cannot be written
+     */
+    public void compact() {
+        appendLock.lock();
+        try {
+            ensureOpen();
+            compactLocked();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @param id the id of the intake
+     * @return Optional<IntakeRecord> the latest version, empty if the intake is not in the journal
+     */
+    public Optional<IntakeRecord> find(long id) {
+        return Optional.ofNullable(index.byId.get(id)).map(IntakeJournal::read);
+    }
+
+    /**
+     * @return the number of live intakes
+     */
+    public long count() {
+        return index.byId.size();
+    }
+
+    /**
+     * @return Stream<IntakeRecord> of every intake ordered by (dateTime, id)
+     */
+    public Stream<IntakeRecord> all() {
+        return index.byTime.stream().map(IntakeJournal::read);
+    }
+
+    /**
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, exclusive
+     * @return Stream<IntakeRecord> of the intakes in the range ordered by (dateTime, id)
+     */
+    public Stream<IntakeRecord> between(LocalDateTime from, LocalDateTime to) {
+        return range(index.byTime, from, to);
+    }
+
+    /**
+     * @param dateTime the time of the last intake already read
+     * @param id the id of the last intake already read
+     * @return Stream<IntakeRecord> of the intakes after that position ordered by (dateTime, id)
+     */
+    public Stream<IntakeRecord> after(LocalDateTime dateTime, long id) {
+        return after(index.byTime, dateTime, id);
+    }
+
+    /**
+     * @param userId the id of the user
+     * @return Stream<IntakeRecord> of the intakes of the user ordered by (dateTime, id)
+     */
+    public Stream<IntakeRecord> byUser(long userId) {
+        return index.byUser.getOrDefault(userId, emptySet()).stream().map(IntakeJournal::read);
+    }
+
+    /**
+     * @param userId the id of the user
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, exclusive
+     * @return Stream<IntakeRecord> of the intakes of the user in the range ordered by (dateTime, id)
+     */
+    public Stream<IntakeRecord> byUser(long userId, LocalDateTime from, LocalDateTime to) {
+        return range(index.byUser.getOrDefault(userId, emptySet()), from, to);
+    }
+
+    /**
+     * @param userId the id of the user
+     * @param dateTime the time of the last intake already read
+     * @param id the id of the last intake already read
+     * @return Stream<IntakeRecord> of the intakes of the user after that position ordered by (dateTime, id)
+     */
+    public Stream<IntakeRecord> byUserAfter(long userId, LocalDateTime dateTime, long id) {
+        return after(index.byUser.getOrDefault(userId, emptySet()), dateTime, id);
+    }
+
+    /**
+     * @return List<Long> the ids of the users with intakes, in ascending order
+     */
+    public List<Long> users() {
+        return index.byUser.keySet().stream().sorted().toList();
+    }
+
+    /**
+     * @return JournalStats with the size of the segments and the group commit counters
+     */
+    public JournalStats getStats() {
+        appendLock.lock();
+        try {
+            return new JournalStats(segments.size(), records, index.byId.size(), dead,
+                    segments.stream().mapToLong(Segment::capacity).sum(),
+                    syncs.sum(), syncedRecords.sum(), compactions.sum());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Force what is left to disk and refuse further appends; the mappings are released by the garbage collector
+     */
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments) {
+                if (segment.written > segment.forced) {
+                    segment.buffer.force(segment.forced, segment.written - segment.forced);
+                    segment.forced = segment.written;
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //== opening and replay ==
+
+    private void open() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) listing::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(COMPACTING_SUFFIX)) {
+                    //== an interrupted compaction: the old segments it was replacing are all still there ==
+                    Files.delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(IntakeJournal::segmentNumber));
+        List<Segment> opened = new ArrayList<>();
+        boolean torn = false;
+        for (Path file : files) {
+            nextSegment = segmentNumber(file) + 1;
+            if (torn) {
+                log.warn("Discarding intake journal segment {} written after a torn record", file);
+                Files.delete(file);
+                continue;
+            }
+            int capacity = (int) (Files.size(file) / RECORD_BYTES * RECORD_BYTES);
+            Segment segment = map(file, capacity > 0 ? capacity : segmentBytes, false);
+            opened.add(segment);
+            torn = replay(segment);
+        }
+        if (opened.isEmpty()) {
+            opened.add(map(segmentPath(nextSegment++, false), segmentBytes, true));
+        }
+        segments = List.copyOf(opened);
+        active = opened.get(opened.size() - 1);
+        durable = appended;
+        log.info("Intake journal {} opened: {} segments, {} intakes, {} dead records",
+                directory, segments.size(), index.byId.size(), dead);
+    }
+
+    //== returns true when the segment ends with a torn record ==
+    private boolean replay(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset < segment.capacity) {
+            int type = buffer.getInt(offset + TYPE_OFFSET);
+            if (type == 0) {
+                break;
+            }
+            if (buffer.getInt(offset + CHECKSUM_OFFSET) != checksum(buffer, offset)) {
+                log.warn("Intake journal segment {} ends with a torn record at offset {}, discarding the tail",
+                        segment.file, offset);
+                for (int zero = offset; zero < segment.capacity; zero += Long.BYTES) {
+                    buffer.putLong(zero, 0);
+                }
+                buffer.force();
+                segment.written = offset;
+                segment.forced = offset;
+                return true;
+            }
+            long id = buffer.getLong(offset);
+            nextId = Math.max(nextId, id + 1);
+            records++;
+            appended++;
+            switch (type) {
+                case INTAKE -> index(new Entry(id, buffer.getLong(offset + 8), buffer.getLong(offset + 32),
+                        segment, offset));
+                case DELETE -> {
+                    Entry previous = index.byId.get(id);
+                    if (previous != null) {
+                        index.remove(previous);
+                        dead++;
+                    }
+                    dead++;
+                }
+                case CLEAR -> {
+                    index = new Index();
+                    dead = records;
+                }
+                default -> throw new IntakeJournalException("Unknown record type " + type + " at offset " + offset
+                        + " of intake journal segment " + segment.file);
+            }
+            offset += RECORD_BYTES;
+        }
+        segment.written = offset;
+        segment.forced = offset;
+        return false;
+    }
+
+    //== writing, guarded by appendLock ==
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Intake journal " + directory + " is closed");
+        }
+    }
+
+    private Segment active() {
+        if (active.written == active.capacity) {
+            Segment next = map(segmentPath(nextSegment++, false), segmentBytes, true);
+            List<Segment> rolled = new ArrayList<>(segments);
+            rolled.add(next);
+            segments = List.copyOf(rolled);
+            active = next;
+        }
+        return active;
+    }
+
+    private Entry write(Segment segment, int type, long id, long userId, long mealId, long foodId, long micros,
+                        long uuidHigh, long uuidLow) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.written;
+        buffer.putLong(offset, id)
+                .putLong(offset + 8, userId)
+                .putLong(offset + 16, mealId)
+                .putLong(offset + 24, foodId)
+                .putLong(offset + 32, micros)
+                .putLong(offset + 40, uuidHigh)
+                .putLong(offset + 48, uuidLow)
+                .putInt(offset + TYPE_OFFSET, type);
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum(buffer, offset));
+        segment.written = offset + RECORD_BYTES;
+        nextId = Math.max(nextId, id + 1);
+        appended++;
+        records++;
+        return new Entry(id, userId, micros, segment, offset);
+    }
+
+    private void index(Entry entry) {
+        Entry previous = index.byId.put(entry.id(), entry);
+        if (previous != null) {
+            index.remove(previous);
+            dead++;
+        }
+        index.add(entry);
+    }
+
+    private int checksum(MappedByteBuffer buffer, int offset) {
+        checksum.reset();
+        checksum.update(buffer.slice(offset, CHECKSUM_OFFSET));
+        return (int) checksum.getValue();
+    }
+
+    private void compactIfNeeded() {
+        if (compactionRatio > 0 && dead >= compactionRatio * records && dead >= segmentBytes / RECORD_BYTES) {
+            compactLocked();
+        }
+    }
+
+    private void compactLocked() {
+        long started = System.nanoTime();
+        List<Segment> old = segments;
+        List<Segment> fresh = new ArrayList<>();
+        Index compacted = new Index();
+        long deadBefore = dead;
+        try {
+            Segment target = map(segmentPath(nextSegment++, true), segmentBytes, true);
+            fresh.add(target);
+            //== first record of the new segments: replaying it drops any old segment a crash leaves behind ==
+            write(target, CLEAR, nextId - 1, 0, 0, 0, 0, 0, 0);
+            for (Entry entry : index.byTime) {
+                if (target.written == target.capacity) {
+                    target = map(segmentPath(nextSegment++, true), segmentBytes, true);
+                    fresh.add(target);
+                }
+                target.buffer.put(target.written, entry.segment().buffer, entry.offset(), RECORD_BYTES);
+                Entry moved = new Entry(entry.id(), entry.userId(), entry.micros(), target, target.written);
+                compacted.byId.put(moved.id(), moved);
+                compacted.add(moved);
+                target.written += RECORD_BYTES;
+            }
+            for (Segment segment : fresh) {
+                segment.buffer.force(0, segment.written);
+                segment.forced = segment.written;
+            }
+            //== the segment holding the CLEAR record gets its final name last, completing the compaction ==
+            for (int i = fresh.size() - 1; i >= 0; i--) {
+                Segment segment = fresh.get(i);
+                Path file = segmentPath(segmentNumber(segment.file), false);
+                Files.move(segment.file, file, StandardCopyOption.ATOMIC_MOVE);
+                segment.file = file;
+            }
+            for (Segment segment : old) {
+                Files.deleteIfExists(segment.file);
+            }
+        } catch (IOException e) {
+            throw new IntakeJournalException("Compaction of intake journal " + directory + " failed", e);
+        }
+        segments = List.copyOf(fresh);
+        active = fresh.get(fresh.size() - 1);
+        index = compacted;
+        records = compacted.byId.size() + 1;
+        dead = 1;
+        syncLock.lock();
+        try {
+            durable = Math.max(durable, appended);
+        } finally {
+            syncLock.unlock();
+        }
+        compactions.increment();
+        log.info("Intake journal {} compacted in {} ms: {} live records kept, {} dead records dropped",
+                directory, (System.nanoTime() - started) / 1_000_000, compacted.byId.size(), deadBefore);
+    }
+
+    //== forces the regions appended since the last force, returns the number of records they hold ==
+    private long forceAppended(long from) {
+        long reached;
+        List<Segment> dirty = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        appendLock.lock();
+        try {
+            reached = appended;
+            for (Segment segment : segments) {
+                if (segment.written > segment.forced) {
+                    dirty.add(segment);
+                    ends.add(segment.written);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        for (int i = 0; i < dirty.size(); i++) {
+            Segment segment = dirty.get(i);
+            int start = segment.forced;
+            segment.buffer.force(start, ends.get(i) - start);
+            segment.forced = ends.get(i);
+        }
+        syncs.increment();
+        syncedRecords.add(reached - from);
+        return reached;
+    }
+
+    //== helpers ==
+
+    private Segment map(Path file, int capacity, boolean create) {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //== the mapping stays valid after the channel is closed ==
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+        } catch (IOException e) {
+            throw new IntakeJournalException("Cannot map intake journal segment " + file, e);
+        }
+    }
+
+    private Path segmentPath(long number, boolean compacting) {
+        return directory.resolve(String.format("%s%012d%s%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX,
+                compacting ? COMPACTING_SUFFIX : ""));
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.indexOf(SEGMENT_SUFFIX)));
+    }
+
+    private static Stream<IntakeRecord> range(NavigableSet<Entry> entries, LocalDateTime from, LocalDateTime to) {
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to);
+        if (fromMicros >= toMicros) {
+            return Stream.empty();
+        }
+        return entries.subSet(probe(fromMicros, Long.MIN_VALUE), true, probe(toMicros, Long.MIN_VALUE), false)
+                .stream().map(IntakeJournal::read);
+    }
+
+    private static Stream<IntakeRecord> after(NavigableSet<Entry> entries, LocalDateTime dateTime, long id) {
+        return entries.tailSet(probe(toMicros(dateTime), id), false).stream().map(IntakeJournal::read);
+    }
+
+    private static NavigableSet<Entry> emptySet() {
+        return new ConcurrentSkipListSet<>(TIME_ORDER);
+    }
+
+    private static Entry probe(long micros, long id) {
+        return new Entry(id, 0, micros, null, 0);
+    }
+
+    private static IntakeRecord read(Entry entry) {
+        MappedByteBuffer buffer = entry.segment().buffer;
+        int offset = entry.offset();
+        return new IntakeRecord(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+                buffer.getLong(offset + 24), fromMicros(buffer.getLong(offset + 32)),
+                new UUID(buffer.getLong(offset + 40), buffer.getLong(offset + 48)));
+    }
+
+    static long toMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    // == nested classes ==
+
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private Path file;
+        //== end of the records, written under appendLock ==
+        private volatile int written;
+        //== end of the records forced to disk, written by the syncing thread or under appendLock ==
+        private volatile int forced;
+
+        private Segment(Path file, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        private long capacity() {
+            return capacity;
+        }
+    }
+
+    //== where the latest version of an intake is, and the keys it is ordered by ==
+    private record Entry(long id, long userId, long micros, Segment segment, int offset) {
+    }
+
+    //== replaced as a whole by clear and compaction, so readers never see a half rebuilt index ==
+    private static final class Index {
+        private final Map<Long, Entry> byId = new ConcurrentHashMap<>();
+        private final NavigableSet<Entry> byTime = new ConcurrentSkipListSet<>(TIME_ORDER);
+        private final Map<Long, NavigableSet<Entry>> byUser = new ConcurrentHashMap<>();
+
+        private void add(Entry entry) {
+            byTime.add(entry);
+            if (entry.userId() != 0) {
+                byUser.computeIfAbsent(entry.userId(), userId -> new ConcurrentSkipListSet<>(TIME_ORDER)).add(entry);
+            }
+        }
+
+        private void remove(Entry entry) {
+            byId.remove(entry.id(), entry);
+            byTime.remove(entry);
+            NavigableSet<Entry> user = byUser.get(entry.userId());
+            if (user != null) {
+                user.remove(entry);
+                if (user.isEmpty()) {
+                    byUser.remove(entry.userId());
+                }
+            }
+        }
+    }
+}
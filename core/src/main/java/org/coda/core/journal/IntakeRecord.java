@@ -0,0 +1,24 @@
+package org.coda.core.journal;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One intake as stored in the journal, the associations reduced to their ids.
+ * @param id the intake id, 0 to have the journal assign the next one
+ * @param userId the user id, 0 when the intake has no user
+ * @param mealId the meal id, 0 when the intake has no meal
+ * @param foodId the food id, 0 when the intake has no food
+ * @param dateTime the time of the intake, kept to the microsecond like a TIMESTAMP column
+ * @param uuid the assigned uuid of the CalorieInTake entity
+ */
+public record IntakeRecord(long id, long userId, long mealId, long foodId, LocalDateTime dateTime, UUID uuid) {
+
+    /**
+     * @param id the id assigned by the journal
+     * @return this record with the given id
+     */
+    public IntakeRecord withId(long id) {
+        return new IntakeRecord(id, userId, mealId, foodId, dateTime, uuid);
+    }
+}
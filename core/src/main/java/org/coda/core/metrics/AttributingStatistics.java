@@ -0,0 +1,49 @@
+package org.coda.core.metrics;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.internal.StatisticsImpl;
+
+/**
+ * Hibernate statistics that also report query rows and entity loads to RepositoryStatistics,
+ * on the thread doing the work, so they can be attributed to the repository method running there.
+ * The session factory wide counters are kept as usual.
+ */
+class AttributingStatistics extends StatisticsImpl {
+
+    private final RepositoryStatistics repositoryStatistics;
+
+    AttributingStatistics(SessionFactoryImplementor sessionFactory, RepositoryStatistics repositoryStatistics) {
+        super(sessionFactory);
+        this.repositoryStatistics = repositoryStatistics;
+    }
+
+    @Override
+    public void queryExecuted(String hql, int rows, long time) {
+        super.queryExecuted(hql, rows, time);
+        repositoryStatistics.rowsReturned(rows);
+    }
+
+    @Override
+    public void loadEntity(String entityName) {
+        super.loadEntity(entityName);
+        repositoryStatistics.entityLoaded();
+    }
+
+    @Override
+    public void fetchEntity(String entityName) {
+        super.fetchEntity(entityName);
+        repositoryStatistics.entityLoaded();
+    }
+
+    @Override
+    public void loadCollection(String role) {
+        super.loadCollection(role);
+        repositoryStatistics.entityLoaded();
+    }
+
+    @Override
+    public void fetchCollection(String role) {
+        super.fetchCollection(role);
+        repositoryStatistics.entityLoaded();
+    }
+}
@@ -0,0 +1,91 @@
+package org.coda.core.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Opt-in local scrape endpoint, enabled with calorietracker.metrics.endpoint.enabled=true.
+ * Serves GET /metrics in the Prometheus text format from a JDK HttpServer on its own small port,
+ * bound to calorietracker.metrics.endpoint.address (loopback by default) so the meters are not
+ * published next to the API. Scrapes run one at a time on the server's dispatcher thread.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "calorietracker.metrics.endpoint.enabled", havingValue = "true")
+public class PrometheusScrapeServer {
+
+    private final PrometheusMeterRegistry registry;
+
+    private final HttpServer server;
+
+    /**
+     * Constructor based dependency injection
+     * @param registry the Prometheus registry that renders the scrape
+     * @param address the address to bind, 127.0.0.1 keeps the endpoint local
+     * @param port the port to bind, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     * @Autowired annotation to inject the PrometheusMeterRegistry dependency
+     */
+    @Autowired
+    public PrometheusScrapeServer(PrometheusMeterRegistry registry,
+                                  @Value("${calorietracker.metrics.endpoint.address:127.0.0.1}") String address,
+                                  @Value("${calorietracker.metrics.endpoint.port:9464}") int port) throws IOException {
+        this.registry = registry;
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        this.server.createContext("/metrics", this::scrape);
+    }
+
+    /**
+     * Start accepting scrapes
+     */
+    @PostConstruct
+    public void start() {
+        server.start();
+        log.info("Metrics endpoint listening on http://{}:{}/metrics",
+                server.getAddress().getHostString(), getPort());
+    }
+
+    /**
+     * Stop the endpoint, letting a running scrape finish for up to a second
+     */
+    @PreDestroy
+    public void stop() {
+        server.stop(1);
+    }
+
+    /**
+     * @return the bound port, useful when the endpoint was started on port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
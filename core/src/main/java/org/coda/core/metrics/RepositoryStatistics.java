@@ -0,0 +1,334 @@
+package org.coda.core.metrics;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.projection.RepositoryMethodStats;
+import org.coda.core.projection.SlowQuery;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in attribution of Hibernate work to Spring Data repository methods, enabled with
+ * calorietracker.sql-stats.enabled=true.
+ * RepositoryStatisticsAspect marks the repository method running on the current thread; while it runs,
+ * the statements Hibernate prepares (seen through this StatementInspector), the rows its queries return
+ * and the entities it loads (seen through AttributingStatistics) are counted against that method.
+ * Only the outermost repository call is tracked, so a default method counts the queries it delegates to.
+ * A call slower than the slow threshold is logged with its arguments, its SQL and the H2 plan of its selects,
+ * and competes for a place in the top-N slowest calls of the last top-window; the plans are read on a
+ * background thread from a separate connection, so the slow call itself does not wait for them.
+ * Work done after a method returned, such as consuming a returned Stream, is not attributed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "calorietracker.sql-stats.enabled", havingValue = "true")
+public class RepositoryStatistics implements StatementInspector {
+
+    private static final int MAX_PARAMETER_LENGTH = 200;
+
+    private final ThreadLocal<Invocation> current = new ThreadLocal<>();
+
+    private final Map<String, MethodCounters> methods = new ConcurrentHashMap<>();
+
+    private final DataSource dataSource;
+
+    private final long slowThresholdNanos;
+
+    private final int topSize;
+
+    private final long topWindowNanos;
+
+    private final int maxSql;
+
+    private final ThreadPoolExecutor planLogger;
+
+    //== the slowest calls of the window, guarded by itself ==
+    private final List<Slow> slowest = new ArrayList<>();
+
+    //== a call must be slower than this to enter a full top-N, 0 while it has room ==
+    private volatile long slowestFloorNanos;
+
+    /**
+     * Constructor based dependency injection
+     * @param dataSource the pool the plans are explained on
+     * @param slowThresholdMillis calls at least this slow are logged and ranked
+     * @param topSize the number of slowest calls kept
+     * @param topWindow how long a call stays in the top-N
+     * @param maxSql the number of distinct statements kept per method and per slow call
+     * @Autowired annotation to inject the DataSource dependency
+     */
+    @Autowired
+    public RepositoryStatistics(DataSource dataSource,
+                                @Value("${calorietracker.sql-stats.slow-threshold-millis:100}") long slowThresholdMillis,
+                                @Value("${calorietracker.sql-stats.top-size:20}") int topSize,
+                                @Value("${calorietracker.sql-stats.top-window:PT1H}") Duration topWindow,
+                                @Value("${calorietracker.sql-stats.max-sql:10}") int maxSql) {
+        this.dataSource = dataSource;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.topSize = topSize;
+        this.topWindowNanos = topWindow.toNanos();
+        this.maxSql = maxSql;
+        this.planLogger = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "slow-query-log");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Start attributing to a repository method, unless a call is already tracked on this thread
+     * @param method the repository and method name, e.g. MealRepository.findAll
+     * @param arguments the method arguments, kept for the slow query log
+     * @return true if this call is tracked and end must be called, false for a nested call
+     */
+    public boolean begin(String method, Object[] arguments) {
+        if (current.get() != null) {
+            return false;
+        }
+        current.set(new Invocation(method, arguments, System.nanoTime()));
+        return true;
+    }
+
+    /**
+     * Stop attributing and record the call started by begin on this thread
+     */
+    public void end() {
+        Invocation invocation = current.get();
+        current.remove();
+        long nanos = System.nanoTime() - invocation.started;
+        MethodCounters counters = methods.computeIfAbsent(invocation.method, key -> new MethodCounters());
+        counters.calls.increment();
+        counters.statements.add(invocation.statements);
+        counters.rows.add(invocation.rows);
+        counters.entityLoads.add(invocation.entityLoads);
+        counters.nanos.add(nanos);
+        counters.maxNanos.accumulate(nanos);
+        for (String sql : invocation.sql) {
+            if (counters.sql.size() >= maxSql) break;
+            counters.sql.add(sql);
+        }
+        if (nanos >= slowThresholdNanos) {
+            slow(invocation, nanos);
+        }
+    }
+
+    /**
+     * Called by Hibernate for every statement it prepares
+     * @param sql the statement
+     * @return the statement unchanged
+     */
+    @Override
+    public String inspect(String sql) {
+        Invocation invocation = current.get();
+        if (invocation != null) {
+            invocation.statements++;
+            if (invocation.sql.size() < maxSql && !invocation.sql.contains(sql)) {
+                invocation.sql.add(sql);
+            }
+        }
+        return sql;
+    }
+
+    //== called by AttributingStatistics on the thread running the query ==
+    void rowsReturned(int rows) {
+        Invocation invocation = current.get();
+        if (invocation != null) {
+            invocation.rows += rows;
+        }
+    }
+
+    void entityLoaded() {
+        Invocation invocation = current.get();
+        if (invocation != null) {
+            invocation.entityLoads++;
+        }
+    }
+
+    /**
+     * @return RepositoryMethodStats of every method called since startup, most total time first
+     */
+    public List<RepositoryMethodStats> getStats() {
+        List<RepositoryMethodStats> stats = new ArrayList<>(methods.size());
+        methods.forEach((method, counters) -> {
+            long calls = counters.calls.sum();
+            double totalMillis = counters.nanos.sum() / 1e6;
+            stats.add(new RepositoryMethodStats(method, calls, counters.statements.sum(), counters.rows.sum(),
+                    counters.entityLoads.sum(), calls == 0 ? 0 : totalMillis / calls,
+                    counters.maxNanos.get() / 1e6, totalMillis, List.copyOf(counters.sql)));
+        });
+        stats.sort(Comparator.comparingDouble(RepositoryMethodStats::totalMillis).reversed());
+        return stats;
+    }
+
+    /**
+     * @return List<SlowQuery> the slowest calls of the last top-window, slowest first
+     */
+    public List<SlowQuery> getSlowestQueries() {
+        synchronized (slowest) {
+            expire(System.nanoTime());
+            return slowest.stream()
+                    .sorted(Comparator.comparingLong(Slow::nanos).reversed())
+                    .map(Slow::query)
+                    .toList();
+        }
+    }
+
+    /**
+     * Forget the counters and the slowest calls
+     */
+    public void reset() {
+        methods.clear();
+        synchronized (slowest) {
+            slowest.clear();
+            slowestFloorNanos = 0;
+        }
+    }
+
+    /**
+     * Stop the slow query log thread, dropping the plans not yet logged
+     */
+    @PreDestroy
+    public void shutdown() {
+        planLogger.shutdownNow();
+    }
+
+    //== helpers ==
+
+    private void slow(Invocation invocation, long nanos) {
+        SlowQuery query = new SlowQuery(invocation.method, nanos / 1e6, invocation.statements, invocation.rows,
+                invocation.entityLoads, parameters(invocation.arguments), List.copyOf(invocation.sql), Instant.now());
+        rank(new Slow(query, nanos, System.nanoTime()));
+        try {
+            planLogger.execute(() -> logSlow(query, plans(query.sql())));
+        } catch (RejectedExecutionException e) {
+            logSlow(query, List.of("(plan skipped, slow query log is behind)"));
+        }
+    }
+
+    private void rank(Slow slow) {
+        if (slow.nanos() <= slowestFloorNanos) {
+            return;
+        }
+        synchronized (slowest) {
+            expire(slow.recorded());
+            if (slowest.size() >= topSize) {
+                Slow fastest = slowest.stream().min(Comparator.comparingLong(Slow::nanos)).orElseThrow();
+                if (fastest.nanos() >= slow.nanos()) {
+                    return;
+                }
+                slowest.remove(fastest);
+            }
+            slowest.add(slow);
+            slowestFloorNanos = slowest.size() < topSize ? 0
+                    : slowest.stream().mapToLong(Slow::nanos).min().orElse(0);
+        }
+    }
+
+    //== drop the calls older than the window, reopening the top-N to faster calls ==
+    private void expire(long now) {
+        if (slowest.removeIf(slow -> now - slow.recorded() > topWindowNanos)) {
+            slowestFloorNanos = 0;
+        }
+    }
+
+    private List<String> plans(List<String> statements) {
+        List<String> plans = new ArrayList<>();
+        for (String sql : statements) {
+            if (!sql.trim().toLowerCase(Locale.ROOT).startsWith("select")) continue;
+            //== the plan does not depend on the values here, every parameter is bound to null ==
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                int parameters = explain.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    explain.setNull(i, Types.NULL);
+                }
+                try (ResultSet plan = explain.executeQuery()) {
+                    StringBuilder text = new StringBuilder();
+                    while (plan.next()) {
+                        text.append(plan.getString(1));
+                    }
+                    plans.add(text.toString());
+                }
+            } catch (SQLException e) {
+                plans.add("(no plan: " + e.getMessage() + ")");
+            }
+        }
+        return plans;
+    }
+
+    private static void logSlow(SlowQuery query, List<String> plans) {
+        log.warn("Slow repository call {} took {} ms: {} statements, {} rows, {} entity loads, parameters {}\nSQL: {}\nPlan: {}",
+                query.method(), String.format(Locale.ROOT, "%.1f", query.millis()), query.statements(), query.rows(),
+                query.entityLoads(), query.parameters(), String.join("\n     ", query.sql()),
+                String.join("\n      ", plans));
+    }
+
+    private static String parameters(Object[] arguments) {
+        List<String> parameters = new ArrayList<>(arguments.length);
+        for (Object argument : arguments) {
+            String text = argument instanceof Collection<?> collection ? collection.size() + " items"
+                    : String.valueOf(argument);
+            parameters.add(text.length() > MAX_PARAMETER_LENGTH ? text.substring(0, MAX_PARAMETER_LENGTH) + "..." : text);
+        }
+        return parameters.toString();
+    }
+
+    // == nested classes ==
+
+    //== one tracked call, only touched by the thread running it ==
+    private static final class Invocation {
+        private final String method;
+        private final Object[] arguments;
+        private final long started;
+        private final List<String> sql = new ArrayList<>(2);
+        private int statements;
+        private long rows;
+        private long entityLoads;
+
+        private Invocation(String method, Object[] arguments, long started) {
+            this.method = method;
+            this.arguments = arguments;
+            this.started = started;
+        }
+    }
+
+    private static final class MethodCounters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder entityLoads = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final Set<String> sql = ConcurrentHashMap.newKeySet();
+    }
+
+    private record Slow(SlowQuery query, long nanos, long recorded) {
+    }
+}
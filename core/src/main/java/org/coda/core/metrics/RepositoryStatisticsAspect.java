@@ -0,0 +1,74 @@
+package org.coda.core.metrics;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Marks the repository method running on the current thread for RepositoryStatistics,
+ * enabled with calorietracker.sql-stats.enabled=true.
+ * Matches every method of the org.coda.core.repository repositories, the inherited
+ * JpaRepository methods such as findAll and saveAll included.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "calorietracker.sql-stats.enabled", havingValue = "true")
+public class RepositoryStatisticsAspect {
+
+    private static final Set<String> OBJECT_METHODS = Set.of("equals", "hashCode", "toString");
+
+    private final RepositoryStatistics statistics;
+
+    //== repository interface name per proxy class ==
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor based dependency injection
+     * @param statistics the counters the calls are attributed in
+     * @Autowired annotation to inject the RepositoryStatistics dependency
+     */
+    @Autowired
+    public RepositoryStatisticsAspect(RepositoryStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Attribute one repository call
+     * @param call the intercepted repository method
+     * @return Object the result of the call
+     * @throws Throwable whatever the call throws
+     */
+    @Around("execution(* org.coda.core.repository.*Repository+.*(..))")
+    public Object attribute(ProceedingJoinPoint call) throws Throwable {
+        String name = call.getSignature().getName();
+        if (OBJECT_METHODS.contains(name)
+                || !statistics.begin(repositoryName(call.getTarget().getClass()) + "." + name, call.getArgs())) {
+            return call.proceed();
+        }
+        try {
+            return call.proceed();
+        } finally {
+            statistics.end();
+        }
+    }
+
+    private String repositoryName(Class<?> proxyClass) {
+        return repositoryNames.computeIfAbsent(proxyClass, type -> {
+            for (Class<?> candidate : type.getInterfaces()) {
+                if (Repository.class.isAssignableFrom(candidate)
+                        && candidate.getPackageName().startsWith("org.coda.core.repository")) {
+                    return candidate.getSimpleName();
+                }
+            }
+            return type.getSimpleName();
+        });
+    }
+}
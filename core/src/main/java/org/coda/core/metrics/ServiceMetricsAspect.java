@@ -0,0 +1,82 @@
+package org.coda.core.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every public method of the services in org.coda.core.service, enabled with
+ * calorietracker.metrics.enabled=true (the default).
+ * Each call is recorded in the calorietracker.service timer tagged with the service class, the method,
+ * the outcome (success or error) and the exception class, so the timer counts give the call and error rates.
+ * The aspect runs outside the transaction advice: the recorded time includes the commit.
+ * Percentile histograms and expected value bounds are set with the management.metrics.distribution
+ * properties of the timer; methods returning a Stream are timed until the stream is returned, not consumed.
+ */
+@Aspect
+@Component
+@Order(0)
+@ConditionalOnProperty(name = "calorietracker.metrics.enabled", havingValue = "true")
+public class ServiceMetricsAspect {
+
+    public static final String TIMER = "calorietracker.service";
+
+    private final MeterRegistry registry;
+
+    //== one timer per method for the successful calls, looked up without building tags ==
+    private final Map<Method, Timer> successTimers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor based dependency injection
+     * @param registry the registry the timers are recorded in
+     * @Autowired annotation to inject the MeterRegistry dependency
+     */
+    @Autowired
+    public ServiceMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Time one service call
+     * @param call the intercepted public service method
+     * @return Object the result of the call
+     * @throws Throwable whatever the call throws, after it has been recorded
+     */
+    @Around("execution(public * org.coda.core.service.*.*(..))")
+    public Object time(ProceedingJoinPoint call) throws Throwable {
+        long started = System.nanoTime();
+        try {
+            Object result = call.proceed();
+            Method method = ((MethodSignature) call.getSignature()).getMethod();
+            successTimers.computeIfAbsent(method, key -> timer(call, "success", "none"))
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            timer(call, "error", e.getClass().getSimpleName())
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer timer(ProceedingJoinPoint call, String outcome, String exception) {
+        return Timer.builder(TIMER)
+                .description("Service method calls")
+                .tag("class", call.getSignature().getDeclaringType().getSimpleName())
+                .tag("method", call.getSignature().getName())
+                .tag("outcome", outcome)
+                .tag("exception", exception)
+                .register(registry);
+    }
+}
@@ -0,0 +1,33 @@
+package org.coda.core.metrics;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.spi.StatisticsFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hooks RepositoryStatistics into Hibernate when calorietracker.sql-stats.enabled=true:
+ * as the statement inspector, and through AttributingStatistics as the statistics implementation.
+ * Hibernate statistics are switched on for this, which adds a few counters to every statement.
+ */
+@Configuration
+@ConditionalOnProperty(name = "calorietracker.sql-stats.enabled", havingValue = "true")
+public class SqlStatisticsConfig {
+
+    /**
+     * Register the statement inspector and the statistics factory
+     * @param repositoryStatistics the per repository method counters
+     * @return HibernatePropertiesCustomizer applied when the entity manager factory is built
+     */
+    @Bean
+    public HibernatePropertiesCustomizer sqlStatisticsCustomizer(RepositoryStatistics repositoryStatistics) {
+        return properties -> {
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, repositoryStatistics);
+            properties.put(AvailableSettings.STATS_BUILDER,
+                    (StatisticsFactory) sessionFactory -> new AttributingStatistics(sessionFactory, repositoryStatistics));
+        };
+    }
+}
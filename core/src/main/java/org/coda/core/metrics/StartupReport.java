@@ -0,0 +1,147 @@
+package org.coda.core.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.projection.StartupStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Logs where the start of the application went once it is ready: the time to ready, the JVM uptime,
+ * the slowest startup phases and the beans that took the longest to instantiate themselves.
+ * The steps are only recorded when the application is started with buffering(), as the mains do;
+ * otherwise nothing is logged. Runs after the other ready listeners, whose work is part of the uptime.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "calorietracker.startup.report.enabled", havingValue = "true", matchIfMissing = true)
+public class StartupReport {
+
+    //== about two steps per bean, with room for the steps of the framework ==
+    private static final int CAPACITY = 10_000;
+
+    private static final String BEAN_STEP = "spring.beans.instantiate";
+
+    private final int top;
+
+    private volatile StartupStats stats;
+
+    /**
+     * Constructor based dependency injection
+     * @param top the number of phases and beans reported
+     * @Autowired annotation to inject the calorietracker.startup.report.top property
+     */
+    @Autowired
+    public StartupReport(@Value("${calorietracker.startup.report.top:15}") int top) {
+        this.top = top;
+    }
+
+    /**
+     * @return BufferingApplicationStartup to pass to SpringApplicationBuilder.applicationStartup
+     */
+    public static BufferingApplicationStartup buffering() {
+        return new BufferingApplicationStartup(CAPACITY);
+    }
+
+    /**
+     * @return StartupStats of the last start, empty when it was not recorded
+     */
+    public Optional<StartupStats> getStats() {
+        return Optional.ofNullable(stats);
+    }
+
+    /**
+     * Drain the recorded steps, summarize and log them
+     * @param event the ready event, with the ApplicationStartup of the context
+     * @EventListener annotation to report once the application is ready, after the other ready listeners
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void report(ApplicationReadyEvent event) {
+        if (!(event.getApplicationContext().getApplicationStartup() instanceof BufferingApplicationStartup startup)) {
+            return;
+        }
+        stats = summarize(startup.drainBufferedTimeline(), event.getTimeTaken(),
+                ManagementFactory.getRuntimeMXBean().getUptime());
+        StringBuilder report = new StringBuilder(String.format("Ready in %d ms, JVM up %d ms, %d beans instantiated",
+                stats.readyMillis(), stats.jvmUptimeMillis(), stats.beans()));
+        report.append(System.lineSeparator()).append("  slowest phases:");
+        stats.phases().forEach(phase -> report.append(System.lineSeparator()).append(String.format(
+                "    %8.1f ms  %s (%d)", phase.millis(), phase.name(), phase.steps())));
+        report.append(System.lineSeparator()).append("  slowest beans, self time (with dependencies):");
+        stats.slowestBeans().forEach(bean -> report.append(System.lineSeparator()).append(String.format(
+                "    %8.1f ms  %s (%.1f ms)", bean.selfMillis(), bean.name(), bean.totalMillis())));
+        log.info("{}", report);
+    }
+
+    //== helpers ==
+
+    StartupStats summarize(StartupTimeline timeline, Duration ready, long uptimeMillis) {
+        //== the time of the steps nested in each step, to take it out of the bean times ==
+        Map<Long, Duration> nested = new HashMap<>();
+        for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+            Long parent = event.getStartupStep().getParentId();
+            if (parent != null) {
+                nested.merge(parent, event.getDuration(), Duration::plus);
+            }
+        }
+        Map<String, double[]> phases = new LinkedHashMap<>();
+        List<StartupStats.Bean> beans = timeline.getEvents().stream()
+                .filter(event -> {
+                    StartupStep step = event.getStartupStep();
+                    if (step.getName().equals(BEAN_STEP)) {
+                        return true;
+                    }
+                    double[] phase = phases.computeIfAbsent(step.getName(), name -> new double[2]);
+                    phase[0]++;
+                    phase[1] += millis(event.getDuration());
+                    return false;
+                })
+                .map(event -> new StartupStats.Bean(beanName(event.getStartupStep()),
+                        millis(event.getDuration().minus(nested.getOrDefault(event.getStartupStep().getId(),
+                                Duration.ZERO))),
+                        millis(event.getDuration())))
+                .toList();
+        List<StartupStats.Phase> slowestPhases = phases.entrySet().stream()
+                .map(phase -> new StartupStats.Phase(phase.getKey(), (int) phase.getValue()[0], phase.getValue()[1]))
+                .sorted(Comparator.comparingDouble(StartupStats.Phase::millis).reversed())
+                .limit(top)
+                .toList();
+        List<StartupStats.Bean> slowestBeans = beans.stream()
+                .sorted(Comparator.comparingDouble(StartupStats.Bean::selfMillis).reversed())
+                .limit(top)
+                .toList();
+        return new StartupStats(ready == null ? 0 : ready.toMillis(), uptimeMillis, beans.size(), slowestPhases,
+                slowestBeans);
+    }
+
+    private static String beanName(StartupStep step) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if (tag.getKey().equals("beanName")) {
+                return tag.getValue();
+            }
+        }
+        return "?";
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1e6;
+    }
+}
@@ -0,0 +1,90 @@
+package org.coda.core.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.coda.core.analytics.IntakeColumnStore;
+import org.coda.core.ingest.IntakeWriteBehind;
+import org.coda.core.security.EmailBloomFilter;
+import org.coda.core.security.PasswordVerifier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the getStats counters of the password verifier, the write-behind queue, the email filter
+ * and the intake store as meters, read from the components at each scrape.
+ * Components that are not in the context (write-behind is opt-in) are skipped.
+ */
+@Component
+@ConditionalOnProperty(name = "calorietracker.metrics.enabled", havingValue = "true")
+public class StatsMeterBinder implements MeterBinder {
+
+    private final ObjectProvider<PasswordVerifier> passwordVerifier;
+
+    private final ObjectProvider<IntakeWriteBehind> writeBehind;
+
+    private final ObjectProvider<EmailBloomFilter> emailFilter;
+
+    private final ObjectProvider<IntakeColumnStore> intakeStore;
+
+    /**
+     * Constructor based dependency injection
+     * @param passwordVerifier the login hashing pool
+     * @param writeBehind the write-behind intake queue, when enabled
+     * @param emailFilter the registered email Bloom filter
+     * @param intakeStore the columnar intake store
+     * @Autowired annotation to inject the components whose stats are published
+     */
+    @Autowired
+    public StatsMeterBinder(ObjectProvider<PasswordVerifier> passwordVerifier,
+                            ObjectProvider<IntakeWriteBehind> writeBehind,
+                            ObjectProvider<EmailBloomFilter> emailFilter,
+                            ObjectProvider<IntakeColumnStore> intakeStore) {
+        this.passwordVerifier = passwordVerifier;
+        this.writeBehind = writeBehind;
+        this.emailFilter = emailFilter;
+        this.intakeStore = intakeStore;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        passwordVerifier.ifAvailable(verifier -> {
+            counter(registry, "calorietracker.login.verified", verifier, v -> v.getStats().verified());
+            counter(registry, "calorietracker.login.rejected.overloaded", verifier,
+                    v -> v.getStats().rejectedOverloaded());
+            counter(registry, "calorietracker.login.timed.out", verifier, v -> v.getStats().timedOut());
+            gauge(registry, "calorietracker.login.queue.depth", verifier, v -> v.getStats().queueDepth());
+            gauge(registry, "calorietracker.login.active.threads", verifier, v -> v.getStats().activeThreads());
+        });
+        writeBehind.ifAvailable(writer -> {
+            counter(registry, "calorietracker.intake.write.behind.enqueued", writer, w -> w.getStats().enqueued());
+            counter(registry, "calorietracker.intake.write.behind.rejected", writer, w -> w.getStats().rejected());
+            counter(registry, "calorietracker.intake.write.behind.written", writer, w -> w.getStats().written());
+            counter(registry, "calorietracker.intake.write.behind.failed", writer, w -> w.getStats().failed());
+            counter(registry, "calorietracker.intake.write.behind.batches", writer, w -> w.getStats().batches());
+            gauge(registry, "calorietracker.intake.write.behind.queue.depth", writer, w -> w.getStats().queueDepth());
+        });
+        emailFilter.ifAvailable(filter -> {
+            gauge(registry, "calorietracker.users.email.filter.fill", filter, f -> f.getStats().fill());
+            counter(registry, "calorietracker.users.email.filter.false.positives", filter,
+                    f -> f.getStats().falsePositives());
+        });
+        intakeStore.ifAvailable(store -> {
+            gauge(registry, "calorietracker.intake.store.entries", store, s -> s.getStats().entries());
+            gauge(registry, "calorietracker.intake.store.allocated.bytes", store, s -> s.getStats().allocatedBytes());
+        });
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, T source, ToDoubleFunction<T> count) {
+        FunctionCounter.builder(name, source, count).register(registry);
+    }
+
+    private static <T> void gauge(MeterRegistry registry, String name, T source, ToDoubleFunction<T> value) {
+        Gauge.builder(name, source, value).register(registry);
+    }
+}
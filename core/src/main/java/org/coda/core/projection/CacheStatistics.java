@@ -0,0 +1,18 @@
+package org.coda.core.projection;
+
+/**
+ * Hit, miss and put counters of one second-level cache region as reported by Hibernate,
+ * plus the number of explicit evictions requested by the services.
+ * Hibernate counters are zero when the second-level cache is disabled.
+ */
+public record CacheStatistics(String region, long hits, long misses, long puts,
+                             long evictions, long elementsInMemory) {
+
+    /**
+     * @return hits / (hits + misses), 0 when the region was never read
+     */
+    public double hitRatio() {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+}
@@ -0,0 +1,12 @@
+package org.coda.core.projection;
+
+import java.time.LocalDate;
+
+/**
+ * Calorie and macro totals of one user for one day, aggregated from the raw
+ * calorie_intake rows.
+ */
+public record DailyIntakeTotals(long userId, LocalDate intakeDate, double calories,
+                                double protein, double fat, double carbohydrates,
+                                long entryCount) {
+}
@@ -0,0 +1,15 @@
+package org.coda.core.projection;
+
+/**
+ * Sizing and counters of the registered email Bloom filter.
+ * @param configuredFalsePositiveRate the rate the filter was sized for
+ * @param estimatedFalsePositiveRate the rate implied by the current fill, fill ^ hashFunctions
+ * @param fill the fraction of bits set
+ * @param staleEntries emails removed since the last rebuild, still answering "might be registered"
+ * @param falsePositives lookups answered "might be registered" that the database did not confirm
+ */
+public record EmailFilterStats(boolean ready, long bits, int hashFunctions, long expectedEmails,
+                               double configuredFalsePositiveRate, double estimatedFalsePositiveRate,
+                               double fill, long staleEntries, long negativeLookups,
+                               long positiveLookups, long falsePositives) {
+}
@@ -0,0 +1,7 @@
+package org.coda.core.projection;
+
+/**
+ * A food matched by the type-ahead search, with its relevance between 0 and 1.
+ */
+public record FoodSearchHit(long id, String name, float score) {
+}
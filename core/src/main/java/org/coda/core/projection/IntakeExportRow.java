@@ -0,0 +1,11 @@
+package org.coda.core.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * One calorie_intake row of a user export with the names of its meal and food.
+ * The calories and macros are those of the food, or the meal totals when no food is attached.
+ */
+public record IntakeExportRow(long id, LocalDateTime dateTime, String meal, String food, String foodDetails,
+                              double calories, double protein, double fat, double carbohydrates) {
+}
@@ -0,0 +1,38 @@
+package org.coda.core.projection;
+
+import java.time.LocalDate;
+
+/**
+ * Calorie and macro totals of one user for one day, week or month, aggregated by the database.
+ * @param periodStart the first day of the period: the day, the Monday of the ISO week or the first of the month
+ * @param days the number of distinct days of the period with at least one intake
+ */
+public record IntakePeriodTotals(long userId, LocalDate periodStart, long entryCount, long days,
+                                 double calories, double protein, double fat, double carbohydrates) {
+
+    /**
+     * Constructor for the monthly query, which groups on the year and the month of the intake
+     * @param month the month of the year, 1 to 12
+     */
+    public IntakePeriodTotals(long userId, int year, int month, long entryCount, long days,
+                              double calories, double protein, double fat, double carbohydrates) {
+        this(userId, LocalDate.of(year, month, 1), entryCount, days, calories, protein, fat, carbohydrates);
+    }
+
+    /**
+     * @param other the totals of a later period of the same user
+     * @return the totals of both periods, starting at this one
+     */
+    public IntakePeriodTotals plus(IntakePeriodTotals other) {
+        return new IntakePeriodTotals(userId, periodStart, entryCount + other.entryCount, days + other.days,
+                calories + other.calories, protein + other.protein, fat + other.fat,
+                carbohydrates + other.carbohydrates);
+    }
+
+    /**
+     * @return the average calories of a day with intakes, 0 when there is none
+     */
+    public double averageCaloriesPerDay() {
+        return days == 0 ? 0 : calories / days;
+    }
+}
@@ -0,0 +1,27 @@
+package org.coda.core.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Calorie and macro totals of one user over a time range.
+ * @param from the start of the range, inclusive
+ * @param to the end of the range, exclusive
+ * @param days the number of distinct days with at least one intake
+ */
+public record IntakeRangeStats(long userId, LocalDateTime from, LocalDateTime to, long entryCount, long days,
+                               double calories, double protein, double fat, double carbohydrates) {
+
+    /**
+     * @return the average calories of one intake, 0 when there is none
+     */
+    public double averageCaloriesPerIntake() {
+        return entryCount == 0 ? 0 : calories / entryCount;
+    }
+
+    /**
+     * @return the average calories of a day with intakes, 0 when there is none
+     */
+    public double averageCaloriesPerDay() {
+        return days == 0 ? 0 : calories / days;
+    }
+}
@@ -0,0 +1,11 @@
+package org.coda.core.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * The values of one calorie_intake row needed by the columnar intake store:
+ * the values are the food, or the meal totals when no food is attached.
+ */
+public record IntakeRow(long id, long userId, LocalDateTime dateTime, double calories,
+                        double protein, double fat, double carbohydrates) {
+}
@@ -0,0 +1,10 @@
+package org.coda.core.projection;
+
+/**
+ * Size of the columnar intake store.
+ * @param enabled whether the store is switched on with calorietracker.intake-store.enabled
+ * @param ready whether the store has been loaded and answers queries
+ * @param allocatedBytes the size of the column arrays, including unused capacity
+ */
+public record IntakeStoreStats(boolean enabled, boolean ready, int users, long entries, long allocatedBytes) {
+}
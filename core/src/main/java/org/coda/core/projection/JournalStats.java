@@ -0,0 +1,22 @@
+package org.coda.core.projection;
+
+/**
+ * Size and activity of the intake journal.
+ * @param records the records in the segment files, live or not
+ * @param liveRecords the latest version of every intake that is not deleted
+ * @param deadRecords superseded versions, deleted intakes and tombstones, removed by the next compaction
+ * @param mappedBytes the size of the mapped segment files
+ * @param syncs the number of forces to disk
+ * @param syncedRecords the records made durable by those forces
+ * @param compactions the number of compactions since the journal was opened
+ */
+public record JournalStats(int segments, long records, long liveRecords, long deadRecords, long mappedBytes,
+                           long syncs, long syncedRecords, long compactions) {
+
+    /**
+     * @return the average number of records made durable by one force, the size of a commit group
+     */
+    public double recordsPerSync() {
+        return syncs == 0 ? 0 : (double) syncedRecords / syncs;
+    }
+}
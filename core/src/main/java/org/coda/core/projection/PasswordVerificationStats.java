@@ -0,0 +1,11 @@
+package org.coda.core.projection;
+
+/**
+ * Counters of the password verification executor since startup.
+ * Times are in milliseconds; means are 0 until the first verification.
+ */
+public record PasswordVerificationStats(long verified, long rejectedOverloaded, long timedOut,
+                                        double meanQueueWaitMillis, double maxQueueWaitMillis,
+                                        double meanHashMillis, double maxHashMillis,
+                                        int queueDepth, int activeThreads) {
+}
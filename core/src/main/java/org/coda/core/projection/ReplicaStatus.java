@@ -0,0 +1,12 @@
+package org.coda.core.projection;
+
+/**
+ * State of one read replica as last seen by the health check of ReadWriteRoutingDataSource.
+ * @param name the pool name of the replica
+ * @param healthy false when the last check or the last connection attempt failed
+ * @param lagMillis how far the replica is behind the primary, from its copy of the heartbeat; -1 when unknown
+ * @param eligible true when the replica is healthy and within the lag tolerance, so it takes read-only transactions
+ * @param reads the read-only transactions routed to the replica
+ */
+public record ReplicaStatus(String name, boolean healthy, long lagMillis, boolean eligible, long reads) {
+}
@@ -0,0 +1,15 @@
+package org.coda.core.projection;
+
+import java.util.List;
+
+/**
+ * Hibernate work attributed to one repository method since startup.
+ * Statements are the JDBC statements prepared, rows the rows returned by its queries,
+ * entity loads the entities and collections read from the database while the method ran.
+ * Times are the wall time of the calls in milliseconds, flushes they trigger included.
+ * @param sql the distinct statements the method generated, up to the configured number
+ */
+public record RepositoryMethodStats(String method, long calls, long statements, long rows,
+                                    long entityLoads, double meanMillis, double maxMillis,
+                                    double totalMillis, List<String> sql) {
+}
@@ -0,0 +1,13 @@
+package org.coda.core.projection;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * One repository call slower than calorietracker.sql-stats.slow-threshold-millis.
+ * @param parameters the arguments of the repository method, which are the values bound to its query
+ * @param sql the statements the call generated, in order, up to the configured number
+ */
+public record SlowQuery(String method, double millis, int statements, long rows, long entityLoads,
+                        String parameters, List<String> sql, Instant at) {
+}
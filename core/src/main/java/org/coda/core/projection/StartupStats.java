@@ -0,0 +1,28 @@
+package org.coda.core.projection;
+
+import java.util.List;
+
+/**
+ * Where the start of the application went, from the steps recorded by a BufferingApplicationStartup.
+ * @param readyMillis the time SpringApplication.run took until the context was ready
+ * @param jvmUptimeMillis the time since the JVM started, class loading and the ready listeners included
+ * @param beans the number of beans instantiated during the start
+ * @param phases the slowest startup phases other than bean instantiation, their steps summed by name
+ * @param slowestBeans the beans that took the longest to instantiate themselves, their dependencies excluded
+ */
+public record StartupStats(long readyMillis, long jvmUptimeMillis, int beans, List<Phase> phases,
+                           List<Bean> slowestBeans) {
+
+    /**
+     * @param steps the number of steps of that name
+     */
+    public record Phase(String name, int steps, double millis) {
+    }
+
+    /**
+     * @param selfMillis the instantiation time of the bean minus that of the beans created while it was
+     * @param totalMillis the instantiation time of the bean, its dependencies included
+     */
+    public record Bean(String name, double selfMillis, double totalMillis) {
+    }
+}
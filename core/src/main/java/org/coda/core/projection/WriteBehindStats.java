@@ -0,0 +1,12 @@
+package org.coda.core.projection;
+
+/**
+ * Counters of the write-behind intake queue since startup.
+ * Flush time is the duration of one batch transaction, commit lag the time from enqueue to commit.
+ * Times are in milliseconds; means are 0 until the first flush.
+ */
+public record WriteBehindStats(int queueDepth, int queueCapacity, long enqueued, long rejected,
+                               long written, long failed, long batches, double meanBatchSize,
+                               double meanFlushMillis, double maxFlushMillis,
+                               double meanCommitLagMillis, double maxCommitLagMillis) {
+}
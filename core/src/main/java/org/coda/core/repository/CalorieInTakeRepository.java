@@ -1,72 +1,312 @@
 package org.coda.core.repository;
 
+import jakarta.persistence.QueryHint;
 import org.coda.core.entities.CalorieInTake;
+import org.coda.core.projection.DailyIntakeTotals;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Time filters are expressed as half-open [from, to) ranges on date_time so that
+ * they stay sargable and are served by idx_calorie_intake_user_date_time (user_id, date_time).
+ */
+public interface CalorieInTakeRepository extends JpaRepository<CalorieInTake, Long>, StreamingQueries {
+
+    //== the values of an intake: the food, or the meal totals when no food is attached, as CalorieInTake computes them ==
+    String VALUES = "COALESCE(f.calories, m.totalCalories, 0), COALESCE(f.nutrition.protein, m.totalProtein, 0), " +
+            "COALESCE(f.nutrition.fat, m.totalFat, 0), COALESCE(f.nutrition.carbohydrates, m.totalCarbohydrates, 0)";
+
+    //== the sums of the aggregate queries ==
+    String TOTALS = "SUM(COALESCE(f.calories, m.totalCalories, 0)), " +
+            "SUM(COALESCE(f.nutrition.protein, m.totalProtein, 0)), SUM(COALESCE(f.nutrition.fat, m.totalFat, 0)), " +
+            "SUM(COALESCE(f.nutrition.carbohydrates, m.totalCarbohydrates, 0))";
+
+    //== the export values ==
+    String EXPORT_COLUMNS = "c.id, c.dateTime, m.name, f.name, f.details, " + VALUES;
 
-public interface CalorieInTakeRepository extends JpaRepository<CalorieInTake, Long> {
     /**
      * Method to find all calorieIntake by user id
+     * Loads meal and food with the history entity graph: one select regardless of the number of rows
      * @param userId: the id of the user
      * @Transactional annotation to read the calorieIntake from the database
      * @return List<CalorieInTake> if the calorieIntake are found
      */
 
-    @Query("SELECT c FROM CalorieInTake c WHERE c.user.id = :userId")
-    List<CalorieInTake> findAllCalorieIntakeByUser(@Param("id") long userId);
+    @EntityGraph(CalorieInTake.HISTORY_GRAPH)
+    @Query("SELECT c FROM calorie_intake c WHERE c.user.id = :userId ORDER BY c.dateTime")
+    List<CalorieInTake> findAllCalorieIntakeByUser(@Param("userId") long userId);
+
+    /**
+     * Method to find all calorieIntake logged in a time range
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<CalorieInTake> if the calorieIntake are found
+     */
+
+    @Query("SELECT c FROM calorie_intake c WHERE c.dateTime >= :from AND c.dateTime < :to ORDER BY c.dateTime")
+    List<CalorieInTake> findAllCalorieIntakeByDateTimeRange(@Param("from") LocalDateTime from,
+                                                           @Param("to") LocalDateTime to);
+
+    /**
+     * Method to find all calorieIntake of a user logged in a time range
+     * Loads meal and food with the history entity graph: one select regardless of the number of rows
+     * @param userId: the id of the user
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<CalorieInTake> if the calorieIntake are found
+     */
+
+    @EntityGraph(CalorieInTake.HISTORY_GRAPH)
+    @Query("SELECT c FROM calorie_intake c WHERE c.user.id = :userId " +
+            "AND c.dateTime >= :from AND c.dateTime < :to ORDER BY c.dateTime")
+    List<CalorieInTake> findAllCalorieIntakeByUserAndDateTimeRange(@Param("userId") long userId,
+                                                                  @Param("from") LocalDateTime from,
+                                                                  @Param("to") LocalDateTime to);
+
+    /**
+     * Method to read the calorieIntake of a user for the dashboard
+     * Loads user, meal and food with the dashboard entity graph: one select regardless of the number of rows
+     * @param userId: the id of the user
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<CalorieInTake> ordered by time if the calorieIntake are found
+     */
+
+    @EntityGraph(CalorieInTake.DASHBOARD_GRAPH)
+    @Query("SELECT c FROM calorie_intake c WHERE c.user.id = :userId " +
+            "AND c.dateTime >= :from AND c.dateTime < :to ORDER BY c.dateTime")
+    List<CalorieInTake> findDashboardCalorieIntake(@Param("userId") long userId,
+                                                   @Param("from") LocalDateTime from,
+                                                   @Param("to") LocalDateTime to);
 
     /**
      * Method to find all calorieIntake by date
      * @param date: the date of the calorieIntake
-     * @Transactional annotation to read the calorieIntake from the database
      * @return List<CalorieInTake> if the calorieIntake are found
      */
 
-    @Query("SELECT c FROM CalorieInTake c WHERE c.date = :date")
-    List<CalorieInTake> findAllCalorieIntakeByDate(@Param("date") LocalDate date);
+    default List<CalorieInTake> findAllCalorieIntakeByDate(LocalDate date) {
+        return findAllCalorieIntakeByDateTimeRange(date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
 
     /**
      * Method to find all calorieIntake by user id and date
      * @param userId: the id of the user
      * @param date: the date of the calorieIntake
-     * @Transactional annotation to read the calorieIntake from the database
      * @return List<CalorieInTake> if the calorieIntake are found
      */
 
-    @Query("SELECT c FROM CalorieInTake c WHERE c.user.id = :userId AND c.date = :date")
-    List<CalorieInTake> findAllCalorieIntakeByUserAndDate(@Param("id") long userId, @Param("date") LocalDate date);
+    default List<CalorieInTake> findAllCalorieIntakeByUserAndDate(long userId, LocalDate date) {
+        return findAllCalorieIntakeByUserAndDateTimeRange(userId, date.atStartOfDay(),
+                date.plusDays(1).atStartOfDay());
+    }
 
     /**
      * Method to find all calorieIntake by user id and date range
      * @param userId: the id of the user
-     * @param startDate: the start date of the calorieIntake
-     * @param endDate: the end date of the calorieIntake
-     * @Transactional annotation to read the calorieIntake from the database
+     * @param startDate: the first day of the range, inclusive
+     * @param endDate: the last day of the range, inclusive
      * @return List<CalorieInTake> if the calorieIntake are found
      */
 
-    @Query("SELECT c FROM CalorieInTake c WHERE c.user.id = :userId AND c.date BETWEEN :startDate AND :endDate")
-    List<CalorieInTake> findAllCalorieIntakeByUserAndDateRange(@Param("id") long userId,
-    @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    default List<CalorieInTake> findAllCalorieIntakeByUserAndDateRange(long userId, LocalDate startDate,
+                                                                       LocalDate endDate) {
+        return findAllCalorieIntakeByUserAndDateTimeRange(userId, startDate.atStartOfDay(),
+                endDate.plusDays(1).atStartOfDay());
+    }
 
     /**
-     * method to find all calorieIntake by user id and month.
-     * @param userId: the id of the user
-     * @param month: the month of the calorieIntake
-     * @Transactional annotation to read the calorieIntake from the database
-     * @return List<CalorieInTake> if the calorieIntake are found
+     * Method to read the first page of calorieIntake ordered by (dateTime, id)
+     * @param limit: the maximum number of calorieIntake to return
+     * @return List<CalorieInTake> ordered by dateTime then id
      */
+    @Query("SELECT c FROM calorie_intake c ORDER BY c.dateTime, c.id")
+    List<CalorieInTake> findFirstCalorieIntakePage(Limit limit);
 
-    @Query("SELECT c FROM CalorieInTake c WHERE c.user.id = :userId AND MONTH(c.date) = :month")
-    List<CalorieInTake> findAllCalorieIntakeByUserAndMonth(@Param("id") long userId, @Param("month") int month);
+    /**
+     * Method to read the next page of calorieIntake after a given (dateTime, id) position (keyset pagination).
+     * Served by idx_calorie_intake_date_time_id so every page costs the same regardless of how deep it is.
+     * @param dateTime: the dateTime of the last calorieIntake of the previous page
+     * @param id: the id of the last calorieIntake of the previous page
+     * @param limit: the maximum number of calorieIntake to return
+     * @return List<CalorieInTake> ordered by dateTime then id, empty when there are no more calorieIntake
+     */
+    @Query("SELECT c FROM calorie_intake c WHERE c.dateTime > :dateTime " +
+            "OR (c.dateTime = :dateTime AND c.id > :id) ORDER BY c.dateTime, c.id")
+    List<CalorieInTake> findCalorieIntakePageAfter(@Param("dateTime") LocalDateTime dateTime,
+                                                   @Param("id") long id, Limit limit);
 
+    /**
+     * Method to stream all calorieIntake ordered by (dateTime, id).
+     * Rows are fetched from the JDBC cursor in chunks of calorietracker.stream.fetch-size and loaded read-only.
+     * The stream must be consumed and closed inside a transaction.
+     * @return Stream<CalorieInTake> of all calorieIntake
+     */
+    default Stream<CalorieInTake> streamAllCalorieIntake() {
+        return streamQuery("SELECT c FROM calorie_intake c ORDER BY c.dateTime, c.id", CalorieInTake.class, true,
+                Map.of());
+    }
 
+    /**
+     * Method to stream the values of every calorieIntake, ordered by user then time, to load the intake store.
+     * An intake counts its food, or the meal totals when no food is attached; no entity is loaded.
+     * The stream must be consumed and closed inside a transaction.
+     * @return Stream<IntakeRow> of all calorieIntake that belong to a user
+     */
+    default Stream<IntakeRow> streamIntakeRows() {
+        return streamQuery("SELECT new org.coda.core.projection.IntakeRow(c.id, u.id, c.dateTime, " + VALUES + ") " +
+                "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m " +
+                "ORDER BY u.id, c.dateTime, c.id", IntakeRow.class, false, Map.of());
+    }
 
+    /**
+     * Method to read the values of every calorieIntake a change of a food can move: the intakes of the food
+     * and the intakes of the meals that contain it. Read before and after the change, the difference is what
+     * the change moved; no entity is loaded, so the values are those of the database even after native updates.
+     * @param foodId: the id of the food
+     * @return List<IntakeRow> of those calorieIntake that belong to a user
+     */
+    @Query("SELECT new org.coda.core.projection.IntakeRow(c.id, u.id, c.dateTime, " + VALUES + ") " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m " +
+            "WHERE f.id = :foodId OR m.id IN (SELECT fm.id FROM meal fm JOIN fm.foods ff WHERE ff.id = :foodId)")
+    List<IntakeRow> findIntakeRowsOfFood(@Param("foodId") long foodId);
+
+    /**
+     * Method to read the values of the intakes of a meal, for a change of the meal to be carried to them.
+     * No entity is loaded, so the values are those of the database even after native updates.
+     * @param mealId: the id of the meal
+     * @return List<IntakeRow> of those calorieIntake that belong to a user
+     */
+    @Query("SELECT new org.coda.core.projection.IntakeRow(c.id, u.id, c.dateTime, " + VALUES + ") " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f JOIN c.meal m WHERE m.id = :mealId")
+    List<IntakeRow> findIntakeRowsOfMeal(@Param("mealId") long mealId);
+
+    /**
+     * Method to read the stored values of one calorieIntake, as they are before an update.
+     * No entity is loaded and the persistence context is not flushed first, so changes made to a managed
+     * instance are not seen: the values are those the daily rollup was built from.
+     * @param id: the id of the calorieIntake
+     * @return Optional<IntakeRow> of the stored row, empty when it does not exist or belongs to no user
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "COMMIT"))
+    @Query("SELECT new org.coda.core.projection.IntakeRow(c.id, u.id, c.dateTime, " + VALUES + ") " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m WHERE c.id = :id")
+    Optional<IntakeRow> findIntakeRowById(@Param("id") long id);
 
+    /**
+     * Method to stream the export rows of a user ordered by (dateTime, id), without loading any entity.
+     * The stream must be consumed and closed inside a transaction.
+     * @param userId: the id of the user
+     * @return Stream<IntakeExportRow> of every calorieIntake of the user
+     */
+    default Stream<IntakeExportRow> streamExportRows(long userId) {
+        return streamQuery("SELECT new org.coda.core.projection.IntakeExportRow(" + EXPORT_COLUMNS + ") " +
+                "FROM calorie_intake c LEFT JOIN c.food f LEFT JOIN c.meal m " +
+                "WHERE c.user.id = :userId ORDER BY c.dateTime, c.id", IntakeExportRow.class, false,
+                Map.of("userId", userId));
+    }
 
+    /**
+     * Method to stream the export rows of a user after a given (dateTime, id) position, to resume an export
+     * @param userId: the id of the user
+     * @param dateTime: the dateTime of the last exported calorieIntake
+     * @param id: the id of the last exported calorieIntake
+     * @return Stream<IntakeExportRow> of the calorieIntake of the user after the position
+     */
+    default Stream<IntakeExportRow> streamExportRowsAfter(long userId, LocalDateTime dateTime, long id) {
+        return streamQuery("SELECT new org.coda.core.projection.IntakeExportRow(" + EXPORT_COLUMNS + ") " +
+                "FROM calorie_intake c LEFT JOIN c.food f LEFT JOIN c.meal m " +
+                "WHERE c.user.id = :userId AND (c.dateTime > :dateTime OR (c.dateTime = :dateTime AND c.id > :id)) " +
+                "ORDER BY c.dateTime, c.id", IntakeExportRow.class, false,
+                Map.of("userId", userId, "dateTime", dateTime, "id", id));
+    }
 
+    /**
+     * Method to aggregate every calorieIntake per user and day, to rebuild the daily rollup and to check it for drift.
+     * An intake counts its food, or the meal totals when no food is attached.
+     * @return List<DailyIntakeTotals> one entry per user and day that has intakes
+     */
+    @Query("SELECT new org.coda.core.projection.DailyIntakeTotals(u.id, cast(c.dateTime as LocalDate), " +
+            TOTALS + ", COUNT(c)) " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m " +
+            "GROUP BY u.id, cast(c.dateTime as LocalDate)")
+    List<DailyIntakeTotals> aggregateIntakeByUserAndDay();
+
+    /**
+     * Method to sum the calories and macros of a user over a time range in the database.
+     * An intake counts its food, or the meal totals when no food is attached; no entity is loaded.
+     * @param userId: the id of the user
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return Optional<IntakeRangeStats> of the range, empty when the user logged nothing in it
+     */
+    @Query("SELECT new org.coda.core.projection.IntakeRangeStats(u.id, :from, :to, COUNT(c), " +
+            "COUNT(DISTINCT cast(c.dateTime as LocalDate)), " + TOTALS + ") " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m " +
+            "WHERE u.id = :userId AND c.dateTime >= :from AND c.dateTime < :to GROUP BY u.id")
+    Optional<IntakeRangeStats> sumIntakeByUserAndDateTimeRange(@Param("userId") long userId,
+                                                               @Param("from") LocalDateTime from,
+                                                               @Param("to") LocalDateTime to);
+
+    /**
+     * Method to sum the calories and macros of every user over a time range in the database
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<IntakeRangeStats> one per user that logged intakes in the range, ordered by user id
+     */
+    @Query("SELECT new org.coda.core.projection.IntakeRangeStats(u.id, :from, :to, COUNT(c), " +
+            "COUNT(DISTINCT cast(c.dateTime as LocalDate)), " + TOTALS + ") " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m " +
+            "WHERE c.dateTime >= :from AND c.dateTime < :to GROUP BY u.id ORDER BY u.id")
+    List<IntakeRangeStats> sumIntakeByUser(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * Method to sum the calories and macros of a user for each day of a time range in the database
+     * @param userId: the id of the user
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<IntakePeriodTotals> one per day with intakes, ordered by day
+     */
+    @Query("SELECT new org.coda.core.projection.IntakePeriodTotals(u.id, cast(c.dateTime as LocalDate), COUNT(c), " +
+            "COUNT(DISTINCT cast(c.dateTime as LocalDate)), " + TOTALS + ") " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m " +
+            "WHERE u.id = :userId AND c.dateTime >= :from AND c.dateTime < :to " +
+            "GROUP BY u.id, cast(c.dateTime as LocalDate) ORDER BY cast(c.dateTime as LocalDate)")
+    List<IntakePeriodTotals> sumIntakeByUserAndDay(@Param("userId") long userId,
+                                                   @Param("from") LocalDateTime from,
+                                                   @Param("to") LocalDateTime to);
+
+    /**
+     * Method to sum the calories and macros of a user for each month of a time range in the database
+     * @param userId: the id of the user
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<IntakePeriodTotals> one per month with intakes, ordered by month
+     */
+    @Query("SELECT new org.coda.core.projection.IntakePeriodTotals(u.id, " +
+            "extract(year from c.dateTime), extract(month from c.dateTime), COUNT(c), " +
+            "COUNT(DISTINCT cast(c.dateTime as LocalDate)), " + TOTALS + ") " +
+            "FROM calorie_intake c JOIN c.user u LEFT JOIN c.food f LEFT JOIN c.meal m " +
+            "WHERE u.id = :userId AND c.dateTime >= :from AND c.dateTime < :to " +
+            "GROUP BY u.id, extract(year from c.dateTime), extract(month from c.dateTime) " +
+            "ORDER BY extract(year from c.dateTime), extract(month from c.dateTime)")
+    List<IntakePeriodTotals> sumIntakeByUserAndMonth(@Param("userId") long userId,
+                                                     @Param("from") LocalDateTime from,
+                                                     @Param("to") LocalDateTime to);
 }
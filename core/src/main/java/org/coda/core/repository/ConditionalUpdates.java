@@ -0,0 +1,120 @@
+package org.coda.core.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Read-modify-write of a versioned entity without holding a transaction or a row lock across the change.
+ * The entity is read, changed in memory, and written back by one conditional UPDATE that only matches the
+ * version it was read at (updateIfUnchanged of the repositories). When another writer got there first the
+ * UPDATE matches no row: the entity is read again and the change applied to the fresh copy, after a short
+ * randomized back-off, up to calorietracker.update.max-attempts times in all.
+ * Each write runs in a transaction of its own, joined by whatever the write does besides the UPDATE;
+ * no transaction is held while the change is applied or during the back-off.
+ * The change must therefore be a function of the entity it is given, e.g. add to a value rather than set
+ * a value computed before the read.
+ */
+@Slf4j
+@Component
+public class ConditionalUpdates {
+
+    //== the back-off before retry n is a random wait of up to n times this ==
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int maxAttempts;
+
+    private final LongAdder conflicts = new LongAdder();
+
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * Constructor based dependency injection
+     * @param transactionManager to run every write in a read-write transaction of its own
+     * @param maxAttempts the attempts of each update, the first one included
+     * @Autowired annotation to inject the PlatformTransactionManager dependency
+     */
+    @Autowired
+    public ConditionalUpdates(PlatformTransactionManager transactionManager,
+                              @Value("${calorietracker.update.max-attempts:3}") int maxAttempts) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Apply a change to an entity with bounded retry on conflicts
+     * @param entity the name of the entity, for the conflict report
+     * @param id the id of the entity
+     * @param read reads the current entity with its version, not from a replica
+     * @param change changes the entity read, called again on every retry
+     * @param write the conditional UPDATE, returning the rows it changed; rolled back if it throws
+     * @return Optional<T> the entity as written, its version left at the one it was read at;
+     * empty Optional when there is no entity with the id
+     * @throws ConcurrentUpdateException if every attempt conflicted with another writer
+     */
+    public <T> Optional<T> apply(String entity, long id, LongFunction<Optional<T>> read, Consumer<T> change,
+                                 ToIntFunction<T> write) {
+        for (int attempt = 1; ; attempt++) {
+            Optional<T> current = read.apply(id);
+            if (current.isEmpty()) {
+                return Optional.empty();
+            }
+            T value = current.get();
+            change.accept(value);
+            Integer written = transactionTemplate.execute(status -> write.applyAsInt(value));
+            if (written != null && written > 0) {
+                return current;
+            }
+            conflicts.increment();
+            if (attempt >= maxAttempts) {
+                //== no row matched: deleted meanwhile, or changed by another writer ==
+                if (read.apply(id).isEmpty()) {
+                    return Optional.empty();
+                }
+                exhausted.increment();
+                log.warn("Update of {} {} conflicted {} times, giving up", entity, id, attempt);
+                throw new ConcurrentUpdateException(
+                        entity + " " + id + " was updated concurrently, retried " + (attempt - 1) + " times");
+            }
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(attempt * BACKOFF_NANOS));
+        }
+    }
+
+    /**
+     * @return the conditional updates that found the entity changed since it was read, retried or not
+     */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    /**
+     * @return the updates given up with a ConcurrentUpdateException
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * @return the attempts of each update, the first one included
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,54 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.QueryHint;
+import org.coda.core.entities.DailyIntakeSummary;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+
+@Repository
+public interface DailyIntakeSummaryRepository extends JpaRepository<DailyIntakeSummary, DailyIntakeSummary.Key> {
+
+    /**
+     * Method to add a delta to the rollup row of a user and day, creating the row if it does not exist yet.
+     * A single MERGE keeps concurrent writers of the same day from racing on the insert.
+     * Only daily_intake_summary is declared as touched, so second-level cache regions are not invalidated.
+     * @param userId: the id of the user
+     * @param intakeDate: the day of the intake
+     * @param calories, protein, fat, carbohydrates: the (possibly negative) deltas to apply
+     * @param entryCount: +1 for an added intake, -1 for a removed one
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "daily_intake_summary"))
+    @Query(value = "MERGE INTO daily_intake_summary s " +
+            "USING (SELECT CAST(:userId AS BIGINT) AS user_id, CAST(:intakeDate AS DATE) AS intake_date) v " +
+            "ON s.user_id = v.user_id AND s.intake_date = v.intake_date " +
+            "WHEN MATCHED THEN UPDATE SET calories = s.calories + :calories, protein = s.protein + :protein, " +
+            "fat = s.fat + :fat, carbohydrates = s.carbohydrates + :carbohydrates, " +
+            "entry_count = s.entry_count + :entryCount " +
+            "WHEN NOT MATCHED THEN INSERT (user_id, intake_date, calories, protein, fat, carbohydrates, entry_count) " +
+            "VALUES (v.user_id, v.intake_date, :calories, :protein, :fat, :carbohydrates, :entryCount)",
+            nativeQuery = true)
+    void applyDelta(@Param("userId") long userId, @Param("intakeDate") LocalDate intakeDate,
+                    @Param("calories") double calories, @Param("protein") double protein,
+                    @Param("fat") double fat, @Param("carbohydrates") double carbohydrates,
+                    @Param("entryCount") long entryCount);
+
+    /**
+     * Method to remove the rollup row of a user and day once its last intake has been deleted.
+     * Only that row is touched, so concurrent writers of other days are never blocked.
+     * @param userId: the id of the user
+     * @param intakeDate: the day of the removed intake
+     * @return the number of rows removed, 0 while the day still has intakes
+     */
+    @Modifying
+    @Query("DELETE FROM daily_intake_summary s WHERE s.id.userId = :userId AND s.id.intakeDate = :intakeDate " +
+            "AND s.entryCount <= 0")
+    int deleteIfEmpty(@Param("userId") long userId, @Param("intakeDate") LocalDate intakeDate);
+}
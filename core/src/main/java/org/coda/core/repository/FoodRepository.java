@@ -1,17 +1,93 @@
 package org.coda.core.repository;
 
+import jakarta.persistence.QueryHint;
 import org.coda.core.entities.Food;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
-public interface FoodRepository extends JpaRepository<Food, Long> {
+public interface FoodRepository extends JpaRepository<Food, Long>, StreamingQueries {
+
+    //== the query space of updateIfUnchanged: declaring the food table would clear the whole food cache region ==
+    String CONDITIONAL_UPDATE_SPACE = "food_conditional_update";
+
     @Query("SELECT f FROM food f WHERE f.calories > :threshold")
-    List<Food> findAllFoodsWithHighCalories(int threshold);
+    List<Food> findAllFoodsWithHighCalories(@Param("threshold") int threshold);
+
+    /**
+     * Method to read a food for a conditional update.
+     * findById in a read-write transaction, so with calorietracker.replicas.enabled it reads the primary
+     * the update is checked against.
+     * @param id: the id of the food
+     * @return Optional<Food> if the food is found otherwise return empty Optional food object
+     */
+    @Transactional
+    default Optional<Food> findCurrentById(long id) {
+        return findById(id);
+    }
 
+    /**
+     * Method to update a food in one statement, only if nobody updated it since it was read (optimistic locking).
+     * Writes the name, details, nutrition and calories and increments the stored version;
+     * the food object is left as it is.
+     * @param food: the values to write, with the id and the version the food was read at
+     * @return 1 if the food was updated, 0 if it does not exist or was updated since
+     */
+    @Transactional
+    default int updateIfUnchanged(Food food) {
+        Food.Nutrition nutrition = food.getNutrition();
+        return updateIfUnchanged(food.getId(), food.getVersion(), food.getName(), food.getDetails(),
+                nutrition == null ? null : nutrition.getProtein(), nutrition == null ? null : nutrition.getFat(),
+                nutrition == null ? null : nutrition.getCarbohydrates(), food.getCalories());
+    }
 
+    /**
+     * Method behind updateIfUnchanged(Food), with plain parameters: native SQL, which Spring Data does not
+     * parse again on every call as it does JPQL, bound without SpEL, which costs as much as the statement
+     * itself on an embedded database. The declared space is not mapped by any entity, so the statement
+     * invalidates no cache region: the caller evicts the one food it updated with SecondLevelCacheSupport.evictFood.
+     * @return 1 if the food was updated, 0 if it does not exist or is not at the version
+     */
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CONDITIONAL_UPDATE_SPACE))
+    @Query(value = "UPDATE food SET name = :name, details = :details, protein = :protein, fat = :fat, " +
+            "carbohydrates = :carbohydrates, calories = :calories, version = version + 1 " +
+            "WHERE id = :id AND version = :version",
+            nativeQuery = true)
+    int updateIfUnchanged(@Param("id") long id, @Param("version") long version, @Param("name") String name,
+                          @Param("details") String details, @Param("protein") Float protein,
+                          @Param("fat") Float fat, @Param("carbohydrates") Float carbohydrates,
+                          @Param("calories") double calories);
 
+    /**
+     * Method to read the next page of foods after a given id (keyset pagination).
+     * Seeks on the primary key so every page costs the same regardless of how deep it is.
+     * @param id: the id of the last food of the previous page, 0 for the first page
+     * @param limit: the maximum number of foods to return
+     * @return List<Food> ordered by id, empty when there are no more foods
+     */
+    List<Food> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
 
+    /**
+     * Method to stream all foods ordered by id.
+     * Rows are fetched from the JDBC cursor in chunks of calorietracker.stream.fetch-size and loaded read-only.
+     * The stream must be consumed and closed inside a transaction.
+     * @return Stream<Food> of all foods
+     */
+    default Stream<Food> streamAllFoods() {
+        return streamQuery("SELECT f FROM food f ORDER BY f.id", Food.class, true, Map.of());
+    }
 }
@@ -0,0 +1,137 @@
+package org.coda.core.repository;
+
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.projection.DailyIntakeTotals;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * The sums and projections of the CalorieInTakeRepository queries computed from loaded intakes,
+ * for the repositories that do not keep calorie_intake in the database.
+ * The rules are those of the JPA queries: an intake counts its food, or the meal totals when no food is attached.
+ */
+public final class IntakeAggregates {
+
+    private IntakeAggregates() {}
+
+    /**
+     * @param userId the id of the user
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, exclusive
+     * @param intakes the intakes of the user in the range
+     * @return Optional<IntakeRangeStats> of the range, empty when there are no intakes
+     */
+    public static Optional<IntakeRangeStats> sum(long userId, LocalDateTime from, LocalDateTime to,
+                                                 Stream<CalorieInTake> intakes) {
+        Totals totals = new Totals();
+        intakes.forEach(totals::add);
+        if (totals.count == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new IntakeRangeStats(userId, from, to, totals.count, totals.days.size(),
+                totals.calories, totals.protein, totals.fat, totals.carbohydrates));
+    }
+
+    /**
+     * @param userId the id of the user
+     * @param intakes the intakes of the user in the range
+     * @param period the first day of the period of a day, identity for days
+     * @return List<IntakePeriodTotals> one per period with intakes, ordered by period
+     */
+    public static List<IntakePeriodTotals> sumByPeriod(long userId, Stream<CalorieInTake> intakes,
+                                                       UnaryOperator<LocalDate> period) {
+        Map<LocalDate, Totals> periods = new TreeMap<>();
+        intakes.forEach(intake -> periods.computeIfAbsent(period.apply(intake.getIntakeDate()), start -> new Totals())
+                .add(intake));
+        List<IntakePeriodTotals> totals = new ArrayList<>(periods.size());
+        periods.forEach((start, sums) -> totals.add(new IntakePeriodTotals(userId, start, sums.count,
+                sums.days.size(), sums.calories, sums.protein, sums.fat, sums.carbohydrates)));
+        return totals;
+    }
+
+    /**
+     * @param intakes the intakes of every user
+     * @return List<DailyIntakeTotals> one per user and day with intakes, intakes without a user are not counted
+     */
+    public static List<DailyIntakeTotals> sumByUserAndDay(Stream<CalorieInTake> intakes) {
+        Map<UserDay, Totals> days = new TreeMap<>();
+        intakes.filter(intake -> intake.getUser() != null)
+                .forEach(intake -> days.computeIfAbsent(new UserDay(intake.getUser().getId(),
+                        intake.getIntakeDate()), key -> new Totals()).add(intake));
+        List<DailyIntakeTotals> totals = new ArrayList<>(days.size());
+        days.forEach((key, sums) -> totals.add(new DailyIntakeTotals(key.userId(), key.intakeDate(),
+                sums.calories, sums.protein, sums.fat, sums.carbohydrates, sums.count)));
+        return totals;
+    }
+
+    /**
+     * @param intake an intake with a user
+     * @return IntakeRow with the values of the intake
+     */
+    public static IntakeRow row(CalorieInTake intake) {
+        return new IntakeRow(intake.getId(), intake.getUser().getId(), intake.getDateTime(),
+                intake.calculateCalories(), intake.calculateProtein(), intake.calculateFat(),
+                intake.calculateCarbohydrates());
+    }
+
+    /**
+     * @param intake the intake to export
+     * @return IntakeExportRow with the names and the values of the food, or the meal totals when no food is attached
+     */
+    public static IntakeExportRow exportRow(CalorieInTake intake) {
+        Meal meal = intake.getMeal();
+        Food food = intake.getFood();
+        return new IntakeExportRow(intake.getId(), intake.getDateTime(),
+                meal != null ? meal.getName() : null,
+                food != null ? food.getName() : null,
+                food != null ? food.getDetails() : null,
+                intake.calculateCalories(), intake.calculateProtein(), intake.calculateFat(),
+                intake.calculateCarbohydrates());
+    }
+
+    // == nested classes ==
+
+    private record UserDay(long userId, LocalDate intakeDate)
+            implements Comparable<UserDay> {
+
+        @Override
+        public int compareTo(UserDay other) {
+            int byUser = Long.compare(userId, other.userId);
+            return byUser != 0 ? byUser : intakeDate.compareTo(other.intakeDate);
+        }
+    }
+
+    private static final class Totals {
+        private final Set<LocalDate> days = new HashSet<>();
+        private long count;
+        private double calories;
+        private double protein;
+        private double fat;
+        private double carbohydrates;
+
+        private void add(CalorieInTake intake) {
+            days.add(intake.getIntakeDate());
+            count++;
+            calories += intake.calculateCalories();
+            protein += intake.calculateProtein();
+            fat += intake.calculateFat();
+            carbohydrates += intake.calculateCarbohydrates();
+        }
+    }
+}
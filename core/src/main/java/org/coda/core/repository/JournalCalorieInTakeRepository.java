@@ -0,0 +1,569 @@
+package org.coda.core.repository;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.coda.core.journal.IntakeJournal;
+import org.coda.core.journal.IntakeRecord;
+import org.coda.core.projection.DailyIntakeTotals;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.coda.core.projection.JournalStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * CalorieInTakeRepository kept in an IntakeJournal instead of the calorie_intake table,
+ * enabled with calorietracker.intake.storage=journal for write heavy deployments.
+ * Meals, foods and users stay in the database and are loaded with the EntityManager when an intake is read,
+ * so the intakes handed out look like the ones of the JPA repository. Sums are computed with IntakeAggregates
+ * from the journal index, with the same rules as the JPA queries.
+ * Inside a transaction the journal is synced before the commit, so all the intakes of a transaction share one
+ * force, and a rollback appends the versions that undo its writes. Outside a transaction every write is synced.
+ * Writes are visible to other readers before the commit, and nothing checks that the meal, food or user exists.
+ * Sorting and paging follow the (dateTime, id) index, other orders sort the loaded intakes;
+ * query by example is not supported.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "calorietracker.intake.storage", havingValue = "journal")
+@Profile("!memory")
+public class JournalCalorieInTakeRepository implements CalorieInTakeRepository {
+
+    private final EntityManager entityManager;
+
+    private final IntakeJournal journal;
+
+    /**
+     * Constructor based dependency injection
+     * @param entityManager to load the meal, food and user of the intakes
+     * @param directory the directory of the journal segment files
+     * @param segmentBytes the size of a segment file
+     * @param force whether commits force the journal to disk
+     * @param compactionRatio the share of dead records that triggers a compaction
+     * @Autowired annotation to inject the EntityManager and the calorietracker.journal properties
+     */
+    @Autowired
+    public JournalCalorieInTakeRepository(EntityManager entityManager,
+                                          @Value("${calorietracker.journal.directory:intake-journal}") Path directory,
+                                          @Value("${calorietracker.journal.segment-bytes:67108864}") int segmentBytes,
+                                          @Value("${calorietracker.journal.force:true}") boolean force,
+                                          @Value("${calorietracker.journal.compaction-ratio:0.5}") double compactionRatio) {
+        this.entityManager = entityManager;
+        this.journal = new IntakeJournal(directory, segmentBytes, force, compactionRatio);
+    }
+
+    /**
+     * @return JournalStats with the size of the journal and its group commits
+     */
+    public JournalStats getStats() {
+        return journal.getStats();
+    }
+
+    /**
+     * Compact the journal now instead of waiting for the dead records to reach the compaction ratio
+     */
+    public void compact() {
+        journal.compact();
+    }
+
+    /**
+     * Force the journal to disk and close it
+     */
+    @PreDestroy
+    public void close() {
+        journal.close();
+    }
+
+    //== writes ==
+
+    @Override
+    public <S extends CalorieInTake> S save(S entity) {
+        append(entity);
+        sync();
+        return entity;
+    }
+
+    @Override
+    public <S extends CalorieInTake> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        for (S entity : entities) {
+            append(entity);
+            saved.add(entity);
+        }
+        sync();
+        return saved;
+    }
+
+    @Override
+    public <S extends CalorieInTake> S saveAndFlush(S entity) {
+        return save(entity);
+    }
+
+    @Override
+    public <S extends CalorieInTake> List<S> saveAllAndFlush(Iterable<S> entities) {
+        return saveAll(entities);
+    }
+
+    @Override
+    public void flush() {
+        journal.sync();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        remove(id);
+        sync();
+    }
+
+    @Override
+    public void delete(CalorieInTake entity) {
+        deleteById(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> ids) {
+        for (Long id : ids) {
+            remove(id);
+        }
+        sync();
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends CalorieInTake> entities) {
+        for (CalorieInTake entity : entities) {
+            remove(entity.getId());
+        }
+        sync();
+    }
+
+    @Override
+    public void deleteAllInBatch(Iterable<CalorieInTake> entities) {
+        deleteAll(entities);
+    }
+
+    @Override
+    public void deleteAllByIdInBatch(Iterable<Long> ids) {
+        deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+        List<IntakeRecord> previous = undoLog() == null ? List.of() : journal.all().toList();
+        journal.clear();
+        logUndo(() -> previous.forEach(journal::append));
+        sync();
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        deleteAll();
+    }
+
+    //== reads by id ==
+
+    @Override
+    public Optional<CalorieInTake> findById(Long id) {
+        return journal.find(id).map(new Resolver()::intake);
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return journal.find(id).isPresent();
+    }
+
+    @Override
+    public List<CalorieInTake> findAllById(Iterable<Long> ids) {
+        Resolver resolver = new Resolver();
+        List<CalorieInTake> found = new ArrayList<>();
+        for (Long id : ids) {
+            journal.find(id).map(resolver::intake).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    @Override
+    public CalorieInTake getReferenceById(Long id) {
+        return findById(id).orElseThrow(() -> new EntityNotFoundException("No calorie_intake with id " + id));
+    }
+
+    @Override
+    @Deprecated
+    public CalorieInTake getOne(Long id) {
+        return getReferenceById(id);
+    }
+
+    @Override
+    @Deprecated
+    public CalorieInTake getById(Long id) {
+        return getReferenceById(id);
+    }
+
+    @Override
+    public long count() {
+        return journal.count();
+    }
+
+    @Override
+    public List<CalorieInTake> findAll() {
+        return intakes(journal.all()).toList();
+    }
+
+    //== the queries of CalorieInTakeRepository, answered from the journal index ==
+
+    @Override
+    public List<CalorieInTake> findAllCalorieIntakeByUser(long userId) {
+        return intakes(journal.byUser(userId)).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findAllCalorieIntakeByDateTimeRange(LocalDateTime from, LocalDateTime to) {
+        return intakes(journal.between(from, to)).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findAllCalorieIntakeByUserAndDateTimeRange(long userId, LocalDateTime from,
+                                                                         LocalDateTime to) {
+        return intakes(journal.byUser(userId, from, to)).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findDashboardCalorieIntake(long userId, LocalDateTime from, LocalDateTime to) {
+        return findAllCalorieIntakeByUserAndDateTimeRange(userId, from, to);
+    }
+
+    @Override
+    public List<CalorieInTake> findFirstCalorieIntakePage(Limit limit) {
+        return intakes(limited(journal.all(), limit)).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findCalorieIntakePageAfter(LocalDateTime dateTime, long id, Limit limit) {
+        return intakes(limited(journal.after(dateTime, id), limit)).toList();
+    }
+
+    @Override
+    public Stream<CalorieInTake> streamAllCalorieIntake() {
+        return intakes(journal.all());
+    }
+
+    @Override
+    public Stream<IntakeRow> streamIntakeRows() {
+        Resolver resolver = new Resolver();
+        return journal.users().stream()
+                .flatMap(journal::byUser)
+                .map(record -> IntakeAggregates.row(resolver.intake(record)));
+    }
+
+    //== the journal has no meal index: the records are scanned, as rarely as meals are edited ==
+    @Override
+    public List<IntakeRow> findIntakeRowsOfMeal(long mealId) {
+        Resolver resolver = new Resolver();
+        return journal.all()
+                .filter(record -> record.userId() != 0 && record.mealId() == mealId)
+                .map(record -> IntakeAggregates.row(resolver.intake(record)))
+                .toList();
+    }
+
+    @Override
+    public Optional<IntakeRow> findIntakeRowById(long id) {
+        return journal.find(id)
+                .filter(record -> record.userId() != 0)
+                .map(record -> IntakeAggregates.row(new Resolver().intake(record)));
+    }
+
+    //== the journal has no food index: the records are scanned, as rarely as foods are edited ==
+    @Override
+    public List<IntakeRow> findIntakeRowsOfFood(long foodId) {
+        Set<Long> meals = new HashSet<>(entityManager
+                .createQuery("SELECT m.id FROM meal m JOIN m.foods f WHERE f.id = :foodId", Long.class)
+                .setParameter("foodId", foodId)
+                .getResultList());
+        Resolver resolver = new Resolver();
+        return journal.all()
+                .filter(record -> record.userId() != 0)
+                .filter(record -> record.foodId() == foodId || meals.contains(record.mealId()))
+                .map(record -> IntakeAggregates.row(resolver.intake(record)))
+                .toList();
+    }
+
+    @Override
+    public Stream<IntakeExportRow> streamExportRows(long userId) {
+        return exportRows(journal.byUser(userId));
+    }
+
+    @Override
+    public Stream<IntakeExportRow> streamExportRowsAfter(long userId, LocalDateTime dateTime, long id) {
+        return exportRows(journal.byUserAfter(userId, dateTime, id));
+    }
+
+    @Override
+    public List<DailyIntakeTotals> aggregateIntakeByUserAndDay() {
+        return IntakeAggregates.sumByUserAndDay(intakes(journal.all()));
+    }
+
+    @Override
+    public Optional<IntakeRangeStats> sumIntakeByUserAndDateTimeRange(long userId, LocalDateTime from,
+                                                                      LocalDateTime to) {
+        return IntakeAggregates.sum(userId, from, to, intakes(journal.byUser(userId, from, to)));
+    }
+
+    @Override
+    public List<IntakeRangeStats> sumIntakeByUser(LocalDateTime from, LocalDateTime to) {
+        Resolver resolver = new Resolver();
+        List<IntakeRangeStats> stats = new ArrayList<>();
+        for (long userId : journal.users()) {
+            IntakeAggregates.sum(userId, from, to, journal.byUser(userId, from, to).map(resolver::intake))
+                    .ifPresent(stats::add);
+        }
+        return stats;
+    }
+
+    @Override
+    public List<IntakePeriodTotals> sumIntakeByUserAndDay(long userId, LocalDateTime from, LocalDateTime to) {
+        return IntakeAggregates.sumByPeriod(userId, intakes(journal.byUser(userId, from, to)),
+                UnaryOperator.identity());
+    }
+
+    @Override
+    public List<IntakePeriodTotals> sumIntakeByUserAndMonth(long userId, LocalDateTime from, LocalDateTime to) {
+        return IntakeAggregates.sumByPeriod(userId, intakes(journal.byUser(userId, from, to)),
+                day -> day.withDayOfMonth(1));
+    }
+
+    //== query by example, sorting and paging need a query engine the journal does not have ==
+
+    @Override
+    public List<CalorieInTake> findAll(Sort sort) {
+        return sorted(sort).toList();
+    }
+
+    @Override
+    public Page<CalorieInTake> findAll(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(findAll(pageable.getSort()));
+        }
+        List<CalorieInTake> content = sorted(pageable.getSort())
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .toList();
+        return PageableExecutionUtils.getPage(content, pageable, journal::count);
+    }
+
+    @Override
+    public <T> Stream<T> streamQuery(String jpql, Class<T> type, boolean readOnly, Map<String, ?> parameters) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends CalorieInTake> Optional<S> findOne(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends CalorieInTake> List<S> findAll(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends CalorieInTake> List<S> findAll(Example<S> example, Sort sort) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends CalorieInTake> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends CalorieInTake> long count(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends CalorieInTake> boolean exists(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends CalorieInTake, R> R findBy(Example<S> example,
+                                                 Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw unsupported();
+    }
+
+    //== helpers ==
+
+    private IntakeRecord append(CalorieInTake entity) {
+        Optional<IntakeRecord> previous = entity.getId() == 0 ? Optional.empty() : journal.find(entity.getId());
+        IntakeRecord stored = journal.append(new IntakeRecord(previous.map(IntakeRecord::id).orElse(0L),
+                entity.getUser() == null ? 0 : saved(entity.getUser().getId(), "user"),
+                entity.getMeal() == null ? 0 : saved(entity.getMeal().getId(), "meal"),
+                entity.getFood() == null ? 0 : saved(entity.getFood().getId(), "food"),
+                entity.getDateTime(), entity.getUuid()));
+        entity.setId(stored.id());
+        if (previous.isPresent()) {
+            logUndo(() -> journal.append(previous.get()));
+        } else {
+            logUndo(() -> journal.delete(stored.id()));
+        }
+        return stored;
+    }
+
+    private void remove(long id) {
+        Optional<IntakeRecord> previous = journal.find(id);
+        if (previous.isPresent() && journal.delete(id)) {
+            logUndo(() -> journal.append(previous.get()));
+        }
+    }
+
+    //== the journal keeps ids only, a transient association would be lost ==
+    private static long saved(long id, String association) {
+        if (id == 0) {
+            throw new IllegalArgumentException("The " + association + " of an intake must be saved before it");
+        }
+        return id;
+    }
+
+    private void sync() {
+        if (undoLog() == null) {
+            journal.sync();
+        }
+    }
+
+    //== the writes of the current transaction, undone in reverse order if it rolls back ==
+    private UndoLog undoLog() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        UndoLog undoLog = (UndoLog) TransactionSynchronizationManager.getResource(journal);
+        if (undoLog == null) {
+            undoLog = new UndoLog();
+            TransactionSynchronizationManager.bindResource(journal, undoLog);
+            TransactionSynchronizationManager.registerSynchronization(undoLog);
+        }
+        return undoLog;
+    }
+
+    private void logUndo(Runnable undo) {
+        UndoLog undoLog = undoLog();
+        if (undoLog != null) {
+            undoLog.undo.add(undo);
+        }
+    }
+
+    private Stream<CalorieInTake> intakes(Stream<IntakeRecord> records) {
+        return records.map(new Resolver()::intake);
+    }
+
+    private Stream<IntakeExportRow> exportRows(Stream<IntakeRecord> records) {
+        return intakes(records).map(IntakeAggregates::exportRow);
+    }
+
+    //== in the (dateTime, id) order of the index only the intakes of the page are loaded, any other order sorts them all ==
+    private Stream<CalorieInTake> sorted(Sort sort) {
+        if (SortComparators.isAscendingBy(sort, "dateTime")) {
+            return intakes(journal.all());
+        }
+        return intakes(journal.all()).sorted(SortComparators.of(sort));
+    }
+
+    private static Stream<IntakeRecord> limited(Stream<IntakeRecord> records, Limit limit) {
+        return limit.isUnlimited() ? records : records.limit(limit.max());
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Not supported by the intake journal");
+    }
+
+    // == nested classes ==
+
+    //== loads each meal, food and user once per call ==
+    private final class Resolver {
+        private final Map<Long, Meal> meals = new HashMap<>();
+        private final Map<Long, Food> foods = new HashMap<>();
+        private final Map<Long, User> users = new HashMap<>();
+
+        private CalorieInTake intake(IntakeRecord record) {
+            CalorieInTake intake = new CalorieInTake(record.uuid(), meal(record.mealId()), user(record.userId()),
+                    food(record.foodId()), record.dateTime());
+            intake.setId(record.id());
+            return intake;
+        }
+
+        private Meal meal(long id) {
+            return id == 0 ? null : meals.computeIfAbsent(id, key -> entityManager.find(Meal.class, key));
+        }
+
+        private Food food(long id) {
+            return id == 0 ? null : foods.computeIfAbsent(id, key -> entityManager.find(Food.class, key));
+        }
+
+        private User user(long id) {
+            return id == 0 ? null : users.computeIfAbsent(id, key -> entityManager.find(User.class, key));
+        }
+    }
+
+    private final class UndoLog implements TransactionSynchronization {
+        private final List<Runnable> undo = new ArrayList<>();
+
+        //== a REQUIRES_NEW transaction gets its own undo log ==
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(journal);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(journal, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            journal.sync();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(journal);
+            if (status != STATUS_COMMITTED) {
+                for (int i = undo.size() - 1; i >= 0; i--) {
+                    undo.get(i).run();
+                }
+                journal.sync();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.coda.core.repository;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * The Spring Data JPA repositories, backed by the database.
+ * Not registered under the memory profile, where InMemoryStorageConfig provides the repositories instead.
+ */
+@Configuration
+@Profile("!memory")
+@EnableJpaRepositories(basePackages = {"org.coda.core.repository"})
+public class JpaStorageConfig {
+}
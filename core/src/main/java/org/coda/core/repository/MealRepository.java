@@ -1,38 +1,200 @@
 package org.coda.core.repository;
 
+import jakarta.persistence.QueryHint;
+import org.coda.core.entities.Food;
 import org.coda.core.entities.Meal;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface MealRepository extends JpaRepository<Meal, Long> {
+public interface MealRepository extends JpaRepository<Meal, Long>, StreamingQueries {
+
+    //== the query space of the meal_foods rewrite: declaring meal_foods would clear the whole meal foods cache region ==
+    String FOODS_REWRITE_SPACE = "meal_foods_rewrite";
 
     /**
      * Method to find all meals with high calories
+     * Filters on the persisted total_calories column, served by idx_meal_total_calories
      * @param threshold: the threshold of the calories
      * @Transactional annotation to read the meals from the database
      * and commit all changes to database or rollback if error occurs
-     * @return List<Meal> if the meals are found
+     * @return List<Meal> ordered by total calories if the meals are found
      * otherwise return empty List of meals
      */
-    @Query("SELECT m FROM Meal m WHERE m.calculateTotalMealCalories() > :threshold")
+    @Query("SELECT m FROM meal m WHERE m.totalCalories > :threshold ORDER BY m.totalCalories")
     List<Meal> findAllMealsWithHighCalories(@Param("threshold") int threshold);
 
+    /**
+     * Method to read a meal with its user and foods for the meal detail view
+     * Loads both with the detail entity graph in a single select
+     * @param id: the id of the meal
+     * @return Optional<Meal> if the meal is found otherwise return empty Optional
+     */
+    @EntityGraph(Meal.DETAIL_GRAPH)
+    @Query("SELECT m FROM meal m WHERE m.id = :id")
+    Optional<Meal> findMealDetailById(@Param("id") long id);
+
     /**
      * Method to find all meals with low calories
+     * Filters on the persisted total_calories column, served by idx_meal_total_calories
      * @param threshold: the threshold of the calories
      * @Transactional annotation to read the meals from the database
      * and commit all changes to database or rollback if error occurs
-     * @return List<Meal> if the meals are found
+     * @return List<Meal> ordered by total calories if the meals are found
      * otherwise return empty List of meals
      */
 
-    @Query("SELECT m FROM Meal m WHERE m.calculateTotalMealCalories() < :threshold")
+    @Query("SELECT m FROM meal m WHERE m.totalCalories < :threshold ORDER BY m.totalCalories")
     List<Meal> findAllMealsWithLowCalories(@Param("threshold") int threshold);
 
+    /**
+     * Method to find all meals whose total calories fall in a range
+     * @param min: the lower bound of the total calories, inclusive
+     * @param max: the upper bound of the total calories, exclusive
+     * @return List<Meal> ordered by total calories if the meals are found
+     * otherwise return empty List of meals
+     */
+
+    @Query("SELECT m FROM meal m WHERE m.totalCalories >= :min AND m.totalCalories < :max ORDER BY m.totalCalories")
+    List<Meal> findAllMealsWithCaloriesBetween(@Param("min") double min, @Param("max") double max);
+
+    /**
+     * Method to recompute the persisted totals of every meal that contains a food.
+     * Called after a food changes so the stored meal totals stay in step with it.
+     * Only the meal table is declared as touched, so the food cache survives the update.
+     * The versions of the meals are incremented, so an editor holding one of them before the change conflicts.
+     * @param foodId: the id of the changed food
+     * @return the number of meals updated
+     */
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "meal"))
+    @Query(value = "UPDATE meal m SET version = version + 1, " +
+            "total_calories = (SELECT COALESCE(SUM(f.calories), 0) FROM meal_foods mf " +
+            "JOIN food f ON f.id = mf.foods_id WHERE mf.meal_id = m.id), " +
+            "total_protein = (SELECT COALESCE(SUM(f.protein), 0) FROM meal_foods mf " +
+            "JOIN food f ON f.id = mf.foods_id WHERE mf.meal_id = m.id), " +
+            "total_fat = (SELECT COALESCE(SUM(f.fat), 0) FROM meal_foods mf " +
+            "JOIN food f ON f.id = mf.foods_id WHERE mf.meal_id = m.id), " +
+            "total_carbohydrates = (SELECT COALESCE(SUM(f.carbohydrates), 0) FROM meal_foods mf " +
+            "JOIN food f ON f.id = mf.foods_id WHERE mf.meal_id = m.id) " +
+            "WHERE m.id IN (SELECT mf.meal_id FROM meal_foods mf WHERE mf.foods_id = :foodId)",
+            nativeQuery = true)
+    int refreshTotalsForFood(@Param("foodId") long foodId);
+
+    /**
+     * Method to read a meal with its foods for a conditional update.
+     * Read with the detail entity graph in a read-write transaction, so the foods can be changed once it
+     * has ended, and with calorietracker.replicas.enabled it reads the primary the update is checked against.
+     * @param id: the id of the meal
+     * @return Optional<Meal> if the meal is found otherwise return empty Optional meal object
+     */
+    @Transactional
+    default Optional<Meal> findCurrentById(long id) {
+        return findMealDetailById(id);
+    }
+
+    /**
+     * Method to update a meal in one statement, only if nobody updated it since it was read (optimistic locking).
+     * Writes the name and the totals, recomputed from the foods, and increments the stored version;
+     * the user is left as it is. The meal_foods rows are rewritten only when the foods differ from the stored
+     * ones, by a second statement and one insert per food. The meal object is left at its version.
+     * The caller evicts the meal foods collection it rewrote with SecondLevelCacheSupport.evictMealFoods.
+     * @param meal: the values to write, with the id and the version the meal was read at
+     * @return 1 if the meal was updated, 0 if it does not exist or was updated since
+     */
+    @Transactional
+    default int updateIfUnchanged(Meal meal) {
+        meal.refreshTotals();
+        int updated = updateIfUnchanged(meal.getId(), meal.getVersion(), meal.getName(), meal.getTotalCalories(),
+                meal.getTotalProtein(), meal.getTotalFat(), meal.getTotalCarbohydrates());
+        if (updated == 0) {
+            return 0;
+        }
+        List<Long> foodIds = meal.getFoods() == null ? List.of()
+                : meal.getFoods().stream().map(Food::getId).sorted().toList();
+        if (!foodIds.equals(findFoodIds(meal.getId()))) {
+            deleteFoods(meal.getId());
+            foodIds.forEach(foodId -> insertFood(meal.getId(), foodId));
+        }
+        return updated;
+    }
 
+    /**
+     * Method behind updateIfUnchanged(Meal), with plain parameters: native SQL, which Spring Data does not
+     * parse again on every call as it does JPQL, bound without SpEL.
+     * @return 1 if the meal was updated, 0 if it does not exist or is not at the version
+     */
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "meal"))
+    @Query(value = "UPDATE meal SET name = :name, total_calories = :totalCalories, total_protein = :totalProtein, " +
+            "total_fat = :totalFat, total_carbohydrates = :totalCarbohydrates, version = version + 1 " +
+            "WHERE id = :id AND version = :version",
+            nativeQuery = true)
+    int updateIfUnchanged(@Param("id") long id, @Param("version") long version, @Param("name") String name,
+                          @Param("totalCalories") double totalCalories, @Param("totalProtein") double totalProtein,
+                          @Param("totalFat") double totalFat,
+                          @Param("totalCarbohydrates") double totalCarbohydrates);
+
+    /**
+     * Method to read the ids of the foods of a meal as stored in meal_foods
+     * @param mealId: the id of the meal
+     * @return List<Long> of the food ids in ascending order, a food eaten twice appearing twice
+     */
+    @Query(value = "SELECT foods_id FROM meal_foods WHERE meal_id = :mealId ORDER BY foods_id", nativeQuery = true)
+    List<Long> findFoodIds(@Param("mealId") long mealId);
+
+    /**
+     * Method to remove every meal_foods row of a meal, before its foods are inserted again
+     * @param mealId: the id of the meal
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = FOODS_REWRITE_SPACE))
+    @Query(value = "DELETE FROM meal_foods WHERE meal_id = :mealId", nativeQuery = true)
+    void deleteFoods(@Param("mealId") long mealId);
+
+    /**
+     * Method to add a food to a meal in meal_foods
+     * @param mealId: the id of the meal
+     * @param foodId: the id of the food
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = FOODS_REWRITE_SPACE))
+    @Query(value = "INSERT INTO meal_foods (meal_id, foods_id) VALUES (:mealId, :foodId)", nativeQuery = true)
+    void insertFood(@Param("mealId") long mealId, @Param("foodId") long foodId);
+
+    /**
+     * Method to read the next page of meals after a given id (keyset pagination).
+     * Seeks on the primary key so every page costs the same regardless of how deep it is.
+     * @param id: the id of the last meal of the previous page, 0 for the first page
+     * @param limit: the maximum number of meals to return
+     * @return List<Meal> ordered by id, empty when there are no more meals
+     */
+    List<Meal> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    /**
+     * Method to stream all meals ordered by id.
+     * Rows are fetched from the JDBC cursor in chunks of calorietracker.stream.fetch-size and loaded read-only.
+     * The stream must be consumed and closed inside a transaction.
+     * @return Stream<Meal> of all meals
+     */
+    default Stream<Meal> streamAllMeals() {
+        return streamQuery("SELECT m FROM meal m ORDER BY m.id", Meal.class, true, Map.of());
+    }
 }
@@ -0,0 +1,98 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Helpers to keep the persistence context small while walking large result sets
+ * or writing large batches.
+ * Streams handed out by the services clear the context every clear-interval rows,
+ * so entities already passed downstream become detached and can be garbage collected.
+ * Bulk saves flush and clear every batch-size rows, matching hibernate.jdbc.batch_size.
+ * Without JPA, under the memory profile, there is no persistence context and flushAndClear and the clearing
+ * streams do nothing.
+ */
+@Component
+public class PersistenceContextSupport {
+
+    private EntityManager entityManager;
+
+    private final int clearInterval;
+
+    private final int batchSize;
+
+    public PersistenceContextSupport(@Value("${calorietracker.stream.clear-interval:1000}") int clearInterval,
+                                     @Value("${calorietracker.batch-size:50}") int batchSize) {
+        this.clearInterval = clearInterval;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Setter based dependency injection, optional so the memory profile can start without JPA
+     * @param entityManagerFactory the factory of the shared, transaction bound EntityManager
+     * @Autowired annotation to inject the EntityManagerFactory when there is one
+     */
+    @Autowired(required = false)
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+    }
+
+    /**
+     * @return the number of rows written between flushes by the bulk save methods, 0 or less to disable chunking
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Send the pending inserts and updates as JDBC batches and detach everything written so far
+     */
+    public void flushAndClear() {
+        if (entityManager == null) {
+            return;
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Split a list into chunks of batchSize elements
+     * @param items the items to write
+     * @return List<List<T>> views of the original list, a single chunk when batching is disabled
+     */
+    public <T> List<List<T>> chunks(List<T> items) {
+        int step = batchSize > 0 ? batchSize : Math.max(items.size(), 1);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += step) {
+            chunks.add(items.subList(from, Math.min(from + step, items.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Wrap a repository stream so the persistence context is cleared every clearInterval elements.
+     * The stream must be consumed inside the transaction that opened it.
+     * @param stream the repository stream
+     * @return Stream<T> that clears the persistence context as it goes
+     */
+    public <T> Stream<T> clearingEvery(Stream<T> stream) {
+        if (clearInterval <= 0 || entityManager == null) {
+            return stream;
+        }
+        AtomicLong seen = new AtomicLong();
+        return stream.peek(entity -> {
+            if (seen.incrementAndGet() % clearInterval == 0) {
+                entityManager.clear();
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.projection.CacheStatistics;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Explicit eviction and statistics for the food catalog second-level cache regions.
+ * Hibernate already keeps the regions in step with writes made through the entity manager;
+ * the services call the evict methods after bulk deletes that bypass it.
+ * Every method is a no-op when calorietracker.cache.enabled is false, or without JPA under the memory profile.
+ */
+@Component
+public class SecondLevelCacheSupport {
+
+    private final SessionFactory sessionFactory;
+
+    private final boolean enabled;
+
+    private final Map<String, LongAdder> evictions = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor based dependency injection
+     * @param entityManagerFactory the factory of the cached regions, absent under the memory profile
+     * @param enabled whether SecondLevelCacheConfig started the cache, from calorietracker.cache.enabled
+     */
+    public SecondLevelCacheSupport(ObjectProvider<EntityManagerFactory> entityManagerFactory,
+                                   @Value("${calorietracker.cache.enabled:false}") boolean enabled) {
+        EntityManagerFactory factory = entityManagerFactory.getIfAvailable();
+        this.sessionFactory = factory != null ? factory.unwrap(SessionFactory.class) : null;
+        this.enabled = enabled && sessionFactory != null;
+    }
+
+    /**
+     * @return true when calorietracker.cache.enabled is set and there is a session factory to cache for
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Evict a single food from the food region
+     * @param foodId the id of the food
+     */
+    public void evictFood(long foodId) {
+        if (!isEnabled()) {
+            return;
+        }
+        sessionFactory.getCache().evictEntityData(Food.class, foodId);
+        countEviction(Food.CACHE_REGION);
+    }
+
+    /**
+     * Evict the cached foods collection of a single meal, after its meal_foods rows were rewritten
+     * @param mealId the id of the meal
+     */
+    public void evictMealFoods(long mealId) {
+        if (!isEnabled()) {
+            return;
+        }
+        sessionFactory.getCache().evictCollectionData(Meal.class.getName() + ".foods", mealId);
+        countEviction(Food.MEALS_FOODS_CACHE_REGION);
+    }
+
+    /**
+     * Evict every cached food and every cached meal foods collection
+     */
+    public void evictAllFoods() {
+        if (!isEnabled()) {
+            return;
+        }
+        sessionFactory.getCache().evictRegion(Food.CACHE_REGION);
+        sessionFactory.getCache().evictRegion(Food.MEALS_FOODS_CACHE_REGION);
+        countEviction(Food.CACHE_REGION);
+        countEviction(Food.MEALS_FOODS_CACHE_REGION);
+    }
+
+    /**
+     * @return the statistics of the food region
+     */
+    public CacheStatistics getFoodStatistics() {
+        return getStatistics(Food.CACHE_REGION);
+    }
+
+    /**
+     * @return the statistics of the meal foods collection region
+     */
+    public CacheStatistics getMealFoodsStatistics() {
+        return getStatistics(Food.MEALS_FOODS_CACHE_REGION);
+    }
+
+    private CacheStatistics getStatistics(String region) {
+        long evicted = evictions.getOrDefault(region, new LongAdder()).sum();
+        if (!isEnabled() || !sessionFactory.getStatistics().isStatisticsEnabled()) {
+            return new CacheStatistics(region, 0, 0, 0, evicted, 0);
+        }
+        CacheRegionStatistics statistics = sessionFactory.getStatistics().getDomainDataRegionStatistics(region);
+        long elements = statistics.getElementCountInMemory();
+        if (elements == CacheRegionStatistics.NO_EXTENDED_STAT_SUPPORT_RETURN) {
+            elements = 0;
+        }
+        return new CacheStatistics(region, statistics.getHitCount(), statistics.getMissCount(),
+                statistics.getPutCount(), evicted, elements);
+    }
+
+    private void countEviction(String region) {
+        evictions.computeIfAbsent(region, r -> new LongAdder()).increment();
+    }
+}
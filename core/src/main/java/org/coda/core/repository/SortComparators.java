@@ -0,0 +1,75 @@
+package org.coda.core.repository;
+
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.NullValueInNestedPathException;
+import org.springframework.data.domain.Sort;
+
+import java.util.Comparator;
+
+/**
+ * Comparators built from a Sort, for the repositories that sort loaded entities instead of the database.
+ * The properties are read with a BeanWrapper, so nested paths such as user.name work as in the JPA queries.
+ * Nulls come first in ascending order and last in descending order, as in H2, unless the Sort asks otherwise.
+ */
+public final class SortComparators {
+
+    private SortComparators() {}
+
+    /**
+     * @param sort the orders to apply, the first one deciding first
+     * @return Comparator<T> of the orders, keeping the encounter order when the sort is unsorted
+     */
+    public static <T> Comparator<T> of(Sort sort) {
+        Comparator<T> comparator = (left, right) -> 0;
+        for (Sort.Order order : sort) {
+            comparator = comparator.thenComparing(of(order));
+        }
+        return comparator;
+    }
+
+    /**
+     * @param sort the sort requested
+     * @param property the property the entities are already ordered by, then by id
+     * @return true when the sort is unsorted or asks for that order ascending, optionally followed by the id
+     */
+    public static boolean isAscendingBy(Sort sort, String property) {
+        if (sort.isUnsorted()) {
+            return true;
+        }
+        int position = 0;
+        for (Sort.Order order : sort) {
+            String expected = position == 0 ? property : position == 1 ? "id" : null;
+            if (!order.getProperty().equals(expected) || !order.isAscending() || order.isIgnoreCase()) {
+                return false;
+            }
+            position++;
+        }
+        return true;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Comparator<T> of(Sort.Order order) {
+        Comparator<Object> values = (left, right) -> order.isIgnoreCase() && left instanceof String text
+                ? text.compareToIgnoreCase((String) right)
+                : ((Comparable) left).compareTo(right);
+        if (order.isDescending()) {
+            values = values.reversed();
+        }
+        boolean nullsFirst = switch (order.getNullHandling()) {
+            case NULLS_FIRST -> true;
+            case NULLS_LAST -> false;
+            case NATIVE -> order.isAscending();
+        };
+        Comparator<Object> nullSafe = nullsFirst ? Comparator.nullsFirst(values) : Comparator.nullsLast(values);
+        return Comparator.comparing(entity -> value(entity, order.getProperty()), nullSafe);
+    }
+
+    //== a null along the path is a null value, as the outer join of the JPA query would give ==
+    private static Object value(Object entity, String property) {
+        try {
+            return new BeanWrapperImpl(entity).getPropertyValue(property);
+        } catch (NullValueInNestedPathException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.coda.core.repository;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Repository fragment behind the stream methods of the repositories.
+ * A fetch size given with @QueryHint must be a compile time constant, so the stream methods are default methods
+ * running their JPQL through this fragment, which sets the fetch size from calorietracker.stream.fetch-size.
+ * The repositories of the memory profile and the intake journal implement the stream methods themselves.
+ */
+public interface StreamingQueries {
+
+    /**
+     * Method to run a JPQL query as a stream read from the JDBC cursor in chunks of calorietracker.stream.fetch-size.
+     * The stream must be consumed and closed inside a transaction.
+     * @param jpql: the query, with named parameters
+     * @param type: the type of the results
+     * @param readOnly: true to load the entities read-only, as they are not changed while streaming
+     * @param parameters: the values of the named parameters
+     * @return Stream<T> of the results
+     */
+    <T> Stream<T> streamQuery(String jpql, Class<T> type, boolean readOnly, Map<String, ?> parameters);
+}
@@ -0,0 +1,38 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * StreamingQueries on the shared, transaction bound EntityManager, picked up by Spring Data by its name.
+ */
+class StreamingQueriesImpl implements StreamingQueries {
+
+    private final EntityManager entityManager;
+
+    private final int fetchSize;
+
+    StreamingQueriesImpl(EntityManager entityManager, @Value("${calorietracker.stream.fetch-size:500}") int fetchSize) {
+        this.entityManager = entityManager;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public <T> Stream<T> streamQuery(String jpql, Class<T> type, boolean readOnly, Map<String, ?> parameters) {
+        TypedQuery<T> query = entityManager.createQuery(jpql, type);
+        //== 0 or less leaves the fetch size to the driver ==
+        if (fetchSize > 0) {
+            query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize);
+        }
+        if (readOnly) {
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        }
+        parameters.forEach(query::setParameter);
+        return query.getResultStream();
+    }
+}
@@ -1,42 +1,55 @@
 package org.coda.core.repository;
 
+import jakarta.persistence.QueryHint;
 import org.coda.core.entities.User;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, StreamingQueries {
 
     /**
-     * Method to find a user by email
+     * Method to find a user by email, used by both login and signup
+     * Served by the uk_user_email unique index.
      * @param email the email of the user
      * @Query annotation to write a custom query
      * @return Optional<User> if the user is found otherwise return empty Optional user object
      */
-    @Query("SELECT u FROM User u WHERE u.contact.email = :email")
+    @Query("SELECT u FROM user_table u WHERE u.contact.email = :email")
     Optional<User> findUserByEmail(@Param("email") String email);
 
     /**
      * method to find users with high calories consumption
+     * Users whose average daily intake, from the daily_intake_summary rollup, is above 2000 calories
      * @Query annotation to write a custom query
      * @return List<User> if the users with high calories are found otherwise return empty collection
      */
-    @Query("SELECT u FROM User u WHERE u.calorieIntake > 2000")
+    @Query("SELECT u FROM user_table u WHERE (SELECT AVG(s.calories) FROM daily_intake_summary s " +
+            "WHERE s.id.userId = u.id) > 2000")
     List<User> getUsersWithHighCalorieConsumption();
 
     /**
      * method to find users with low calories consumption
+     * Users whose average daily intake, from the daily_intake_summary rollup, is below 2000 calories
      * @Query annotation to write a custom query
      * @return List<User> if the users with low calories are found otherwise return empty collection
      */
 
-    @Query("SELECT u FROM User u WHERE u.calorieIntake < 2000")
+    @Query("SELECT u FROM user_table u WHERE (SELECT AVG(s.calories) FROM daily_intake_summary s " +
+            "WHERE s.id.userId = u.id) < 2000")
     List<User> getUsersWithLowCalorieConsumption();
 
     /**
@@ -45,7 +58,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @param role the role of the user
      * @return List<User> if the users with the role are found otherwise return empty collection
      */
-    @Query("SELECT u FROM User u WHERE u.role = :role")
+    @Query("SELECT u FROM user_table u WHERE u.role = :role")
     List<User> getUsersByRole(@Param("role") String role);
 
     /**
@@ -58,8 +71,58 @@ public interface UserRepository extends JpaRepository<User, Long> {
      */
     @Modifying
     @Transactional
-    @Query("UPDATE User u SET u.lastLogin = :lastLogin WHERE u.id = :id")
-    void updateUserLastLogin(@Param("id") long id, @Param("lastLogin") String lastLogin);
+    @Query("UPDATE user_table u SET u.lastLogin = :lastLogin WHERE u.id = :id")
+    void updateUserLastLogin(@Param("id") long id, @Param("lastLogin") LocalDateTime lastLogin);
+
+    /**
+     * Method to read a user for a conditional update.
+     * findById in a read-write transaction, so with calorietracker.replicas.enabled it reads the primary
+     * the update is checked against.
+     * @param id the id of the user
+     * @Transactional to read in a read-write transaction
+     * @return Optional<User> if the user is found otherwise return empty Optional user object
+     */
+    @Transactional
+    default Optional<User> findCurrentById(long id) {
+        return findById(id);
+    }
+
+    /**
+     * method to update a user in one statement, only if nobody updated it since it was read (optimistic locking)
+     * Writes the profile: name, password, age, weight, height, calorie goal and contact; the role and the
+     * last login are left as they are. The stored version is incremented, the user object is left as it is.
+     * @param user the values to write, with the id and the version the user was read at
+     * @Transactional to commit all changes to database or rollback if error occurs
+     * @return 1 if the user was updated, 0 if it does not exist or was updated since
+     */
+    @Transactional
+    default int updateIfUnchanged(User user) {
+        User.Contact contact = user.getContact();
+        return updateIfUnchanged(user.getId(), user.getVersion(), user.getName(), user.getPassword(), user.getAge(),
+                user.getWeight(), user.getHeight(), user.getCalorieGoal(),
+                contact == null ? null : contact.getEmail(), contact == null ? null : contact.getPhone());
+    }
+
+    /**
+     * method behind updateIfUnchanged(User), with plain parameters: native SQL, which Spring Data does not
+     * parse again on every call as it does JPQL, bound without SpEL, which costs as much as the statement
+     * itself on an embedded database
+     * @Query annotation to write a custom query
+     * @Transactional to commit all changes to database or rollback if error occurs
+     * @Modifying to indicate that the query is an update or delete query
+     * @return 1 if the user was updated, 0 if it does not exist or is not at the version
+     */
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_table"))
+    @Query(value = "UPDATE user_table SET name = :name, password = :password, age = :age, weight = :weight, " +
+            "height = :height, calorie_goal = :calorieGoal, email = :email, phone = :phone, " +
+            "version = version + 1 WHERE id = :id AND version = :version",
+            nativeQuery = true)
+    int updateIfUnchanged(@Param("id") long id, @Param("version") long version, @Param("name") String name,
+                          @Param("password") String password, @Param("age") int age, @Param("weight") int weight,
+                          @Param("height") double height, @Param("calorieGoal") int calorieGoal,
+                          @Param("email") String email, @Param("phone") String phone);
 
     /**
      * method to delete inactive users
@@ -67,20 +130,39 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @param lastLogin the last login timeStamp of the user
      * @Transactional to commit all changes to database or rollback if error occurs
      * @Modifying to indicate that the query is an update or delete query
-     * @return boolean true if the users are deleted otherwise return false
+     * @return the number of users deleted
      */
     @Modifying
     @Transactional
-    @Query("DELETE FROM User u WHERE u.lastLogin < :lastLogin")
-    boolean deleteInactiveUsers(@Param("lastLogin") String lastLogin);
+    @Query("DELETE FROM user_table u WHERE u.lastLogin < :lastLogin")
+    int deleteInactiveUsers(@Param("lastLogin") LocalDateTime lastLogin);
 
     /**
-     * method to login user
-     * @Query annotation to write a custom query
-     * @param email the email of the user
-     * @return Optional<User> if the user is found otherwise return empty Optional user object
+     * Method to stream the email of every user, to build the email filter at startup.
+     * The stream must be consumed and closed inside a transaction.
+     * @return Stream<String> of all non null emails
+     */
+    default Stream<String> streamAllEmails() {
+        return streamQuery("SELECT u.contact.email FROM user_table u WHERE u.contact.email IS NOT NULL",
+                String.class, false, Map.of());
+    }
+
+    /**
+     * Method to read the next page of users after a given id (keyset pagination).
+     * Seeks on the primary key so every page costs the same regardless of how deep it is.
+     * @param id: the id of the last user of the previous page, 0 for the first page
+     * @param limit: the maximum number of users to return
+     * @return List<User> ordered by id, empty when there are no more users
      */
-    @Query("SELECT u FROM User u WHERE u.contact.email = :email")
-    Optional<User> loginUser(@Param("email") String email);
+    List<User> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
 
+    /**
+     * Method to stream all users ordered by id.
+     * Rows are fetched from the JDBC cursor in chunks of calorietracker.stream.fetch-size and loaded read-only.
+     * The stream must be consumed and closed inside a transaction.
+     * @return Stream<User> of all users
+     */
+    default Stream<User> streamAllUsers() {
+        return streamQuery("SELECT u FROM user_table u ORDER BY u.id", User.class, true, Map.of());
+    }
 }
@@ -0,0 +1,206 @@
+package org.coda.core.repository.memory;
+
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.projection.DailyIntakeTotals;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.coda.core.repository.CalorieInTakeRepository;
+import org.coda.core.repository.IntakeAggregates;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * CalorieInTakeRepository of the memory profile, with the two secondary indexes of the calorie_intake table:
+ * (user, time) for the history, range and sum queries of one user, and (time, id) for the time range queries
+ * and keyset pagination. Sums are computed with IntakeAggregates, with the same rules as the JPA queries.
+ */
+public class InMemoryCalorieInTakeRepository extends InMemoryRepository<CalorieInTake, Long>
+        implements CalorieInTakeRepository {
+
+    private final SortedIndex<UserTime> byUserTime = new SortedIndex<>(Comparator.naturalOrder());
+
+    private final SortedIndex<LocalDateTime> byTime = new SortedIndex<>(Comparator.naturalOrder());
+
+    public InMemoryCalorieInTakeRepository() {
+        super(Comparator.naturalOrder());
+    }
+
+    @Override
+    public List<CalorieInTake> findAllCalorieIntakeByUser(long userId) {
+        return byUser(userId, LocalDateTime.MIN, LocalDateTime.MAX).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findAllCalorieIntakeByDateTimeRange(LocalDateTime from, LocalDateTime to) {
+        return byIds(byTime.range(from, true, to, false)).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findAllCalorieIntakeByUserAndDateTimeRange(long userId, LocalDateTime from,
+                                                                         LocalDateTime to) {
+        return byUser(userId, from, to).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findDashboardCalorieIntake(long userId, LocalDateTime from, LocalDateTime to) {
+        return byUser(userId, from, to).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findFirstCalorieIntakePage(Limit limit) {
+        return limited(byIds(byTime.all()), limit).toList();
+    }
+
+    @Override
+    public List<CalorieInTake> findCalorieIntakePageAfter(LocalDateTime dateTime, long id, Limit limit) {
+        return limited(byIds(byTime.after(dateTime, id)), limit).toList();
+    }
+
+    @Override
+    public Stream<CalorieInTake> streamAllCalorieIntake() {
+        return byIds(byTime.all());
+    }
+
+    @Override
+    public Stream<IntakeRow> streamIntakeRows() {
+        return byIds(byUserTime.all()).map(IntakeAggregates::row);
+    }
+
+    //== there is no meal index: the intakes are scanned, as rarely as meals are edited ==
+    @Override
+    public List<IntakeRow> findIntakeRowsOfMeal(long mealId) {
+        return stream()
+                .filter(intake -> intake.getUser() != null)
+                .filter(intake -> intake.getMeal() != null && intake.getMeal().getId() == mealId)
+                .map(IntakeAggregates::row)
+                .toList();
+    }
+
+    @Override
+    public Optional<IntakeRow> findIntakeRowById(long id) {
+        return findById(id)
+                .filter(intake -> intake.getUser() != null)
+                .map(IntakeAggregates::row);
+    }
+
+    //== there is no food index: the intakes are scanned, as rarely as foods are edited ==
+    @Override
+    public List<IntakeRow> findIntakeRowsOfFood(long foodId) {
+        return stream()
+                .filter(intake -> intake.getUser() != null)
+                .filter(intake -> isFood(intake.getFood(), foodId) || (intake.getMeal() != null
+                        && intake.getMeal().getFoods() != null
+                        && intake.getMeal().getFoods().stream().anyMatch(food -> isFood(food, foodId))))
+                .map(IntakeAggregates::row)
+                .toList();
+    }
+
+    @Override
+    public Stream<IntakeExportRow> streamExportRows(long userId) {
+        return byUser(userId, LocalDateTime.MIN, LocalDateTime.MAX).map(IntakeAggregates::exportRow);
+    }
+
+    @Override
+    public Stream<IntakeExportRow> streamExportRowsAfter(long userId, LocalDateTime dateTime, long id) {
+        return byIds(byUserTime.after(new UserTime(userId, dateTime), id, new UserTime(userId, LocalDateTime.MAX)))
+                .map(IntakeAggregates::exportRow);
+    }
+
+    @Override
+    public List<DailyIntakeTotals> aggregateIntakeByUserAndDay() {
+        return IntakeAggregates.sumByUserAndDay(byIds(byUserTime.all()));
+    }
+
+    @Override
+    public Optional<IntakeRangeStats> sumIntakeByUserAndDateTimeRange(long userId, LocalDateTime from,
+                                                                      LocalDateTime to) {
+        return IntakeAggregates.sum(userId, from, to, byUser(userId, from, to));
+    }
+
+    @Override
+    public List<IntakeRangeStats> sumIntakeByUser(LocalDateTime from, LocalDateTime to) {
+        //== one pass over the time index, grouped by user in user id order ==
+        TreeMap<Long, List<CalorieInTake>> byUser = byIds(byTime.range(from, true, to, false))
+                .filter(intake -> intake.getUser() != null)
+                .collect(Collectors.groupingBy(intake -> intake.getUser().getId(), TreeMap::new, Collectors.toList()));
+        List<IntakeRangeStats> stats = new ArrayList<>(byUser.size());
+        byUser.forEach((userId, intakes) -> IntakeAggregates.sum(userId, from, to, intakes.stream())
+                .ifPresent(stats::add));
+        return stats;
+    }
+
+    @Override
+    public List<IntakePeriodTotals> sumIntakeByUserAndDay(long userId, LocalDateTime from, LocalDateTime to) {
+        return IntakeAggregates.sumByPeriod(userId, byUser(userId, from, to), UnaryOperator.identity());
+    }
+
+    @Override
+    public List<IntakePeriodTotals> sumIntakeByUserAndMonth(long userId, LocalDateTime from, LocalDateTime to) {
+        return IntakeAggregates.sumByPeriod(userId, byUser(userId, from, to), day -> day.withDayOfMonth(1));
+    }
+
+    //== storage ==
+
+    @Override
+    protected void prepare(CalorieInTake intake) {
+        intake.setId(nextId(intake.getId()));
+    }
+
+    @Override
+    protected Long idOf(CalorieInTake intake) {
+        return intake.getId();
+    }
+
+    @Override
+    protected void index(CalorieInTake intake, Long id) {
+        byUserTime.put(id, intake.getUser() == null ? null : new UserTime(intake.getUser().getId(),
+                intake.getDateTime()));
+        byTime.put(id, intake.getDateTime());
+    }
+
+    @Override
+    protected void unindex(Long id) {
+        byUserTime.remove(id);
+        byTime.remove(id);
+    }
+
+    @Override
+    protected void clearIndexes() {
+        byUserTime.clear();
+        byTime.clear();
+    }
+
+    //== helpers ==
+
+    private static boolean isFood(Food food, long foodId) {
+        return food != null && food.getId() == foodId;
+    }
+
+    private Stream<CalorieInTake> byUser(long userId, LocalDateTime from, LocalDateTime to) {
+        return byIds(byUserTime.range(new UserTime(userId, from), true, new UserTime(userId, to), false));
+    }
+
+    // == nested classes ==
+
+    //== the key of idx_calorie_intake_user_date_time ==
+    private record UserTime(long userId, LocalDateTime dateTime) implements Comparable<UserTime> {
+
+        @Override
+        public int compareTo(UserTime other) {
+            int byUser = Long.compare(userId, other.userId);
+            return byUser != 0 ? byUser : dateTime.compareTo(other.dateTime);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.coda.core.repository.memory;
+
+import org.coda.core.entities.DailyIntakeSummary;
+import org.coda.core.repository.DailyIntakeSummaryRepository;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * DailyIntakeSummaryRepository of the memory profile, ordered by user then day.
+ * applyDelta replaces the summary of the day under the write lock, so concurrent deltas are never lost.
+ */
+public class InMemoryDailyIntakeSummaryRepository
+        extends InMemoryRepository<DailyIntakeSummary, DailyIntakeSummary.Key>
+        implements DailyIntakeSummaryRepository {
+
+    public InMemoryDailyIntakeSummaryRepository() {
+        super(Comparator.comparingLong(DailyIntakeSummary.Key::getUserId)
+                .thenComparing(DailyIntakeSummary.Key::getIntakeDate));
+    }
+
+    @Override
+    public void applyDelta(long userId, LocalDate intakeDate, double calories, double protein,
+                           double fat, double carbohydrates, long entryCount) {
+        DailyIntakeSummary.Key key = new DailyIntakeSummary.Key(userId, intakeDate);
+        locked(() -> {
+            DailyIntakeSummary current = findById(key)
+                    .orElseGet(() -> new DailyIntakeSummary(key, 0, 0, 0, 0, 0));
+            //== a new row, as the MERGE writes one: summaries handed out before are not changed under the reader ==
+            return save(new DailyIntakeSummary(key, current.getCalories() + calories,
+                    current.getProtein() + protein, current.getFat() + fat,
+                    current.getCarbohydrates() + carbohydrates, current.getEntryCount() + entryCount));
+        });
+    }
+
+    @Override
+    public int deleteIfEmpty(long userId, LocalDate intakeDate) {
+        DailyIntakeSummary.Key key = new DailyIntakeSummary.Key(userId, intakeDate);
+        return locked(() -> {
+            if (findById(key).filter(summary -> summary.getEntryCount() <= 0).isEmpty()) {
+                return 0;
+            }
+            deleteById(key);
+            return 1;
+        });
+    }
+
+    /**
+     * The average daily calories of each user with a summary, for the consumption queries of the users
+     * @return Map<Long, Double> of the average calories by user id
+     */
+    Map<Long, Double> averageCaloriesByUser() {
+        return stream().collect(Collectors.groupingBy(summary -> summary.getId().getUserId(), TreeMap::new,
+                Collectors.averagingDouble(DailyIntakeSummary::getCalories)));
+    }
+
+    //== storage ==
+
+    @Override
+    protected DailyIntakeSummary.Key idOf(DailyIntakeSummary summary) {
+        return summary.getId();
+    }
+
+    //== the summaries are read by key only ==
+    @Override
+    protected void index(DailyIntakeSummary summary, DailyIntakeSummary.Key id) {
+    }
+
+    @Override
+    protected void unindex(DailyIntakeSummary.Key id) {
+    }
+
+    @Override
+    protected void clearIndexes() {
+    }
+}
@@ -0,0 +1,97 @@
+package org.coda.core.repository.memory;
+
+import org.coda.core.entities.Food;
+import org.coda.core.repository.FoodRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.util.SerializationUtils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * FoodRepository of the memory profile, with a secondary index on the calories.
+ */
+public class InMemoryFoodRepository extends InMemoryRepository<Food, Long> implements FoodRepository {
+
+    private final SortedIndex<Double> byCalories = new SortedIndex<>(Comparator.naturalOrder());
+
+    public InMemoryFoodRepository() {
+        super(Comparator.naturalOrder());
+    }
+
+    @Override
+    public List<Food> findAllFoodsWithHighCalories(int threshold) {
+        return byIds(byCalories.above((double) threshold)).toList();
+    }
+
+    @Override
+    public Optional<Food> findCurrentById(long id) {
+        //== a copy, as a read in a new persistence context would be, so the change is not seen before the write ==
+        return findById(id).map(SerializationUtils::clone);
+    }
+
+    @Override
+    public int updateIfUnchanged(long id, long version, String name, String details, Float protein, Float fat,
+                                 Float carbohydrates, double calories) {
+        return locked(() -> {
+            Food stored = findById(id).orElse(null);
+            if (stored == null || stored.getVersion() != version) {
+                return 0;
+            }
+            stored.setName(name);
+            stored.setDetails(details);
+            if (protein == null && fat == null && carbohydrates == null) {
+                stored.setNutrition(null);
+            } else {
+                Food.Nutrition nutrition = new Food.Nutrition();
+                nutrition.setProtein(protein == null ? 0 : protein);
+                nutrition.setFat(fat == null ? 0 : fat);
+                nutrition.setCarbohydrates(carbohydrates == null ? 0 : carbohydrates);
+                stored.setNutrition(nutrition);
+            }
+            stored.setCalories(calories);
+            stored.setVersion(version + 1);
+            save(stored);
+            return 1;
+        });
+    }
+
+    @Override
+    public List<Food> findByIdGreaterThanOrderByIdAsc(long id, Limit limit) {
+        return pageAfter(id, limit);
+    }
+
+    @Override
+    public Stream<Food> streamAllFoods() {
+        return stream();
+    }
+
+    //== storage ==
+
+    @Override
+    protected void prepare(Food food) {
+        food.setId(nextId(food.getId()));
+    }
+
+    @Override
+    protected Long idOf(Food food) {
+        return food.getId();
+    }
+
+    @Override
+    protected void index(Food food, Long id) {
+        byCalories.put(id, food.getCalories());
+    }
+
+    @Override
+    protected void unindex(Long id) {
+        byCalories.remove(id);
+    }
+
+    @Override
+    protected void clearIndexes() {
+        byCalories.clear();
+    }
+}
@@ -0,0 +1,186 @@
+package org.coda.core.repository.memory;
+
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.repository.MealRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.util.SerializationUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * MealRepository of the memory profile, with a secondary index on the total calories.
+ * The totals are refreshed when a meal is saved, like the @PrePersist and @PreUpdate callback of the entity.
+ */
+public class InMemoryMealRepository extends InMemoryRepository<Meal, Long> implements MealRepository {
+
+    private final InMemoryFoodRepository foodRepository;
+
+    private final SortedIndex<Double> byTotalCalories = new SortedIndex<>(Comparator.naturalOrder());
+
+    /**
+     * Constructor based dependency injection
+     * @param foodRepository to read the current version of the foods of a meal in refreshTotalsForFood
+     */
+    public InMemoryMealRepository(InMemoryFoodRepository foodRepository) {
+        super(Comparator.naturalOrder());
+        this.foodRepository = foodRepository;
+    }
+
+    @Override
+    public List<Meal> findAllMealsWithHighCalories(int threshold) {
+        return byIds(byTotalCalories.above((double) threshold)).toList();
+    }
+
+    @Override
+    public Optional<Meal> findMealDetailById(long id) {
+        return findById(id);
+    }
+
+    @Override
+    public List<Meal> findAllMealsWithLowCalories(int threshold) {
+        return byIds(byTotalCalories.below((double) threshold)).toList();
+    }
+
+    @Override
+    public List<Meal> findAllMealsWithCaloriesBetween(double min, double max) {
+        return byIds(byTotalCalories.range(min, true, max, false)).toList();
+    }
+
+    @Override
+    public int refreshTotalsForFood(long foodId) {
+        return locked(() -> {
+            //== there is no meal_foods index: the meals are scanned, as rarely as foods are edited ==
+            List<Meal> meals = stream()
+                    .filter(meal -> meal.getFoods() != null)
+                    .filter(meal -> meal.getFoods().stream().anyMatch(food -> food.getId() == foodId))
+                    .toList();
+            for (Meal meal : meals) {
+                List<Food> foods = new ArrayList<>(meal.getFoods().size());
+                for (Food food : meal.getFoods()) {
+                    foods.add(foodRepository.findById(food.getId()).orElse(food));
+                }
+                meal.setFoods(foods);
+                meal.setVersion(meal.getVersion() + 1);
+                save(meal);
+            }
+            return meals.size();
+        });
+    }
+
+    @Override
+    public Optional<Meal> findCurrentById(long id) {
+        //== a copy, as a read in a new persistence context would be, so the change is not seen before the write ==
+        return findById(id).map(SerializationUtils::clone);
+    }
+
+    //== the whole update under the lock, as the versioned UPDATE and the meal_foods rewrite share a transaction ==
+    @Override
+    public int updateIfUnchanged(Meal meal) {
+        return locked(() -> {
+            Meal stored = findById(meal.getId()).orElse(null);
+            if (stored == null || stored.getVersion() != meal.getVersion()) {
+                return 0;
+            }
+            stored.setName(meal.getName());
+            stored.setFoods(currentFoods(meal.getFoods() == null ? List.of()
+                    : meal.getFoods().stream().map(Food::getId).toList()));
+            stored.setVersion(meal.getVersion() + 1);
+            save(stored);
+            return 1;
+        });
+    }
+
+    //== the totals are recomputed from the foods on save, as the entity callback does ==
+    @Override
+    public int updateIfUnchanged(long id, long version, String name, double totalCalories, double totalProtein,
+                                 double totalFat, double totalCarbohydrates) {
+        return locked(() -> {
+            Meal stored = findById(id).orElse(null);
+            if (stored == null || stored.getVersion() != version) {
+                return 0;
+            }
+            stored.setName(name);
+            stored.setVersion(version + 1);
+            save(stored);
+            return 1;
+        });
+    }
+
+    @Override
+    public List<Long> findFoodIds(long mealId) {
+        return findById(mealId)
+                .filter(meal -> meal.getFoods() != null)
+                .map(meal -> meal.getFoods().stream().map(Food::getId).sorted().toList())
+                .orElse(List.of());
+    }
+
+    @Override
+    public void deleteFoods(long mealId) {
+        locked(() -> findById(mealId).map(meal -> {
+            meal.setFoods(new ArrayList<>());
+            return save(meal);
+        }));
+    }
+
+    @Override
+    public void insertFood(long mealId, long foodId) {
+        locked(() -> findById(mealId).map(meal -> {
+            List<Long> foodIds = new ArrayList<>(findFoodIds(mealId));
+            foodIds.add(foodId);
+            meal.setFoods(currentFoods(foodIds));
+            return save(meal);
+        }));
+    }
+
+    @Override
+    public List<Meal> findByIdGreaterThanOrderByIdAsc(long id, Limit limit) {
+        return pageAfter(id, limit);
+    }
+
+    @Override
+    public Stream<Meal> streamAllMeals() {
+        return stream();
+    }
+
+    //== the stored foods, as the meal_foods rows reference them ==
+    private List<Food> currentFoods(List<Long> foodIds) {
+        List<Food> foods = new ArrayList<>(foodIds.size());
+        for (long foodId : foodIds) {
+            foodRepository.findById(foodId).ifPresent(foods::add);
+        }
+        return foods;
+    }
+
+    //== storage ==
+
+    @Override
+    protected void prepare(Meal meal) {
+        meal.setId(nextId(meal.getId()));
+        meal.refreshTotals();
+    }
+
+    @Override
+    protected Long idOf(Meal meal) {
+        return meal.getId();
+    }
+
+    @Override
+    protected void index(Meal meal, Long id) {
+        byTotalCalories.put(id, meal.getTotalCalories());
+    }
+
+    @Override
+    protected void unindex(Long id) {
+        byTotalCalories.remove(id);
+    }
+
+    @Override
+    protected void clearIndexes() {
+        byTotalCalories.clear();
+    }
+}
@@ -0,0 +1,390 @@
+package org.coda.core.repository.memory;
+
+import jakarta.persistence.EntityNotFoundException;
+import org.coda.core.repository.SortComparators;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * JpaRepository kept in a ConcurrentHashMap, for the memory profile.
+ * The entities are stored as saved, like the managed instances of a persistence context that is never cleared:
+ * a change made after save is seen by every reader, but the secondary indexes only follow it on the next save.
+ * Reads are lock free and see the writes of other threads as soon as they are made; writes are serialized
+ * by one lock per repository so an entity and its indexes change together.
+ * Writes are not undone when a transaction rolls back, and nothing checks that associated entities exist.
+ * Sorting compares the properties named by the Sort with SortComparators; query by example is not supported.
+ * @param <T> the type of the entity
+ * @param <ID> the type of the id of the entity
+ */
+public abstract class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
+
+    private final Map<ID, T> entities = new ConcurrentHashMap<>();
+
+    //== the ids in the order of the primary key, for findAll and keyset pagination ==
+    private final NavigableSet<ID> ids;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    protected InMemoryRepository(Comparator<? super ID> idOrder) {
+        this.ids = new ConcurrentSkipListSet<>(idOrder);
+    }
+
+    //== the storage of a subclass: its id, its checks and its secondary indexes ==
+
+    /**
+     * @param entity a prepared entity
+     * @return the id of the entity
+     */
+    protected abstract ID idOf(T entity);
+
+    /**
+     * Called under the write lock before an entity is stored, to assign its id and derived values
+     * @param entity the entity to store
+     */
+    protected void prepare(T entity) {
+    }
+
+    /**
+     * Called under the write lock before a prepared entity is stored, to enforce the unique constraints
+     * @param entity the entity to store
+     * @param id the id of the entity
+     */
+    protected void check(T entity, ID id) {
+    }
+
+    /**
+     * Called under the write lock to index a stored entity, replacing the keys it was indexed under before
+     * @param entity the stored entity
+     * @param id the id of the entity
+     */
+    protected abstract void index(T entity, ID id);
+
+    /**
+     * Called under the write lock to remove a deleted entity from the secondary indexes
+     * @param id the id of the deleted entity
+     */
+    protected abstract void unindex(ID id);
+
+    protected abstract void clearIndexes();
+
+    //== writes ==
+
+    @Override
+    public <S extends T> S save(S entity) {
+        return locked(() -> {
+            prepare(entity);
+            ID id = idOf(entity);
+            check(entity, id);
+            entities.put(id, entity);
+            ids.add(id);
+            index(entity, id);
+            return entity;
+        });
+    }
+
+    @Override
+    public <S extends T> List<S> saveAll(Iterable<S> entities) {
+        return locked(() -> {
+            List<S> saved = new ArrayList<>();
+            for (S entity : entities) {
+                saved.add(save(entity));
+            }
+            return saved;
+        });
+    }
+
+    @Override
+    public <S extends T> S saveAndFlush(S entity) {
+        return save(entity);
+    }
+
+    @Override
+    public <S extends T> List<S> saveAllAndFlush(Iterable<S> entities) {
+        return saveAll(entities);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void deleteById(ID id) {
+        locked(() -> remove(id));
+    }
+
+    @Override
+    public void delete(T entity) {
+        deleteById(idOf(entity));
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends ID> ids) {
+        locked(() -> {
+            for (ID id : ids) {
+                remove(id);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends T> entities) {
+        locked(() -> {
+            for (T entity : entities) {
+                remove(idOf(entity));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAllInBatch(Iterable<T> entities) {
+        deleteAll(entities);
+    }
+
+    @Override
+    public void deleteAllByIdInBatch(Iterable<ID> ids) {
+        deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+        locked(() -> {
+            entities.clear();
+            ids.clear();
+            clearIndexes();
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        deleteAll();
+    }
+
+    //== reads by id ==
+
+    @Override
+    public Optional<T> findById(ID id) {
+        return Optional.ofNullable(entities.get(id));
+    }
+
+    @Override
+    public boolean existsById(ID id) {
+        return entities.containsKey(id);
+    }
+
+    @Override
+    public List<T> findAllById(Iterable<ID> ids) {
+        List<T> found = new ArrayList<>();
+        for (ID id : ids) {
+            findById(id).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    @Override
+    public T getReferenceById(ID id) {
+        return findById(id).orElseThrow(() -> new EntityNotFoundException("No entity with id " + id));
+    }
+
+    @Override
+    @Deprecated
+    public T getOne(ID id) {
+        return getReferenceById(id);
+    }
+
+    @Override
+    @Deprecated
+    public T getById(ID id) {
+        return getReferenceById(id);
+    }
+
+    @Override
+    public long count() {
+        return entities.size();
+    }
+
+    @Override
+    public List<T> findAll() {
+        return byIds(ids.stream()).toList();
+    }
+
+    @Override
+    public List<T> findAll(Sort sort) {
+        return sorted(sort).toList();
+    }
+
+    @Override
+    public Page<T> findAll(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(findAll(pageable.getSort()));
+        }
+        List<T> content = sorted(pageable.getSort()).skip(pageable.getOffset()).limit(pageable.getPageSize()).toList();
+        return new PageImpl<>(content, pageable, count());
+    }
+
+    //== in the order of the primary key the entities are streamed, any other order sorts them all ==
+    private Stream<T> sorted(Sort sort) {
+        Stream<T> all = byIds(ids.stream());
+        return sort.isSorted() ? all.sorted(SortComparators.of(sort)) : all;
+    }
+
+    //== query by example needs a query engine the map does not have ==
+
+    @Override
+    public <S extends T> Optional<S> findOne(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends T> List<S> findAll(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends T> List<S> findAll(Example<S> example, Sort sort) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends T> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends T> long count(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends T> boolean exists(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends T, R> R findBy(Example<S> example,
+                                     Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw unsupported();
+    }
+
+    //== JPQL as well: the stream methods of the repositories are implemented on the map instead ==
+
+    public <R> Stream<R> streamQuery(String jpql, Class<R> type, boolean readOnly, Map<String, ?> parameters) {
+        throw unsupported();
+    }
+
+    //== snapshot ==
+
+    /**
+     * @return List<T> of the stored entities in id order
+     */
+    List<T> snapshot() {
+        return findAll();
+    }
+
+    /**
+     * Replace the stored entities with the entities of a snapshot
+     * @param restored the entities of the snapshot
+     */
+    void restore(List<T> restored) {
+        locked(() -> {
+            deleteAll();
+            saveAll(restored);
+            return null;
+        });
+    }
+
+    //== helpers for the queries of the subclasses ==
+
+    /**
+     * @param id the id of an entity that may have been saved with an id of its own, 0 for a new entity
+     * @return the id if there is one, the next id of the sequence otherwise
+     */
+    protected long nextId(long id) {
+        if (id == 0) {
+            return sequence.incrementAndGet();
+        }
+        sequence.accumulateAndGet(id, Math::max);
+        return id;
+    }
+
+    /**
+     * @param ids the ids found by an index
+     * @return Stream<T> of the entities still stored
+     */
+    protected Stream<T> byIds(Stream<ID> ids) {
+        return ids.map(entities::get).filter(Objects::nonNull);
+    }
+
+    /**
+     * @return Stream<T> of every entity in id order
+     */
+    protected Stream<T> stream() {
+        return byIds(ids.stream());
+    }
+
+    /**
+     * Keyset pagination on the primary key
+     * @param id the last id of the previous page
+     * @param limit the maximum number of entities to return
+     * @return List<T> of the entities after the id, in id order
+     */
+    protected List<T> pageAfter(ID id, Limit limit) {
+        return limited(byIds(ids.tailSet(id, false).stream()), limit).toList();
+    }
+
+    /**
+     * Run a read-modify-write under the write lock, so it is atomic with respect to the other writes
+     * @param write the write
+     * @return the result of the write
+     */
+    protected <R> R locked(Supplier<R> write) {
+        writeLock.lock();
+        try {
+            return write.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    protected static <E> Stream<E> limited(Stream<E> stream, Limit limit) {
+        return limit.isUnlimited() ? stream : stream.limit(limit.max());
+    }
+
+    protected static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Not supported by the in-memory repositories");
+    }
+
+    private boolean remove(ID id) {
+        if (entities.remove(id) == null) {
+            return false;
+        }
+        ids.remove(id);
+        unindex(id);
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+package org.coda.core.repository.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.exceptions.StorageSnapshotException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Snapshot of the in-memory repositories in one gzip compressed serialization file.
+ * The entities of every repository are written as one object graph, so an intake restored from the snapshot
+ * references the same user, meal and food instances as the other repositories.
+ * The file is read when the snapshot is created and written by save, on shutdown or when called;
+ * it is written next to its final name and moved over it, so a crash mid-write keeps the previous snapshot.
+ * Writes made while save runs may or may not be part of the snapshot.
+ */
+@Slf4j
+public class InMemorySnapshot {
+
+    //== only the entities and the JDK types they are made of are read back ==
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "org.coda.core.entities.*;java.base/*;!*");
+
+    private final Path file;
+
+    private final Map<String, List<?>> loaded;
+
+    private final Map<String, InMemoryRepository<?, ?>> repositories = new LinkedHashMap<>();
+
+    /**
+     * Read the snapshot file if there is one
+     * @param file the snapshot file, null to keep the repositories in memory only
+     */
+    public InMemorySnapshot(Path file) {
+        this.file = file;
+        this.loaded = file == null ? Map.of() : read(file);
+    }
+
+    /**
+     * Restore the entities of a repository from the snapshot file, and include the repository in the next save.
+     * @param name the name of the repository in the snapshot file
+     * @param repository the repository
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> void attach(String name, InMemoryRepository<T, ?> repository) {
+        repositories.put(name, repository);
+        List<T> entities = (List<T>) loaded.get(name);
+        if (entities != null) {
+            repository.restore(entities);
+            log.info("Restored {} {} from {}", entities.size(), name, file);
+        }
+    }
+
+    /**
+     * Write the entities of every attached repository to the snapshot file, does nothing without a file
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        LinkedHashMap<String, List<?>> entities = new LinkedHashMap<>();
+        repositories.forEach((name, repository) -> entities.put(name, repository.snapshot()));
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+            try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary))))) {
+                out.writeObject(entities);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new StorageSnapshotException("Cannot write the storage snapshot " + file, e);
+        }
+        log.info("Saved {} to {}", counts(entities), file);
+    }
+
+    //== helpers ==
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<?>> read(Path file) {
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            in.setObjectInputFilter(FILTER);
+            return (Map<String, List<?>>) in.readObject();
+        } catch (NoSuchFileException e) {
+            return Map.of();
+        } catch (InvalidClassException | ClassNotFoundException | ClassCastException e) {
+            throw new StorageSnapshotException("The storage snapshot " + file + " holds unexpected classes", e);
+        } catch (IOException e) {
+            throw new StorageSnapshotException("Cannot read the storage snapshot " + file, e);
+        }
+    }
+
+    private static Map<String, Integer> counts(Map<String, List<?>> entities) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        entities.forEach((name, list) -> counts.put(name, list.size()));
+        return counts;
+    }
+}
@@ -0,0 +1,69 @@
+package org.coda.core.repository.memory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+
+/**
+ * The repositories of the memory profile: every entity is kept in the heap instead of the database,
+ * for a fast start and for deployments without one. application-memory.properties leaves out the DataSource,
+ * Hibernate and Spring Data JPA, so the context starts without opening a connection or building a metamodel.
+ * The repositories can be saved to calorietracker.memory.snapshot-file on shutdown and restored on start.
+ */
+@Configuration
+@Profile("memory")
+public class InMemoryStorageConfig {
+
+    @Bean(destroyMethod = "save")
+    public InMemorySnapshot inMemorySnapshot(@Value("${calorietracker.memory.snapshot-file:}") String snapshotFile) {
+        return new InMemorySnapshot(snapshotFile.isBlank() ? null : Path.of(snapshotFile));
+    }
+
+    //== the snapshot restores each repository before it is handed out ==
+
+    @Bean
+    public InMemoryFoodRepository foodRepository(InMemorySnapshot inMemorySnapshot) {
+        InMemoryFoodRepository repository = new InMemoryFoodRepository();
+        inMemorySnapshot.attach("foods", repository);
+        return repository;
+    }
+
+    @Bean
+    public InMemoryMealRepository mealRepository(InMemorySnapshot inMemorySnapshot,
+                                                 InMemoryFoodRepository foodRepository) {
+        InMemoryMealRepository repository = new InMemoryMealRepository(foodRepository);
+        inMemorySnapshot.attach("meals", repository);
+        return repository;
+    }
+
+    @Bean
+    public InMemoryUserRepository userRepository(InMemorySnapshot inMemorySnapshot,
+                                                 InMemoryDailyIntakeSummaryRepository dailyIntakeSummaryRepository) {
+        InMemoryUserRepository repository = new InMemoryUserRepository(dailyIntakeSummaryRepository);
+        inMemorySnapshot.attach("users", repository);
+        return repository;
+    }
+
+    @Bean
+    public InMemoryCalorieInTakeRepository calorieInTakeRepository(InMemorySnapshot inMemorySnapshot) {
+        InMemoryCalorieInTakeRepository repository = new InMemoryCalorieInTakeRepository();
+        inMemorySnapshot.attach("intakes", repository);
+        return repository;
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager() {
+        return new InMemoryTransactionManager();
+    }
+
+    @Bean
+    public InMemoryDailyIntakeSummaryRepository dailyIntakeSummaryRepository(InMemorySnapshot inMemorySnapshot) {
+        InMemoryDailyIntakeSummaryRepository repository = new InMemoryDailyIntakeSummaryRepository();
+        inMemorySnapshot.attach("summaries", repository);
+        return repository;
+    }
+}
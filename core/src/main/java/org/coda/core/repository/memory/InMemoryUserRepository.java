@@ -0,0 +1,180 @@
+package org.coda.core.repository.memory;
+
+import org.coda.core.entities.User;
+import org.coda.core.repository.UserRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.util.SerializationUtils;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.DoublePredicate;
+import java.util.stream.Stream;
+
+/**
+ * UserRepository of the memory profile, with a unique index on the email and an index on the last login.
+ * A second user with the same email is rejected with DataIntegrityViolationException, as uk_user_email
+ * rejects it in the database.
+ */
+public class InMemoryUserRepository extends InMemoryRepository<User, Long> implements UserRepository {
+
+    private final InMemoryDailyIntakeSummaryRepository dailyIntakeSummaryRepository;
+
+    private final SortedIndex<String> byEmail = new SortedIndex<>(Comparator.naturalOrder());
+
+    private final SortedIndex<LocalDateTime> byLastLogin = new SortedIndex<>(Comparator.naturalOrder());
+
+    /**
+     * Constructor based dependency injection
+     * @param dailyIntakeSummaryRepository to average the daily calories of the users in the consumption queries
+     */
+    public InMemoryUserRepository(InMemoryDailyIntakeSummaryRepository dailyIntakeSummaryRepository) {
+        super(Comparator.naturalOrder());
+        this.dailyIntakeSummaryRepository = dailyIntakeSummaryRepository;
+    }
+
+    @Override
+    public Optional<User> findUserByEmail(String email) {
+        return byIds(byEmail.equalTo(email)).findFirst();
+    }
+
+    @Override
+    public List<User> getUsersWithHighCalorieConsumption() {
+        return byAverageCalories(average -> average > 2000);
+    }
+
+    @Override
+    public List<User> getUsersWithLowCalorieConsumption() {
+        return byAverageCalories(average -> average < 2000);
+    }
+
+    @Override
+    public List<User> getUsersByRole(String role) {
+        return stream().filter(user -> role.equals(user.getRole())).toList();
+    }
+
+    @Override
+    public void updateUserLastLogin(long id, LocalDateTime lastLogin) {
+        locked(() -> findById(id).map(user -> {
+            user.setLastLogin(lastLogin);
+            return save(user);
+        }));
+    }
+
+    @Override
+    public Optional<User> findCurrentById(long id) {
+        //== a copy, as a read in a new persistence context would be, so the change is not seen before the write ==
+        return findById(id).map(SerializationUtils::clone);
+    }
+
+    @Override
+    public int updateIfUnchanged(long id, long version, String name, String password, int age, int weight,
+                                 double height, int calorieGoal, String email, String phone) {
+        return locked(() -> {
+            User stored = findById(id).orElse(null);
+            if (stored == null || stored.getVersion() != version) {
+                return 0;
+            }
+            checkEmail(email, id);
+            stored.setName(name);
+            stored.setPassword(password);
+            stored.setAge(age);
+            stored.setWeight(weight);
+            stored.setHeight(height);
+            stored.setCalorieGoal(calorieGoal);
+            if (email == null && phone == null) {
+                stored.setContact(null);
+            } else {
+                User.Contact contact = new User.Contact();
+                contact.setEmail(email);
+                contact.setPhone(phone);
+                stored.setContact(contact);
+            }
+            stored.setVersion(version + 1);
+            save(stored);
+            return 1;
+        });
+    }
+
+    @Override
+    public int deleteInactiveUsers(LocalDateTime lastLogin) {
+        return locked(() -> {
+            List<Long> inactive = byLastLogin.below(lastLogin).toList();
+            deleteAllById(inactive);
+            return inactive.size();
+        });
+    }
+
+    @Override
+    public Stream<String> streamAllEmails() {
+        return byIds(byEmail.all()).map(User::getContact).map(User.Contact::getEmail);
+    }
+
+    @Override
+    public List<User> findByIdGreaterThanOrderByIdAsc(long id, Limit limit) {
+        return pageAfter(id, limit);
+    }
+
+    @Override
+    public Stream<User> streamAllUsers() {
+        return stream();
+    }
+
+    //== storage ==
+
+    @Override
+    protected void prepare(User user) {
+        user.setId(nextId(user.getId()));
+    }
+
+    @Override
+    protected void check(User user, Long id) {
+        checkEmail(email(user), id);
+    }
+
+    @Override
+    protected Long idOf(User user) {
+        return user.getId();
+    }
+
+    @Override
+    protected void index(User user, Long id) {
+        byEmail.put(id, email(user));
+        byLastLogin.put(id, user.getLastLogin());
+    }
+
+    @Override
+    protected void unindex(Long id) {
+        byEmail.remove(id);
+        byLastLogin.remove(id);
+    }
+
+    @Override
+    protected void clearIndexes() {
+        byEmail.clear();
+        byLastLogin.clear();
+    }
+
+    //== helpers ==
+
+    private void checkEmail(String email, long id) {
+        if (email != null && byEmail.equalTo(email).anyMatch(other -> other.longValue() != id)) {
+            throw new DataIntegrityViolationException("Unique index or primary key violation: uk_user_email");
+        }
+    }
+
+    private List<User> byAverageCalories(DoublePredicate filter) {
+        Map<Long, Double> averages = dailyIntakeSummaryRepository.averageCaloriesByUser();
+        return byIds(averages.entrySet().stream()
+                .filter(average -> filter.test(average.getValue()))
+                .map(Map.Entry::getKey))
+                .toList();
+    }
+
+    private static String email(User user) {
+        return user.getContact() == null ? null : user.getContact().getEmail();
+    }
+}
@@ -0,0 +1,146 @@
+package org.coda.core.repository.memory;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * A secondary index of entity ids ordered by a key, then by id, like a B-tree index on (key, id).
+ * Reads are lock free and weakly consistent; put and remove are called under the write lock of the repository.
+ * Entities whose key is null are not indexed, as a database index skips null keys in range scans.
+ * @param <K> the type of the indexed key
+ */
+final class SortedIndex<K> {
+
+    private final Comparator<? super K> keyOrder;
+
+    private final NavigableSet<Entry<K>> entries;
+
+    private final Map<Long, K> keys = new ConcurrentHashMap<>();
+
+    SortedIndex(Comparator<? super K> keyOrder) {
+        this.keyOrder = keyOrder;
+        this.entries = new ConcurrentSkipListSet<>(Comparator.<Entry<K>, K>comparing(Entry::key, keyOrder)
+                .thenComparingLong(Entry::id));
+    }
+
+    /**
+     * Index an entity under its current key, replacing the key it was indexed under before
+     * @param id the id of the entity
+     * @param key the key of the entity, null to only remove it
+     */
+    void put(long id, K key) {
+        remove(id);
+        if (key != null) {
+            keys.put(id, key);
+            entries.add(new Entry<>(key, id));
+        }
+    }
+
+    void remove(long id) {
+        K key = keys.remove(id);
+        if (key != null) {
+            entries.remove(new Entry<>(key, id));
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        keys.clear();
+    }
+
+    /**
+     * @param key the key to look up
+     * @return Stream<Long> of the ids indexed under the key, in id order
+     */
+    Stream<Long> equalTo(K key) {
+        return range(key, true, key, true);
+    }
+
+    /**
+     * @param from the lowest key
+     * @param fromInclusive whether ids indexed under from are included
+     * @param to the highest key
+     * @param toInclusive whether ids indexed under to are included
+     * @return Stream<Long> of the ids between the keys, in key then id order
+     */
+    Stream<Long> range(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        int order = keyOrder.compare(from, to);
+        if (order > 0 || order == 0 && !(fromInclusive && toInclusive)) {
+            return Stream.empty();
+        }
+        return ids(entries.subSet(fromInclusive ? lowest(from) : highest(from), false,
+                toInclusive ? highest(to) : lowest(to), false));
+    }
+
+    /**
+     * @param key the exclusive lower bound
+     * @return Stream<Long> of the ids with a greater key, in key then id order
+     */
+    Stream<Long> above(K key) {
+        return ids(entries.tailSet(highest(key), false));
+    }
+
+    /**
+     * @param key the exclusive upper bound
+     * @return Stream<Long> of the ids with a smaller key, in key then id order
+     */
+    Stream<Long> below(K key) {
+        return ids(entries.headSet(lowest(key), false));
+    }
+
+    /**
+     * Keyset pagination: the ids after a (key, id) position
+     * @param key the key of the last id of the previous page
+     * @param id the last id of the previous page
+     * @return Stream<Long> of the ids after the position, in key then id order
+     */
+    Stream<Long> after(K key, long id) {
+        return ids(entries.tailSet(new Entry<>(key, id), false));
+    }
+
+    /**
+     * @param key the key of the last id of the previous page
+     * @param id the last id of the previous page
+     * @param to the exclusive upper bound of the keys
+     * @return Stream<Long> of the ids after the position with a key below to, in key then id order
+     */
+    Stream<Long> after(K key, long id, K to) {
+        Entry<K> from = new Entry<>(key, id);
+        Entry<K> end = lowest(to);
+        if (entries.comparator().compare(from, end) >= 0) {
+            return Stream.empty();
+        }
+        return ids(entries.subSet(from, false, end, false));
+    }
+
+    /**
+     * @return Stream<Long> of every indexed id, in key then id order
+     */
+    Stream<Long> all() {
+        return ids(entries);
+    }
+
+    //== helpers ==
+
+    //== ids are positive, so (key, MIN) sorts before and (key, MAX) after every entry of the key ==
+    private static <K> Entry<K> lowest(K key) {
+        return new Entry<>(key, Long.MIN_VALUE);
+    }
+
+    private static <K> Entry<K> highest(K key) {
+        return new Entry<>(key, Long.MAX_VALUE);
+    }
+
+    private static <K> Stream<Long> ids(NavigableSet<Entry<K>> entries) {
+        return entries.stream().map(Entry::id);
+    }
+
+    // == nested classes ==
+
+    private record Entry<K>(K key, long id) {
+    }
+}
@@ -0,0 +1,87 @@
+package org.coda.core.repository.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opt-in read/write split, enabled with calorietracker.replicas.enabled=true: read-only transactions,
+ * such as the @Transactional(readOnly = true) service methods, go to the pools of calorietracker.replicas.urls,
+ * the other transactions to the spring.datasource primary. Replaces the DataSource Spring Boot would create.
+ */
+@Configuration
+@Profile("!memory")
+@ConditionalOnProperty(name = "calorietracker.replicas.enabled", havingValue = "true")
+public class ReadWriteRoutingConfig {
+
+    /**
+     * The primary pool, built from spring.datasource as Spring Boot builds it, and one pool per replica
+     * @param properties the spring.datasource properties
+     * @param environment to bind spring.datasource.hikari to the primary pool
+     * @param urls the JDBC URLs of the replicas
+     * @param username the user of the replicas, blank for the user of the primary
+     * @param password the password of the replicas, blank for the password of the primary
+     * @param poolSize the maximum connections of each replica pool
+     * @param connectionTimeout how long a read waits for a replica connection before it goes to the primary
+     * @param maxLag replicas further behind the primary take no reads
+     * @param checkInterval how often the replicas are checked
+     * @return ReadWriteRoutingDataSource, started and closed with the context
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(
+            DataSourceProperties properties, Environment environment,
+            @Value("${calorietracker.replicas.urls}") String[] urls,
+            @Value("${calorietracker.replicas.username:}") String username,
+            @Value("${calorietracker.replicas.password:}") String password,
+            @Value("${calorietracker.replicas.pool-size:10}") int poolSize,
+            @Value("${calorietracker.replicas.connection-timeout:PT1S}") Duration connectionTimeout,
+            @Value("${calorietracker.replicas.max-lag:PT5S}") Duration maxLag,
+            @Value("${calorietracker.replicas.check-interval:PT1S}") Duration checkInterval) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (replicas.size() + 1));
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(username.isBlank() ? properties.determineUsername() : username);
+            replica.setPassword(password.isBlank() ? properties.determinePassword() : password);
+            replica.setMaximumPoolSize(poolSize);
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            replica.setReadOnly(true);
+            //== a replica that is down on start is left out by the health check instead of failing the start ==
+            replica.setInitializationFailTimeout(-1);
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReadWriteRoutingDataSource(primary, replicas, maxLag, checkInterval);
+    }
+
+    /**
+     * The DataSource of JPA and JDBC, taking its connection on the first statement of a transaction,
+     * once the transaction is known to be read-only or not
+     * @param readWriteRoutingDataSource routes each transaction to the primary or a replica
+     * @return LazyConnectionDataSourceProxy over readWriteRoutingDataSource
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+}
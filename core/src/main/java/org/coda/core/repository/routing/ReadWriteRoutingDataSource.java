@@ -0,0 +1,289 @@
+package org.coda.core.repository.routing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.projection.ReplicaStatus;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read-only transactions to the read replicas and everything else to the primary.
+ * The transaction has to be known when the connection is taken, so the DataSource given to JPA wraps this one
+ * in a LazyConnectionDataSourceProxy, which takes the connection on the first statement rather than on begin.
+ * <p>
+ * A replica takes reads while it is healthy and within the lag tolerance. The check writes the time to a
+ * heartbeat row on the primary and reads the replicated row back from every replica: the lag is how old the
+ * copy is. A replica that fails the check or a connection attempt is left out until it passes the next check,
+ * and its reads go to the primary meanwhile. With no eligible replica every read goes to the primary.
+ * <p>
+ * Read-your-writes: a ReplicaSession that committed a write only reads from replicas whose heartbeat copy is
+ * later than that commit, so the write has reached them; until then its reads stay on the primary.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    private static final String HEARTBEAT_TABLE =
+            "CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat BIGINT NOT NULL)";
+
+    private static final String UPDATE_HEARTBEAT = "UPDATE replication_heartbeat SET beat = ? WHERE id = 1";
+
+    private static final String INSERT_HEARTBEAT = "INSERT INTO replication_heartbeat (id, beat) VALUES (1, ?)";
+
+    private static final String READ_HEARTBEAT = "SELECT beat FROM replication_heartbeat WHERE id = 1";
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final long maxLagMillis;
+
+    private final Duration checkInterval;
+
+    //== commit time of the last write of each session, dropped once every eligible replica is past it ==
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final LongAdder primaryReads = new LongAdder();
+
+    private ScheduledExecutorService checker;
+
+    /**
+     * @param primary the pool of the primary, for writes and for the reads no replica can take
+     * @param replicas the pools of the replicas by name
+     * @param maxLag replicas further behind the primary take no reads
+     * @param checkInterval how often the replicas are checked, zero to only check on start and when called
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration maxLag,
+                                      Duration checkInterval) {
+        this.primary = primary;
+        this.replicas = replicas.entrySet().stream()
+                .map(replica -> new Replica(replica.getKey(), replica.getValue()))
+                .toList();
+        this.maxLagMillis = maxLag.toMillis();
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Create the heartbeat table on the primary, check the replicas once and schedule the next checks
+     */
+    public synchronized void start() {
+        try (Connection connection = primary.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(HEARTBEAT_TABLE);
+        } catch (SQLException e) {
+            log.warn("Cannot create the replication heartbeat table on the primary: {}", e.getMessage());
+        }
+        checkReplicas();
+        if (!checkInterval.isZero() && checker == null) {
+            checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "replica-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checker.scheduleWithFixedDelay(this::checkReplicas, checkInterval.toMillis(), checkInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the checks and close the pools
+     */
+    public synchronized void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+        replicas.forEach(replica -> closePool(replica.dataSource));
+        closePool(primary);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return primary.getConnection();
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                String session = ReplicaSession.current();
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        lastWrites.put(session, System.currentTimeMillis());
+                    }
+                });
+            }
+            return primary.getConnection();
+        }
+        Replica replica = choose(ReplicaSession.current());
+        if (replica != null) {
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replica.reads.increment();
+                return connection;
+            } catch (SQLException e) {
+                replica.down(e);
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pools connect with their configured user");
+    }
+
+    /**
+     * Unwraps to the primary pool too, so its pool metrics are still bound
+     */
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    /**
+     * Write the heartbeat to the primary and read it back from every replica, to update their health and lag
+     */
+    public void checkReplicas() {
+        long beat = System.currentTimeMillis();
+        try (Connection connection = primary.getConnection()) {
+            writeHeartbeat(connection, beat);
+        } catch (SQLException e) {
+            log.warn("Cannot write the replication heartbeat to the primary: {}", e.getMessage());
+        }
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(READ_HEARTBEAT);
+                 ResultSet rows = statement.executeQuery()) {
+                replica.up(rows.next() ? rows.getLong(1) : -1);
+            } catch (SQLException | RuntimeException e) {
+                replica.down(e);
+            }
+        }
+        long now = System.currentTimeMillis();
+        lastWrites.values().removeIf(write -> write < now - maxLagMillis);
+    }
+
+    /**
+     * @return ReplicaStatus of every replica, in configuration order
+     */
+    public List<ReplicaStatus> getReplicas() {
+        long now = System.currentTimeMillis();
+        return replicas.stream()
+                .map(replica -> new ReplicaStatus(replica.name, replica.healthy,
+                        replica.replicatedUpTo < 0 ? -1 : now - replica.replicatedUpTo, replica.eligible(now),
+                        replica.reads.sum()))
+                .toList();
+    }
+
+    /**
+     * @return the read-only transactions that went to the primary, as no replica could take them
+     */
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    //== helpers ==
+
+    private Replica choose(String session) {
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Long lastWrite = lastWrites.get(session);
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.eligible(now) && (lastWrite == null || replica.replicatedUpTo > lastWrite)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static void writeHeartbeat(Connection connection, long beat) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_HEARTBEAT)) {
+            update.setLong(1, beat);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_HEARTBEAT)) {
+            insert.setLong(1, beat);
+            insert.executeUpdate();
+        }
+    }
+
+    private static void closePool(DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable pool) {
+            try {
+                pool.close();
+            } catch (Exception e) {
+                log.warn("Cannot close the pool {}: {}", dataSource, e.getMessage());
+            }
+        }
+    }
+
+    // == nested classes ==
+
+    private final class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private final LongAdder reads = new LongAdder();
+
+        private volatile boolean healthy;
+
+        //== the primary time in the heartbeat copy of the replica, -1 until read ==
+        private volatile long replicatedUpTo = -1;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private boolean eligible(long now) {
+            return healthy && replicatedUpTo >= 0 && now - replicatedUpTo <= maxLagMillis;
+        }
+
+        private void up(long beat) {
+            if (!healthy) {
+                log.info("Replica {} is up", name);
+            }
+            replicatedUpTo = beat;
+            healthy = true;
+        }
+
+        private void down(Exception e) {
+            if (healthy) {
+                log.warn("Replica {} is down, its reads go to the primary: {}", name, e.getMessage());
+            }
+            healthy = false;
+        }
+    }
+}
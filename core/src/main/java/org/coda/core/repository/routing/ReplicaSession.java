@@ -0,0 +1,53 @@
+package org.coda.core.repository.routing;
+
+/**
+ * The session on whose behalf the current thread reads and writes, for the read-your-writes stickiness of
+ * ReadWriteRoutingDataSource: once a session commits a write, its read-only transactions stay on the primary
+ * until a replica has caught up with that write. Threads without a bound session share one default session,
+ * which suits the single user console; the API binds one session per client.
+ */
+public final class ReplicaSession {
+
+    public static final String DEFAULT = "";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ReplicaSession() {
+    }
+
+    /**
+     * Bind a session to the current thread until the returned scope is closed
+     * @param key identifies the session, e.g. the client of a request
+     * @return Scope restoring the previous session when closed
+     */
+    public static Scope bind(String key) {
+        String previous = CURRENT.get();
+        CURRENT.set(key == null ? DEFAULT : key);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * @return the session bound to the current thread, DEFAULT when there is none
+     */
+    public static String current() {
+        String key = CURRENT.get();
+        return key == null ? DEFAULT : key;
+    }
+
+    // == nested classes ==
+
+    /**
+     * Closing the scope unbinds its session, without checked exceptions
+     */
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,576 @@
+package org.coda.core.search;
+
+import org.coda.core.projection.FoodSearchHit;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory type-ahead index over normalized food names.
+ * Names are lower-cased, stripped of accents and split into terms. Each distinct term keeps a
+ * posting list of the foods containing it, and the term dictionary is indexed twice:
+ * sorted for prefix lookups and by trigram for typo tolerant lookups.
+ * A query term is expanded against the dictionary only (prefix, abbreviation and trigram matches).
+ * Posting lists are kept in ranking order (shorter name first, then id), so a query walks the postings
+ * of its most selective term best first and stops as soon as no remaining food can enter the top hits.
+ * Every query term must match for a food to be returned.
+ * Reads run concurrently, writes take an exclusive lock.
+ */
+@Component
+public class FoodSearchIndex {
+
+    //== at most this many dictionary terms are kept per query term, the best scoring ones ==
+    static final int MAX_EXPANSIONS = 32;
+
+    //== minimum trigram similarity (Jaccard) for a term to count as a typo of the query term ==
+    static final float MIN_TRIGRAM_SIMILARITY = 0.3f;
+
+    //== best score first, then shorter name, then lower id ==
+    private static final Comparator<FoodSearchHit> RANKING = Comparator.comparingDouble(FoodSearchHit::score).reversed()
+            .thenComparingInt(hit -> hit.name().length())
+            .thenComparingLong(FoodSearchHit::id);
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //== dictionary ==
+    private final Map<String, Term> terms = new HashMap<>();
+    private final NavigableMap<String, Term> sortedTerms = new TreeMap<>();
+    private final Map<String, IntList> termsByTrigram = new HashMap<>();
+    private final Map<Character, IntList> termsByFirstChar = new HashMap<>();
+    private final List<Term> termsById = new ArrayList<>();
+
+    //== indexed foods, addressed by slot ==
+    private final Map<Long, Integer> slotsById = new HashMap<>();
+    private final IntList freeSlots = new IntList();
+    private long[] ids = new long[1024];
+    private String[] names = new String[1024];
+    private Term[][] slotTerms = new Term[1024][];
+    private int slotCount;
+
+    //== posting order, the same as the ranking of foods with equal scores ==
+    private final SlotOrder postingOrder = (left, right) -> {
+        int byLength = Integer.compare(names[left].length(), names[right].length());
+        return byLength != 0 ? byLength : Long.compare(ids[left], ids[right]);
+    };
+
+    /**
+     * Add a food to the index, or replace its name when it is already indexed
+     * @param id the id of the food
+     * @param name the name of the food, foods without a name are removed from the index
+     */
+    public void index(long id, String name) {
+        lock.writeLock().lock();
+        try {
+            indexLocked(id, name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a food from the index, nothing happens if it is not indexed
+     * @param id the id of the food
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the whole content of the index
+     * @param foods the id and name of every food to index
+     */
+    public void rebuild(Map<Long, String> foods) {
+        lock.writeLock().lock();
+        try {
+            clearLocked();
+            //== indexing in ranking order appends to every posting list, no insertion needed ==
+            List<Map.Entry<Long, String>> ordered = new ArrayList<>(foods.entrySet());
+            ordered.removeIf(food -> food.getValue() == null);
+            ordered.sort(Comparator.<Map.Entry<Long, String>>comparingInt(food -> food.getValue().length())
+                    .thenComparingLong(Map.Entry::getKey));
+            ordered.forEach(food -> indexLocked(food.getKey(), food.getValue()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every food from the index
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            clearLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed foods
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranked fuzzy search, e.g. "chick brst" finds "Chicken breast"
+     * Each query term matches a name term exactly, as a prefix, as an abbreviation
+     * (the query letters appear in order) or as a typo (shared trigrams), in decreasing score.
+     * @param query the text typed by the user
+     * @param limit the maximum number of hits to return
+     * @return List<FoodSearchHit> best first, ties broken by shorter name, then by id
+     */
+    public List<FoodSearchHit> search(String query, int limit) {
+        List<String> queryTerms = distinctTerms(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            List<Map<Term, Float>> expansions = new ArrayList<>(queryTerms.size());
+            for (String queryTerm : queryTerms) {
+                Map<Term, Float> expansion = expand(queryTerm);
+                if (expansion.isEmpty()) {
+                    return List.of();
+                }
+                expansions.add(expansion);
+            }
+            //== walk the most selective query term, the others are checked on the candidate's own terms ==
+            expansions.sort(Comparator.comparingLong(FoodSearchIndex::postingCount));
+            Map<Term, Float> driver = expansions.get(0);
+            float otherMaxScores = 0f;
+            for (Map<Term, Float> expansion : expansions.subList(1, expansions.size())) {
+                otherMaxScores += Collections.max(expansion.values());
+            }
+
+            PriorityQueue<Cursor> cursors = new PriorityQueue<>(driver.size());
+            driver.forEach((term, score) -> cursors.add(new Cursor(term.postings, score)));
+            //== a food is in at most one posting list of a single term expansion, no need to track it ==
+            IntSet seen = driver.size() > 1 ? new IntSet() : null;
+            PriorityQueue<FoodSearchHit> worstFirst = new PriorityQueue<>(limit + 1, RANKING.reversed());
+            Cursor cursor = cursors.poll();
+            while (cursor != null) {
+                int slot = cursor.slot();
+                //== cursors come out in ranking order, so this bounds every food not seen yet ==
+                if (worstFirst.size() == limit
+                        && ranksFirst(worstFirst.peek(), (cursor.score + otherMaxScores) / queryTerms.size(), slot)) {
+                    break;
+                }
+                if (seen == null || seen.add(slot)) {
+                    float score = score(slot, expansions);
+                    if (score > 0) {
+                        worstFirst.add(new FoodSearchHit(ids[slot], names[slot], score / queryTerms.size()));
+                        if (worstFirst.size() > limit) {
+                            worstFirst.poll();
+                        }
+                    }
+                }
+                if (!cursor.advance()) {
+                    cursor = cursors.poll();
+                } else if (!cursors.isEmpty() && cursors.peek().compareTo(cursor) < 0) {
+                    cursors.add(cursor);
+                    cursor = cursors.poll();
+                }
+            }
+            List<FoodSearchHit> hits = new ArrayList<>(worstFirst);
+            hits.sort(RANKING);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Normalize a food name or query for indexing: lower case, no accents, single spaces
+     * @param text the text to normalize
+     * @return the normalized text, empty when nothing searchable is left
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        return SEPARATORS.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    //== helpers ==
+
+    /**
+     * Match a query term against the dictionary.
+     * Scores: 1 for an exact match, (0.8, 1) for a prefix, (0.5, 0.7] for an abbreviation
+     * (the query letters appear in the term in order, starting with the same letter),
+     * [0.21, 0.7) for a typo (trigram similarity at least MIN_TRIGRAM_SIMILARITY).
+     * A term matching several ways keeps its best score.
+     */
+    private Map<Term, Float> expand(String queryTerm) {
+        Map<Term, Float> matches = new HashMap<>();
+        for (Term term : sortedTerms.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false).values()) {
+            if (!term.postings.isEmpty()) {
+                matches.put(term, term.text.equals(queryTerm) ? 1f : 0.8f + 0.2f * coverage(queryTerm, term));
+            }
+            if (matches.size() >= MAX_EXPANSIONS * 4) {
+                break;
+            }
+        }
+        //== abbreviations: only terms sharing the first letter can contain the query letters in order ==
+        if (queryTerm.length() > 1) {
+            IntList sameFirstChar = termsByFirstChar.getOrDefault(queryTerm.charAt(0), IntList.EMPTY);
+            for (int i = 0; i < sameFirstChar.size(); i++) {
+                Term term = termsById.get(sameFirstChar.get(i));
+                if (!term.postings.isEmpty() && isAbbreviation(queryTerm, term.text)) {
+                    matches.merge(term, 0.5f + 0.2f * coverage(queryTerm, term), Math::max);
+                }
+            }
+        }
+        //== typos: count the trigrams each dictionary term shares with the query term ==
+        if (queryTerm.length() > 2) {
+            Set<String> queryTrigrams = trigrams(queryTerm);
+            Map<Term, Integer> sharedTrigrams = new HashMap<>();
+            for (String trigram : queryTrigrams) {
+                IntList withTrigram = termsByTrigram.getOrDefault(trigram, IntList.EMPTY);
+                for (int i = 0; i < withTrigram.size(); i++) {
+                    sharedTrigrams.merge(termsById.get(withTrigram.get(i)), 1, Integer::sum);
+                }
+            }
+            sharedTrigrams.forEach((term, shared) -> {
+                float similarity = (float) shared / (queryTrigrams.size() + term.trigramCount - shared);
+                if (!term.postings.isEmpty() && similarity >= MIN_TRIGRAM_SIMILARITY) {
+                    matches.merge(term, 0.7f * similarity, Math::max);
+                }
+            });
+        }
+        if (matches.size() <= MAX_EXPANSIONS) {
+            return matches;
+        }
+        List<Map.Entry<Term, Float>> best = new ArrayList<>(matches.entrySet());
+        best.sort(Map.Entry.<Term, Float>comparingByValue().reversed());
+        Map<Term, Float> bounded = new HashMap<>();
+        for (Map.Entry<Term, Float> entry : best.subList(0, MAX_EXPANSIONS)) {
+            bounded.put(entry.getKey(), entry.getValue());
+        }
+        return bounded;
+    }
+
+    private static float coverage(String queryTerm, Term term) {
+        return (float) queryTerm.length() / term.text.length();
+    }
+
+    private static long postingCount(Map<Term, Float> expansion) {
+        long count = 0;
+        for (Term term : expansion.keySet()) {
+            count += term.postings.size();
+        }
+        return count;
+    }
+
+    //== sum over the query terms of the best match among the food's terms, 0 when a query term is unmatched ==
+    //== the driving expansion at index 0 always matches, so it is checked last ==
+    private float score(int slot, List<Map<Term, Float>> expansions) {
+        float total = 0f;
+        for (int e = 1; e <= expansions.size(); e++) {
+            Map<Term, Float> expansion = expansions.get(e % expansions.size());
+            float best = 0f;
+            for (Term term : slotTerms[slot]) {
+                best = Math.max(best, expansion.getOrDefault(term, 0f));
+            }
+            if (best == 0f) {
+                return 0f;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    //== true when hit ranks before, or the same as, a food in slot with the given score ==
+    private boolean ranksFirst(FoodSearchHit hit, float score, int slot) {
+        if (hit.score() != score) {
+            return hit.score() > score;
+        }
+        if (hit.name().length() != names[slot].length()) {
+            return hit.name().length() < names[slot].length();
+        }
+        return hit.id() <= ids[slot];
+    }
+
+    private int nextSlot() {
+        if (slotCount == ids.length) {
+            ids = Arrays.copyOf(ids, slotCount * 2);
+            names = Arrays.copyOf(names, slotCount * 2);
+            slotTerms = Arrays.copyOf(slotTerms, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void indexLocked(long id, String name) {
+        removeLocked(id);
+        List<String> nameTerms = distinctTerms(name);
+        if (nameTerms.isEmpty()) {
+            return;
+        }
+        int slot = freeSlots.isEmpty() ? nextSlot() : freeSlots.removeLast();
+        ids[slot] = id;
+        names[slot] = name;
+        slotsById.put(id, slot);
+        Term[] foodTerms = new Term[nameTerms.size()];
+        for (int i = 0; i < foodTerms.length; i++) {
+            foodTerms[i] = termFor(nameTerms.get(i));
+            foodTerms[i].postings.insert(slot, postingOrder);
+        }
+        slotTerms[slot] = foodTerms;
+    }
+
+    private Term termFor(String text) {
+        Term term = terms.get(text);
+        if (term != null) {
+            return term;
+        }
+        Set<String> trigrams = trigrams(text);
+        term = new Term(termsById.size(), text, trigrams.size());
+        terms.put(text, term);
+        sortedTerms.put(text, term);
+        termsById.add(term);
+        termsByFirstChar.computeIfAbsent(text.charAt(0), c -> new IntList()).add(term.id);
+        for (String trigram : trigrams) {
+            termsByTrigram.computeIfAbsent(trigram, t -> new IntList()).add(term.id);
+        }
+        return term;
+    }
+
+    private void removeLocked(long id) {
+        Integer slot = slotsById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        for (Term term : slotTerms[slot]) {
+            term.postings.remove(slot, postingOrder);
+        }
+        names[slot] = null;
+        slotTerms[slot] = null;
+        freeSlots.add(slot);
+    }
+
+    private void clearLocked() {
+        terms.clear();
+        sortedTerms.clear();
+        termsByTrigram.clear();
+        termsByFirstChar.clear();
+        termsById.clear();
+        slotsById.clear();
+        freeSlots.clear();
+        Arrays.fill(names, 0, slotCount, null);
+        Arrays.fill(slotTerms, 0, slotCount, null);
+        slotCount = 0;
+    }
+
+    private static List<String> distinctTerms(String text) {
+        String normalized = text == null ? "" : normalize(text);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        return List.copyOf(new LinkedHashSet<>(Arrays.asList(normalized.split(" "))));
+    }
+
+    private static boolean isAbbreviation(String queryTerm, String term) {
+        if (queryTerm.charAt(0) != term.charAt(0)) {
+            return false;
+        }
+        int matched = 0;
+        for (int i = 0; i < term.length() && matched < queryTerm.length(); i++) {
+            if (term.charAt(i) == queryTerm.charAt(matched)) {
+                matched++;
+            }
+        }
+        return matched == queryTerm.length();
+    }
+
+    //== terms are padded so the first and last letters weigh as much as the inner ones ==
+    private static Set<String> trigrams(String term) {
+        String padded = "$" + term + "$";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    // == nested classes ==
+
+    private static final class Term {
+        private final int id;
+        private final String text;
+        private final int trigramCount;
+        private final IntList postings = new IntList();
+
+        private Term(int id, String text, int trigramCount) {
+            this.id = id;
+            this.text = text;
+            this.trigramCount = trigramCount;
+        }
+    }
+
+    /**
+     * Position in the posting list of one matched term, ordered best first:
+     * higher term score, then the posting order of the current food
+     */
+    private final class Cursor implements Comparable<Cursor> {
+        private final IntList postings;
+        private final float score;
+        private int position;
+
+        private Cursor(IntList postings, float score) {
+            this.postings = postings;
+            this.score = score;
+        }
+
+        private int slot() {
+            return postings.get(position);
+        }
+
+        private boolean advance() {
+            return ++position < postings.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int byScore = Float.compare(other.score, score);
+            return byScore != 0 ? byScore : postingOrder.compare(slot(), other.slot());
+        }
+    }
+
+    /**
+     * Growable int array, avoids boxing the posting lists of large catalogs
+     */
+    static final class IntList {
+        private static final IntList EMPTY = new IntList();
+
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        //== appending is the common case: rebuild indexes foods in posting order ==
+        void insert(int value, SlotOrder order) {
+            int position = size;
+            if (size > 0 && order.compare(values[size - 1], value) > 0) {
+                position = search(value, order);
+            }
+            add(value);
+            System.arraycopy(values, position, values, position + 1, size - 1 - position);
+            values[position] = value;
+        }
+
+        void remove(int value, SlotOrder order) {
+            int position = search(value, order);
+            System.arraycopy(values, position + 1, values, position, size - 1 - position);
+            size--;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        //== index of the first value not ordered before the given one ==
+        private int search(int value, SlotOrder order) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (order.compare(values[middle], value) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Open addressing set of non-negative slots
+     */
+    static final class IntSet {
+        private int[] keys = new int[64];
+        private int size;
+
+        IntSet() {
+            Arrays.fill(keys, -1);
+        }
+
+        boolean add(int key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            for (; keys[i] != -1; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return false;
+                }
+            }
+            keys[i] = key;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            keys = new int[oldKeys.length * 2];
+            Arrays.fill(keys, -1);
+            size = 0;
+            for (int key : oldKeys) {
+                if (key != -1) {
+                    add(key);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            return key * 0x9E3779B9 >>> 7 ^ key;
+        }
+    }
+
+    /**
+     * Comparator of slots without boxing
+     */
+    @FunctionalInterface
+    interface SlotOrder {
+        int compare(int left, int right);
+    }
+}
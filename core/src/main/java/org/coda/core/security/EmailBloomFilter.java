@@ -0,0 +1,240 @@
+package org.coda.core.security;
+
+import org.coda.core.projection.EmailFilterStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter of registered emails, answering "definitely not registered" without a database round trip.
+ * Sized from calorietracker.users.email-filter.expected-emails and .false-positive-rate; a "might be registered"
+ * answer still has to be confirmed against the database.
+ * Emails are compared lower-cased and trimmed, so the filter never says no for an email the database has.
+ * Bits cannot be cleared: emails of deleted or renamed users stay in the filter as stale entries
+ * until the next rebuild. Until the first rebuild has completed every lookup answers "might be registered".
+ * A rebuild installs its new bits before the emails are read, and put writes under the read side of a lock the
+ * swap takes exclusively, so an email committed while a rebuild runs always reaches the bits that end up current.
+ */
+@Component
+public class EmailBloomFilter {
+
+    private final long expectedEmails;
+
+    private final double falsePositiveRate;
+
+    private final int hashFunctions;
+
+    private final long bitCount;
+
+    private volatile Bits current;
+
+    //== set while a rebuild runs, so emails added meanwhile reach the new bits too ==
+    private volatile Bits pending;
+
+    //== put holds the read lock while it writes, the swap of current holds the write lock ==
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready;
+
+    //== metrics ==
+    private final LongAdder negativeLookups = new LongAdder();
+    private final LongAdder positiveLookups = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder staleEntries = new LongAdder();
+
+    /**
+     * Constructor based dependency injection
+     * @param expectedEmails the number of emails the filter is sized for
+     * @param falsePositiveRate the wanted probability that an unknown email is reported as might be registered
+     * @Autowired annotation to inject the configured sizing
+     */
+    @Autowired
+    public EmailBloomFilter(@Value("${calorietracker.users.email-filter.expected-emails:1000000}") long expectedEmails,
+                            @Value("${calorietracker.users.email-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        if (expectedEmails <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid email filter sizing: " + expectedEmails + " emails, "
+                    + falsePositiveRate + " false positive rate");
+        }
+        this.expectedEmails = expectedEmails;
+        this.falsePositiveRate = falsePositiveRate;
+        //== optimal sizing: m = -n ln p / (ln 2)^2, k = m / n ln 2 ==
+        long bits = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, (bits + 63) / 64 * 64);
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedEmails * Math.log(2)));
+        this.current = new Bits(bitCount);
+    }
+
+    /**
+     * Replace the content of the filter with the given emails and mark it ready.
+     * The new bits receive every put from before the emails are opened, so a user committed after the query
+     * ran is recorded by its own put; the stream is closed once read.
+     * @param emails opens a stream of every registered email, called once the new bits are installed
+     */
+    public synchronized void rebuild(Supplier<? extends Stream<String>> emails) {
+        Bits rebuilt = new Bits(bitCount);
+        pending = rebuilt;
+        try (Stream<String> registered = emails.get()) {
+            registered.forEach(email -> set(rebuilt, email));
+            swapLock.writeLock().lock();
+            try {
+                current = rebuilt;
+                staleEntries.reset();
+                ready = true;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        } finally {
+            pending = null;
+        }
+    }
+
+    /**
+     * Record a registered email
+     * @param email the email of a created or updated user
+     */
+    public void put(String email) {
+        if (email == null) {
+            return;
+        }
+        swapLock.readLock().lock();
+        try {
+            set(current, email);
+            Bits rebuilding = pending;
+            if (rebuilding != null) {
+                set(rebuilding, email);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Record that an email was removed, its bits stay set until the next rebuild
+     * @param count the number of emails removed
+     */
+    public void markStale(long count) {
+        staleEntries.add(count);
+    }
+
+    /**
+     * @param email the email to look up
+     * @return false if the email is certainly not registered, true if it might be
+     */
+    public boolean mightContain(String email) {
+        if (email == null) {
+            return false;
+        }
+        if (!ready) {
+            return true;
+        }
+        Bits bits = current;
+        long[] hashes = hashes(email);
+        for (int i = 0; i < hashFunctions; i++) {
+            if (!bits.get(index(hashes, i))) {
+                negativeLookups.increment();
+                return false;
+            }
+        }
+        positiveLookups.increment();
+        return true;
+    }
+
+    /**
+     * Record that a might-be-registered answer was not confirmed by the database
+     */
+    public void recordFalsePositive() {
+        if (ready) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * @return EmailFilterStats sizing, fill and lookup counters of the filter
+     */
+    public EmailFilterStats getStats() {
+        Bits bits = current;
+        long setBits = bits.cardinality();
+        double fill = (double) setBits / bitCount;
+        return new EmailFilterStats(ready, bitCount, hashFunctions, expectedEmails, falsePositiveRate,
+                Math.pow(fill, hashFunctions), fill, staleEntries.sum(),
+                negativeLookups.sum(), positiveLookups.sum(), falsePositives.sum());
+    }
+
+    //== helpers ==
+
+    private void set(Bits bits, String email) {
+        long[] hashes = hashes(email);
+        for (int i = 0; i < hashFunctions; i++) {
+            bits.set(index(hashes, i));
+        }
+    }
+
+    //== double hashing: the i-th index is h1 + i * h2 ==
+    private long index(long[] hashes, int i) {
+        return Math.floorMod(hashes[0] + i * hashes[1], bitCount);
+    }
+
+    //== two independent 64 bit hashes of the normalized email (FNV-1a then two murmur3 finalizers) ==
+    static long[] hashes(String email) {
+        byte[] bytes = email.trim().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return new long[]{mix(hash), mix(hash ^ 0x9e3779b97f4a7c15L) | 1};
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // == nested classes ==
+
+    private static final class Bits {
+        private final AtomicLongArray words;
+
+        private Bits(long bitCount) {
+            long wordCount = bitCount / 64;
+            if (wordCount > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Email filter too large: " + bitCount + " bits");
+            }
+            this.words = new AtomicLongArray((int) wordCount);
+        }
+
+        private void set(long index) {
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long value = words.get(word);
+            while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+                value = words.get(word);
+            }
+        }
+
+        private boolean get(long index) {
+            return (words.get((int) (index >>> 6)) & (1L << index)) != 0;
+        }
+
+        private long cardinality() {
+            long count = 0;
+            for (int i = 0; i < words.length(); i++) {
+                count += Long.bitCount(words.get(i));
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.coda.core.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket throttling of login attempts, per account and per client address.
+ * Each key starts with burst tokens and regains per-minute tokens every minute;
+ * an attempt needs a token from both its account and its address buckets.
+ * At most max-keys buckets are tracked per kind. A bucket left alone until it is full again is dropped,
+ * as a new one would be the same; beyond max-keys the least valuable bucket is evicted. Eviction is
+ * frequency based, so a spray of one-off keys does not push out the bucket of an account under attack.
+ */
+@Component
+public class LoginThrottle {
+
+    private final Cache<String, TokenBucket> accounts;
+
+    private final Cache<String, TokenBucket> addresses;
+
+    private final LongAdder throttled = new LongAdder();
+
+    private final Limit accountLimit;
+
+    private final Limit addressLimit;
+
+    private final LongSupplier nanoTime;
+
+    @Autowired
+    public LoginThrottle(@Value("${calorietracker.login.account.burst:5}") int accountBurst,
+                         @Value("${calorietracker.login.account.per-minute:10}") int accountPerMinute,
+                         @Value("${calorietracker.login.address.burst:20}") int addressBurst,
+                         @Value("${calorietracker.login.address.per-minute:60}") int addressPerMinute,
+                         @Value("${calorietracker.login.throttle.max-keys:100000}") int maxKeys) {
+        this(new Limit(accountBurst, accountPerMinute), new Limit(addressBurst, addressPerMinute), maxKeys, System::nanoTime);
+    }
+
+    LoginThrottle(Limit accountLimit, Limit addressLimit, int maxKeys, LongSupplier nanoTime) {
+        this.accountLimit = accountLimit;
+        this.addressLimit = addressLimit;
+        this.nanoTime = nanoTime;
+        this.accounts = buckets(accountLimit, maxKeys, nanoTime);
+        this.addresses = buckets(addressLimit, maxKeys, nanoTime);
+    }
+
+    /**
+     * Take a token for a login attempt
+     * @param account the email the attempt is for, compared case-insensitively
+     * @param clientAddress the address of the caller, null when unknown
+     * @return true if the attempt may proceed, false if it is throttled
+     */
+    public boolean tryAcquire(String account, String clientAddress) {
+        boolean allowed = acquire(accounts, accountLimit, account == null ? "" : account.toLowerCase(Locale.ROOT))
+                && (clientAddress == null || acquire(addresses, addressLimit, clientAddress));
+        if (!allowed) {
+            throttled.increment();
+        }
+        return allowed;
+    }
+
+    /**
+     * @return the number of attempts refused since startup
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return the number of account and address buckets tracked
+     */
+    long getTrackedKeys() {
+        accounts.cleanUp();
+        addresses.cleanUp();
+        return accounts.estimatedSize() + addresses.estimatedSize();
+    }
+
+    //== helpers ==
+
+    private boolean acquire(Cache<String, TokenBucket> buckets, Limit limit, String key) {
+        long now = nanoTime.getAsLong();
+        return buckets.get(key, k -> new TokenBucket(limit.burst(), now)).tryTake(limit, now);
+    }
+
+    //== evictions run on the calling thread, so the bound holds without a background executor ==
+    private static Cache<String, TokenBucket> buckets(Limit limit, int maxKeys, LongSupplier nanoTime) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .ticker(nanoTime::getAsLong)
+                .executor(Runnable::run);
+        if (limit.perMinute() > 0) {
+            builder.expireAfterAccess((long) Math.ceil(limit.burst() / limit.tokensPerNano()), TimeUnit.NANOSECONDS);
+        }
+        return builder.build();
+    }
+
+    // == nested classes ==
+
+    /**
+     * @param burst the number of attempts allowed at once
+     * @param perMinute the sustained number of attempts per minute
+     */
+    record Limit(int burst, int perMinute) {
+        private double tokensPerNano() {
+            return perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        }
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        private synchronized boolean tryTake(Limit limit, long now) {
+            refill(limit, now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        private void refill(Limit limit, long now) {
+            tokens = Math.min(limit.burst(), tokens + (now - refilledAt) * limit.tokensPerNano());
+            refilledAt = now;
+        }
+    }
+}
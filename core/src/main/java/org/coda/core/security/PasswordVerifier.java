@@ -0,0 +1,149 @@
+package org.coda.core.security;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.coda.core.exceptions.LoginRejectedException;
+import org.coda.core.projection.PasswordVerificationStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead for password hashing: BCrypt checks run on a small dedicated pool with a bounded queue,
+ * so a burst of logins cannot take every core away from the rest of the application.
+ * When the queue is full the attempt is refused at once (LoginRejectedException OVERLOADED)
+ * instead of queueing without limit; an attempt waiting longer than the timeout is refused the same way.
+ * Queue wait, hash time and refusals are counted for getStats.
+ */
+@Slf4j
+@Component
+public class PasswordVerifier {
+
+    private final PasswordEncoder encoder;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long timeoutMillis;
+
+    //== metrics ==
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejectedOverloaded = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAccumulator maxQueueWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor based dependency injection
+     * @param encoder the password encoder used to check the hashes
+     * @param threads the number of hashing threads, 0 for half of the available processors
+     * @param queueCapacity the number of checks allowed to wait for a thread
+     * @param timeoutMillis the longest a caller waits for its check, queueing included
+     * @Autowired annotation to inject the PasswordEncoder dependency
+     */
+    @Autowired
+    public PasswordVerifier(PasswordEncoder encoder,
+                            @Value("${calorietracker.login.verify.threads:0}") int threads,
+                            @Value("${calorietracker.login.verify.queue-capacity:64}") int queueCapacity,
+                            @Value("${calorietracker.login.verify.timeout-millis:2000}") long timeoutMillis) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.encoder = encoder;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-verifier-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Check a raw password against its stored hash on the verification pool
+     * @param rawPassword the password typed by the user
+     * @param encodedPassword the stored hash
+     * @return true if the password matches
+     * @throws LoginRejectedException OVERLOADED if the queue is full or the check does not finish in time
+     */
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long submitted = System.nanoTime();
+        Future<Boolean> check;
+        try {
+            check = executor.submit(() -> {
+                long started = System.nanoTime();
+                record(queueWaitNanos, maxQueueWaitNanos, started - submitted);
+                try {
+                    return encoder.matches(rawPassword, encodedPassword);
+                } finally {
+                    record(hashNanos, maxHashNanos, System.nanoTime() - started);
+                    verified.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedOverloaded.increment();
+            throw new LoginRejectedException(LoginRejectedException.Reason.OVERLOADED,
+                    "Password verification queue is full, try again later");
+        }
+        try {
+            return check.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            check.cancel(true);
+            timedOut.increment();
+            throw new LoginRejectedException(LoginRejectedException.Reason.OVERLOADED,
+                    "Password verification timed out, try again later");
+        } catch (InterruptedException e) {
+            check.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LoginRejectedException(LoginRejectedException.Reason.OVERLOADED,
+                    "Interrupted while verifying the password");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password verification failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return PasswordVerificationStats snapshot of the counters since startup
+     */
+    public PasswordVerificationStats getStats() {
+        long count = verified.sum();
+        return new PasswordVerificationStats(count, rejectedOverloaded.sum(), timedOut.sum(),
+                meanMillis(queueWaitNanos, count), maxQueueWaitNanos.get() / 1e6,
+                meanMillis(hashNanos, count), maxHashNanos.get() / 1e6,
+                executor.getQueue().size(), executor.getActiveCount());
+    }
+
+    /**
+     * Stop the hashing threads, checks still queued are abandoned
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    //== helpers ==
+
+    private static void record(LongAdder total, LongAccumulator max, long nanos) {
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    private static double meanMillis(LongAdder totalNanos, long count) {
+        return count == 0 ? 0 : totalNanos.sum() / 1e6 / count;
+    }
+}
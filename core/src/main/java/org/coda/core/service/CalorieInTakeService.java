@@ -1,33 +1,78 @@
 package org.coda.core.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.coda.core.analytics.IntakeColumnStore;
 import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.DailyIntakeSummary;
+import org.coda.core.projection.DailyIntakeTotals;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.coda.core.projection.IntakeStoreStats;
 import org.coda.core.repository.CalorieInTakeRepository;
+import org.coda.core.repository.DailyIntakeSummaryRepository;
+import org.coda.core.repository.IntakeAggregates;
+import org.coda.core.repository.PersistenceContextSupport;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.Valid;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class CalorieInTakeService {
 
+    private static final double ROLLUP_TOLERANCE = 0.001;
+
     private final CalorieInTakeRepository calorieInTakeRepository;
 
+    private final DailyIntakeSummaryRepository dailyIntakeSummaryRepository;
+
+    private final PersistenceContextSupport persistenceContextSupport;
+
+    private final IntakeColumnStore intakeColumnStore;
+
     /**
      * Constructor based dependency injection
      *
      * @param calorieInTakeRepository for CRUD operations and custom queries.
-     * @Autowired annotation to inject the CalorieInTakeRepository
-     * dependency
+     * @param dailyIntakeSummaryRepository for the per user and day rollup
+     * @param persistenceContextSupport to clear the persistence context while streaming
+     * @param intakeColumnStore to answer range analytics without loading entities
+     * @Autowired annotation to inject the CalorieInTakeRepository,
+     * DailyIntakeSummaryRepository, PersistenceContextSupport and IntakeColumnStore dependency
      */
 
     @Autowired
-    public CalorieInTakeService(CalorieInTakeRepository calorieInTakeRepository) {
+    public CalorieInTakeService(CalorieInTakeRepository calorieInTakeRepository,
+                                DailyIntakeSummaryRepository dailyIntakeSummaryRepository,
+                                PersistenceContextSupport persistenceContextSupport,
+                                IntakeColumnStore intakeColumnStore) {
         this.calorieInTakeRepository = calorieInTakeRepository;
+        this.dailyIntakeSummaryRepository = dailyIntakeSummaryRepository;
+        this.persistenceContextSupport = persistenceContextSupport;
+        this.intakeColumnStore = intakeColumnStore;
     }
 
     /**
@@ -41,11 +86,42 @@ public class CalorieInTakeService {
     @Transactional
     public void saveCalorieInTake(@Valid CalorieInTake calorieInTake) {
         calorieInTakeRepository.save(calorieInTake);
+        applyToDailySummary(calorieInTake, 1);
+        addToIntakeStoreAfterCommit(calorieInTake);
         log.info("CalorieInTake created successfully: {}", calorieInTake);
     }
 
+    /**
+     * Method to save many calorieIntake in one transaction
+     * Intakes are written in chunks of the configured batch size, flushed as JDBC batches and cleared,
+     * so the returned intakes are detached. The daily rollup gets one delta per user and day of the batch.
+     * @param calorieInTakes the calorieInTake objects to be saved
+     * @Transactional annotation to commit all changes to database or rollback if error occurs
+     * @return List<CalorieInTake> the saved calorieInTake
+     */
+    @Transactional
+    public List<CalorieInTake> saveAllCalorieInTake(List<CalorieInTake> calorieInTakes) {
+        List<CalorieInTake> saved = new ArrayList<>(calorieInTakes.size());
+        Map<DailyIntakeSummary.Key, double[]> deltas = new HashMap<>();
+        for (List<CalorieInTake> chunk : persistenceContextSupport.chunks(calorieInTakes)) {
+            for (CalorieInTake calorieInTake : calorieInTakeRepository.saveAll(chunk)) {
+                //== read the food and meal values before the chunk is detached ==
+                addToDelta(deltas, calorieInTake);
+                addToIntakeStoreAfterCommit(calorieInTake);
+                saved.add(calorieInTake);
+            }
+            persistenceContextSupport.flushAndClear();
+        }
+        deltas.forEach((key, delta) -> dailyIntakeSummaryRepository.applyDelta(key.getUserId(),
+                key.getIntakeDate(), delta[0], delta[1], delta[2], delta[3], (long) delta[4]));
+        log.info("CalorieInTake created successfully: {}", saved.size());
+        return saved;
+    }
+
     /**
      * Method to update calorieIntake
+     * The stored values are read first, without loading the entity, so their contribution can be taken out
+     * of the daily rollup even when the calorieInTake passed in is the managed instance already changed
      * @Param calorieInTake: the calorieInTake object to be updated
      * @Valid annotation to validate the calorieInTake object
      * @Modifying annotation to indicate that the query is an update or delete query
@@ -55,10 +131,82 @@ public class CalorieInTakeService {
     @Modifying
     @Transactional
     public void updateCalorieInTake(@Valid CalorieInTake calorieInTake) {
+        calorieInTakeRepository.findIntakeRowById(calorieInTake.getId())
+                .ifPresent(previous -> {
+                    applyToDailySummary(previous, -1);
+                    removeFromIntakeStoreAfterCommit(previous);
+                });
         calorieInTakeRepository.save(calorieInTake);
+        applyToDailySummary(calorieInTake, 1);
+        addToIntakeStoreAfterCommit(calorieInTake);
         log.info("CalorieInTake updated successfully: {}", calorieInTake);
     }
 
+    /**
+     * Method to run a change of a food and carry it to the intakes it moves
+     * The values of the intakes of the food, and of the meals that contain it, are read before and after
+     * the change; the difference is added to the daily rollup of each user and day in the same transaction,
+     * and the intakes are replaced in the IntakeColumnStore once it commits.
+     * The change writes with native statements, so the persistence context is flushed and cleared before
+     * the intakes are read again.
+     * @param foodId: the id of the food
+     * @param change: updates the food and the meal totals, returning the rows of the food it updated
+     * @Transactional annotation with MANDATORY propagation: the change and the rollup commit together
+     * @return the rows of the food the change updated, nothing is carried over when 0
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int applyFoodChange(long foodId, IntSupplier change) {
+        return applyChange("Food", foodId, () -> calorieInTakeRepository.findIntakeRowsOfFood(foodId), change);
+    }
+
+    /**
+     * Method to run a change of a meal and carry it to the intakes of the meal, as applyFoodChange does
+     * @param mealId: the id of the meal
+     * @param change: updates the meal, returning the rows of the meal it updated
+     * @Transactional annotation with MANDATORY propagation: the change and the rollup commit together
+     * @return the rows of the meal the change updated, nothing is carried over when 0
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int applyMealChange(long mealId, IntSupplier change) {
+        return applyChange("Meal", mealId, () -> calorieInTakeRepository.findIntakeRowsOfMeal(mealId), change);
+    }
+
+    private int applyChange(String entityName, long id, Supplier<List<IntakeRow>> intakes, IntSupplier change) {
+        List<IntakeRow> before = intakes.get();
+        int updated = change.getAsInt();
+        if (updated == 0 || before.isEmpty()) {
+            return updated;
+        }
+        persistenceContextSupport.flushAndClear();
+        Map<Long, IntakeRow> previous = new HashMap<>();
+        Map<DailyIntakeSummary.Key, double[]> deltas = new HashMap<>();
+        for (IntakeRow row : before) {
+            previous.put(row.id(), row);
+            addToDelta(deltas, row, -1);
+        }
+        List<IntakeRow> moved = new ArrayList<>();
+        for (IntakeRow row : intakes.get()) {
+            addToDelta(deltas, row, 1);
+            if (!row.equals(previous.get(row.id()))) {
+                moved.add(row);
+            }
+        }
+        deltas.forEach((key, delta) -> {
+            if (delta[0] != 0 || delta[1] != 0 || delta[2] != 0 || delta[3] != 0) {
+                dailyIntakeSummaryRepository.applyDelta(key.getUserId(), key.getIntakeDate(),
+                        delta[0], delta[1], delta[2], delta[3], 0);
+            }
+        });
+        if (intakeColumnStore.isEnabled() && !moved.isEmpty()) {
+            AfterCommit.run(() -> moved.forEach(row -> {
+                intakeColumnStore.remove(row.id(), row.userId(), row.dateTime());
+                intakeColumnStore.add(row);
+            }));
+        }
+        log.info("{} {} change carried to {} intakes", entityName, id, moved.size());
+        return updated;
+    }
+
     /**
      * Method to delete calorieIntake
      * @Param id: the id of the calorieIntake to be deleted
@@ -70,6 +218,11 @@ public class CalorieInTakeService {
     @Modifying
     @Transactional
     public void deleteCalorieInTake(@Valid long id) {
+        calorieInTakeRepository.findById(id)
+                .ifPresent(previous -> {
+                    applyToDailySummary(previous, -1);
+                    removeFromIntakeStoreAfterCommit(previous);
+                });
         calorieInTakeRepository.deleteById(id);
         log.info("CalorieInTake deleted successfully: {}", id);
     }
@@ -85,6 +238,8 @@ public class CalorieInTakeService {
     @Transactional
     public void deleteAllCalorieInTake() {
         calorieInTakeRepository.deleteAll();
+        dailyIntakeSummaryRepository.deleteAllInBatch();
+        AfterCommit.run(intakeColumnStore::clear);
     }
 
     /**
@@ -111,6 +266,37 @@ public class CalorieInTakeService {
         return calorieInTakeRepository.findAll();
     }
 
+    /**
+     * Method to read a page of calorieIntake after the last one of the previous page (keyset pagination)
+     * Seeks on (dateTime, id) so page N costs the same as page 1
+     * @param last: the last calorieInTake of the previous page, null for the first page
+     * @param pageSize: the maximum number of calorieInTake to return
+     * @Transactional annotation to read the calorieInTake from the database as a transaction
+     * @return List<CalorieInTake> ordered by dateTime then id, empty when there are no more calorieInTake
+     */
+
+    @Transactional(readOnly = true)
+    public List<CalorieInTake> getCalorieInTakePageAfter(CalorieInTake last, int pageSize) {
+        if (last == null) {
+            return calorieInTakeRepository.findFirstCalorieIntakePage(Limit.of(pageSize));
+        }
+        return calorieInTakeRepository.findCalorieIntakePageAfter(last.getDateTime(), last.getId(),
+                Limit.of(pageSize));
+    }
+
+    /**
+     * Method to stream all calorieIntake in constant memory
+     * Must be called, and the stream consumed and closed, inside an existing transaction.
+     * The persistence context is cleared periodically, so calorieInTake handed out may be detached.
+     * @Transactional annotation with MANDATORY propagation to fail fast without a transaction
+     * @return Stream<CalorieInTake> of all calorieInTake ordered by dateTime then id
+     */
+
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<CalorieInTake> streamAllCalorieInTake() {
+        return persistenceContextSupport.clearingEvery(calorieInTakeRepository.streamAllCalorieIntake());
+    }
+
     /**
      * Method to get calorieIntake by user id
      * @Param id: the id of the user
@@ -125,16 +311,327 @@ public class CalorieInTakeService {
     }
 
     /**
-     * Get calorieIntake by User and month
+     * Get the calorieIntake of a user for one day with user, meal and food loaded for the dashboard
+     * @param id: the id of the user
+     * @param date: the day to read
+     * @return List<CalorieInTake> ordered by time, read in a single select
+     */
+
+    @Transactional(readOnly = true)
+    public List<CalorieInTake> getDashboardCalorieInTake(@Valid long id, LocalDate date) {
+        return calorieInTakeRepository.findDashboardCalorieIntake(id, date.atStartOfDay(),
+                date.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Get calorieIntake by User and month of the current year
      * @param id: the id of the user
-     * @param month: the month of the calorieInTake
+     * @param month: the month of the calorieInTake, 1 to 12
      * @return List<CalorieInTake> if the calorieInTake are found otherwise return empty List of calorieInTake
      */
 
     @Transactional(readOnly = true)
     public List<CalorieInTake> getCalorieInTakeByUserAndMonth(@Valid long id, @Valid int month) {
-        return calorieInTakeRepository.findAllCalorieIntakeByUserAndMonth(id, month);
+        return getCalorieInTakeByUserAndMonth(id, Year.now().atMonth(month));
+    }
+
+    /**
+     * Get calorieIntake by User and month
+     * @param id: the id of the user
+     * @param month: the year and month of the calorieInTake
+     * @return List<CalorieInTake> if the calorieInTake are found otherwise return empty List of calorieInTake
+     */
+
+    @Transactional(readOnly = true)
+    public List<CalorieInTake> getCalorieInTakeByUserAndMonth(@Valid long id, YearMonth month) {
+        return getCalorieInTakeByUserAndDateRange(id, month.atDay(1).atStartOfDay(),
+                month.plusMonths(1).atDay(1).atStartOfDay());
+    }
+
+    /**
+     * Get calorieIntake by User and ISO-8601 week (weeks start on Monday, week 1 contains the first Thursday)
+     * @param id: the id of the user
+     * @param weekBasedYear: the ISO week-based year
+     * @param week: the ISO week of the year, 1 to 53
+     * @return List<CalorieInTake> if the calorieInTake are found otherwise return empty List of calorieInTake
+     */
+
+    @Transactional(readOnly = true)
+    public List<CalorieInTake> getCalorieInTakeByUserAndWeek(@Valid long id, int weekBasedYear, int week) {
+        LocalDate monday = LocalDate.of(weekBasedYear, 6, 1)
+                .with(IsoFields.WEEK_BASED_YEAR, weekBasedYear)
+                .with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, week)
+                .with(DayOfWeek.MONDAY);
+        return getCalorieInTakeByUserAndDateRange(id, monday.atStartOfDay(), monday.plusWeeks(1).atStartOfDay());
     }
 
+    /**
+     * Get calorieIntake by User logged in a time range
+     * @param id: the id of the user
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<CalorieInTake> ordered by time if the calorieInTake are found
+     * otherwise return empty List of calorieInTake
+     */
 
+    @Transactional(readOnly = true)
+    public List<CalorieInTake> getCalorieInTakeByUserAndDateRange(@Valid long id, LocalDateTime from,
+                                                                 LocalDateTime to) {
+        return calorieInTakeRepository.findAllCalorieIntakeByUserAndDateTimeRange(id, from, to);
+    }
+
+    /**
+     * Get the calorie and macro totals of a user for one day from the rollup
+     * @param id: the id of the user
+     * @param date: the day to read
+     * @return Optional<DailyIntakeSummary> if the user logged intakes that day
+     * otherwise return empty Optional
+     */
+
+    @Transactional(readOnly = true)
+    public Optional<DailyIntakeSummary> getDailySummary(@Valid long id, LocalDate date) {
+        return dailyIntakeSummaryRepository.findById(new DailyIntakeSummary.Key(id, date));
+    }
+
+    /**
+     * Get the calorie and macro totals of a user over a time range
+     * Answered from the IntakeColumnStore when it is enabled and loaded, otherwise summed by the database.
+     * @param id: the id of the user
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive; the store resolves both ends to the minute
+     * @return IntakeRangeStats with the totals and averages of the range
+     */
+
+    @Transactional(readOnly = true)
+    public IntakeRangeStats getIntakeStats(@Valid long id, LocalDateTime from, LocalDateTime to) {
+        if (intakeColumnStore.isReady()) {
+            return intakeColumnStore.sum(id, from, to);
+        }
+        return calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(id, from, to)
+                .orElseGet(() -> new IntakeRangeStats(id, from, to, 0, 0, 0, 0, 0, 0));
+    }
+
+    /**
+     * Get the calorie and macro totals of every user over a time range, summed by the database
+     * @param from: the start of the range, inclusive
+     * @param to: the end of the range, exclusive
+     * @return List<IntakeRangeStats> one per user that logged intakes in the range, ordered by user id
+     */
+
+    @Transactional(readOnly = true)
+    public List<IntakeRangeStats> getIntakeStatsByUser(LocalDateTime from, LocalDateTime to) {
+        return calorieInTakeRepository.sumIntakeByUser(from, to);
+    }
+
+    /**
+     * Get the calorie and macro totals of a user for each day, ISO week or month of a range.
+     * Days and months are grouped by the database; weeks are folded from the daily totals,
+     * so only a few numbers per period cross JDBC. The periods at both ends only count their days in the range.
+     * @param id: the id of the user
+     * @param from: the first day, inclusive
+     * @param to: the last day, exclusive
+     * @param period: ChronoUnit.DAYS, WEEKS or MONTHS
+     * @return List<IntakePeriodTotals> one per period with intakes, ordered by period
+     * @throws IllegalArgumentException if the period is not days, weeks or months
+     */
+
+    @Transactional(readOnly = true)
+    public List<IntakePeriodTotals> getIntakeTotals(@Valid long id, LocalDate from, LocalDate to,
+                                                    ChronoUnit period) {
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.atStartOfDay();
+        switch (period) {
+            case DAYS:
+                return calorieInTakeRepository.sumIntakeByUserAndDay(id, start, end);
+            case MONTHS:
+                return calorieInTakeRepository.sumIntakeByUserAndMonth(id, start, end);
+            case WEEKS:
+                List<IntakePeriodTotals> weeks = new ArrayList<>();
+                for (IntakePeriodTotals day : calorieInTakeRepository.sumIntakeByUserAndDay(id, start, end)) {
+                    LocalDate monday = day.periodStart().with(DayOfWeek.MONDAY);
+                    int last = weeks.size() - 1;
+                    if (last >= 0 && weeks.get(last).periodStart().equals(monday)) {
+                        weeks.set(last, weeks.get(last).plus(day));
+                    } else {
+                        weeks.add(new IntakePeriodTotals(id, monday, 0, 0, 0, 0, 0, 0).plus(day));
+                    }
+                }
+                return weeks;
+            default:
+                throw new IllegalArgumentException("Unsupported period: " + period);
+        }
+    }
+
+    /**
+     * Get the calories of a user for each day of a range
+     * Answered from the IntakeColumnStore when it is enabled and loaded, otherwise from the daily rollup.
+     * @param id: the id of the user
+     * @param from: the first day
+     * @param days: the number of days
+     * @return double[] of the calories of each day, the first element is the from day
+     */
+
+    @Transactional(readOnly = true)
+    public double[] getDailyCalories(@Valid long id, LocalDate from, int days) {
+        if (intakeColumnStore.isReady()) {
+            return intakeColumnStore.dailyCalories(id, from, days);
+        }
+        double[] calories = new double[days];
+        for (int day = 0; day < days; day++) {
+            calories[day] = getDailySummary(id, from.plusDays(day)).map(DailyIntakeSummary::getCalories).orElse(0.0);
+        }
+        return calories;
+    }
+
+    /**
+     * Load the IntakeColumnStore from the calorie_intake rows, nothing happens when the store is disabled
+     * Runs once when the application is ready, and can be called again after bulk changes made outside this service.
+     * @EventListener annotation to load the store at startup
+     * @Transactional annotation to stream the rows inside a read-only transaction
+     */
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildIntakeStore() {
+        if (!intakeColumnStore.isEnabled()) {
+            return;
+        }
+        long loaded;
+        try (Stream<IntakeRow> rows = calorieInTakeRepository.streamIntakeRows()) {
+            loaded = intakeColumnStore.rebuild(rows.iterator());
+        }
+        log.info("Intake store loaded: {} intakes, {}", loaded, intakeColumnStore.getStats());
+    }
+
+    /**
+     * Method to report the size of the IntakeColumnStore
+     * @return IntakeStoreStats with the users, intakes and bytes held
+     */
+
+    public IntakeStoreStats getIntakeStoreStats() {
+        return intakeColumnStore.getStats();
+    }
+
+    /**
+     * Rebuild the daily rollup from the raw intakes of the CalorieInTakeRepository, the calorie_intake table
+     * or the intake journal. Used to backfill existing data and to repair drift reported by
+     * findInconsistentDailySummaries.
+     * @return the number of rollup rows written
+     */
+
+    @Modifying
+    @Transactional
+    public int rebuildDailySummaries() {
+        List<DailyIntakeTotals> totals = calorieInTakeRepository.aggregateIntakeByUserAndDay();
+        dailyIntakeSummaryRepository.deleteAllInBatch();
+        List<DailyIntakeSummary> summaries = new ArrayList<>(totals.size());
+        for (DailyIntakeTotals total : totals) {
+            summaries.add(new DailyIntakeSummary(new DailyIntakeSummary.Key(total.userId(), total.intakeDate()),
+                    total.calories(), total.protein(), total.fat(), total.carbohydrates(), total.entryCount()));
+        }
+        dailyIntakeSummaryRepository.saveAll(summaries);
+        log.info("Daily intake summaries rebuilt: {}", summaries.size());
+        return summaries.size();
+    }
+
+    /**
+     * Compare the daily rollup against the raw intakes of the CalorieInTakeRepository
+     * @return List<DailyIntakeSummary.Key> the user and day of every rollup row that is missing,
+     * stale or orphaned, empty if the rollup is consistent
+     */
+
+    @Transactional(readOnly = true)
+    public List<DailyIntakeSummary.Key> findInconsistentDailySummaries() {
+        Map<DailyIntakeSummary.Key, DailyIntakeSummary> summaries = new HashMap<>();
+        for (DailyIntakeSummary summary : dailyIntakeSummaryRepository.findAll()) {
+            summaries.put(summary.getId(), summary);
+        }
+        List<DailyIntakeSummary.Key> inconsistent = new ArrayList<>();
+        for (DailyIntakeTotals total : calorieInTakeRepository.aggregateIntakeByUserAndDay()) {
+            DailyIntakeSummary.Key key = new DailyIntakeSummary.Key(total.userId(), total.intakeDate());
+            DailyIntakeSummary summary = summaries.remove(key);
+            if (summary == null || !matches(summary, total)) {
+                inconsistent.add(key);
+            }
+        }
+        inconsistent.addAll(summaries.keySet());
+        if (!inconsistent.isEmpty()) {
+            log.warn("Daily intake summaries out of sync with the intakes: {}", inconsistent.size());
+        }
+        return inconsistent;
+    }
+
+    private void applyToDailySummary(CalorieInTake calorieInTake, int sign) {
+        if (calorieInTake.getUser() == null) {
+            return;
+        }
+        applyToDailySummary(IntakeAggregates.row(calorieInTake), sign);
+    }
+
+    private void applyToDailySummary(IntakeRow row, int sign) {
+        LocalDate intakeDate = row.dateTime().toLocalDate();
+        dailyIntakeSummaryRepository.applyDelta(row.userId(), intakeDate, sign * row.calories(),
+                sign * row.protein(), sign * row.fat(), sign * row.carbohydrates(), sign);
+        if (sign < 0) {
+            dailyIntakeSummaryRepository.deleteIfEmpty(row.userId(), intakeDate);
+        }
+    }
+
+    private static void addToDelta(Map<DailyIntakeSummary.Key, double[]> deltas, CalorieInTake calorieInTake) {
+        if (calorieInTake.getUser() == null) {
+            return;
+        }
+        double[] delta = deltas.computeIfAbsent(
+                new DailyIntakeSummary.Key(calorieInTake.getUser().getId(), calorieInTake.getIntakeDate()),
+                key -> new double[5]);
+        delta[0] += calorieInTake.calculateCalories();
+        delta[1] += calorieInTake.calculateProtein();
+        delta[2] += calorieInTake.calculateFat();
+        delta[3] += calorieInTake.calculateCarbohydrates();
+        delta[4]++;
+    }
+
+    private static void addToDelta(Map<DailyIntakeSummary.Key, double[]> deltas, IntakeRow row, int sign) {
+        double[] delta = deltas.computeIfAbsent(
+                new DailyIntakeSummary.Key(row.userId(), row.dateTime().toLocalDate()), key -> new double[4]);
+        delta[0] += sign * row.calories();
+        delta[1] += sign * row.protein();
+        delta[2] += sign * row.fat();
+        delta[3] += sign * row.carbohydrates();
+    }
+
+    //== values are read now, while meal and food can still be loaded; the store only sees committed intakes ==
+    private void addToIntakeStoreAfterCommit(CalorieInTake calorieInTake) {
+        if (!intakeColumnStore.isEnabled() || calorieInTake.getUser() == null) {
+            return;
+        }
+        IntakeRow row = new IntakeRow(calorieInTake.getId(), calorieInTake.getUser().getId(),
+                calorieInTake.getDateTime(), calorieInTake.calculateCalories(), calorieInTake.calculateProtein(),
+                calorieInTake.calculateFat(), calorieInTake.calculateCarbohydrates());
+        AfterCommit.run(() -> intakeColumnStore.add(row));
+    }
+
+    private void removeFromIntakeStoreAfterCommit(IntakeRow row) {
+        if (intakeColumnStore.isEnabled()) {
+            AfterCommit.run(() -> intakeColumnStore.remove(row.id(), row.userId(), row.dateTime()));
+        }
+    }
+
+    private void removeFromIntakeStoreAfterCommit(CalorieInTake calorieInTake) {
+        if (!intakeColumnStore.isEnabled() || calorieInTake.getUser() == null) {
+            return;
+        }
+        long id = calorieInTake.getId();
+        long userId = calorieInTake.getUser().getId();
+        LocalDateTime dateTime = calorieInTake.getDateTime();
+        AfterCommit.run(() -> intakeColumnStore.remove(id, userId, dateTime));
+    }
+
+    private static boolean matches(DailyIntakeSummary summary, DailyIntakeTotals total) {
+        return summary.getEntryCount() == total.entryCount()
+                && Math.abs(summary.getCalories() - total.calories()) < ROLLUP_TOLERANCE
+                && Math.abs(summary.getProtein() - total.protein()) < ROLLUP_TOLERANCE
+                && Math.abs(summary.getFat() - total.fat()) < ROLLUP_TOLERANCE
+                && Math.abs(summary.getCarbohydrates() - total.carbohydrates()) < ROLLUP_TOLERANCE;
+    }
 }
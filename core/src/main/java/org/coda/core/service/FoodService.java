@@ -1,17 +1,35 @@
 package org.coda.core.service;
 
+import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.constraints.Positive;
 import lombok.extern.slf4j.Slf4j;
 import org.coda.core.entities.Food;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.coda.core.repository.ConditionalUpdates;
 import org.coda.core.repository.FoodRepository;
+import org.coda.core.repository.MealRepository;
+import org.coda.core.projection.CacheStatistics;
+import org.coda.core.projection.FoodSearchHit;
+import org.coda.core.repository.PersistenceContextSupport;
+import org.coda.core.repository.SecondLevelCacheSupport;
+import org.coda.core.search.FoodSearchIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotEmpty;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -19,15 +37,44 @@ public class FoodService{
 
 private final FoodRepository foodRepository;
 
+private final MealRepository mealRepository;
+
+private final PersistenceContextSupport persistenceContextSupport;
+
+private final SecondLevelCacheSupport secondLevelCacheSupport;
+
+private final FoodSearchIndex foodSearchIndex;
+
+private final ConditionalUpdates conditionalUpdates;
+
+private final CalorieInTakeService calorieInTakeService;
+
     /**
      * Constructor based dependency injection
      * @param foodRepository for CRUD operations and custom queries
-     * @Autowired annotation to inject the FoodRepository dependency
+     * @param mealRepository to keep the stored meal totals in step with food changes
+     * @param persistenceContextSupport to clear the persistence context while streaming
+     * @param secondLevelCacheSupport to evict cached foods after updates and deletes
+     * @param foodSearchIndex to search foods by name, kept in step with every write
+     * @param conditionalUpdates to retry conditional updates that conflict with another writer
+     * @param calorieInTakeService to carry food changes to the daily rollup and the intake store
+     * @Autowired annotation to inject the FoodRepository, MealRepository, PersistenceContextSupport,
+     * SecondLevelCacheSupport, FoodSearchIndex, ConditionalUpdates and CalorieInTakeService dependency
      */
 
     @Autowired
-    public FoodService(FoodRepository foodRepository) {
+    public FoodService(FoodRepository foodRepository, MealRepository mealRepository,
+                       PersistenceContextSupport persistenceContextSupport,
+                       SecondLevelCacheSupport secondLevelCacheSupport,
+                       FoodSearchIndex foodSearchIndex, ConditionalUpdates conditionalUpdates,
+                       CalorieInTakeService calorieInTakeService) {
         this.foodRepository = foodRepository;
+        this.mealRepository = mealRepository;
+        this.persistenceContextSupport = persistenceContextSupport;
+        this.secondLevelCacheSupport = secondLevelCacheSupport;
+        this.foodSearchIndex = foodSearchIndex;
+        this.conditionalUpdates = conditionalUpdates;
+        this.calorieInTakeService = calorieInTakeService;
     }
 
     /**
@@ -54,12 +101,15 @@ private final FoodRepository foodRepository;
     @Transactional
     public void saveFood(@Valid Food food) {
         foodRepository.save(food);
+        indexAfterCommit(food.getId(), food.getName());
         log.info("Food created successfully: {}", food);
 
     }
 
     /**
      * Method to save all foods
+     * Foods are written in chunks of the configured batch size; each chunk is flushed as
+     * JDBC batches and then cleared, so the returned foods are detached
      * @param foods the foods to be saved
      * @NotEmpty annotation to validate the foods collection
      * @Transactional annotation to commit all changes to database or rollback if error occurs
@@ -67,7 +117,14 @@ private final FoodRepository foodRepository;
      */
     @Transactional
     public List<Food> saveAllFoods(@NotEmpty List<Food> foods) {
-        List<Food> savedFoods = foodRepository.saveAll(foods);
+        List<Food> savedFoods = new ArrayList<>(foods.size());
+        for (List<Food> chunk : persistenceContextSupport.chunks(foods)) {
+            savedFoods.addAll(foodRepository.saveAll(chunk));
+            persistenceContextSupport.flushAndClear();
+        }
+        Map<Long, String> namesById = new LinkedHashMap<>();
+        savedFoods.forEach(savedFood -> namesById.put(savedFood.getId(), savedFood.getName()));
+        indexAfterCommit(namesById);
         log.info("Foods created successfully: {}", savedFoods.size());
         return savedFoods;
     }
@@ -83,13 +140,14 @@ private final FoodRepository foodRepository;
     @Transactional(readOnly = true)
     public List<Food> getAllFoods() {
         List<Food> foods = foodRepository.findAll();
-        log.info("Foods retrieved successfully: {}", foods);
+        log.info("Foods retrieved successfully: {}", foods.size());
         return foods;
 
     }
 
     /**
      * Method to find a food by id
+     * Served from the second-level cache when calorietracker.cache.enabled=true
      * @param id the id of the food
      * @Valid annotation to validate the food id
      * @Transactional annotation to read the food from the
@@ -105,23 +163,69 @@ private final FoodRepository foodRepository;
 
     /**
      * Method to update a food
-     * @param food the food to be updated
+     * One conditional UPDATE, applied only if the food is still at the version it was read at (optimistic locking).
+     * The stored totals of the meals containing the food are recomputed, and the daily rollup and intake store
+     * of the intakes eating it re-applied, in the same transaction;
+     * the food alone is evicted from the second-level cache once it commits
+     * @param food the food to be updated, with the version it was read at
      * @Valid annotation to validate the food object
      * @Modifying annotation to indicate that the query is an update or delete query
      * @Transactional annotation to commit all changes to database or rollback if error occurs
-     * @return void
+     * @return Food the updated food, at its new version
+     * @throws EntityNotFoundException if there is no food with the id
+     * @throws ConcurrentUpdateException if the food was updated since it was read
      */
     @Modifying
     @Transactional
     public Food updateFood(@Valid Food food) {
-    Food updatedFood = foodRepository.save(food);
+        if (write(food) == 0) {
+            if (!foodRepository.existsById(food.getId())) {
+                throw new EntityNotFoundException("Food not found with id: " + food.getId());
+            }
+            throw new ConcurrentUpdateException("Food " + food.getId() + " was updated since version "
+                    + food.getVersion() + " was read");
+        }
+        food.setVersion(food.getVersion() + 1);
+        indexAfterCommit(food.getId(), food.getName());
         log.info("Food updated successfully: {}", food);
-        return updatedFood;
+        return food;
 
     }
 
+    /**
+     * Method to change a food in place, e.g. to correct its calories
+     * The food is read from the primary, changed and written back by one conditional UPDATE; when another writer
+     * updated it meanwhile it is read and changed again, up to calorietracker.update.max-attempts times.
+     * The stored totals of the meals containing the food, and the daily rollup and intake store of the intakes
+     * eating it, are updated in the transaction of the update.
+     * @param id the id of the food
+     * @param change applied to the current food, again on every retry
+     * @Transactional annotation with NOT_SUPPORTED propagation, so every attempt commits on its own
+     * and no transaction is held during the back-off
+     * @return Food the changed food, at its new version
+     * @throws EntityNotFoundException if there is no food with the id
+     * @throws ConcurrentUpdateException if every attempt conflicted with another writer
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Food modifyFood(long id, Consumer<Food> change) {
+        Food food = conditionalUpdates.apply("Food", id, foodRepository::findCurrentById, change, changed -> {
+                    int updated = write(changed);
+                    if (updated == 0) {
+                        //== the cached copy, if any, is behind the stored version: read the row on retry ==
+                        secondLevelCacheSupport.evictFood(id);
+                    }
+                    return updated;
+                })
+                .orElseThrow(() -> new EntityNotFoundException("Food not found with id: " + id));
+        food.setVersion(food.getVersion() + 1);
+        foodSearchIndex.index(id, food.getName());
+        log.info("Food modified successfully: {}", food);
+        return food;
+    }
+
     /**
      * Method to delete a food by id
+     * The food is also evicted from the second-level cache
      * @param id the id of the food
      * @Valid annotation to validate the food id
      * @Modifying annotation to indicate that the query is an update or delete query
@@ -132,11 +236,14 @@ private final FoodRepository foodRepository;
     @Transactional
     public void deleteFoodById(long id) {
         foodRepository.deleteById(id);
+        secondLevelCacheSupport.evictFood(id);
+        AfterCommit.run(() -> foodSearchIndex.remove(id));
 
     }
 
     /**
      * Method to delete all foods
+     * The food and meal foods cache regions are cleared as well
      * @Transactional annotation to commit all changes to database or rollback if error occurs
      * @Modifying annotation to indicate that the query is an update or delete query
      * return void
@@ -145,6 +252,100 @@ private final FoodRepository foodRepository;
     @Transactional
     public void deleteAllFoods() {
         foodRepository.deleteAll();
+        secondLevelCacheSupport.evictAllFoods();
+        AfterCommit.run(foodSearchIndex::clear);
+
+    }
+
+    /**
+     * Method to search foods by name, type-ahead style
+     * Ranked fuzzy lookup in the in-memory FoodSearchIndex, e.g. "chick brst" finds "Chicken breast".
+     * Does not touch the database.
+     * @param query the text typed by the user
+     * @param limit the maximum number of hits to return
+     * @return List<FoodSearchHit> best match first, empty when nothing matches
+     */
+
+    public List<FoodSearchHit> searchFoods(String query, @Positive int limit) {
+        return foodSearchIndex.search(query, limit);
+    }
+
+    /**
+     * Method to rebuild the search index from the database
+     * Runs once when the application is ready, and can be called again after bulk changes made outside this service.
+     * @EventListener annotation to build the index at startup
+     * @Transactional annotation to stream the foods inside a read-only transaction
+     */
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildSearchIndex() {
+        Map<Long, String> namesById = new LinkedHashMap<>();
+        try (Stream<Food> foods = persistenceContextSupport.clearingEvery(foodRepository.streamAllFoods())) {
+            foods.forEach(food -> namesById.put(food.getId(), food.getName()));
+        }
+        foodSearchIndex.rebuild(namesById);
+        log.info("Food search index built: {}", namesById.size());
+    }
+
+    /**
+     * Method to report the second-level cache statistics of the food catalog
+     * @return List<CacheStatistics> for the food and meal foods regions
+     */
+
+    public List<CacheStatistics> getCacheStatistics() {
+        return List.of(secondLevelCacheSupport.getFoodStatistics(), secondLevelCacheSupport.getMealFoodsStatistics());
+    }
+
+    /**
+     * Method to read a page of foods after a given id (keyset pagination)
+     * @param afterId the id of the last food of the previous page, 0 for the first page
+     * @param pageSize the maximum number of foods to return
+     * @Transactional annotation to read the foods from the
+     * database as part of a single transaction
+     * @return List<Food> ordered by id, empty when there are no more foods
+     */
+
+    @Transactional(readOnly = true)
+    public List<Food> getFoodsAfter(long afterId, int pageSize) {
+        return foodRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(pageSize));
+    }
+
+    /**
+     * Method to stream all foods in constant memory
+     * Must be called, and the stream consumed and closed, inside an existing transaction.
+     * The persistence context is cleared periodically, so foods handed out may be detached.
+     * @Transactional annotation with MANDATORY propagation to fail fast without a transaction
+     * @return Stream<Food> of all foods ordered by id
+     */
+
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<Food> streamAllFoods() {
+        return persistenceContextSupport.clearingEvery(foodRepository.streamAllFoods());
+    }
+
+    //== the search index only sees committed foods ==
+    //== the conditional update, the meal totals, the rollup and the intake store of a food, in one transaction ==
+    private int write(Food food) {
+        long id = food.getId();
+        return calorieInTakeService.applyFoodChange(id, () -> {
+            int updated = foodRepository.updateIfUnchanged(food);
+            if (updated > 0) {
+                mealRepository.refreshTotalsForFood(id);
+                //== now, for the intakes read again in this transaction, and once the update is visible,
+                // as a read before the commit would put the old row back in the cache ==
+                secondLevelCacheSupport.evictFood(id);
+                AfterCommit.run(() -> secondLevelCacheSupport.evictFood(id));
+            }
+            return updated;
+        });
+    }
+
+    private void indexAfterCommit(long id, String name) {
+        AfterCommit.run(() -> foodSearchIndex.index(id, name));
+    }
 
+    private void indexAfterCommit(Map<Long, String> namesById) {
+        AfterCommit.run(() -> namesById.forEach(foodSearchIndex::index));
     }
 }
@@ -1,32 +1,61 @@
 package org.coda.core.service;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.coda.core.entities.Meal;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.coda.core.repository.ConditionalUpdates;
 import org.coda.core.repository.MealRepository;
+import org.coda.core.repository.PersistenceContextSupport;
+import org.coda.core.repository.SecondLevelCacheSupport;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Positive;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class MealService {
     private final MealRepository mealRepository;
 
+    private final PersistenceContextSupport persistenceContextSupport;
+
+    private final SecondLevelCacheSupport secondLevelCacheSupport;
+
+    private final ConditionalUpdates conditionalUpdates;
+
+    private final CalorieInTakeService calorieInTakeService;
+
     /**
      * Constructor based dependency injection
      *
      * @param mealRepository for CRUD operations and custom queries
-     * @Autowired annotation to inject the MealRepository dependency
+     * @param persistenceContextSupport to clear the persistence context while streaming
+     * @param secondLevelCacheSupport to evict the cached foods of a meal after its foods are rewritten
+     * @param conditionalUpdates to retry conditional updates that conflict with another writer
+     * @param calorieInTakeService to carry meal changes to the daily rollup and the intake store
+     * @Autowired annotation to inject the MealRepository, PersistenceContextSupport,
+     * SecondLevelCacheSupport, ConditionalUpdates and CalorieInTakeService dependency
      */
 
     @Autowired
-    public MealService(MealRepository mealRepository) {
+    public MealService(MealRepository mealRepository, PersistenceContextSupport persistenceContextSupport,
+                       SecondLevelCacheSupport secondLevelCacheSupport, ConditionalUpdates conditionalUpdates,
+                       CalorieInTakeService calorieInTakeService) {
         this.mealRepository = mealRepository;
+        this.persistenceContextSupport = persistenceContextSupport;
+        this.secondLevelCacheSupport = secondLevelCacheSupport;
+        this.conditionalUpdates = conditionalUpdates;
+        this.calorieInTakeService = calorieInTakeService;
     }
 
     /**
@@ -46,6 +75,8 @@ public class MealService {
 
     /**
      * Method to save all meals
+     * Meals and their meal_foods rows are written in chunks of the configured batch size;
+     * each chunk is flushed as JDBC batches and then cleared, so the returned meals are detached
      * @param meals: the meals to be saved constraint:
      * meals != null && !meals.isEmpty()
      * @Transactional annotation to save the meals
@@ -55,26 +86,65 @@ public class MealService {
 
     @Transactional
     public List<Meal> saveAllMeals(List<Meal> meals) {
-    List<Meal> savedMeals = mealRepository.saveAll(meals);
-        log.info("Meals created successfully: {}", meals);
+        List<Meal> savedMeals = new ArrayList<>(meals.size());
+        for (List<Meal> chunk : persistenceContextSupport.chunks(meals)) {
+            savedMeals.addAll(mealRepository.saveAll(chunk));
+            persistenceContextSupport.flushAndClear();
+        }
+        log.info("Meals created successfully: {}", savedMeals.size());
         return savedMeals;
     }
 
     /**
     method to update a meal
-    @param meal: the meal to be updated
+    One conditional UPDATE of the meal row, applied only if the meal is still at the version it was read at,
+    e.g. not refreshed by a food edit since (optimistic locking); the meal_foods rows are rewritten by a second
+    statement only when the foods changed. The daily rollup and intake store of the intakes of the meal are
+    re-applied in the same transaction
+    @param meal: the meal to be updated, with the version it was read at; left at its new version
     @Valid annotation to validate the meal object
     @Modifying annotation to indicate that the query is an update or delete query
     @Transactional annotation to update the meal for the database as a transaction
+    @return true once the meal is updated
+    @throws EntityNotFoundException if there is no meal with the id
+    @throws ConcurrentUpdateException if the meal was updated since it was read
     * */
     @Modifying
     @Transactional
     public boolean updateMeal(@Valid Meal meal) {
-        mealRepository.save(meal);
+        if (write(meal) == 0) {
+            if (!mealRepository.existsById(meal.getId())) {
+                throw new EntityNotFoundException("Meal not found with id: " + meal.getId());
+            }
+            throw new ConcurrentUpdateException("Meal " + meal.getId() + " was updated since version "
+                    + meal.getVersion() + " was read");
+        }
+        meal.setVersion(meal.getVersion() + 1);
         log.info("Meal updated successfully: {}", meal);
         return true;
     }
 
+    /**
+     * Method to change a meal in place, e.g. to rename it or add a food
+     * The meal is read with its foods from the primary, changed and written back as updateMeal does; when another
+     * writer updated it meanwhile it is read and changed again, up to calorietracker.update.max-attempts times.
+     * @param id the id of the meal
+     * @param change applied to the current meal, again on every retry
+     * @Transactional annotation with NOT_SUPPORTED propagation, so every attempt commits on its own
+     * and no transaction is held during the back-off
+     * @return Meal the changed meal, at its new version
+     * @throws EntityNotFoundException if there is no meal with the id
+     * @throws ConcurrentUpdateException if every attempt conflicted with another writer
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Meal modifyMeal(long id, Consumer<Meal> change) {
+        Meal meal = conditionalUpdates.apply("Meal", id, mealRepository::findCurrentById, change, this::write)
+                .orElseThrow(() -> new EntityNotFoundException("Meal not found with id: " + id));
+        meal.setVersion(meal.getVersion() + 1);
+        log.info("Meal modified successfully: {}", meal);
+        return meal;
+    }
+
     /**
      * Method to find all meals with high calories
      *
@@ -107,6 +177,20 @@ public class MealService {
 
     }
 
+    /**
+     * Method to find all meals whose total calories fall in a range
+     *
+     * @param min: the lower bound of the total calories, inclusive
+     * @param max: the upper bound of the total calories, exclusive
+     * @return List<Meal> ordered by total calories if the meals are found
+     * otherwise return empty List of meals
+     * @Transactional annotation to read the meals from the database
+     */
+    @Transactional(readOnly = true)
+    public List<Meal> findMealsWithCaloriesBetween(double min, double max) {
+        return mealRepository.findAllMealsWithCaloriesBetween(min, max);
+    }
+
     /**
      * method to find all meals
      *
@@ -137,6 +221,22 @@ public class MealService {
         return mealRepository.findById(id).orElse(null);
     }
 
+    /**
+     * Method to find a meal with its user and foods for the meal detail view
+     * The meal, its user and its foods are read in a single select
+     *
+     * @param id the id of the meal
+     * @return Meal with user and foods initialized if the meal is found
+     * otherwise return null
+     * @Transactional annotation to read the meal from the
+     * database as part of a single transaction
+     */
+
+    @Transactional(readOnly = true)
+    public Meal getMealDetailById(@Valid long id) {
+        return mealRepository.findMealDetailById(id).orElse(null);
+    }
+
     /**
      * Method to delete a meal by id
      *
@@ -168,8 +268,43 @@ public class MealService {
         log.info("Meals deleted successfully");
     }
 
+    /**
+     * Method to read a page of meals after a given id (keyset pagination)
+     * @param afterId the id of the last meal of the previous page, 0 for the first page
+     * @param pageSize the maximum number of meals to return
+     * @Transactional annotation to read the meals from the
+     * database as part of a single transaction
+     * @return List<Meal> ordered by id, empty when there are no more meals
+     */
 
+    @Transactional(readOnly = true)
+    public List<Meal> getMealsAfter(long afterId, int pageSize) {
+        return mealRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(pageSize));
+    }
 
+    /**
+     * Method to stream all meals in constant memory
+     * Must be called, and the stream consumed and closed, inside an existing transaction.
+     * The persistence context is cleared periodically, so meals handed out may be detached.
+     * @Transactional annotation with MANDATORY propagation to fail fast without a transaction
+     * @return Stream<Meal> of all meals ordered by id
+     */
 
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<Meal> streamAllMeals() {
+        return persistenceContextSupport.clearingEvery(mealRepository.streamAllMeals());
+    }
 
+    private int write(Meal meal) {
+        long id = meal.getId();
+        return calorieInTakeService.applyMealChange(id, () -> {
+            int updated = mealRepository.updateIfUnchanged(meal);
+            if (updated > 0) {
+                //== now, for the intakes read again in this transaction, and once the rewrite is visible ==
+                secondLevelCacheSupport.evictMealFoods(id);
+                AfterCommit.run(() -> secondLevelCacheSupport.evictMealFoods(id));
+            }
+            return updated;
+        });
+    }
 }
@@ -3,11 +3,26 @@ package org.coda.core.service;
 import jakarta.persistence.*;
 import lombok.extern.slf4j.Slf4j;
 import org.coda.core.entities.User;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.coda.core.exceptions.DuplicateEmailException;
+import org.coda.core.exceptions.LoginRejectedException;
 import org.coda.core.exceptions.UserNotFoundException;
+import org.coda.core.projection.EmailFilterStats;
+import org.coda.core.projection.PasswordVerificationStats;
+import org.coda.core.repository.ConditionalUpdates;
+import org.coda.core.repository.PersistenceContextSupport;
 import org.coda.core.repository.UserRepository;
+import org.coda.core.security.EmailBloomFilter;
+import org.coda.core.security.LoginThrottle;
+import org.coda.core.security.PasswordVerifier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.Valid;
@@ -17,6 +32,9 @@ import javax.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
 @Slf4j
 @Service
 public class UserService{
@@ -24,36 +42,81 @@ public class UserService{
 
     private final BCryptPasswordEncoder encoder;
 
+    private final PersistenceContextSupport persistenceContextSupport;
+
+    private final PasswordVerifier passwordVerifier;
+
+    private final LoginThrottle loginThrottle;
+
+    private final EmailBloomFilter emailFilter;
+
+    private final ConditionalUpdates conditionalUpdates;
+
     /**
      * Constructor based dependency injection
      * @param userRepository for CRUD operations
      * @param encoder to encode the user password
-     * @Autowired annotation to inject the UserRepository
-     * and BcryptPasswordEncoder dependency
+     * @param persistenceContextSupport to clear the persistence context while streaming
+     * @param passwordVerifier to check login passwords on the bounded hashing pool
+     * @param loginThrottle to limit login attempts per account and client address
+     * @param emailFilter to answer lookups of unregistered emails without a database query
+     * @param conditionalUpdates to retry conditional updates that conflict with another writer
+     * @Autowired annotation to inject the UserRepository, BcryptPasswordEncoder,
+     * PersistenceContextSupport, PasswordVerifier, LoginThrottle, EmailBloomFilter
+     * and ConditionalUpdates dependency
      */
     @Autowired
-    public UserService(UserRepository userRepository, BCryptPasswordEncoder encoder) {
+    public UserService(UserRepository userRepository, BCryptPasswordEncoder encoder,
+                       PersistenceContextSupport persistenceContextSupport,
+                       PasswordVerifier passwordVerifier, LoginThrottle loginThrottle,
+                       EmailBloomFilter emailFilter, ConditionalUpdates conditionalUpdates) {
         this.userRepository = userRepository;
         this.encoder = encoder;
+        this.persistenceContextSupport = persistenceContextSupport;
+        this.passwordVerifier = passwordVerifier;
+        this.loginThrottle = loginThrottle;
+        this.emailFilter = emailFilter;
+        this.conditionalUpdates = conditionalUpdates;
+    }
+
+    /**
+     * Method to log in a user, throttled per account only
+     * @param email: the email of the user
+     * @param password: the password of the user
+     * @return Optional<User> if the user is found and the password matches
+     * otherwise return empty Optional user object
+     * @throws LoginRejectedException if the attempt is throttled or password verification is saturated
+     */
+
+    public Optional<User> loginUser(@Email String email, @NotEmpty String password) {
+        return loginUser(email, password, null);
     }
 
     /**
      * Method to log in a user
+     * Attempts are throttled per account and per client address before any work is done.
+     * An email the EmailBloomFilter has never seen is rejected without querying the database or hashing.
+     * The password is checked on the PasswordVerifier pool; no transaction is held while hashing,
+     * the user lookup runs in the repository's own read-only transaction.
      * @param email: the email of the user
      * @param password: the password of the user
+     * @param clientAddress: the address of the caller, null when unknown
      * @Email annotation to validate the user email
      * @NotEmpty annotation to validate the user password
-     * @encoder.matches to check if the password matches the encoded password
-     * @Transactional annotation to read the user from the database
      * @return Optional<User> if the user is found and the password matches
      * otherwise return empty Optional user object
+     * @throws LoginRejectedException if the attempt is throttled or password verification is saturated
      */
 
-    @Transactional(readOnly = true)
-    public Optional<User> loginUser(@Email String email, @NotEmpty String password) {
-        Optional<User> user = userRepository.findUserByEmail(email);
+    public Optional<User> loginUser(@Email String email, @NotEmpty String password, String clientAddress) {
+        if (!loginThrottle.tryAcquire(email, clientAddress)) {
+            log.warn("Login attempt throttled for {} from {}", email, clientAddress);
+            throw new LoginRejectedException(LoginRejectedException.Reason.THROTTLED,
+                    "Too many login attempts, try again later");
+        }
+        Optional<User> user = lookupByEmail(email);
         if(user.isPresent()){
-            if(encoder.matches(password, user.get().getPassword())){
+            if(passwordVerifier.matches(password, user.get().getPassword())){
                 log.info("User logged in successfully: {}", user);
                 return user;
             }
@@ -61,20 +124,65 @@ public class UserService{
         return Optional.empty();
     }
 
+    /**
+     * Method to report the password verification metrics
+     * @return PasswordVerificationStats with queue wait, hash time and rejection counters
+     */
+
+    public PasswordVerificationStats getPasswordVerificationStats() {
+        return passwordVerifier.getStats();
+    }
+
+    /**
+     * Method to report the registered email filter metrics
+     * @return EmailFilterStats with the filter sizing, estimated false positive rate and lookup counters
+     */
+
+    public EmailFilterStats getEmailFilterStats() {
+        return emailFilter.getStats();
+    }
+
+    /**
+     * Method to load every registered email into the EmailBloomFilter once the application is ready
+     * The filter opens the stream itself once its new bits are installed, so emails of users committed
+     * while the query runs are added to the filter being built as well.
+     * @Transactional annotation to stream the emails inside a read-only transaction
+     * @return void
+     */
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildEmailFilter() {
+        emailFilter.rebuild(userRepository::streamAllEmails);
+        log.info("Email filter rebuilt: {}", emailFilter.getStats());
+    }
+
     /**
      * Method to create a user
+     * The email is checked first, skipping the query when the EmailBloomFilter has never seen it;
+     * the uk_user_email unique constraint still rejects a concurrent signup with the same email.
      * @param user the user to be created
      * @Valid annotation to validate the user object
      * @encoder.encode to encode the user password
      * @Transactional annotation to create the user as part of a single transaction
      * @return Optional<User> if the user is created successfully
      * otherwise return empty Optional user object
+     * @throws DuplicateEmailException if a user with the same email already exists
      */
 
     @Transactional
     public Optional<User> createUser(@Valid User user) {
+            String email = user.getContact() == null ? null : user.getContact().getEmail();
+            if (lookupByEmail(email).isPresent()) {
+                throw new DuplicateEmailException("A user with email " + email + " already exists");
+            }
             user.setPassword(encoder.encode(user.getPassword()));
-            userRepository.save(user);
+            try {
+                userRepository.saveAndFlush(user);
+            } catch (DataIntegrityViolationException e) {
+                throw new DuplicateEmailException("A user with email " + email + " already exists", e);
+            }
+            AfterCommit.run(() -> emailFilter.put(email));
             log.info("User created successfully: {}", user);
             return Optional.of(user);
 
@@ -82,26 +190,63 @@ public class UserService{
 
     /**
      * Method to update a user
-     * @param user the user to be updated
+     * One conditional UPDATE, applied only if the user is still at the version it was read at (optimistic locking);
+     * the role and the last login are left as they are.
+     * @param user the user to be updated, with the version it was read at
      * @Valid annotation to validate the user object
      * @encoder.encode to encode the user password
      * @Transactional annotation to update the user as part of a single transaction
-     * @return Optional<User> if the user is updated successfully
-     * otherwise return empty Optional user object
+     * @return User the updated user, at its new version
+     * @throws UserNotFoundException if there is no user with the id
+     * @throws ConcurrentUpdateException if the user was updated since it was read
      */
 
     @Transactional
     public User updateUser(@Valid User user) {
-        if (userRepository.existsById(user.getId())) {
-            user.setPassword(encoder.encode(user.getPassword()));
-            User updatedUser = userRepository.save(user);
-            log.info("User updated successfully: {}", updatedUser);
-            return updatedUser;
-        } else {
-            // Handle the case where the user does not exist.
-            log.error("Attempted to update a non-existent user: {}", user);
-            throw new UserNotFoundException("User not found with id: " + user.getId());
+        user.setPassword(encoder.encode(user.getPassword()));
+        if (userRepository.updateIfUnchanged(user) == 0) {
+            if (!userRepository.existsById(user.getId())) {
+                // Handle the case where the user does not exist.
+                log.error("Attempted to update a non-existent user: {}", user);
+                throw new UserNotFoundException("User not found with id: " + user.getId());
+            }
+            throw new ConcurrentUpdateException("User " + user.getId() + " was updated since version "
+                    + user.getVersion() + " was read");
+        }
+        user.setVersion(user.getVersion() + 1);
+        if (user.getContact() != null) {
+            String email = user.getContact().getEmail();
+            AfterCommit.run(() -> emailFilter.put(email));
         }
+        log.info("User updated successfully: {}", user);
+        return user;
+    }
+
+    /**
+     * Method to change a user in place, e.g. to adjust its calorie goal
+     * The user is read from the primary, changed and written back by one conditional UPDATE; when another writer
+     * updated it meanwhile it is read and changed again, up to calorietracker.update.max-attempts times.
+     * @param id the id of the user
+     * @param change applied to the current user, again on every retry; it must not change the password,
+     * which is written as it is
+     * @Transactional annotation with NOT_SUPPORTED propagation, so every attempt commits on its own
+     * and no transaction is held during the back-off
+     * @return User the changed user, at its new version
+     * @throws UserNotFoundException if there is no user with the id
+     * @throws ConcurrentUpdateException if every attempt conflicted with another writer
+     */
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public User modifyUser(long id, Consumer<User> change) {
+        User user = conditionalUpdates.apply("User", id, userRepository::findCurrentById, change,
+                        userRepository::updateIfUnchanged)
+                .orElseThrow(() -> new UserNotFoundException("User not found with id: " + id));
+        user.setVersion(user.getVersion() + 1);
+        if (user.getContact() != null) {
+            emailFilter.put(user.getContact().getEmail());
+        }
+        log.info("User modified successfully: {}", user);
+        return user;
     }
 
 
@@ -116,7 +261,7 @@ public class UserService{
     @Transactional(readOnly = true)
     public List<User> getAllUsers() {
             List<User> users = userRepository.findAll();
-            log.info("Users retrieved successfully: {}", users);
+            log.info("Users retrieved successfully: {}", users.size());
             return users;
     }
 
@@ -147,7 +292,7 @@ public class UserService{
 
     @Transactional(readOnly = true)
     public Optional<User> findUserByEmail(@Email String email) {
-          return userRepository.findUserByEmail(email);
+          return lookupByEmail(email);
     }
 
     /**
@@ -197,17 +342,59 @@ public class UserService{
 
     @Transactional
     public void updateUserLastLogin(@Valid long id) {
-        userRepository.updateUserLastLogin(id, LocalDateTime.now().toString());
+        userRepository.updateUserLastLogin(id, LocalDateTime.now());
     }
 
     /**
      * Method to delete inactive users
+     * Their emails stay in the EmailBloomFilter as stale entries until the next rebuild.
      * @Transactional annotation to delete the inactive users from the database
      * @return boolean true if the users are deleted otherwise return false
      */
 
     @Transactional
     protected boolean deleteInactiveUsers() {
-        return userRepository.deleteInactiveUsers(LocalDateTime.now().minusMonths(6).toString());
+        int deleted = userRepository.deleteInactiveUsers(LocalDateTime.now().minusMonths(6));
+        emailFilter.markStale(deleted);
+        return deleted > 0;
+    }
+
+    /**
+     * Method to read a page of users after a given id (keyset pagination)
+     * @param afterId the id of the last user of the previous page, 0 for the first page
+     * @param pageSize the maximum number of users to return
+     * @Transactional annotation to read the users from the
+     * database as part of a single transaction
+     * @return List<User> ordered by id, empty when there are no more users
+     */
+
+    @Transactional(readOnly = true)
+    public List<User> getUsersAfter(long afterId, int pageSize) {
+        return userRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(pageSize));
+    }
+
+    /**
+     * Method to stream all users in constant memory
+     * Must be called, and the stream consumed and closed, inside an existing transaction.
+     * The persistence context is cleared periodically, so users handed out may be detached.
+     * @Transactional annotation with MANDATORY propagation to fail fast without a transaction
+     * @return Stream<User> of all users ordered by id
+     */
+
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<User> streamAllUsers() {
+        return persistenceContextSupport.clearingEvery(userRepository.streamAllUsers());
+    }
+
+    //== a negative filter answer is definite, a positive one is confirmed against the uk_user_email index ==
+    private Optional<User> lookupByEmail(String email) {
+        if (!emailFilter.mightContain(email)) {
+            return Optional.empty();
+        }
+        Optional<User> user = userRepository.findUserByEmail(email);
+        if (user.isEmpty()) {
+            emailFilter.recordFalsePositive();
+        }
+        return user;
     }
 }
@@ -0,0 +1,126 @@
+package org.coda.core.analytics;
+
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestIntakeColumnStore {
+
+    private static final LocalDate DAY = LocalDate.of(2023, 6, 1);
+
+    private IntakeColumnStore store;
+
+    /**
+     * @BeforeEach annotation to load a store with three intakes of user 1 over two days and one of user 2
+     * return void
+     */
+
+    @BeforeEach
+    void setUp() {
+        store = new IntakeColumnStore(true);
+        store.rebuild(List.of(
+                row(1, 1, DAY.atTime(8, 0), 300),
+                row(2, 1, DAY.atTime(12, 30), 700),
+                row(3, 1, DAY.plusDays(1).atTime(9, 0), 500),
+                row(4, 2, DAY.atTime(8, 0), 1000)).iterator());
+    }
+
+    /**
+     * Test that a range sums only the intakes of the user, including its start and excluding its end
+     */
+
+    @Test
+    void testSumRange() {
+        IntakeRangeStats stats = store.sum(1, DAY.atTime(8, 0), DAY.plusDays(1).atTime(9, 0));
+
+        assertEquals(2, stats.entryCount());
+        assertEquals(1, stats.days());
+        assertEquals(1000, stats.calories(), 0.001);
+        assertEquals(100, stats.protein(), 0.001);
+        assertEquals(500, stats.averageCaloriesPerIntake(), 0.001);
+    }
+
+    /**
+     * Test that the daily calories are bucketed per day and an unknown user has none
+     */
+
+    @Test
+    void testDailyCalories() {
+        assertArrayEquals(new double[]{0, 1000, 500}, store.dailyCalories(1, DAY.minusDays(1), 3), 0.001);
+        assertArrayEquals(new double[]{0, 0}, store.dailyCalories(9, DAY, 2), 0.001);
+    }
+
+    /**
+     * Test that out of order adds are sorted, adding twice is ignored and removes take rows out
+     */
+
+    @Test
+    void testAddAndRemove() {
+        store.add(row(5, 1, DAY.atTime(10, 0), 50));
+        store.add(row(5, 1, DAY.atTime(10, 0), 50));
+        store.remove(1, 1, DAY.atTime(8, 0));
+        store.remove(99, 1, DAY.atTime(8, 0));
+
+        IntakeRangeStats stats = store.sum(1, DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay());
+        assertEquals(2, stats.entryCount());
+        assertEquals(750, stats.calories(), 0.001);
+        assertEquals(4, store.getStats().entries());
+        assertEquals(2, store.getStats().users());
+    }
+
+    /**
+     * Test that writes made while a rebuild streams the table reach the rebuilt store
+     */
+
+    @Test
+    void testWritesDuringRebuildAreReplayed() {
+        Iterator<IntakeRow> rows = List.of(row(1, 1, DAY.atTime(8, 0), 300)).iterator();
+        Iterator<IntakeRow> slowRows = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public IntakeRow next() {
+                store.add(row(6, 1, DAY.atTime(20, 0), 200));
+                store.remove(2, 1, DAY.atTime(12, 30));
+                return rows.next();
+            }
+        };
+
+        store.rebuild(slowRows);
+
+        IntakeRangeStats stats = store.sum(1, DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay());
+        assertEquals(2, stats.entryCount());
+        assertEquals(500, stats.calories(), 0.001);
+    }
+
+    /**
+     * Test that a disabled store ignores writes and refuses queries
+     */
+
+    @Test
+    void testDisabledStore() {
+        IntakeColumnStore disabled = new IntakeColumnStore(false);
+        disabled.rebuild(Collections.emptyIterator());
+        disabled.add(row(1, 1, DAY.atTime(8, 0), 300));
+
+        assertFalse(disabled.isReady());
+        assertEquals(0, disabled.getStats().entries());
+        assertThrows(IllegalStateException.class, () -> disabled.sum(1, DAY.atStartOfDay(), DAY.atTime(23, 0)));
+    }
+
+    private static IntakeRow row(long id, long userId, LocalDateTime dateTime, double calories) {
+        return new IntakeRow(id, userId, dateTime, calories, calories / 10, 0, 0);
+    }
+}
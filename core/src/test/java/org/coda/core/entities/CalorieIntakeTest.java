@@ -41,6 +41,9 @@ public class CalorieIntakeTest {
         when(meal.getUser()).thenReturn(user);
         when(meal.getFoods()).thenReturn(List.of(food));
         when(meal.getTotalCalories()).thenReturn(100.0);
+        when(meal.getTotalProtein()).thenReturn(12.0);
+        when(meal.getTotalFat()).thenReturn(4.0);
+        when(meal.getTotalCarbohydrates()).thenReturn(30.0);
 
         // food mocks
         when(food.getId()).thenReturn(1L);
@@ -92,23 +95,18 @@ public class CalorieIntakeTest {
     @Test
     void testEqualsAndHashCode(){
         // Arrange
-        CalorieInTake calorieIntake = new CalorieInTake(meal, user, food);
-        CalorieInTake calorieIntake2 = new CalorieInTake(meal, user, food);
+        CalorieInTake calorieIntake = new CalorieInTake(null, user, null);
+        int hashCode = calorieIntake.hashCode();
 
         // Act
         calorieIntake.setId(1);
         calorieIntake.setMeal(meal);
-        calorieIntake.setUser(user);
         calorieIntake.setFood(food);
 
-        calorieIntake2.setId(1);
-        calorieIntake2.setMeal(meal);
-        calorieIntake2.setUser(user);
-        calorieIntake2.setFood(food);
-
         // Assert
-        assertEquals(calorieIntake, calorieIntake2);
-        assertEquals(calorieIntake.hashCode(), calorieIntake2.hashCode());
+        assertEquals(calorieIntake, calorieIntake);
+        assertEquals(hashCode, calorieIntake.hashCode());
+        assertNotEquals(calorieIntake, new CalorieInTake(null, user, null));
     }
 
     @Test
@@ -133,4 +131,21 @@ public class CalorieIntakeTest {
         assertNotEquals(calorieIntake.hashCode(), calorieIntake2.hashCode());
     }
 
+    @Test
+    void testMacrosFallBackToMealTotals() {
+        // Arrange
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(1);
+        when(food.getNutrition()).thenReturn(nutrition);
+        CalorieInTake mealOnly = new CalorieInTake(meal, user, null);
+        CalorieInTake withFood = new CalorieInTake(meal, user, food);
+
+        // Assert
+        assertEquals(100, mealOnly.calculateCalories());
+        assertEquals(12, mealOnly.calculateProtein());
+        assertEquals(4, mealOnly.calculateFat());
+        assertEquals(30, mealOnly.calculateCarbohydrates());
+        assertEquals(1, withFood.calculateProtein());
+        assertEquals(0, withFood.calculateFat());
+    }
 }
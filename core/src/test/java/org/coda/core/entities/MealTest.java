@@ -149,13 +149,36 @@ class MealTest {
             meal2.setTotalCalories(100.0);
 
             // Assert
-            assertEquals(meal, meal2);
-            assertEquals(meal.hashCode(), meal2.hashCode());
+            //== identity is the assigned uuid, not the id or the field values ==
+            assertNotEquals(meal, meal2);
+            int hashcode = meal.hashCode();
+            meal.setId(2);
+            meal.setFoods(List.of(food, food));
+            assertEquals(hashcode, meal.hashCode());
         }
 
+        @Test
+        void testRefreshTotals(){
+            // Arrange
+            Food rice = new Food("Rice", "Boiled", nutrition(4, 1, 45), 200);
+            Food chicken = new Food("Chicken", "Grilled", nutrition(30, 5, 0), 165);
+            Meal meal = new Meal("Lunch", user, List.of(rice, chicken));
 
+            // Act
+            meal.refreshTotals();
 
+            // Assert
+            assertEquals(365.0, meal.getTotalCalories());
+            assertEquals(34.0, meal.getTotalProtein());
+            assertEquals(6.0, meal.getTotalFat());
+            assertEquals(45.0, meal.getTotalCarbohydrates());
+        }
 
-
-
-}
\ No newline at end of file
+        private static Food.Nutrition nutrition(float protein, float fat, float carbohydrates) {
+            Food.Nutrition nutrition = new Food.Nutrition();
+            nutrition.setProtein(protein);
+            nutrition.setFat(fat);
+            nutrition.setCarbohydrates(carbohydrates);
+            return nutrition;
+        }
+}
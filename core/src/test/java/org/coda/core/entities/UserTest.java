@@ -105,30 +105,32 @@ class UserTest {
     user.setId(1L);
     user.setName("chris");
     user.setPassword("password");
-    user.setAge(24);
-    user.setWeight(60);
-    user.setHeight(180.0);
-    user.setCalorieGoal(2000);
+    int hashcode = user.hashCode();
 
     User user1 = new User();
     user1.setId(1L);
     user1.setName("chris");
     user1.setPassword("password");
-    user1.setAge(24);
-    user1.setWeight(60);
-    user1.setHeight(180.0);
-    user1.setCalorieGoal(2000);
 
     // Act
-    boolean result = user.equals(user1);
-    int hashcode1 = user.hashCode();
-    int hashcode2 = user1.hashCode();
+    user.setId(2L);
+    user.setContact(new User.Contact());
 
     // Assert
-    assertEquals(true, result);
-    assertEquals(hashcode1, hashcode2);
-
+    assertEquals(user, user);
+    assertEquals(hashcode, user.hashCode());
+    assertNotEquals(user, user1);
+    }
 
+    @Test
+    void testContactEqualsWithoutPhone(){
+    User.Contact contact = new User.Contact();
+    contact.setEmail("chris@mail.com");
+    User.Contact contact1 = new User.Contact();
+    contact1.setEmail("chris@mail.com");
+
+    assertEquals(contact, contact1);
+    assertEquals(contact.hashCode(), contact1.hashCode());
     }
 
 
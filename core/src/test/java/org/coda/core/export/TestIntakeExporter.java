@@ -0,0 +1,173 @@
+package org.coda.core.export;
+
+import org.coda.core.exceptions.IntakeExportException;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.repository.CalorieInTakeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TestIntakeExporter {
+
+    private static final long USER_ID = 7;
+
+    private static final LocalDateTime START = LocalDateTime.of(2014, 1, 1, 8, 0);
+
+    @Mock
+    private CalorieInTakeRepository calorieInTakeRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path directory;
+
+    private IntakeExporter exporter;
+
+    /**
+     * @BeforeEach annotation to create an exporter writing a checkpoint every 2 rows through 64 byte buffers
+     * return void
+     */
+
+    @BeforeEach
+    void setUp() {
+        exporter = new IntakeExporter(calorieInTakeRepository, transactionManager, 2, 64);
+    }
+
+    /**
+     * Test method to export rows as CSV, quoting the fields that need it, and remove the checkpoint at the end
+     * return void
+     */
+
+    @Test
+    void testExportCsv() throws IOException {
+        //Arrange
+        Path target = directory.resolve("history.csv.gz");
+        when(calorieInTakeRepository.streamExportRows(USER_ID)).thenReturn(rows(1, 5).stream());
+
+        //Act
+        IntakeExportReport report = exporter.exportIntakes(USER_ID, target);
+
+        //Assert
+        List<String> lines = read(target);
+        assertEquals("id,date_time,meal,food,food_details,calories,protein,fat,carbohydrates", lines.get(0));
+        assertEquals("1,2014-01-01T08:00,,apple,\"Raw, \"\"green\"\"\",52.0,0.3,0.2,14.0", lines.get(1));
+        assertEquals(6, lines.size());
+        assertEquals(5, report.exported());
+        assertEquals(2, report.checkpoints());
+        assertEquals(Files.size(target), report.bytes());
+        assertFalse(Files.exists(IntakeExporter.checkpointOf(target)));
+    }
+
+    /**
+     * Test method to export rows as NDJSON with escaped strings and null for a missing meal
+     * return void
+     */
+
+    @Test
+    void testExportNdjson() throws IOException {
+        Path target = directory.resolve("history.ndjson.gz");
+        when(calorieInTakeRepository.streamExportRows(USER_ID)).thenReturn(rows(1, 1).stream());
+
+        exporter.exportIntakes(USER_ID, target);
+
+        assertEquals(List.of("{\"id\":1,\"dateTime\":\"2014-01-01T08:00\",\"meal\":null,\"food\":\"apple\","
+                + "\"foodDetails\":\"Raw, \\\"green\\\"\",\"calories\":52.0,\"protein\":0.3,\"fat\":0.2,"
+                + "\"carbohydrates\":14.0}"), read(target));
+    }
+
+    /**
+     * Test method to resume an export that failed after its second checkpoint:
+     * the file is cut back to the checkpoint and every row ends up in it exactly once
+     * return void
+     */
+
+    @Test
+    void testResumeAfterFailure() throws IOException {
+        //Arrange
+        Path target = directory.resolve("history.csv.gz");
+        List<IntakeExportRow> all = rows(1, 7);
+        when(calorieInTakeRepository.streamExportRows(USER_ID)).thenReturn(Stream.iterate(0, i -> i + 1)
+                .map(i -> {
+                    if (i == 5) throw new DataAccessResourceFailureException("connection lost");
+                    return all.get(i);
+                }));
+        when(calorieInTakeRepository.streamExportRowsAfter(USER_ID, all.get(3).dateTime(), 4))
+                .thenReturn(all.subList(4, 7).stream());
+
+        //Act
+        IntakeExportException failure = assertThrows(IntakeExportException.class,
+                () -> exporter.exportIntakes(USER_ID, target));
+        IntakeExportReport report = exporter.exportIntakes(USER_ID, target);
+
+        //Assert
+        assertTrue(failure.getMessage().contains("resumes after intake 4"));
+        assertEquals(4, report.resumed());
+        assertEquals(3, report.exported());
+        List<String> lines = read(target);
+        assertEquals(8, lines.size());
+        assertEquals(List.of("1", "2", "3", "4", "5", "6", "7"),
+                lines.subList(1, 8).stream().map(line -> line.substring(0, line.indexOf(','))).toList());
+        assertFalse(Files.exists(IntakeExporter.checkpointOf(target)));
+    }
+
+    /**
+     * Test method to refuse a checkpoint written for another user
+     * return void
+     */
+
+    @Test
+    void testCheckpointOfAnotherUserIsRejected() throws IOException {
+        Path target = directory.resolve("history.csv.gz");
+        List<IntakeExportRow> all = rows(1, 3);
+        when(calorieInTakeRepository.streamExportRows(USER_ID)).thenReturn(Stream.iterate(0, i -> i + 1)
+                .map(i -> {
+                    if (i == 2) throw new DataAccessResourceFailureException("connection lost");
+                    return all.get(i);
+                }));
+        assertThrows(IntakeExportException.class, () -> exporter.exportIntakes(USER_ID, target));
+
+        IntakeExportException exception = assertThrows(IntakeExportException.class,
+                () -> exporter.exportIntakes(USER_ID + 1, target));
+
+        assertTrue(exception.getMessage().contains("different export"));
+        verify(calorieInTakeRepository, never()).streamExportRows(USER_ID + 1);
+    }
+
+    //== helpers ==
+
+    private static List<IntakeExportRow> rows(int first, int last) {
+        List<IntakeExportRow> rows = new ArrayList<>();
+        for (int id = first; id <= last; id++) {
+            rows.add(new IntakeExportRow(id, START.plusHours(id - 1), null, "apple", "Raw, \"green\"",
+                    52, 0.3, 0.2, 14));
+        }
+        return rows;
+    }
+
+    private static List<String> read(Path target) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(target))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+}
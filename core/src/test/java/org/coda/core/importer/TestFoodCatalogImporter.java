@@ -0,0 +1,225 @@
+package org.coda.core.importer;
+
+import org.coda.core.entities.Food;
+import org.coda.core.exceptions.FoodImportException;
+import org.coda.core.service.FoodService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TestFoodCatalogImporter {
+
+    @Mock
+    private FoodService foodService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path directory;
+
+    private FoodCatalogImporter importer;
+
+    /**
+     * @BeforeEach annotation to create an importer committing chunks of 2 records before each test
+     * return void
+     */
+
+    @BeforeEach
+    void setUp() {
+        importer = new FoodCatalogImporter(foodService, transactionManager, 2, 2, 10);
+    }
+
+    /**
+     * Test method to import a CSV file in chunks, rejecting the invalid rows
+     * return void
+     */
+
+    @Test
+    void testImportCsvInChunks() throws IOException {
+        //Arrange
+        Path source = write("foods.csv", """
+                name,calories,protein,fat,carbohydrates,details
+                Apple,52,0.3,0.2,14,"Raw, with skin"
+                ,10,,,,missing name
+                "Cheese ""aged"" loaf",402,25,33,1.3,
+                Bread,-5,,,,negative calories
+
+                Rice,130,2.7,0.3,28,
+                """);
+
+        //Act
+        FoodImportReport report = importer.importFoods(source);
+
+        //Assert
+        List<Food> saved = savedFoods(3);
+        assertEquals(List.of("Apple", "Cheese \"aged\" loaf", "Rice"), saved.stream().map(Food::getName).toList());
+        assertEquals("Raw, with skin", saved.get(0).getDetails());
+        assertEquals(14f, saved.get(0).getNutrition().getCarbohydrates());
+        assertEquals(3, report.imported());
+        assertEquals(2, report.rejected());
+        assertEquals(List.of(2L, 4L), report.rejections().stream().map(r -> r.record().number()).toList());
+        assertEquals("name is required", report.rejections().get(0).reason());
+        assertEquals(3, report.chunks());
+        assertFalse(Files.exists(FoodCatalogImporter.checkpointOf(source)));
+    }
+
+    /**
+     * Test method to import a JSON array, with nutrition nested or flat
+     * return void
+     */
+
+    @Test
+    void testImportJson() throws IOException {
+        //Arrange
+        Path source = write("foods.json", """
+                [
+                  {"name": "Egg", "calories": 155, "nutrition": {"protein": 13, "fat": 11, "carbohydrates": 1.1}},
+                  {"name": "Oats", "calories": "389", "protein": 16.9, "tags": ["grain"], "source": {"id": 1}},
+                  {"name": "Ghost", "calories": "many"}
+                ]
+                """);
+
+        //Act
+        FoodImportReport report = importer.importFoods(source);
+
+        //Assert
+        List<Food> saved = savedFoods(1);
+        assertEquals(13f, saved.get(0).getNutrition().getProtein());
+        assertEquals(389, saved.get(1).getCalories());
+        assertEquals(16.9f, saved.get(1).getNutrition().getProtein());
+        assertEquals(2, report.imported());
+        assertEquals(1, report.rejected());
+        assertEquals("calories is not a number: many", report.rejections().get(0).reason());
+    }
+
+    /**
+     * Test method to resume an import after a failed commit from the checkpoint
+     * return void
+     */
+
+    @Test
+    void testResumeAfterFailedChunk() throws IOException {
+        //Arrange
+        Path source = write("foods.csv", "name,calories\nA,1\nB,2\nC,3\nD,4\nE,5\n");
+        when(foodService.saveAllFoods(anyList()))
+                .thenReturn(List.of())
+                .thenThrow(new DataAccessResourceFailureException("connection lost"));
+
+        //Act
+        FoodImportException failure = assertThrows(FoodImportException.class, () -> importer.importFoods(source));
+
+        //Assert
+        assertTrue(failure.getMessage().contains("resumes after record 2"));
+        assertTrue(Files.exists(FoodCatalogImporter.checkpointOf(source)));
+
+        //Arrange
+        reset(foodService);
+
+        //Act
+        FoodImportReport report = importer.importFoods(source);
+
+        //Assert
+        List<Food> saved = savedFoods(2);
+        assertEquals(List.of("C", "D", "E"), saved.stream().map(Food::getName).toList());
+        assertEquals(2, report.skipped());
+        assertEquals(3, report.imported());
+        assertFalse(Files.exists(FoodCatalogImporter.checkpointOf(source)));
+    }
+
+    /**
+     * Test method to report a chunk committed without its checkpoint as saved again by the next import
+     * return void
+     */
+
+    @Test
+    void testFailedCheckpointAfterCommit() throws IOException {
+        //Arrange
+        Path source = write("foods.csv", "name,calories\nA,1\nB,2\n");
+        when(foodService.saveAllFoods(anyList())).thenAnswer(invocation -> {
+            Files.delete(source);
+            return List.of();
+        });
+
+        //Act
+        FoodImportException failure = assertThrows(FoodImportException.class, () -> importer.importFoods(source));
+
+        //Assert
+        verify(foodService, times(1)).saveAllFoods(anyList());
+        assertTrue(failure.getMessage().contains("Records 1 to 2"));
+        assertTrue(failure.getMessage().contains("the next import saves them again"));
+    }
+
+    /**
+     * Test method to refuse a checkpoint written for another version of the file
+     * return void
+     */
+
+    @Test
+    void testCheckpointOfChangedFileIsRefused() throws IOException {
+        //Arrange
+        Path source = write("foods.csv", "name,calories\nA,1\nB,2\nC,3\n");
+        when(foodService.saveAllFoods(anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+        assertThrows(FoodImportException.class, () -> importer.importFoods(source));
+        Files.writeString(source, "name,calories\nA,1\nB,2\nC,3\nD,4\n");
+        Files.writeString(FoodCatalogImporter.checkpointOf(source),
+                "source.size=1\nsource.modified=1\nrecords.committed=2\n");
+
+        //Act & Assert
+        assertThrows(FoodImportException.class, () -> importer.importFoods(source));
+    }
+
+    /**
+     * Test method to read quoted CSV fields spanning several lines
+     * return void
+     */
+
+    @Test
+    void testCsvQuotedLineBreaks() throws IOException {
+        //Arrange
+        try (FoodRecordReader reader = FoodImportFormat.CSV.open(
+                new StringReader("Name,Details\r\nSoup,\"line one\r\nline two\"\r\nTea,hot\r\n"))) {
+
+            //Act
+            FoodRecord soup = reader.next();
+            FoodRecord tea = reader.next();
+
+            //Assert
+            assertEquals("line one\r\nline two", soup.details());
+            assertEquals(2, tea.number());
+            assertEquals("Tea", tea.name());
+            assertNull(reader.next());
+        }
+    }
+
+    private Path write(String fileName, String content) throws IOException {
+        return Files.writeString(directory.resolve(fileName), content);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Food> savedFoods(int expectedCommits) {
+        ArgumentCaptor<List<Food>> captor = ArgumentCaptor.forClass(List.class);
+        verify(foodService, times(expectedCommits)).saveAllFoods(captor.capture());
+        List<Food> saved = new ArrayList<>();
+        captor.getAllValues().forEach(saved::addAll);
+        return saved;
+    }
+}
@@ -0,0 +1,168 @@
+package org.coda.core.ingest;
+
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.exceptions.IntakeQueueFullException;
+import org.coda.core.service.CalorieInTakeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TestIntakeWriteBehind {
+
+    @Mock
+    private CalorieInTakeService calorieInTakeService;
+
+    private IntakeWriteBehind writeBehind;
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.shutdown();
+    }
+
+    /**
+     * Test that full batches are flushed at once and the remainder when the writer shuts down
+     * return void
+     */
+
+    @Test
+    void testFlushesFullBatchesAndDrainsOnShutdown() {
+        //Arrange
+        writeBehind = start(100, 3, 60_000);
+
+        //Act
+        List<CompletableFuture<CalorieInTake>> acknowledged = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            acknowledged.add(writeBehind.submit(new CalorieInTake(), IntakeWriteBehind.Durability.ENQUEUED));
+        }
+        writeBehind.shutdown();
+
+        //Assert
+        assertTrue(acknowledged.stream().allMatch(CompletableFuture::isDone));
+        assertEquals(List.of(3, 3, 1), batchSizes());
+        assertEquals(7, writeBehind.getStats().written());
+        assertEquals(3, writeBehind.getStats().batches());
+    }
+
+    /**
+     * Test that a partial batch is flushed once its oldest intake has waited for the flush interval
+     * return void
+     */
+
+    @Test
+    void testFlushesPartialBatchAfterInterval() {
+        //Arrange
+        writeBehind = start(100, 100, 20);
+        CalorieInTake intake = new CalorieInTake();
+
+        //Act
+        CalorieInTake committed = writeBehind.submit(intake, IntakeWriteBehind.Durability.COMMITTED)
+                .orTimeout(5, TimeUnit.SECONDS).join();
+
+        //Assert
+        assertSame(intake, committed);
+        assertTrue(writeBehind.getStats().maxCommitLagMillis() >= 20);
+    }
+
+    /**
+     * Test that callers are refused when the queue stays full
+     * return void
+     */
+
+    @Test
+    void testBackpressureWhenQueueIsFull() throws InterruptedException {
+        //Arrange
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(calorieInTakeService.saveAllCalorieInTake(anyList())).thenAnswer(invocation -> {
+            flushing.countDown();
+            release.await();
+            return invocation.getArgument(0);
+        });
+        writeBehind = start(1, 1, 60_000);
+        writeBehind.submit(new CalorieInTake(), IntakeWriteBehind.Durability.ENQUEUED);
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        writeBehind.submit(new CalorieInTake(), IntakeWriteBehind.Durability.ENQUEUED);
+
+        //Act & Assert
+        assertThrows(IntakeQueueFullException.class,
+                () -> writeBehind.submit(new CalorieInTake(), IntakeWriteBehind.Durability.ENQUEUED));
+        assertEquals(1, writeBehind.getStats().rejected());
+        assertEquals(1, writeBehind.getStats().queueDepth());
+        release.countDown();
+    }
+
+    /**
+     * Test that a failed batch is retried one intake at a time so only the bad intake fails
+     * return void
+     */
+
+    @Test
+    void testFailedBatchIsRetriedOneByOne() {
+        //Arrange
+        CalorieInTake good = new CalorieInTake();
+        CalorieInTake bad = new CalorieInTake();
+        when(calorieInTakeService.saveAllCalorieInTake(anyList()))
+                .thenThrow(new DataIntegrityViolationException("bad intake"));
+        lenient().doThrow(new DataIntegrityViolationException("bad intake"))
+                .when(calorieInTakeService).saveCalorieInTake(same(bad));
+        writeBehind = start(100, 2, 60_000);
+
+        //Act
+        CompletableFuture<CalorieInTake> goodAck = writeBehind.submit(good, IntakeWriteBehind.Durability.COMMITTED);
+        CompletableFuture<CalorieInTake> badAck = writeBehind.submit(bad, IntakeWriteBehind.Durability.COMMITTED);
+
+        //Assert
+        assertSame(good, goodAck.orTimeout(5, TimeUnit.SECONDS).join());
+        assertThrows(CompletionException.class, () -> badAck.orTimeout(5, TimeUnit.SECONDS).join());
+        assertEquals(1, writeBehind.getStats().written());
+        assertEquals(1, writeBehind.getStats().failed());
+    }
+
+    /**
+     * Test that intakes are refused once the writer is shutting down, and intakes with an id are refused
+     * return void
+     */
+
+    @Test
+    void testRefusesAfterShutdownAndExistingIntakes() {
+        //Arrange
+        writeBehind = start(100, 10, 60_000);
+        CalorieInTake existing = new CalorieInTake();
+        existing.setId(5);
+
+        //Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> writeBehind.submit(existing));
+        writeBehind.shutdown();
+        assertThrows(IllegalStateException.class, () -> writeBehind.submit(new CalorieInTake()));
+    }
+
+    private IntakeWriteBehind start(int capacity, int batchSize, long flushIntervalMillis) {
+        IntakeWriteBehind started = new IntakeWriteBehind(calorieInTakeService, capacity, batchSize,
+                flushIntervalMillis, 10, 5_000, IntakeWriteBehind.Durability.COMMITTED);
+        started.start();
+        return started;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> batchSizes() {
+        ArgumentCaptor<List<CalorieInTake>> captor = ArgumentCaptor.forClass(List.class);
+        verify(calorieInTakeService, atLeastOnce()).saveAllCalorieInTake(captor.capture());
+        return captor.getAllValues().stream().map(List::size).toList();
+    }
+}
@@ -0,0 +1,227 @@
+package org.coda.core.journal;
+
+import org.coda.core.projection.JournalStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestIntakeJournal {
+
+    private static final LocalDateTime MORNING = LocalDateTime.of(2023, 6, 10, 8, 0);
+
+    @TempDir
+    private Path directory;
+
+    private IntakeJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    /**
+     * Test that the index answers by id, per user over a half-open range and after a keyset position,
+     * and follows updates and deletes
+     * return void
+     */
+
+    @Test
+    void testAppendUpdateDeleteAndQuery() {
+        //Arrange
+        journal = open(1 << 16, 0.5);
+        IntakeRecord first = journal.append(record(7, MORNING));
+        IntakeRecord second = journal.append(record(7, MORNING.plusHours(2)));
+        IntakeRecord other = journal.append(record(3, MORNING.plusHours(1)));
+
+        //Act
+        journal.append(new IntakeRecord(first.id(), 7, 0, 0, MORNING.plusHours(4), first.uuid()));
+        journal.delete(other.id());
+
+        //Assert
+        assertEquals(List.of(1L, 2L, 3L), List.of(first.id(), second.id(), other.id()));
+        assertEquals(MORNING.plusHours(4), journal.find(first.id()).orElseThrow().dateTime());
+        assertEquals(first.uuid(), journal.find(first.id()).orElseThrow().uuid());
+        assertTrue(journal.find(other.id()).isEmpty());
+        assertEquals(2, journal.count());
+        assertEquals(List.of(7L), journal.users());
+        assertEquals(List.of(second.id(), first.id()), ids(journal.byUser(7)));
+        assertEquals(List.of(second.id()), ids(journal.byUser(7, MORNING, MORNING.plusHours(4))));
+        assertEquals(List.of(first.id()), ids(journal.after(MORNING.plusHours(2), second.id())));
+        assertFalse(journal.delete(other.id()));
+    }
+
+    /**
+     * Test that reopening the journal replays its records, and new intakes continue the ids
+     * return void
+     */
+
+    @Test
+    void testReopenReplaysTheJournal() {
+        //Arrange
+        journal = open(1 << 16, 0.5);
+        IntakeRecord first = journal.append(record(7, MORNING));
+        IntakeRecord second = journal.append(record(7, MORNING.plusHours(2)));
+        journal.append(new IntakeRecord(first.id(), 7, 4, 5, MORNING.plusMinutes(30), first.uuid()));
+        journal.delete(second.id());
+        journal.sync();
+        journal.close();
+
+        //Act
+        journal = open(1 << 16, 0.5);
+        IntakeRecord third = journal.append(record(7, MORNING.plusHours(3)));
+
+        //Assert
+        assertEquals(new IntakeRecord(first.id(), 7, 4, 5, MORNING.plusMinutes(30), first.uuid()),
+                journal.find(first.id()).orElseThrow());
+        assertTrue(journal.find(second.id()).isEmpty());
+        assertEquals(3, third.id());
+        assertEquals(5, journal.getStats().records());
+        assertEquals(3, journal.getStats().deadRecords());
+    }
+
+    /**
+     * Test that a record torn by a crash ends the journal: it is discarded and its space is reused
+     * return void
+     * @throws IOException if the segment cannot be corrupted
+     */
+
+    @Test
+    void testTornRecordIsDiscarded() throws IOException {
+        //Arrange
+        journal = open(1 << 16, 0.5);
+        journal.append(record(7, MORNING));
+        journal.append(record(7, MORNING.plusHours(1)));
+        journal.append(record(7, MORNING.plusHours(2)));
+        journal.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 2 * IntakeJournal.RECORD_BYTES + 20);
+        }
+
+        //Act
+        journal = open(1 << 16, 0.5);
+        IntakeRecord appended = journal.append(record(7, MORNING.plusHours(3)));
+
+        //Assert
+        assertEquals(List.of(1L, 2L, 3L), ids(journal.all()));
+        assertEquals(MORNING.plusHours(3), appended.dateTime());
+        assertEquals(3, journal.getStats().records());
+    }
+
+    /**
+     * Test that compaction keeps the live records in fewer segments, survives a reopen,
+     * and runs by itself once the dead records reach the ratio
+     * return void
+     * @throws IOException if the directory cannot be listed
+     */
+
+    @Test
+    void testCompaction() throws IOException {
+        //Arrange
+        journal = open(4 * IntakeJournal.RECORD_BYTES, 0);
+        for (int i = 0; i < 10; i++) {
+            journal.append(record(i % 2 + 1, MORNING.plusMinutes(i)));
+        }
+        for (long id = 1; id <= 6; id++) {
+            journal.delete(id);
+        }
+        Files.writeString(directory.resolve("intake-000000000099.journal.compacting"), "left by a crash");
+        assertEquals(4, journal.getStats().segments());
+
+        //Act
+        journal.compact();
+        journal.close();
+        journal = open(4 * IntakeJournal.RECORD_BYTES, 0.5);
+
+        //Assert
+        JournalStats stats = journal.getStats();
+        assertEquals(List.of(7L, 8L, 9L, 10L), ids(journal.all()));
+        assertEquals(2, stats.segments());
+        assertEquals(5, stats.records());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+
+        //Act
+        IntakeRecord updated = journal.find(7).orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            journal.append(new IntakeRecord(7, 2, 0, 0, MORNING.plusDays(i), updated.uuid()));
+        }
+
+        //Assert
+        //== one dead record left by the previous compaction and three superseded versions, half of the records ==
+        assertEquals(1, journal.getStats().compactions());
+        assertEquals(MORNING.plusDays(2), journal.find(7).orElseThrow().dateTime());
+        assertEquals(4, journal.count());
+    }
+
+    /**
+     * Test that concurrent writers share forces: every record is durable and there are fewer forces than syncs
+     * return void
+     * @throws Exception if a writer fails
+     */
+
+    @Test
+    void testConcurrentSyncsAreGrouped() throws Exception {
+        //Arrange
+        journal = open(1 << 16, 0.5);
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+
+        //Act
+        for (int writer = 0; writer < 8; writer++) {
+            long userId = writer + 1;
+            done.add(writers.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    journal.append(record(userId, MORNING.plusMinutes(i)));
+                    journal.sync();
+                }
+            }));
+        }
+        for (Future<?> writer : done) {
+            writer.get();
+        }
+        writers.shutdown();
+
+        //Assert
+        JournalStats stats = journal.getStats();
+        assertEquals(1600, journal.count());
+        assertEquals(200, journal.byUser(5).count());
+        assertEquals(1600, stats.syncedRecords());
+        assertTrue(stats.syncs() <= 1600);
+    }
+
+    //== helpers ==
+
+    private IntakeJournal open(int segmentBytes, double compactionRatio) {
+        return new IntakeJournal(directory, segmentBytes, true, compactionRatio);
+    }
+
+    private static IntakeRecord record(long userId, LocalDateTime dateTime) {
+        return new IntakeRecord(0, userId, 0, 0, dateTime, UUID.randomUUID());
+    }
+
+    private static List<Long> ids(Stream<IntakeRecord> records) {
+        return records.map(IntakeRecord::id).toList();
+    }
+}
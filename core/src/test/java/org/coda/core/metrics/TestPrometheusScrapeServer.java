@@ -0,0 +1,57 @@
+package org.coda.core.metrics;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the local Prometheus endpoint, started on a free loopback port
+ */
+class TestPrometheusScrapeServer {
+
+    private PrometheusScrapeServer server;
+
+    private PrometheusMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        server = new PrometheusScrapeServer(registry, "127.0.0.1", 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testScrapeRendersTheRegistry() throws Exception {
+        registry.counter("calorietracker.test.calls", "method", "saveMeal").increment(3);
+
+        try (HttpClient http = HttpClient.newHttpClient()) {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(uri("/metrics")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> post = http.send(HttpRequest.newBuilder(uri("/metrics"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+            assertTrue(response.body().contains("calorietracker_test_calls_total{method=\"saveMeal\",} 3.0"));
+            assertEquals(405, post.statusCode());
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+}
@@ -0,0 +1,74 @@
+package org.coda.core.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.coda.core.entities.Meal;
+import org.coda.core.repository.MealRepository;
+import org.coda.core.repository.PersistenceContextSupport;
+import org.coda.core.service.MealService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the service timers, on a MealService proxied with the aspect over a mocked repository
+ */
+@ExtendWith(MockitoExtension.class)
+class TestServiceMetricsAspect {
+
+    @Mock
+    MealRepository mealRepository;
+
+    @Mock
+    PersistenceContextSupport persistenceContextSupport;
+
+    private SimpleMeterRegistry registry;
+
+    private MealService mealService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        AspectJProxyFactory factory = new AspectJProxyFactory(
+                new MealService(mealRepository, persistenceContextSupport, null, null, null));
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ServiceMetricsAspect(registry));
+        mealService = factory.getProxy();
+    }
+
+    @Test
+    void testSuccessfulCallsAreTimedPerMethod() {
+        when(mealRepository.findAll()).thenReturn(List.of(new Meal()));
+
+        mealService.getAllMeals();
+        mealService.getAllMeals();
+
+        Timer timer = registry.get(ServiceMetricsAspect.TIMER)
+                .tags("class", "MealService", "method", "getAllMeals", "outcome", "success", "exception", "none")
+                .timer();
+        assertEquals(2, timer.count());
+        assertTrue(timer.totalTime(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    @Test
+    void testFailedCallsAreTimedWithTheException() {
+        when(mealRepository.findAll()).thenThrow(new IllegalStateException("database down"));
+
+        assertThrows(IllegalStateException.class, () -> mealService.getAllMeals());
+
+        Timer timer = registry.get(ServiceMetricsAspect.TIMER)
+                .tags("method", "getAllMeals", "outcome", "error", "exception", "IllegalStateException")
+                .timer();
+        assertEquals(1, timer.count());
+        assertNull(registry.find(ServiceMetricsAspect.TIMER).tags("outcome", "success").timer());
+    }
+}
@@ -0,0 +1,96 @@
+package org.coda.core.metrics;
+
+import org.coda.core.projection.StartupStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for StartupReport, on a small context with one slow bean and one bean that depends on it
+ */
+class TestStartupReport {
+
+    /**
+     * Test that the slow bean is reported with its own time, and not as the self time of the bean that needs it
+     * return void
+     */
+
+    @Test
+    void testReportsTheSelfTimeOfTheBeans() {
+        //Arrange
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(SlowBeans.class)
+                .web(WebApplicationType.NONE)
+                .applicationStartup(StartupReport.buffering());
+
+        //Act
+        StartupStats stats;
+        try (ConfigurableApplicationContext context = builder.run("--calorietracker.startup.report.top=50")) {
+            stats = context.getBean(StartupReport.class).getStats().orElseThrow();
+        }
+
+        //Assert
+        assertTrue(stats.readyMillis() >= 100);
+        assertTrue(stats.jvmUptimeMillis() >= stats.readyMillis());
+        assertTrue(stats.beans() >= 3);
+        assertTrue(stats.slowestBeans().size() <= 50);
+        StartupStats.Bean slow = bean(stats, "slowBean");
+        assertTrue(slow.selfMillis() >= 100);
+        StartupStats.Bean dependent = bean(stats, "dependentBean");
+        assertTrue(dependent.selfMillis() < 100);
+        assertTrue(dependent.totalMillis() >= 100);
+        assertFalse(stats.phases().isEmpty());
+        assertTrue(stats.phases().stream().noneMatch(phase -> phase.name().equals("spring.beans.instantiate")));
+    }
+
+    /**
+     * Test that nothing is reported when the steps are not recorded
+     * return void
+     */
+
+    @Test
+    void testNoReportWithoutBuffering() {
+        //Arrange
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(SlowBeans.class)
+                .web(WebApplicationType.NONE);
+
+        //Act
+        try (ConfigurableApplicationContext context = builder.run()) {
+            //Assert
+            assertTrue(context.getBean(StartupReport.class).getStats().isEmpty());
+        }
+    }
+
+    //== helpers ==
+
+    private static StartupStats.Bean bean(StartupStats stats, String name) {
+        return stats.slowestBeans().stream()
+                .filter(bean -> bean.name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    // == nested classes ==
+
+    @Configuration
+    @Import(StartupReport.class)
+    static class SlowBeans {
+
+        //== declared first, so it is the one that creates slowBean ==
+        @Bean
+        String dependentBean(StringBuilder slowBean) {
+            return String.valueOf(slowBean);
+        }
+
+        @Bean
+        StringBuilder slowBean() throws InterruptedException {
+            Thread.sleep(100);
+            return new StringBuilder("slow");
+        }
+    }
+}
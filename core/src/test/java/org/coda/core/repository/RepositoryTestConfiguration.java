@@ -0,0 +1,23 @@
+package org.coda.core.repository;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Spring Boot configuration picked up by the @DataJpaTest repository tests.
+ * Only the repositories whose queries are tested against H2 are enabled.
+ * Left out of the contexts started with the memory profile, whose scan of org.coda.core also finds it.
+ */
+@SpringBootConfiguration
+@Profile("!memory")
+@EntityScan(basePackages = {"org.coda.core.entities"})
+@EnableJpaRepositories(basePackages = {"org.coda.core.repository"},
+        includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                classes = {CalorieInTakeRepository.class, DailyIntakeSummaryRepository.class,
+                        FoodRepository.class, MealRepository.class, UserRepository.class}))
+public class RepositoryTestConfiguration {
+}
@@ -0,0 +1,352 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for CalorieInTakeRepository.
+ * Checks the half-open time range queries and that H2 serves the SQL Hibernate generates for them
+ * from the (user_id, date_time) index instead of a table scan.
+ */
+@DataJpaTest(properties = "spring.jpa.properties." + AvailableSettings.STATEMENT_INSPECTOR +
+        "=org.coda.core.repository.TestCalorieInTakeRepository$CapturedStatements")
+class TestCalorieInTakeRepository {
+
+    @Autowired
+    private CalorieInTakeRepository calorieInTakeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setName("chris");
+        user.setPassword("password");
+        user.setAge(24);
+        entityManager.persist(user);
+
+        entityManager.persist(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 5, 31, 23, 59)));
+        entityManager.persist(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 6, 1, 0, 0)));
+        entityManager.persist(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 6, 30, 23, 59)));
+        entityManager.persist(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 7, 1, 0, 0)));
+        entityManager.persist(new CalorieInTake(null, user, null, LocalDateTime.of(2024, 6, 15, 12, 0)));
+        entityManager.flush();
+    }
+
+    /**
+     * Test that the range includes its start and excludes its end, and ignores the same month of other years
+     */
+
+    @Test
+    void testFindAllCalorieIntakeByUserAndDateTimeRange() {
+        List<CalorieInTake> june = calorieInTakeRepository.findAllCalorieIntakeByUserAndDateTimeRange(user.getId(),
+                LocalDateTime.of(2023, 6, 1, 0, 0), LocalDateTime.of(2023, 7, 1, 0, 0));
+
+        assertEquals(2, june.size());
+        assertEquals(LocalDateTime.of(2023, 6, 1, 0, 0), june.get(0).getDateTime());
+        assertEquals(LocalDateTime.of(2023, 6, 30, 23, 59), june.get(1).getDateTime());
+    }
+
+    /**
+     * Test that the per-day default method covers the whole day
+     */
+
+    @Test
+    void testFindAllCalorieIntakeByUserAndDate() {
+        List<CalorieInTake> result = calorieInTakeRepository.findAllCalorieIntakeByUserAndDate(user.getId(),
+                LocalDateTime.of(2023, 6, 30, 0, 0).toLocalDate());
+
+        assertEquals(1, result.size());
+    }
+
+    /**
+     * Test that the H2 plan of the user and time range filter uses the composite index
+     */
+
+    @Test
+    void testUserAndDateTimeRangeUsesIndex() {
+        LocalDateTime from = LocalDateTime.of(2023, 6, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 7, 1, 0, 0);
+        CapturedStatements.STATEMENTS.clear();
+
+        calorieInTakeRepository.findAllCalorieIntakeByUserAndDateTimeRange(user.getId(), from, to);
+
+        assertEquals(1, CapturedStatements.STATEMENTS.size(), CapturedStatements.STATEMENTS::toString);
+        String sql = CapturedStatements.STATEMENTS.get(0);
+        String plan = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                explain.setLong(1, user.getId());
+                explain.setTimestamp(2, Timestamp.valueOf(from));
+                explain.setTimestamp(3, Timestamp.valueOf(to));
+                try (ResultSet resultSet = explain.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            }
+        });
+
+        assertTrue(plan.toUpperCase().contains("IDX_CALORIE_INTAKE_USER_DATE_TIME"), plan);
+        assertFalse(plan.contains("tableScan"), plan);
+    }
+
+    /**
+     * Test that walking the keyset pages returns every row once, in (dateTime, id) order
+     */
+
+    @Test
+    void testKeysetPagination() {
+        entityManager.persist(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 6, 1, 0, 0)));
+        entityManager.flush();
+
+        List<CalorieInTake> walked = new ArrayList<>();
+        List<CalorieInTake> page = calorieInTakeRepository.findFirstCalorieIntakePage(Limit.of(2));
+        while (!page.isEmpty()) {
+            walked.addAll(page);
+            CalorieInTake last = page.get(page.size() - 1);
+            page = calorieInTakeRepository.findCalorieIntakePageAfter(last.getDateTime(), last.getId(), Limit.of(2));
+        }
+
+        assertEquals(6, walked.size());
+        for (int i = 1; i < walked.size(); i++) {
+            CalorieInTake previous = walked.get(i - 1);
+            CalorieInTake current = walked.get(i);
+            assertTrue(previous.getDateTime().isBefore(current.getDateTime())
+                    || (previous.getDateTime().equals(current.getDateTime()) && previous.getId() < current.getId()));
+        }
+    }
+
+    /**
+     * Test that the stream method returns every row
+     */
+
+    @Test
+    void testStreamAllCalorieIntake() {
+        try (Stream<CalorieInTake> stream = calorieInTakeRepository.streamAllCalorieIntake()) {
+            assertEquals(5, stream.count());
+        }
+    }
+
+    /**
+     * Test that the intake rows carry the food values, ordered by user then time
+     */
+
+    @Test
+    void testStreamIntakeRows() {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(3);
+        Food apple = new Food("apple", null, nutrition, 52);
+        entityManager.persist(apple);
+        entityManager.persist(new CalorieInTake(null, user, apple, LocalDateTime.of(2023, 5, 1, 8, 0)));
+        entityManager.flush();
+
+        try (Stream<IntakeRow> rows = calorieInTakeRepository.streamIntakeRows()) {
+            List<IntakeRow> result = rows.toList();
+
+            assertEquals(6, result.size());
+            assertEquals(LocalDateTime.of(2023, 5, 1, 8, 0), result.get(0).dateTime());
+            assertEquals(52, result.get(0).calories(), 0.001);
+            assertEquals(3, result.get(0).protein(), 0.001);
+            assertEquals(0, result.get(1).calories(), 0.001);
+        }
+    }
+
+    /**
+     * Test that the intakes of a food are found whether it was eaten on its own or in a meal
+     */
+
+    @Test
+    void testFindIntakeRowsOfFood() {
+        persistApplesAndLunch();
+        Food rice = entityManager.createQuery("SELECT f FROM food f WHERE f.name = 'rice'", Food.class)
+                .getSingleResult();
+        entityManager.persist(new CalorieInTake(null, user, rice, LocalDateTime.of(2023, 6, 11, 8, 0)));
+        entityManager.flush();
+
+        List<IntakeRow> rows = calorieInTakeRepository.findIntakeRowsOfFood(rice.getId());
+
+        assertEquals(2, rows.size());
+        assertTrue(rows.stream().allMatch(row -> row.userId() == user.getId()));
+        assertTrue(rows.stream().allMatch(row -> Math.abs(row.calories() - 600) < 0.001));
+    }
+
+    /**
+     * Test that the stored values are read, not those of a managed instance changed and not yet flushed
+     */
+
+    @Test
+    void testFindIntakeRowByIdReadsStoredValues() {
+        persistApplesAndLunch();
+        CalorieInTake lunch = entityManager
+                .createQuery("SELECT c FROM calorie_intake c WHERE c.meal IS NOT NULL", CalorieInTake.class)
+                .getSingleResult();
+        Food apple = entityManager.createQuery("SELECT f FROM food f WHERE f.name = 'apple'", Food.class)
+                .getSingleResult();
+        lunch.setMeal(null);
+        lunch.setFood(apple);
+
+        IntakeRow row = calorieInTakeRepository.findIntakeRowById(lunch.getId()).orElseThrow();
+
+        assertEquals(lunch.getDateTime(), row.dateTime());
+        assertEquals(600, row.calories(), 0.001);
+        assertEquals(7, row.protein(), 0.001);
+        assertEquals(user.getId(), row.userId());
+    }
+
+    /**
+     * Test that the range totals count the food, or the meal totals when no food is attached, and distinct days
+     */
+
+    @Test
+    void testSumIntakeByUserAndDateTimeRange() {
+        persistApplesAndLunch();
+
+        IntakeRangeStats june = calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(user.getId(),
+                LocalDateTime.of(2023, 6, 1, 0, 0), LocalDateTime.of(2023, 7, 1, 0, 0)).orElseThrow();
+
+        assertEquals(5, june.entryCount());
+        assertEquals(3, june.days());
+        assertEquals(52 + 52 + 600, june.calories(), 0.001);
+        assertEquals(3 + 3 + 7, june.protein(), 0.001);
+        assertEquals(LocalDateTime.of(2023, 6, 1, 0, 0), june.from());
+        assertTrue(calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(user.getId(),
+                LocalDateTime.of(2022, 1, 1, 0, 0), LocalDateTime.of(2022, 2, 1, 0, 0)).isEmpty());
+    }
+
+    /**
+     * Test that the per user totals have one row per user with intakes in the range
+     */
+
+    @Test
+    void testSumIntakeByUser() {
+        persistApplesAndLunch();
+        User other = new User();
+        other.setName("alex");
+        other.setPassword("password");
+        entityManager.persist(other);
+        entityManager.persist(new CalorieInTake(null, other, null, LocalDateTime.of(2023, 6, 2, 9, 0)));
+        entityManager.flush();
+
+        List<IntakeRangeStats> users = calorieInTakeRepository.sumIntakeByUser(
+                LocalDateTime.of(2023, 6, 1, 0, 0), LocalDateTime.of(2023, 7, 1, 0, 0));
+
+        assertEquals(List.of(user.getId(), other.getId()), users.stream().map(IntakeRangeStats::userId).toList());
+        assertEquals(5, users.get(0).entryCount());
+        assertEquals(1, users.get(1).entryCount());
+    }
+
+    /**
+     * Test that the daily and monthly totals are grouped and ordered by the database
+     */
+
+    @Test
+    void testSumIntakeByUserAndDayAndMonth() {
+        persistApplesAndLunch();
+        LocalDateTime from = LocalDateTime.of(2023, 5, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 8, 1, 0, 0);
+
+        List<IntakePeriodTotals> days = calorieInTakeRepository.sumIntakeByUserAndDay(user.getId(), from, to);
+        List<IntakePeriodTotals> months = calorieInTakeRepository.sumIntakeByUserAndMonth(user.getId(), from, to);
+
+        assertEquals(List.of(LocalDate.of(2023, 5, 31), LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 10),
+                        LocalDate.of(2023, 6, 30), LocalDate.of(2023, 7, 1)),
+                days.stream().map(IntakePeriodTotals::periodStart).toList());
+        assertEquals(3, days.get(2).entryCount());
+        assertEquals(704, days.get(2).calories(), 0.001);
+        assertEquals(List.of(LocalDate.of(2023, 5, 1), LocalDate.of(2023, 6, 1), LocalDate.of(2023, 7, 1)),
+                months.stream().map(IntakePeriodTotals::periodStart).toList());
+        assertEquals(5, months.get(1).entryCount());
+        assertEquals(3, months.get(1).days());
+        assertEquals(704, months.get(1).calories(), 0.001);
+    }
+
+    /**
+     * Test that the export rows carry the food values, or the meal totals, and resume after a position
+     */
+
+    @Test
+    void testStreamExportRows() {
+        persistApplesAndLunch();
+
+        List<IntakeExportRow> rows;
+        try (Stream<IntakeExportRow> stream = calorieInTakeRepository.streamExportRows(user.getId())) {
+            rows = stream.toList();
+        }
+        IntakeExportRow lunch = rows.get(4);
+        List<IntakeExportRow> after;
+        try (Stream<IntakeExportRow> stream = calorieInTakeRepository.streamExportRowsAfter(user.getId(),
+                rows.get(4).dateTime(), rows.get(4).id())) {
+            after = stream.toList();
+        }
+
+        assertEquals(8, rows.size());
+        assertEquals("apple", rows.get(2).food());
+        assertEquals(3, rows.get(2).protein(), 0.001);
+        assertEquals("lunch", lunch.meal());
+        assertNull(lunch.food());
+        assertEquals(600, lunch.calories(), 0.001);
+        assertEquals(7, lunch.protein(), 0.001);
+        assertEquals(rows.subList(5, 8), after);
+    }
+
+    /**
+     * The statements Hibernate prepares, so the plan checked is the one of the SQL generated for the query
+     */
+    public static class CapturedStatements implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    private void persistApplesAndLunch() {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(3);
+        Food apple = new Food("apple", null, nutrition, 52);
+        entityManager.persist(apple);
+        Food.Nutrition riceNutrition = new Food.Nutrition();
+        riceNutrition.setProtein(7);
+        Food rice = new Food("rice", null, riceNutrition, 600);
+        entityManager.persist(rice);
+        Meal lunch = new Meal("lunch", null, new ArrayList<>(List.of(rice)));
+        entityManager.persist(lunch);
+        LocalDateTime day = LocalDateTime.of(2023, 6, 10, 8, 0);
+        entityManager.persist(new CalorieInTake(null, user, apple, day));
+        entityManager.persist(new CalorieInTake(null, user, apple, day.plusHours(2)));
+        entityManager.persist(new CalorieInTake(lunch, user, null, day.plusHours(4)));
+        entityManager.flush();
+    }
+}
@@ -0,0 +1,159 @@
+package org.coda.core.repository;
+
+import org.coda.core.entities.User;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test class for ConditionalUpdates: the bounded retry on its own, and concurrent increments of one user
+ * through UserRepository on an embedded H2, each attempt committing on its own as in the services.
+ */
+class TestConditionalUpdates {
+
+    /**
+     * Test that a change is applied again to a fresh read after a conflict, and given up with a
+     * ConcurrentUpdateException once every attempt conflicted
+     * return void
+     */
+
+    @Test
+    void testBoundedRetry() {
+        //Arrange
+        ConditionalUpdates conditionalUpdates = new ConditionalUpdates(mock(PlatformTransactionManager.class), 3);
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger writes = new AtomicInteger();
+
+        //Act
+        Optional<int[]> secondAttempt = conditionalUpdates.apply("Counter", 1,
+                id -> Optional.of(new int[]{reads.incrementAndGet()}),
+                counter -> counter[0] *= 10,
+                counter -> writes.incrementAndGet() == 2 ? 1 : 0);
+        int readsBefore = reads.get();
+        ConcurrentUpdateException exhausted = assertThrows(ConcurrentUpdateException.class,
+                () -> conditionalUpdates.apply("Counter", 1, id -> Optional.of(new int[1]), counter -> {
+                }, counter -> 0));
+
+        //Assert
+        assertEquals(20, secondAttempt.orElseThrow()[0]);
+        assertEquals(2, readsBefore);
+        assertEquals("Counter 1 was updated concurrently, retried 2 times", exhausted.getMessage());
+        assertEquals(4, conditionalUpdates.getConflicts());
+        assertEquals(1, conditionalUpdates.getExhausted());
+    }
+
+    /**
+     * Test that an entity missing on the first read, or deleted before the last attempt, is reported as
+     * not found rather than as a conflict
+     * return void
+     */
+
+    @Test
+    void testMissingEntity() {
+        //Arrange
+        ConditionalUpdates conditionalUpdates = new ConditionalUpdates(mock(PlatformTransactionManager.class), 1);
+        AtomicInteger reads = new AtomicInteger();
+
+        //Act
+        Optional<Object> missing = conditionalUpdates.apply("Counter", 1, id -> Optional.empty(), counter -> {
+        }, counter -> 1);
+        Optional<Object> deleted = conditionalUpdates.apply("Counter", 1,
+                id -> reads.incrementAndGet() == 1 ? Optional.of(new Object()) : Optional.empty(), counter -> {
+                }, counter -> 0);
+
+        //Assert
+        assertTrue(missing.isEmpty());
+        assertTrue(deleted.isEmpty());
+        assertEquals(0, conditionalUpdates.getExhausted());
+    }
+
+    /**
+     * Test that concurrent increments of the calorie goal of one user through conditional updates lose none of
+     * the increments, the version counting every one of them
+     * return void
+     */
+
+    @Test
+    void testNoLostUpdatesUnderContention() throws Exception {
+        //Arrange
+        int threads = 8;
+        int incrementsPerThread = 25;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ContendedRepositories.class)
+                .profiles("contention-test")
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:contention-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                        "--calorietracker.update.max-attempts=1000",
+                        //== closing the context would close the default JCache manager the cached test contexts share ==
+                        "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false")) {
+            UserRepository userRepository = context.getBean(UserRepository.class);
+            ConditionalUpdates conditionalUpdates = context.getBean(ConditionalUpdates.class);
+            User.Contact contact = new User.Contact();
+            contact.setEmail("chris@test.com");
+            long id = userRepository.save(new User("chris", "password", 24, 70, 1.8, 2000, contact)).getId();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+
+            //Act
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        conditionalUpdates.apply("User", id, userRepository::findCurrentById,
+                                user -> user.setCalorieGoal(user.getCalorieGoal() + 1),
+                                userRepository::updateIfUnchanged);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            executor.shutdown();
+
+            //Assert
+            User user = userRepository.findCurrentById(id).orElseThrow();
+            assertEquals(2000 + threads * incrementsPerThread, user.getCalorieGoal());
+            assertEquals(threads * incrementsPerThread, user.getVersion());
+            assertEquals(0, conditionalUpdates.getExhausted());
+        }
+    }
+
+    // == nested classes ==
+
+    //== not a @SpringBootConfiguration, which @DataJpaTest would find, and behind a profile for the scans of org.coda.core.repository ==
+    @Configuration
+    @EnableAutoConfiguration
+    @Profile("contention-test")
+    @EntityScan(basePackages = {"org.coda.core.entities"})
+    @EnableJpaRepositories(basePackages = {"org.coda.core.repository"},
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = UserRepository.class))
+    @Import(ConditionalUpdates.class)
+    static class ContendedRepositories {
+    }
+}
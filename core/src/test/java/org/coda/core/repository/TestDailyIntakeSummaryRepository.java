@@ -0,0 +1,110 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.DailyIntakeSummary;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.User;
+import org.coda.core.projection.DailyIntakeTotals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for DailyIntakeSummaryRepository.
+ * Runs the MERGE upsert, and the raw aggregate of CalorieInTakeRepository it is rebuilt from, against an embedded H2.
+ */
+@DataJpaTest
+class TestDailyIntakeSummaryRepository {
+
+    @Autowired
+    private DailyIntakeSummaryRepository dailyIntakeSummaryRepository;
+
+    @Autowired
+    private CalorieInTakeRepository calorieInTakeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private User user;
+
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setName("chris");
+        user.setPassword("password");
+        user.setAge(24);
+        entityManager.persist(user);
+        today = LocalDate.now();
+    }
+
+    /**
+     * Test that applyDelta inserts the first row of a day and accumulates later deltas
+     */
+
+    @Test
+    void testApplyDelta_InsertsThenAccumulates() {
+        dailyIntakeSummaryRepository.applyDelta(user.getId(), today, 300, 10, 5, 40, 1);
+        dailyIntakeSummaryRepository.applyDelta(user.getId(), today, 200, 5, 5, 20, 1);
+        entityManager.clear();
+
+        Optional<DailyIntakeSummary> summary =
+                dailyIntakeSummaryRepository.findById(new DailyIntakeSummary.Key(user.getId(), today));
+
+        assertTrue(summary.isPresent());
+        assertEquals(500, summary.get().getCalories(), 0.001);
+        assertEquals(60, summary.get().getCarbohydrates(), 0.001);
+        assertEquals(2, summary.get().getEntryCount());
+    }
+
+    /**
+     * Test that a row brought back to zero entries is removed, and the other days are left alone
+     */
+
+    @Test
+    void testDeleteIfEmpty() {
+        dailyIntakeSummaryRepository.applyDelta(user.getId(), today, 300, 10, 5, 40, 1);
+        dailyIntakeSummaryRepository.applyDelta(user.getId(), today, -300, -10, -5, -40, -1);
+        dailyIntakeSummaryRepository.applyDelta(user.getId(), today.minusDays(1), 0, 0, 0, 0, 0);
+        dailyIntakeSummaryRepository.applyDelta(user.getId(), today.plusDays(1), 300, 10, 5, 40, 1);
+
+        assertEquals(0, dailyIntakeSummaryRepository.deleteIfEmpty(user.getId(), today.plusDays(1)));
+        assertEquals(1, dailyIntakeSummaryRepository.deleteIfEmpty(user.getId(), today));
+        assertEquals(2, dailyIntakeSummaryRepository.count());
+    }
+
+    /**
+     * Test that the raw aggregate sums food values per user and day
+     */
+
+    @Test
+    void testAggregateIntakeByUserAndDay() {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(10);
+        nutrition.setFat(5);
+        nutrition.setCarbohydrates(30);
+        Food food = new Food("Rice", "Boiled", nutrition, 250);
+        entityManager.persist(food);
+        entityManager.persist(new CalorieInTake(null, user, food));
+        entityManager.persist(new CalorieInTake(null, user, food));
+        entityManager.flush();
+
+        List<DailyIntakeTotals> totals = calorieInTakeRepository.aggregateIntakeByUserAndDay();
+
+        assertEquals(1, totals.size());
+        assertEquals(user.getId(), totals.get(0).userId());
+        assertEquals(today, totals.get(0).intakeDate());
+        assertEquals(500, totals.get(0).calories(), 0.001);
+        assertEquals(20, totals.get(0).protein(), 0.001);
+        assertEquals(2, totals.get(0).entryCount());
+    }
+}
@@ -0,0 +1,141 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the fetch plans of CalorieInTake and Meal.
+ * Each use case must run a fixed number of SQL statements however many rows it reads,
+ * including touching the associations it is meant to load.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class TestFetchPlans {
+
+    private static final int INTAKES = 20;
+
+    @Autowired
+    private CalorieInTakeRepository calorieInTakeRepository;
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    private User user;
+
+    private Meal meal;
+
+    private LocalDate day;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        day = LocalDate.of(2023, 6, 1);
+
+        user = new User();
+        user.setName("chris");
+        user.setPassword("password");
+        user.setAge(24);
+        entityManager.persist(user);
+
+        List<Food> foods = new ArrayList<>();
+        for (int i = 0; i < INTAKES; i++) {
+            Food food = new Food("food-" + i, "details", new Food.Nutrition(), 100 + i);
+            entityManager.persist(food);
+            foods.add(food);
+        }
+        meal = new Meal("Lunch", user, new ArrayList<>(foods));
+        entityManager.persist(meal);
+        for (int i = 0; i < INTAKES; i++) {
+            // a distinct meal per intake makes an N+1 visible
+            Meal single = new Meal("meal-" + i, user, new ArrayList<>(List.of(foods.get(i))));
+            entityManager.persist(single);
+            entityManager.persist(new CalorieInTake(single, user, foods.get(i), day.atTime(8, i)));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    /**
+     * Test that the history list loads meals and foods with the intakes in one statement
+     */
+
+    @Test
+    void testHistoryListIsOneStatement() {
+        List<CalorieInTake> history = calorieInTakeRepository.findAllCalorieIntakeByUser(user.getId());
+        double calories = 0;
+        for (CalorieInTake intake : history) {
+            calories += intake.getFood().getCalories() + intake.getMeal().getName().length();
+        }
+
+        assertEquals(INTAKES, history.size());
+        assertTrue(calories > 0);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Test that the dashboard loads user, meal and food with the intakes in one statement
+     */
+
+    @Test
+    void testDashboardIsOneStatement() {
+        List<CalorieInTake> dashboard = calorieInTakeRepository.findDashboardCalorieIntake(user.getId(),
+                day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+        for (CalorieInTake intake : dashboard) {
+            assertEquals("chris", intake.getUser().getName());
+            assertNotNull(intake.getMeal().getName());
+            assertNotNull(intake.getFood().getName());
+        }
+
+        assertEquals(INTAKES, dashboard.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Test that the meal detail loads user and foods with the meal in one statement
+     */
+
+    @Test
+    void testMealDetailIsOneStatement() {
+        Meal detail = mealRepository.findMealDetailById(meal.getId()).orElseThrow();
+
+        assertEquals("chris", detail.getUser().getName());
+        assertEquals(INTAKES, detail.getFoods().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Test that the associations are lazy by default: a plain range read is a single statement
+     * and does not pull in users, meals or foods
+     */
+
+    @Test
+    void testAssociationsAreLazyByDefault() {
+        List<CalorieInTake> intakes = calorieInTakeRepository.findAllCalorieIntakeByDateTimeRange(
+                LocalDateTime.of(2023, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 1, 0, 0));
+
+        assertEquals(INTAKES, intakes.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(INTAKES, statistics.getEntityLoadCount());
+    }
+}
@@ -0,0 +1,348 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import org.coda.core.analytics.IntakeColumnStore;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.DailyIntakeSummary;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.service.CalorieInTakeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for JournalCalorieInTakeRepository.
+ * Runs the queries of TestCalorieInTakeRepository against the journal, with meals, foods and users in H2,
+ * and the CalorieInTakeService on top of it.
+ */
+@DataJpaTest
+class TestJournalCalorieInTakeRepository {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private DailyIntakeSummaryRepository dailyIntakeSummaryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @TempDir
+    private Path directory;
+
+    private JournalCalorieInTakeRepository calorieInTakeRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        calorieInTakeRepository = new JournalCalorieInTakeRepository(entityManager, directory, 1 << 16, true, 0.5);
+        user = new User();
+        user.setName("chris");
+        user.setPassword("password");
+        user.setAge(24);
+        entityManager.persist(user);
+
+        calorieInTakeRepository.save(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 5, 31, 23, 59)));
+        calorieInTakeRepository.save(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 6, 1, 0, 0)));
+        calorieInTakeRepository.save(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 6, 30, 23, 59)));
+        calorieInTakeRepository.save(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 7, 1, 0, 0)));
+        calorieInTakeRepository.save(new CalorieInTake(null, user, null, LocalDateTime.of(2024, 6, 15, 12, 0)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        //== roll back first: the rollback appends to the journal ==
+        if (TestTransaction.isActive()) {
+            TestTransaction.end();
+        }
+        calorieInTakeRepository.close();
+    }
+
+    /**
+     * Test that the range includes its start and excludes its end, and the intakes come back with their user
+     */
+
+    @Test
+    void testFindAllCalorieIntakeByUserAndDateTimeRange() {
+        List<CalorieInTake> june = calorieInTakeRepository.findAllCalorieIntakeByUserAndDateTimeRange(user.getId(),
+                LocalDateTime.of(2023, 6, 1, 0, 0), LocalDateTime.of(2023, 7, 1, 0, 0));
+
+        assertEquals(2, june.size());
+        assertEquals(LocalDateTime.of(2023, 6, 1, 0, 0), june.get(0).getDateTime());
+        assertEquals(LocalDateTime.of(2023, 6, 30, 23, 59), june.get(1).getDateTime());
+        assertEquals(user, june.get(0).getUser());
+        assertEquals(june.get(0), calorieInTakeRepository.findById(june.get(0).getId()).orElseThrow());
+    }
+
+    /**
+     * Test that walking the keyset pages returns every intake once, in (dateTime, id) order
+     */
+
+    @Test
+    void testKeysetPagination() {
+        calorieInTakeRepository.save(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 6, 1, 0, 0)));
+
+        List<CalorieInTake> walked = new ArrayList<>();
+        List<CalorieInTake> page = calorieInTakeRepository.findFirstCalorieIntakePage(Limit.of(2));
+        while (!page.isEmpty()) {
+            walked.addAll(page);
+            CalorieInTake last = page.get(page.size() - 1);
+            page = calorieInTakeRepository.findCalorieIntakePageAfter(last.getDateTime(), last.getId(), Limit.of(2));
+        }
+
+        assertEquals(6, walked.size());
+        assertEquals(List.of(1L, 2L, 6L, 3L, 4L, 5L), walked.stream().map(CalorieInTake::getId).toList());
+        try (Stream<CalorieInTake> stream = calorieInTakeRepository.streamAllCalorieIntake()) {
+            assertEquals(6, stream.count());
+        }
+    }
+
+    /**
+     * Test that the sums count the food, or the meal total when no food is attached, like the database queries
+     */
+
+    @Test
+    void testSums() {
+        persistApplesAndLunch();
+        LocalDateTime from = LocalDateTime.of(2023, 5, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 8, 1, 0, 0);
+
+        IntakeRangeStats june = calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(user.getId(),
+                LocalDateTime.of(2023, 6, 1, 0, 0), LocalDateTime.of(2023, 7, 1, 0, 0)).orElseThrow();
+        List<IntakePeriodTotals> days = calorieInTakeRepository.sumIntakeByUserAndDay(user.getId(), from, to);
+        List<IntakePeriodTotals> months = calorieInTakeRepository.sumIntakeByUserAndMonth(user.getId(), from, to);
+
+        assertEquals(5, june.entryCount());
+        assertEquals(3, june.days());
+        assertEquals(52 + 52 + 600, june.calories(), 0.001);
+        assertEquals(3 + 3 + 7, june.protein(), 0.001);
+        assertTrue(calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(user.getId(),
+                LocalDateTime.of(2022, 1, 1, 0, 0), LocalDateTime.of(2022, 2, 1, 0, 0)).isEmpty());
+        assertEquals(5, days.size());
+        assertEquals(LocalDate.of(2023, 6, 10), days.get(2).periodStart());
+        assertEquals(704, days.get(2).calories(), 0.001);
+        assertEquals(List.of(LocalDate.of(2023, 5, 1), LocalDate.of(2023, 6, 1), LocalDate.of(2023, 7, 1)),
+                months.stream().map(IntakePeriodTotals::periodStart).toList());
+        assertEquals(3, months.get(1).days());
+        assertEquals(1, calorieInTakeRepository.sumIntakeByUser(from, to).size());
+    }
+
+    /**
+     * Test that the export rows carry the names and fall back to the meal totals
+     */
+
+    @Test
+    void testStreamExportRows() {
+        persistApplesAndLunch();
+
+        try (Stream<IntakeExportRow> rows = calorieInTakeRepository.streamExportRowsAfter(user.getId(),
+                LocalDateTime.of(2023, 6, 10, 10, 0), 7)) {
+            List<IntakeExportRow> result = rows.toList();
+
+            assertEquals(4, result.size());
+            assertEquals("lunch", result.get(0).meal());
+            assertNull(result.get(0).food());
+            assertEquals(600, result.get(0).calories(), 0.001);
+        }
+    }
+
+    /**
+     * Test that a rolled back transaction takes its writes out of the journal
+     */
+
+    @Test
+    void testRollbackUndoesWrites() {
+        CalorieInTake first = calorieInTakeRepository.findById(1L).orElseThrow();
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        requiresNew.executeWithoutResult(status -> {
+            calorieInTakeRepository.save(new CalorieInTake(null, user, null, LocalDateTime.of(2023, 8, 1, 0, 0)));
+            calorieInTakeRepository.save(version(first, LocalDateTime.of(2023, 9, 1, 0, 0)));
+            calorieInTakeRepository.deleteById(2L);
+            assertEquals(5, calorieInTakeRepository.count());
+            status.setRollbackOnly();
+        });
+
+        assertEquals(5, calorieInTakeRepository.count());
+        assertFalse(calorieInTakeRepository.existsById(6L));
+        assertEquals(LocalDateTime.of(2023, 5, 31, 23, 59),
+                calorieInTakeRepository.findById(1L).orElseThrow().getDateTime());
+        assertTrue(calorieInTakeRepository.existsById(2L));
+    }
+
+    /**
+     * Test that pages follow the (dateTime, id) index, and other orders sort the intakes
+     */
+
+    @Test
+    void testFindAllSortedAndPaged() {
+        Page<CalorieInTake> page = calorieInTakeRepository.findAll(PageRequest.of(1, 2));
+        List<CalorieInTake> latestFirst = calorieInTakeRepository.findAll(Sort.by(Sort.Direction.DESC, "dateTime"));
+        Page<CalorieInTake> latest = calorieInTakeRepository.findAll(
+                PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "dateTime")));
+
+        assertEquals(List.of(3L, 4L), page.map(CalorieInTake::getId).getContent());
+        assertEquals(5, page.getTotalElements());
+        assertEquals(3, page.getTotalPages());
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), latestFirst.stream().map(CalorieInTake::getId).toList());
+        assertEquals(List.of(5L, 4L), latest.map(CalorieInTake::getId).getContent());
+        assertEquals(5, calorieInTakeRepository.findAll(Pageable.unpaged()).getNumberOfElements());
+        assertEquals(1L, calorieInTakeRepository.findAll(Sort.by("user.name", "dateTime")).get(0).getId());
+    }
+
+    /**
+     * Test the CalorieInTakeService on the journal: saves, updates and deletes keep the daily rollup in step,
+     * and the totals are summed from the journal
+     */
+
+    @Test
+    void testCalorieInTakeService() {
+        CalorieInTakeService service = service();
+        Food apple = new Food("apple", null, new Food.Nutrition(), 52);
+        entityManager.persist(apple);
+        LocalDate day = LocalDate.of(2023, 6, 12);
+
+        CalorieInTake intake = new CalorieInTake(null, user, apple, day.atTime(8, 0));
+        service.saveCalorieInTake(intake);
+        service.saveAllCalorieInTake(List.of(new CalorieInTake(null, user, apple, day.atTime(10, 0)),
+                new CalorieInTake(null, user, apple, day.plusDays(1).atTime(10, 0))));
+        service.updateCalorieInTake(version(intake, day.plusDays(1).atTime(8, 0)));
+        service.deleteCalorieInTake(1L);
+
+        assertEquals(52, service.getDailySummary(user.getId(), day).map(DailyIntakeSummary::getCalories).orElse(0.0),
+                0.001);
+        assertEquals(104, service.getDailySummary(user.getId(), day.plusDays(1))
+                .map(DailyIntakeSummary::getCalories).orElse(0.0), 0.001);
+        assertEquals(3, service.getIntakeStats(user.getId(), day.atStartOfDay(), day.plusDays(2).atStartOfDay())
+                .entryCount());
+        assertEquals(156, service.getIntakeTotals(user.getId(), day, day.plusDays(2), ChronoUnit.WEEKS)
+                .get(0).calories(), 0.001);
+        assertEquals(day.plusDays(1).atTime(8, 0), service.getCalorieInTakeById(intake.getId()).getDateTime());
+        assertNull(service.getCalorieInTakeById(1L));
+
+        service.deleteAllCalorieInTake();
+
+        assertTrue(service.getAllCalorieInTake().isEmpty());
+    }
+
+    /**
+     * Test that the daily rollup is rebuilt from the journal, not from the empty calorie_intake table,
+     * and is consistent with it afterwards
+     */
+
+    @Test
+    void testRebuildDailySummaries() {
+        CalorieInTakeService service = service();
+
+        int rebuilt = service.rebuildDailySummaries();
+
+        assertEquals(5, rebuilt);
+        assertEquals(5, dailyIntakeSummaryRepository.count());
+        assertEquals(1, service.getDailySummary(user.getId(), LocalDate.of(2023, 6, 30))
+                .map(DailyIntakeSummary::getEntryCount).orElse(0L));
+        assertTrue(service.findInconsistentDailySummaries().isEmpty());
+    }
+
+    /**
+     * Test that a food changed in place carries to the rollup of every day it was eaten on, on its own or in a meal
+     */
+
+    @Test
+    void testApplyFoodChange() {
+        persistApplesAndLunch();
+        CalorieInTakeService service = service();
+        service.rebuildDailySummaries();
+        Food rice = entityManager.createQuery("SELECT f FROM food f WHERE f.name = 'rice'", Food.class)
+                .getSingleResult();
+        LocalDate day = LocalDate.of(2023, 6, 12);
+        service.saveCalorieInTake(new CalorieInTake(null, user, rice, day.atTime(8, 0)));
+
+        int updated = service.applyFoodChange(rice.getId(), () -> {
+            int changed = entityManager.createNativeQuery("UPDATE food SET calories = 700 WHERE id = :id")
+                    .setParameter("id", rice.getId()).executeUpdate();
+            mealRepository.refreshTotalsForFood(rice.getId());
+            return changed;
+        });
+
+        assertEquals(1, updated);
+        assertEquals(700, service.getDailySummary(user.getId(), day).map(DailyIntakeSummary::getCalories).orElse(0.0),
+                0.001);
+        assertEquals(804, service.getDailySummary(user.getId(), LocalDate.of(2023, 6, 10))
+                .map(DailyIntakeSummary::getCalories).orElse(0.0), 0.001);
+        assertTrue(service.findInconsistentDailySummaries().isEmpty());
+    }
+
+    //== helpers ==
+
+    private CalorieInTakeService service() {
+        PersistenceContextSupport persistenceContextSupport = mock(PersistenceContextSupport.class);
+        when(persistenceContextSupport.chunks(anyList())).thenAnswer(invocation -> List.of(invocation.<List<?>>getArgument(0)));
+        doAnswer(invocation -> {
+            entityManager.flush();
+            entityManager.clear();
+            return null;
+        }).when(persistenceContextSupport).flushAndClear();
+        return new CalorieInTakeService(calorieInTakeRepository, dailyIntakeSummaryRepository,
+                persistenceContextSupport, new IntakeColumnStore(false));
+    }
+
+    private static CalorieInTake version(CalorieInTake intake, LocalDateTime dateTime) {
+        CalorieInTake version = new CalorieInTake(intake.getUuid(), intake.getMeal(), intake.getUser(),
+                intake.getFood(), dateTime);
+        version.setId(intake.getId());
+        return version;
+    }
+
+    private void persistApplesAndLunch() {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(3);
+        Food apple = new Food("apple", null, nutrition, 52);
+        entityManager.persist(apple);
+        Food.Nutrition riceNutrition = new Food.Nutrition();
+        riceNutrition.setProtein(7);
+        Food rice = new Food("rice", null, riceNutrition, 600);
+        entityManager.persist(rice);
+        Meal lunch = new Meal("lunch", null, new ArrayList<>(List.of(rice)));
+        entityManager.persist(lunch);
+        LocalDateTime day = LocalDateTime.of(2023, 6, 10, 8, 0);
+        calorieInTakeRepository.save(new CalorieInTake(null, user, apple, day));
+        calorieInTakeRepository.save(new CalorieInTake(null, user, apple, day.plusHours(2)));
+        calorieInTakeRepository.save(new CalorieInTake(lunch, user, null, day.plusHours(4)));
+    }
+}
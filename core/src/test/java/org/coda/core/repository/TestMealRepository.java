@@ -0,0 +1,150 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for MealRepository.
+ * Checks that meal totals are persisted automatically and that the
+ * threshold queries run as index range scans on total_calories.
+ */
+@DataJpaTest
+class TestMealRepository {
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Food rice;
+
+    @BeforeEach
+    void setUp() {
+        rice = food("Rice", 200, 4);
+        Food chicken = food("Chicken", 165, 30);
+        Food salad = food("Salad", 50, 1);
+        entityManager.persist(rice);
+        entityManager.persist(chicken);
+        entityManager.persist(salad);
+
+        mealRepository.save(new Meal("Lunch", null, new ArrayList<>(List.of(rice, chicken))));
+        mealRepository.save(new Meal("Snack", null, new ArrayList<>(List.of(salad))));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Test that the totals are computed on persist without calling setTotalCalories
+     */
+
+    @Test
+    void testTotalsPersistedOnSave() {
+        List<Meal> meals = mealRepository.findAllMealsWithHighCalories(100);
+
+        assertEquals(1, meals.size());
+        assertEquals(365.0, meals.get(0).getTotalCalories(), 0.001);
+        assertEquals(34.0, meals.get(0).getTotalProtein(), 0.001);
+    }
+
+    /**
+     * Test that entities stay equal to the instances that were saved once they are reloaded,
+     * including through an uninitialized proxy
+     */
+
+    @Test
+    void testIdentitySurvivesReload() {
+        int hashCode = rice.hashCode();
+        Food reloaded = entityManager.find(Food.class, rice.getId());
+        entityManager.clear();
+        Food proxy = entityManager.getReference(Food.class, rice.getId());
+
+        assertNotSame(rice, reloaded);
+        assertEquals(rice, reloaded);
+        assertEquals(hashCode, reloaded.hashCode());
+        assertEquals(reloaded, proxy);
+        assertTrue(new HashSet<>(List.of(rice)).contains(proxy));
+    }
+
+    /**
+     * Test the low threshold and range queries on the stored totals
+     */
+
+    @Test
+    void testLowAndRangeQueries() {
+        assertEquals("Snack", mealRepository.findAllMealsWithLowCalories(100).get(0).getName());
+        assertEquals(2, mealRepository.findAllMealsWithCaloriesBetween(50, 366).size());
+        assertEquals(1, mealRepository.findAllMealsWithCaloriesBetween(51, 366).size());
+    }
+
+    /**
+     * Test that changing a food updates the stored totals of the meals that contain it
+     */
+
+    @Test
+    void testRefreshTotalsForFood() {
+        entityManager.createQuery("UPDATE food f SET f.calories = 300 WHERE f.id = :id")
+                .setParameter("id", rice.getId())
+                .executeUpdate();
+
+        assertEquals(1, mealRepository.refreshTotalsForFood(rice.getId()));
+        entityManager.clear();
+
+        assertEquals(465.0, mealRepository.findAllMealsWithHighCalories(100).get(0).getTotalCalories(), 0.001);
+    }
+
+    /**
+     * Test that the conditional update writes the name, totals and foods of a meal at the version it was read at,
+     * and leaves a meal updated since alone
+     */
+
+    @Test
+    void testUpdateIfUnchanged() {
+        Meal lunch = mealRepository.findAllMealsWithHighCalories(100).get(0);
+        Meal detached = mealRepository.findMealDetailById(lunch.getId()).orElseThrow();
+        entityManager.clear();
+        detached.setName("Light lunch");
+        detached.setFoods(new ArrayList<>(List.of(rice)));
+
+        assertEquals(1, mealRepository.updateIfUnchanged(detached));
+        assertEquals(0, mealRepository.updateIfUnchanged(detached));
+        entityManager.clear();
+
+        Meal stored = mealRepository.findMealDetailById(lunch.getId()).orElseThrow();
+        assertEquals("Light lunch", stored.getName());
+        assertEquals(200.0, stored.getTotalCalories(), 0.001);
+        assertEquals(List.of(rice), stored.getFoods());
+        assertEquals(detached.getVersion() + 1, stored.getVersion());
+    }
+
+    /**
+     * Test that the H2 plan of the threshold filter uses the total_calories index
+     */
+
+    @Test
+    void testThresholdUsesIndex() {
+        String plan = (String) entityManager.createNativeQuery(
+                        "EXPLAIN SELECT * FROM meal m WHERE m.total_calories > 100")
+                .getSingleResult();
+
+        assertTrue(plan.toUpperCase().contains("IDX_MEAL_TOTAL_CALORIES"), plan);
+        assertFalse(plan.contains("tableScan"), plan);
+    }
+
+    private static Food food(String name, double calories, float protein) {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(protein);
+        return new Food(name, name, nutrition, calories);
+    }
+}
@@ -0,0 +1,39 @@
+package org.coda.core.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for PersistenceContextSupport.
+ * Checks how bulk saves are split into batches.
+ */
+class TestPersistenceContextSupport {
+
+    /**
+     * Test that the last chunk holds the remainder
+     */
+
+    @Test
+    void testChunks() {
+        PersistenceContextSupport support = new PersistenceContextSupport(1000, 2);
+
+        List<List<Integer>> chunks = support.chunks(List.of(1, 2, 3, 4, 5));
+
+        assertEquals(List.of(List.of(1, 2), List.of(3, 4), List.of(5)), chunks);
+    }
+
+    /**
+     * Test that a batch size of 0 disables chunking
+     */
+
+    @Test
+    void testChunksDisabled() {
+        PersistenceContextSupport support = new PersistenceContextSupport(1000, 0);
+
+        assertEquals(List.of(List.of(1, 2, 3)), support.chunks(List.of(1, 2, 3)));
+        assertEquals(List.of(), support.chunks(List.of()));
+    }
+}
@@ -0,0 +1,119 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.metrics.RepositoryStatistics;
+import org.coda.core.metrics.RepositoryStatisticsAspect;
+import org.coda.core.metrics.SqlStatisticsConfig;
+import org.coda.core.projection.RepositoryMethodStats;
+import org.coda.core.projection.SlowQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the attribution of Hibernate work to repository methods.
+ * The slow threshold is 0 so every call is also ranked as a slow query.
+ */
+@DataJpaTest(properties = {"calorietracker.sql-stats.enabled=true",
+        "calorietracker.sql-stats.slow-threshold-millis=0", "calorietracker.sql-stats.top-size=2"})
+@Import({RepositoryStatistics.class, RepositoryStatisticsAspect.class, SqlStatisticsConfig.class})
+@ImportAutoConfiguration(AopAutoConfiguration.class)
+class TestRepositoryStatistics {
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @Autowired
+    private CalorieInTakeRepository calorieInTakeRepository;
+
+    @Autowired
+    private RepositoryStatistics repositoryStatistics;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        Food rice = new Food("Rice", "Boiled", new Food.Nutrition(), 200);
+        entityManager.persist(rice);
+        mealRepository.saveAll(List.of(new Meal("Lunch", null, new ArrayList<>(List.of(rice))),
+                new Meal("Dinner", null, new ArrayList<>(List.of(rice))),
+                new Meal("Snack", null, new ArrayList<>())));
+        calorieInTakeRepository.save(new CalorieInTake(null, null, rice, LocalDate.of(2024, 1, 1).atTime(12, 0)));
+        entityManager.flush();
+        entityManager.clear();
+        repositoryStatistics.reset();
+    }
+
+    /**
+     * Test that an inherited method is attributed its statement, rows and entity loads
+     */
+
+    @Test
+    void testInheritedFindAllIsAttributed() {
+        mealRepository.findAll();
+
+        RepositoryMethodStats stats = stats("MealRepository.findAll");
+        assertEquals(1, stats.calls());
+        assertEquals(1, stats.statements());
+        assertEquals(3, stats.rows());
+        assertEquals(3, stats.entityLoads());
+        assertTrue(stats.sql().get(0).startsWith("select"));
+    }
+
+    /**
+     * Test that a default method counts the query it delegates to, not as a second method
+     */
+
+    @Test
+    void testDefaultMethodCountsItsDelegate() {
+        calorieInTakeRepository.findAllCalorieIntakeByDate(LocalDate.of(2024, 1, 1));
+
+        RepositoryMethodStats stats = stats("CalorieInTakeRepository.findAllCalorieIntakeByDate");
+        assertEquals(1, stats.rows());
+        assertTrue(stats.sql().get(0).contains("date_time"));
+        assertTrue(repositoryStatistics.getStats().stream()
+                .noneMatch(other -> other.method().endsWith("findAllCalorieIntakeByDateTimeRange")));
+    }
+
+    /**
+     * Test that the slowest calls keep their parameters and SQL and are capped at top-size
+     */
+
+    @Test
+    void testSlowestCallsAreRanked() {
+        mealRepository.findAllMealsWithHighCalories(100);
+
+        SlowQuery highCalories = repositoryStatistics.getSlowestQueries().get(0);
+        assertEquals("MealRepository.findAllMealsWithHighCalories", highCalories.method());
+        assertEquals("[100]", highCalories.parameters());
+        assertTrue(highCalories.sql().get(0).contains("total_calories"));
+
+        mealRepository.findAllMealsWithLowCalories(100);
+        mealRepository.findAll();
+
+        List<SlowQuery> slowest = repositoryStatistics.getSlowestQueries();
+        assertEquals(2, slowest.size());
+        assertTrue(slowest.get(0).millis() >= slowest.get(1).millis());
+    }
+
+    private RepositoryMethodStats stats(String method) {
+        return repositoryStatistics.getStats().stream()
+                .filter(stats -> stats.method().equals(method))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No stats for " + method + ": " + repositoryStatistics.getStats()));
+    }
+}
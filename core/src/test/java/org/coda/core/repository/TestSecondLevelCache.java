@@ -0,0 +1,103 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.coda.config.SecondLevelCacheConfig;
+import org.coda.core.entities.Food;
+import org.coda.core.projection.CacheStatistics;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the opt-in second-level cache of the food catalog.
+ * Repeated lookups by id must be served from the cache without touching the database.
+ * Runs without a test transaction: entries written in an uncommitted transaction stay locked in the cache.
+ */
+@DataJpaTest(properties = "calorietracker.cache.enabled=true")
+@Import({SecondLevelCacheConfig.class, SecondLevelCacheSupport.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TestSecondLevelCache {
+
+    @Autowired
+    private FoodRepository foodRepository;
+
+    @Autowired
+    private SecondLevelCacheSupport secondLevelCacheSupport;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Food food;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        food = foodRepository.save(new Food("apple", "details", new Food.Nutrition(), 52));
+        secondLevelCacheSupport.evictAllFoods();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        foodRepository.deleteAll();
+    }
+
+    @Test
+    void testFindByIdIsServedFromCache() {
+        assertTrue(secondLevelCacheSupport.isEnabled());
+        foodRepository.findById(food.getId()).orElseThrow();
+
+        Food cached = foodRepository.findById(food.getId()).orElseThrow();
+
+        assertEquals("apple", cached.getName());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        CacheStatistics foodStatistics = secondLevelCacheSupport.getFoodStatistics();
+        assertEquals(1, foodStatistics.hits());
+        assertEquals(1, foodStatistics.misses());
+        assertEquals(1, foodStatistics.puts());
+    }
+
+    @Test
+    void testEvictFoodForcesReload() {
+        foodRepository.findById(food.getId()).orElseThrow();
+        long evictions = secondLevelCacheSupport.getFoodStatistics().evictions();
+
+        secondLevelCacheSupport.evictFood(food.getId());
+        foodRepository.findById(food.getId()).orElseThrow();
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, secondLevelCacheSupport.getFoodStatistics().hits());
+        assertEquals(evictions + 1, secondLevelCacheSupport.getFoodStatistics().evictions());
+    }
+
+    @Test
+    void testConditionalUpdateKeepsOtherFoodsCached() {
+        Food pear = foodRepository.save(new Food("pear", "details", new Food.Nutrition(), 57));
+        foodRepository.findById(food.getId()).orElseThrow();
+        foodRepository.findById(pear.getId()).orElseThrow();
+        Food changed = foodRepository.findCurrentById(food.getId()).orElseThrow();
+        changed.setCalories(60);
+
+        assertEquals(1, foodRepository.updateIfUnchanged(changed));
+        secondLevelCacheSupport.evictFood(food.getId());
+        statistics.clear();
+        Food reloaded = foodRepository.findById(food.getId()).orElseThrow();
+        foodRepository.findById(pear.getId()).orElseThrow();
+
+        assertEquals(60, reloaded.getCalories(), 0.001);
+        assertEquals(1, reloaded.getVersion());
+        assertEquals(1, statistics.getSecondLevelCacheHitCount());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
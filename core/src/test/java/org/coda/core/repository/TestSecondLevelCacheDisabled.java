@@ -0,0 +1,48 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.coda.core.entities.Food;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the second-level cache with the default properties:
+ * hibernate-jcache is on the classpath, yet nothing may be cached while calorietracker.cache.enabled is false.
+ * Runs without a test transaction, so the food is committed as it would be by the services.
+ */
+@DataJpaTest
+@Import(SecondLevelCacheSupport.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TestSecondLevelCacheDisabled {
+
+    @Autowired
+    private FoodRepository foodRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private SecondLevelCacheSupport secondLevelCacheSupport;
+
+    @AfterEach
+    void tearDown() {
+        foodRepository.deleteAll();
+    }
+
+    @Test
+    void testNothingIsCachedByDefault() {
+        Food food = foodRepository.save(new Food("apple", "details", new Food.Nutrition(), 52));
+
+        foodRepository.findById(food.getId()).orElseThrow();
+
+        assertFalse(secondLevelCacheSupport.isEnabled());
+        assertFalse(entityManagerFactory.getCache().contains(Food.class, food.getId()));
+    }
+}
@@ -0,0 +1,59 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.coda.core.entities.Food;
+import org.hibernate.jpa.HibernateHints;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for StreamingQueriesImpl.
+ * Checks that the configured fetch size reaches the query of every stream.
+ */
+class TestStreamingQueries {
+
+    /**
+     * Test that the fetch size, the read-only hint and the parameters are set on the query
+     */
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFetchSizeIsApplied() {
+        EntityManager entityManager = mock(EntityManager.class);
+        TypedQuery<Food> query = mock(TypedQuery.class);
+        when(entityManager.createQuery(anyString(), eq(Food.class))).thenReturn(query);
+        when(query.getResultStream()).thenReturn(Stream.empty());
+
+        new StreamingQueriesImpl(entityManager, 64)
+                .streamQuery("SELECT f FROM food f WHERE f.id > :id", Food.class, true, Map.of("id", 1L));
+
+        verify(query).setHint(HibernateHints.HINT_FETCH_SIZE, 64);
+        verify(query).setHint(HibernateHints.HINT_READ_ONLY, true);
+        verify(query).setParameter("id", 1L);
+    }
+
+    /**
+     * Test that a fetch size of 0 leaves it to the driver
+     */
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFetchSizeDisabled() {
+        EntityManager entityManager = mock(EntityManager.class);
+        TypedQuery<Food> query = mock(TypedQuery.class);
+        when(entityManager.createQuery(anyString(), eq(Food.class))).thenReturn(query);
+        when(query.getResultStream()).thenReturn(Stream.empty());
+
+        new StreamingQueriesImpl(entityManager, 0).streamQuery("SELECT f FROM food f", Food.class, false, Map.of());
+
+        verify(query, never()).setHint(eq(HibernateHints.HINT_FETCH_SIZE), any());
+        verify(query, never()).setHint(eq(HibernateHints.HINT_READ_ONLY), any());
+    }
+}
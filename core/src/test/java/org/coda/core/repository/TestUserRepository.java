@@ -0,0 +1,134 @@
+package org.coda.core.repository;
+
+import jakarta.persistence.EntityManager;
+import org.coda.core.entities.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for UserRepository.
+ * Runs the email lookups and the unique email constraint against an embedded H2.
+ */
+@DataJpaTest
+class TestUserRepository {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DailyIntakeSummaryRepository dailyIntakeSummaryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private User chris;
+
+    @BeforeEach
+    void setUp() {
+        chris = userRepository.saveAndFlush(user("chris", "chris@test.com"));
+    }
+
+    /**
+     * Test that a user is found by email and an unknown email finds nothing
+     */
+
+    @Test
+    void testFindUserByEmail() {
+        assertEquals(chris.getId(), userRepository.findUserByEmail("chris@test.com").orElseThrow().getId());
+        assertTrue(userRepository.findUserByEmail("nobody@test.com").isEmpty());
+    }
+
+    /**
+     * Test that the unique email constraint rejects a second user with the same email
+     */
+
+    @Test
+    void testDuplicateEmailIsRejected() {
+        assertThrows(DataIntegrityViolationException.class,
+                () -> userRepository.saveAndFlush(user("other", "chris@test.com")));
+    }
+
+    /**
+     * Test that every registered email is streamed
+     */
+
+    @Test
+    void testStreamAllEmails() {
+        userRepository.saveAndFlush(user("anna", "anna@test.com"));
+
+        try (Stream<String> emails = userRepository.streamAllEmails()) {
+            assertEquals(List.of("anna@test.com", "chris@test.com"), emails.sorted().toList());
+        }
+    }
+
+    /**
+     * Test that only users whose last login is older than the cut-off are deleted
+     */
+
+    @Test
+    void testDeleteInactiveUsers() {
+        User anna = userRepository.saveAndFlush(user("anna", "anna@test.com"));
+        LocalDateTime now = LocalDateTime.now();
+        userRepository.updateUserLastLogin(chris.getId(), now.minusMonths(7));
+        userRepository.updateUserLastLogin(anna.getId(), now);
+        entityManager.clear();
+
+        assertEquals(1, userRepository.deleteInactiveUsers(now.minusMonths(6)));
+        assertTrue(userRepository.findById(chris.getId()).isEmpty());
+        assertTrue(userRepository.findById(anna.getId()).isPresent());
+    }
+
+    /**
+     * Test that the conditional update applies to the version the user was read at, increments it,
+     * and matches nothing once the user is at a later version
+     */
+
+    @Test
+    void testUpdateIfUnchanged() {
+        entityManager.clear();
+        chris.setCalorieGoal(2200);
+
+        assertEquals(1, userRepository.updateIfUnchanged(chris));
+        assertEquals(0, userRepository.updateIfUnchanged(chris));
+        entityManager.clear();
+
+        User stored = userRepository.findCurrentById(chris.getId()).orElseThrow();
+        assertEquals(2200, stored.getCalorieGoal());
+        assertEquals(chris.getVersion() + 1, stored.getVersion());
+    }
+
+    /**
+     * Test that the consumption queries average the daily summaries of each user
+     */
+
+    @Test
+    void testCalorieConsumptionQueries() {
+        User anna = userRepository.saveAndFlush(user("anna", "anna@test.com"));
+        LocalDate today = LocalDate.now();
+        dailyIntakeSummaryRepository.applyDelta(chris.getId(), today, 2500, 0, 0, 0, 1);
+        dailyIntakeSummaryRepository.applyDelta(chris.getId(), today.minusDays(1), 1900, 0, 0, 0, 1);
+        dailyIntakeSummaryRepository.applyDelta(anna.getId(), today, 1500, 0, 0, 0, 1);
+
+        assertEquals(List.of(chris.getId()),
+                userRepository.getUsersWithHighCalorieConsumption().stream().map(User::getId).toList());
+        assertEquals(List.of(anna.getId()),
+                userRepository.getUsersWithLowCalorieConsumption().stream().map(User::getId).toList());
+    }
+
+    private static User user(String name, String email) {
+        User.Contact contact = new User.Contact();
+        contact.setEmail(email);
+        User user = new User(name, "password", 24, 70, 1.8, 2000, contact);
+        return user;
+    }
+}
@@ -0,0 +1,400 @@
+package org.coda.core.repository.memory;
+
+import org.coda.core.Main;
+import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.DailyIntakeSummary;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.Meal;
+import org.coda.core.entities.User;
+import org.coda.core.projection.IntakeExportRow;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.repository.CalorieInTakeRepository;
+import org.coda.core.repository.UserRepository;
+import org.coda.core.service.CalorieInTakeService;
+import org.coda.core.service.FoodService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the repositories of the memory profile: their secondary indexes, the sums computed
+ * from them, the snapshot file and a context started with the memory profile.
+ */
+class TestInMemoryRepositories {
+
+    private static final LocalDateTime MORNING = LocalDateTime.of(2023, 6, 10, 8, 0);
+
+    @TempDir
+    private Path directory;
+
+    private InMemoryFoodRepository foodRepository;
+
+    private InMemoryMealRepository mealRepository;
+
+    private InMemoryCalorieInTakeRepository calorieInTakeRepository;
+
+    private InMemoryDailyIntakeSummaryRepository dailyIntakeSummaryRepository;
+
+    private InMemoryUserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        foodRepository = new InMemoryFoodRepository();
+        mealRepository = new InMemoryMealRepository(foodRepository);
+        calorieInTakeRepository = new InMemoryCalorieInTakeRepository();
+        dailyIntakeSummaryRepository = new InMemoryDailyIntakeSummaryRepository();
+        userRepository = new InMemoryUserRepository(dailyIntakeSummaryRepository);
+    }
+
+    /**
+     * Test that the calorie indexes of foods and meals answer the threshold and range queries in calorie order,
+     * and follow an update of a food to the meals that contain it
+     * return void
+     */
+
+    @Test
+    void testCalorieIndexesFollowUpdates() {
+        //Arrange
+        Food apple = foodRepository.save(food("apple", 95));
+        Food pizza = foodRepository.save(food("pizza", 800));
+        Meal light = mealRepository.save(new Meal("light", null, List.of(apple)));
+        Meal heavy = mealRepository.save(new Meal("heavy", null, List.of(apple, pizza)));
+
+        //Act
+        Food lighterPizza = food("pizza", 300);
+        lighterPizza.setId(pizza.getId());
+        foodRepository.save(lighterPizza);
+        int refreshed = mealRepository.refreshTotalsForFood(pizza.getId());
+
+        //Assert
+        assertEquals(List.of(1L, 2L), List.of(apple.getId(), pizza.getId()));
+        assertEquals(List.of(lighterPizza), foodRepository.findAllFoodsWithHighCalories(200));
+        assertEquals(1, refreshed);
+        assertEquals(395, heavy.getTotalCalories());
+        assertEquals(List.of(heavy), mealRepository.findAllMealsWithHighCalories(200));
+        assertEquals(List.of(light, heavy), mealRepository.findAllMealsWithLowCalories(400));
+        assertEquals(List.of(light), mealRepository.findAllMealsWithCaloriesBetween(95, 395));
+        assertEquals(List.of(heavy), mealRepository.findByIdGreaterThanOrderByIdAsc(light.getId(), Limit.of(5)));
+
+        mealRepository.delete(heavy);
+        assertTrue(mealRepository.findAllMealsWithHighCalories(200).isEmpty());
+    }
+
+    /**
+     * Test that a conditional update applies a change made to a copy of the stored food only at the version the
+     * copy was read at, and that the calorie index and the meals containing the food follow it
+     * return void
+     */
+
+    @Test
+    void testConditionalUpdates() {
+        //Arrange
+        Food pizza = foodRepository.save(food("pizza", 800));
+        Meal dinner = mealRepository.save(new Meal("dinner", null, List.of(pizza)));
+        Food first = foodRepository.findCurrentById(pizza.getId()).orElseThrow();
+        Food second = foodRepository.findCurrentById(pizza.getId()).orElseThrow();
+
+        //Act
+        first.setCalories(300);
+        int applied = foodRepository.updateIfUnchanged(first);
+        second.setCalories(500);
+        int stale = foodRepository.updateIfUnchanged(second);
+        mealRepository.refreshTotalsForFood(pizza.getId());
+
+        //Assert
+        assertNotSame(pizza, first);
+        assertEquals(List.of(1, 0), List.of(applied, stale));
+        assertEquals(300, pizza.getCalories());
+        assertEquals(1, pizza.getVersion());
+        assertTrue(foodRepository.findAllFoodsWithHighCalories(400).isEmpty());
+        assertEquals(300, dinner.getTotalCalories());
+        assertEquals(1, dinner.getVersion());
+    }
+
+    /**
+     * Test that a conditional update of a meal writes the name and the foods of a copy only at the version the copy
+     * was read at, and that the meal calorie index follows it
+     * return void
+     */
+
+    @Test
+    void testConditionalMealUpdates() {
+        //Arrange
+        Food apple = foodRepository.save(food("apple", 95));
+        Food pizza = foodRepository.save(food("pizza", 800));
+        Meal dinner = mealRepository.save(new Meal("dinner", null, List.of(pizza)));
+        Meal first = mealRepository.findCurrentById(dinner.getId()).orElseThrow();
+        Meal second = mealRepository.findCurrentById(dinner.getId()).orElseThrow();
+
+        //Act
+        first.setName("light dinner");
+        first.setFoods(List.of(apple));
+        int applied = mealRepository.updateIfUnchanged(first);
+        second.setName("big dinner");
+        int stale = mealRepository.updateIfUnchanged(second);
+
+        //Assert
+        assertNotSame(dinner, first);
+        assertEquals(List.of(1, 0), List.of(applied, stale));
+        assertEquals("light dinner", dinner.getName());
+        assertEquals(List.of(apple.getId()), mealRepository.findFoodIds(dinner.getId()));
+        assertEquals(95, dinner.getTotalCalories());
+        assertEquals(1, dinner.getVersion());
+        assertTrue(mealRepository.findAllMealsWithHighCalories(200).isEmpty());
+    }
+
+    /**
+     * Test that findAll sorts by the properties of the Sort, nested ones included, before paging
+     * return void
+     */
+
+    @Test
+    void testSortingAndPaging() {
+        //Arrange
+        Food.Nutrition riceNutrition = new Food.Nutrition();
+        riceNutrition.setProtein(7);
+        foodRepository.save(new Food("rice", null, riceNutrition, 600));
+        foodRepository.save(new Food("Apple", null, new Food.Nutrition(), 52));
+        foodRepository.save(new Food("bread", null, new Food.Nutrition(), 250));
+
+        //Act
+        List<Food> byCalories = foodRepository.findAll(Sort.by(Sort.Direction.DESC, "calories"));
+        Page<Food> firstByName = foodRepository.findAll(PageRequest.of(0, 2, Sort.by(Sort.Order.by("name").ignoreCase())));
+        Page<Food> byProtein = foodRepository.findAll(Pageable.unpaged(Sort.by(Sort.Direction.DESC, "nutrition.protein")));
+
+        //Assert
+        assertEquals(List.of("rice", "bread", "Apple"), byCalories.stream().map(Food::getName).toList());
+        assertEquals(List.of("Apple", "bread"), firstByName.map(Food::getName).getContent());
+        assertEquals(3, firstByName.getTotalElements());
+        assertEquals("rice", byProtein.getContent().get(0).getName());
+        assertEquals(List.of("Apple", "bread", "rice"),
+                foodRepository.findAll(Sort.by("name")).stream().map(Food::getName).toList());
+    }
+
+    /**
+     * Test that a second user with the same email is rejected, while saving the same user again or taking
+     * over an email released by another user is not
+     * return void
+     */
+
+    @Test
+    void testEmailIsUnique() {
+        //Arrange
+        User chris = userRepository.save(user("chris@example.com"));
+        User alex = userRepository.save(user("alex@example.com"));
+
+        //Act
+        userRepository.save(chris);
+        chris.getContact().setEmail("chris@example.org");
+        userRepository.save(chris);
+        User other = user("chris@example.com");
+
+        //Assert
+        assertEquals(chris, userRepository.findUserByEmail("chris@example.org").orElseThrow());
+        assertEquals(other, userRepository.save(other));
+        assertThrows(DataIntegrityViolationException.class, () -> userRepository.save(user("alex@example.com")));
+        assertEquals(List.of("alex@example.com", "chris@example.com", "chris@example.org"),
+                userRepository.streamAllEmails().toList());
+        assertEquals(alex, userRepository.findUserByEmail("alex@example.com").orElseThrow());
+    }
+
+    /**
+     * Test that the intake queries are answered from the (user, time) and (time, id) indexes over half-open
+     * ranges, and that the sums are those of the JPA queries
+     * return void
+     */
+
+    @Test
+    void testIntakeQueriesAndSums() {
+        //Arrange
+        User chris = userRepository.save(user("chris@example.com"));
+        User alex = userRepository.save(user("alex@example.com"));
+        Food apple = foodRepository.save(food("apple", 95));
+        Meal breakfast = mealRepository.save(new Meal("breakfast", chris, List.of(apple, food("toast", 150))));
+        CalorieInTake first = calorieInTakeRepository.save(new CalorieInTake(breakfast, chris, apple, MORNING));
+        CalorieInTake second = calorieInTakeRepository.save(new CalorieInTake(breakfast, chris, null,
+                MORNING.plusDays(1)));
+        CalorieInTake other = calorieInTakeRepository.save(new CalorieInTake(null, alex, apple, MORNING));
+        CalorieInTake later = calorieInTakeRepository.save(new CalorieInTake(null, chris, apple,
+                MORNING.plusMonths(1)));
+
+        //Act
+        List<CalorieInTake> june = calorieInTakeRepository.findAllCalorieIntakeByUserAndDateTimeRange(chris.getId(),
+                MORNING.minusDays(1), MORNING.plusDays(1));
+        IntakeRangeStats stats = calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(chris.getId(),
+                MORNING, MORNING.plusMonths(2)).orElseThrow();
+        List<IntakePeriodTotals> months = calorieInTakeRepository.sumIntakeByUserAndMonth(chris.getId(),
+                MORNING.minusYears(1), MORNING.plusYears(1));
+
+        //Assert
+        assertEquals(List.of(first), june);
+        assertEquals(List.of(first, second, later), calorieInTakeRepository.findAllCalorieIntakeByUser(chris.getId()));
+        assertEquals(List.of(first, other), calorieInTakeRepository.findAllCalorieIntakeByDate(MORNING.toLocalDate()));
+        assertEquals(List.of(other, second), calorieInTakeRepository.findCalorieIntakePageAfter(MORNING, first.getId(),
+                Limit.of(2)));
+        assertEquals(3, stats.entryCount());
+        assertEquals(3, stats.days());
+        assertEquals(95 + 245 + 95, stats.calories(), 1e-9);
+        assertEquals(List.of(LocalDate.of(2023, 6, 1), LocalDate.of(2023, 7, 1)),
+                months.stream().map(IntakePeriodTotals::periodStart).toList());
+        assertEquals(List.of(2L, 1L), months.stream().map(IntakePeriodTotals::entryCount).toList());
+        assertEquals(List.of(chris.getId(), alex.getId()), calorieInTakeRepository.sumIntakeByUser(MORNING,
+                MORNING.plusDays(2)).stream().map(IntakeRangeStats::userId).toList());
+        assertEquals(List.of(second.getId(), later.getId()), calorieInTakeRepository.streamExportRowsAfter(
+                chris.getId(), first.getDateTime(), first.getId()).map(IntakeExportRow::id).toList());
+        assertEquals(List.of(245.0), calorieInTakeRepository.streamExportRowsAfter(chris.getId(),
+                first.getDateTime(), first.getId()).limit(1).map(IntakeExportRow::calories).toList());
+    }
+
+    /**
+     * Test that deltas accumulate in the daily summary, the consumption queries average it per user,
+     * and empty summaries are deleted
+     * return void
+     */
+
+    @Test
+    void testDailySummaries() {
+        //Arrange
+        User chris = userRepository.save(user("chris@example.com"));
+        User alex = userRepository.save(user("alex@example.com"));
+        LocalDate day = MORNING.toLocalDate();
+
+        //Act
+        dailyIntakeSummaryRepository.applyDelta(chris.getId(), day, 1500, 10, 5, 100, 1);
+        dailyIntakeSummaryRepository.applyDelta(chris.getId(), day, 1500, 10, 5, 100, 1);
+        dailyIntakeSummaryRepository.applyDelta(chris.getId(), day.plusDays(1), 1500, 0, 0, 0, 1);
+        dailyIntakeSummaryRepository.applyDelta(alex.getId(), day, 500, 0, 0, 0, 1);
+        dailyIntakeSummaryRepository.applyDelta(alex.getId(), day.plusDays(1), 0, 0, 0, 0, 0);
+
+        //Assert
+        DailyIntakeSummary summary = dailyIntakeSummaryRepository
+                .findById(new DailyIntakeSummary.Key(chris.getId(), day)).orElseThrow();
+        assertEquals(3000, summary.getCalories());
+        assertEquals(2, summary.getEntryCount());
+        assertEquals(List.of(chris), userRepository.getUsersWithHighCalorieConsumption());
+        assertEquals(List.of(alex), userRepository.getUsersWithLowCalorieConsumption());
+        assertEquals(0, dailyIntakeSummaryRepository.deleteIfEmpty(alex.getId(), day));
+        assertEquals(1, dailyIntakeSummaryRepository.deleteIfEmpty(alex.getId(), day.plusDays(1)));
+        assertEquals(3, dailyIntakeSummaryRepository.count());
+    }
+
+    /**
+     * Test that a snapshot restores every repository with its indexes, with the intakes referencing the
+     * restored users, and that new entities continue the ids
+     * return void
+     */
+
+    @Test
+    void testSnapshotRoundTrip() {
+        //Arrange
+        Path file = directory.resolve("storage.snapshot");
+        InMemorySnapshot snapshot = attach(new InMemorySnapshot(file));
+        User chris = userRepository.save(user("chris@example.com"));
+        Food apple = foodRepository.save(food("apple", 95));
+        calorieInTakeRepository.save(new CalorieInTake(null, chris, apple, MORNING));
+        dailyIntakeSummaryRepository.applyDelta(chris.getId(), MORNING.toLocalDate(), 95, 0, 0, 0, 1);
+
+        //Act
+        snapshot.save();
+        setUp();
+        attach(new InMemorySnapshot(file));
+
+        //Assert
+        User restored = userRepository.findUserByEmail("chris@example.com").orElseThrow();
+        CalorieInTake intake = calorieInTakeRepository.findAllCalorieIntakeByUser(restored.getId()).get(0);
+        assertEquals(chris, restored);
+        assertSame(restored, intake.getUser());
+        assertEquals(95, intake.calculateCalories());
+        assertEquals(List.of(apple), foodRepository.findAllFoodsWithHighCalories(50));
+        assertEquals(1, dailyIntakeSummaryRepository.count());
+        assertEquals(2, userRepository.save(user("alex@example.com")).getId());
+        assertFalse(Files.exists(directory.resolve("storage.snapshot.tmp")));
+    }
+
+    /**
+     * Test that the memory profile starts the services without a DataSource, and that data written through them
+     * survives a restart through the snapshot file
+     * return void
+     */
+
+    @Test
+    void testMemoryProfileContext() {
+        //Arrange
+        Path file = directory.resolve("storage.snapshot");
+        LocalDate day = MORNING.toLocalDate();
+        long userId;
+
+        //Act
+        try (ConfigurableApplicationContext context = start(file)) {
+            assertTrue(context.getBeansOfType(DataSource.class).isEmpty());
+            assertInstanceOf(InMemoryCalorieInTakeRepository.class, context.getBean(CalorieInTakeRepository.class));
+            User chris = context.getBean(UserRepository.class).save(user("chris@example.com"));
+            Food apple = food("apple", 95);
+            context.getBean(FoodService.class).saveFood(apple);
+            context.getBean(CalorieInTakeService.class).saveCalorieInTake(new CalorieInTake(null, chris, apple,
+                    MORNING));
+            userId = chris.getId();
+        }
+
+        //Assert
+        try (ConfigurableApplicationContext context = start(file)) {
+            CalorieInTakeService service = context.getBean(CalorieInTakeService.class);
+            assertEquals(95, service.getDailySummary(userId, day).orElseThrow().getCalories());
+            assertEquals(1, service.getCalorieInTakeByUserId(userId).size());
+            assertEquals(List.of(95.0), service.getIntakeTotals(userId, day, day.plusDays(1), ChronoUnit.DAYS)
+                    .stream().map(IntakePeriodTotals::calories).toList());
+        }
+    }
+
+    //== helpers ==
+
+    private InMemorySnapshot attach(InMemorySnapshot snapshot) {
+        snapshot.attach("foods", foodRepository);
+        snapshot.attach("meals", mealRepository);
+        snapshot.attach("users", userRepository);
+        snapshot.attach("intakes", calorieInTakeRepository);
+        snapshot.attach("summaries", dailyIntakeSummaryRepository);
+        return snapshot;
+    }
+
+    private static ConfigurableApplicationContext start(Path snapshotFile) {
+        return new SpringApplicationBuilder(Main.class)
+                .profiles("memory")
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--calorietracker.memory.snapshot-file=" + snapshotFile,
+                        "--calorietracker.metrics.enabled=false");
+    }
+
+    private static Food food(String name, double calories) {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(1);
+        return new Food(name, name, nutrition, calories);
+    }
+
+    private static User user(String email) {
+        User.Contact contact = new User.Contact();
+        contact.setEmail(email);
+        return new User("chris", "password", 24, 70, 1.8, 2000, contact);
+    }
+}
@@ -0,0 +1,267 @@
+package org.coda.core.repository.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.coda.core.entities.Food;
+import org.coda.core.projection.ReplicaStatus;
+import org.coda.core.repository.FoodRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ReadWriteRoutingDataSource on three H2 databases, a primary and two replicas, each holding
+ * its own name. Nothing replicates between them: replicate copies the heartbeat of the primary to a replica,
+ * as replication would.
+ */
+class TestReadWriteRouting {
+
+    private HikariDataSource primary;
+
+    private HikariDataSource replica1;
+
+    private HikariDataSource replica2;
+
+    private ReadWriteRoutingDataSource routing;
+
+    private JdbcTemplate jdbc;
+
+    private TransactionTemplate reads;
+
+    private TransactionTemplate writes;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica1 = database("replica-1");
+        replica2 = database("replica-2");
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica1);
+        replicas.put("replica-2", replica2);
+        routing = new ReadWriteRoutingDataSource(primary, replicas, Duration.ofSeconds(5), Duration.ZERO);
+        routing.start();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbc = new JdbcTemplate(dataSource);
+        writes = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        reads = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        reads.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        routing.close();
+    }
+
+    /**
+     * Test that read-only transactions are spread over the replicas and the other transactions go to the primary
+     * return void
+     */
+
+    @Test
+    void testReadOnlyTransactionsGoToTheReplicas() {
+        //Arrange
+        replicate(replica1);
+        replicate(replica2);
+        routing.checkReplicas();
+
+        //Act
+        Set<String> readFrom = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            readFrom.add(reads.execute(status -> name()));
+        }
+        String writtenTo = writes.execute(status -> name());
+        String outsideTransactions = name();
+
+        //Assert
+        assertEquals(Set.of("replica-1", "replica-2"), readFrom);
+        assertEquals("primary", writtenTo);
+        assertEquals("primary", outsideTransactions);
+        assertEquals(List.of(2L, 2L), routing.getReplicas().stream().map(ReplicaStatus::reads).toList());
+        assertEquals(0, routing.getPrimaryReads());
+    }
+
+    /**
+     * Test that a replica behind the lag tolerance, or down, takes no reads, and that reads go to the primary
+     * when no replica is left
+     * return void
+     */
+
+    @Test
+    void testLaggingAndDownReplicasAreLeftOut() {
+        //Arrange
+        replicate(replica1);
+        replicate(replica2);
+        new JdbcTemplate(replica2).update("UPDATE replication_heartbeat SET beat = ?",
+                System.currentTimeMillis() - 60_000);
+        routing.checkReplicas();
+
+        //Act
+        Set<String> lagging = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            lagging.add(reads.execute(status -> name()));
+        }
+        new JdbcTemplate(replica1).execute("SHUTDOWN");
+        routing.checkReplicas();
+        String down = reads.execute(status -> name());
+
+        //Assert
+        assertEquals(Set.of("replica-1"), lagging);
+        assertEquals("primary", down);
+        assertEquals(1, routing.getPrimaryReads());
+        ReplicaStatus first = routing.getReplicas().get(0);
+        ReplicaStatus second = routing.getReplicas().get(1);
+        assertFalse(first.healthy());
+        assertFalse(first.eligible());
+        assertTrue(second.healthy());
+        assertFalse(second.eligible());
+        assertTrue(second.lagMillis() >= 60_000);
+    }
+
+    /**
+     * Test that a session reads from the primary after its write until the replicas have the write,
+     * while the other sessions keep reading from the replicas
+     * return void
+     */
+
+    @Test
+    void testReadYourWrites() throws InterruptedException {
+        //Arrange
+        replicate(replica1);
+        replicate(replica2);
+        routing.checkReplicas();
+        try (ReplicaSession.Scope session = ReplicaSession.bind("alice")) {
+            writes.executeWithoutResult(status -> jdbc.update("UPDATE instance SET name = name"));
+        }
+
+        //Act
+        String aliceAfterWrite;
+        try (ReplicaSession.Scope session = ReplicaSession.bind("alice")) {
+            aliceAfterWrite = reads.execute(status -> name());
+        }
+        String bobAfterWrite;
+        try (ReplicaSession.Scope session = ReplicaSession.bind("bob")) {
+            bobAfterWrite = reads.execute(status -> name());
+        }
+        //== the next heartbeat is written after the commit, then reaches the replicas ==
+        Thread.sleep(5);
+        routing.checkReplicas();
+        replicate(replica1);
+        replicate(replica2);
+        routing.checkReplicas();
+        String aliceOnceReplicated;
+        try (ReplicaSession.Scope session = ReplicaSession.bind("alice")) {
+            aliceOnceReplicated = reads.execute(status -> name());
+        }
+
+        //Assert
+        assertEquals("primary", aliceAfterWrite);
+        assertTrue(bobAfterWrite.startsWith("replica"));
+        assertTrue(aliceOnceReplicated.startsWith("replica"));
+        assertEquals(ReplicaSession.DEFAULT, ReplicaSession.current());
+    }
+
+    /**
+     * Test that with calorietracker.replicas.enabled=true the JPA repositories write through the primary and,
+     * once the heartbeat is past the write, read through the replica, here the same H2 database
+     * return void
+     */
+
+    @Test
+    void testJpaRepositoriesAreRouted() throws SQLException, InterruptedException {
+        //Arrange
+        String url = "jdbc:h2:mem:routing-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RoutedRepositories.class)
+                .profiles("routing-test")
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=" + url,
+                        "--calorietracker.replicas.enabled=true",
+                        "--calorietracker.replicas.urls=" + url,
+                        "--calorietracker.replicas.check-interval=0s",
+                        //== closing the context would close the default JCache manager the cached test contexts share ==
+                        "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false")) {
+            FoodRepository foodRepository = context.getBean(FoodRepository.class);
+            ReadWriteRoutingDataSource contextRouting = context.getBean(ReadWriteRoutingDataSource.class);
+            Food.Nutrition nutrition = new Food.Nutrition();
+            nutrition.setProtein(1);
+
+            //Act
+            foodRepository.save(new Food("Apple", "Apple", nutrition, 52));
+            List<Food> readAfterWrite = foodRepository.findAll();
+            //== the replica is the primary database: the next heartbeat is replicated as it is written ==
+            Thread.sleep(5);
+            contextRouting.checkReplicas();
+            List<Food> foods = foodRepository.findAll();
+
+            //Assert
+            assertEquals(List.of("Apple"), readAfterWrite.stream().map(Food::getName).toList());
+            assertEquals(List.of("Apple"), foods.stream().map(Food::getName).toList());
+            assertEquals(1, contextRouting.getPrimaryReads());
+            assertEquals(1, contextRouting.getReplicas().get(0).reads());
+            assertSame(contextRouting, context.getBean(DataSource.class).unwrap(ReadWriteRoutingDataSource.class));
+        }
+    }
+
+    //== helpers ==
+
+    private String name() {
+        return jdbc.queryForObject("SELECT name FROM instance", String.class);
+    }
+
+    private void replicate(DataSource replica) {
+        Long beat = new JdbcTemplate(primary).queryForObject("SELECT beat FROM replication_heartbeat", Long.class);
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+        replicaJdbc.execute("CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat BIGINT NOT NULL)");
+        replicaJdbc.update("MERGE INTO replication_heartbeat (id, beat) KEY (id) VALUES (1, ?)", beat);
+    }
+
+    private static HikariDataSource database(String name) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(name);
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(2);
+        dataSource.setConnectionTimeout(1000);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE instance (name VARCHAR(20))");
+        jdbc.update("INSERT INTO instance VALUES (?)", name);
+        return dataSource;
+    }
+
+    // == nested classes ==
+
+    //== not a @SpringBootConfiguration, which @DataJpaTest would find, and behind a profile for the scans of org.coda.core.repository ==
+    @Configuration
+    @EnableAutoConfiguration
+    @Profile("routing-test")
+    @EntityScan(basePackages = {"org.coda.core.entities"})
+    @EnableJpaRepositories(basePackages = {"org.coda.core.repository"},
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = FoodRepository.class))
+    @Import(ReadWriteRoutingConfig.class)
+    static class RoutedRepositories {
+    }
+}
@@ -0,0 +1,94 @@
+package org.coda.core.search;
+
+import org.coda.core.projection.FoodSearchHit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the in-memory food name search index
+ */
+class TestFoodSearchIndex {
+
+    private FoodSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        Map<Long, String> foods = new LinkedHashMap<>();
+        foods.put(1L, "Chicken breast");
+        foods.put(2L, "Chicken thigh, roasted");
+        foods.put(3L, "Chickpea curry");
+        foods.put(4L, "Beef steak");
+        foods.put(5L, "Crème brûlée");
+        foods.put(6L, "Brown rice");
+        index = new FoodSearchIndex();
+        index.rebuild(foods);
+    }
+
+    @Test
+    void testPrefixSearchRanksExactTermsFirst() {
+        List<FoodSearchHit> hits = index.search("chicken", 10);
+
+        assertEquals(List.of(1L, 2L), ids(hits).subList(0, 2));
+        assertEquals(1f, hits.get(0).score());
+        //== "chickpea" only shares trigrams with "chicken" and ranks last ==
+        assertEquals(3L, hits.get(2).id());
+        assertTrue(hits.get(2).score() < hits.get(1).score());
+    }
+
+    @Test
+    void testAbbreviatedTermsMustAllMatch() {
+        assertEquals(List.of(1L), ids(index.search("chick brst", 10)));
+        assertEquals(List.of(2L), ids(index.search("chick rstd", 10)));
+    }
+
+    @Test
+    void testTypoMatchesByTrigrams() {
+        assertEquals(1L, index.search("chiken", 10).get(0).id());
+        assertEquals(3L, index.search("chickpee", 10).get(0).id());
+    }
+
+    @Test
+    void testSearchIgnoresCaseAndAccents() {
+        assertEquals(List.of(5L), ids(index.search("CREME brulee", 10)));
+    }
+
+    @Test
+    void testLimitKeepsBestHits() {
+        List<FoodSearchHit> hits = index.search("chick", 2);
+
+        assertEquals(2, hits.size());
+        assertTrue(hits.get(0).score() >= hits.get(1).score());
+    }
+
+    @Test
+    void testIndexReplacesAndRemoveDeletes() {
+        index.index(4L, "Beef mince");
+        index.remove(6L);
+
+        assertTrue(index.search("steak", 10).isEmpty());
+        assertEquals(List.of(4L), ids(index.search("mince", 10)));
+        assertTrue(index.search("brown rice", 10).isEmpty());
+        assertEquals(5, index.size());
+
+        index.index(7L, "Brown bread");
+        assertEquals(List.of(7L), ids(index.search("brown", 10)));
+    }
+
+    @Test
+    void testEmptyQueryReturnsNothing() {
+        assertTrue(index.search("  ", 10).isEmpty());
+        assertTrue(index.search("zzzz", 10).isEmpty());
+        index.clear();
+        assertTrue(index.search("chicken", 10).isEmpty());
+    }
+
+    private static List<Long> ids(List<FoodSearchHit> hits) {
+        return hits.stream().map(FoodSearchHit::id).toList();
+    }
+}
@@ -0,0 +1,93 @@
+package org.coda.core.security;
+
+import org.coda.core.projection.EmailFilterStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestEmailBloomFilter {
+
+    /**
+     * Test that every lookup might match until the filter has been built
+     */
+
+    @Test
+    void testMightContainEverythingBeforeRebuild() {
+        EmailBloomFilter filter = new EmailBloomFilter(1000, 0.01);
+
+        assertTrue(filter.mightContain("anyone@test.com"));
+        assertFalse(filter.getStats().ready());
+    }
+
+    /**
+     * Test that registered emails are always found, whatever their case, and unknown ones mostly are not
+     */
+
+    @Test
+    void testNoFalseNegativesAndBoundedFalsePositives() {
+        EmailBloomFilter filter = new EmailBloomFilter(10_000, 0.01);
+        List<String> registered = IntStream.range(0, 10_000).mapToObj(i -> "user" + i + "@test.com").toList();
+        filter.rebuild(registered::stream);
+
+        assertTrue(registered.stream().allMatch(filter::mightContain));
+        assertTrue(filter.mightContain(" USER42@Test.com "));
+        long falsePositives = IntStream.range(0, 10_000)
+                .filter(i -> filter.mightContain("stranger" + i + "@test.com")).count();
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+
+        EmailFilterStats stats = filter.getStats();
+        assertTrue(stats.ready());
+        assertEquals(7, stats.hashFunctions());
+        assertEquals(0.01, stats.estimatedFalsePositiveRate(), 0.005);
+    }
+
+    /**
+     * Test that emails put after the rebuild are found and the stale counter is reset by a rebuild
+     */
+
+    @Test
+    void testPutAndStaleEntries() {
+        EmailBloomFilter filter = new EmailBloomFilter(1000, 0.01);
+        filter.rebuild(Stream::empty);
+        assertFalse(filter.mightContain("new@test.com"));
+
+        filter.put("new@test.com");
+        filter.markStale(3);
+
+        assertTrue(filter.mightContain("new@test.com"));
+        assertEquals(3, filter.getStats().staleEntries());
+        filter.rebuild(() -> Stream.of("new@test.com"));
+        assertEquals(0, filter.getStats().staleEntries());
+    }
+
+    /**
+     * Test that an email committed after the rebuild query ran, but before the rebuild completed, is kept
+     */
+
+    @Test
+    void testPutDuringRebuildIsKept() {
+        EmailBloomFilter filter = new EmailBloomFilter(1000, 0.01);
+
+        filter.rebuild(() -> {
+            filter.put("late@test.com");
+            return Stream.of("early@test.com");
+        });
+
+        assertTrue(filter.mightContain("late@test.com"));
+        assertTrue(filter.mightContain("early@test.com"));
+    }
+
+    /**
+     * Test that invalid sizing is refused
+     */
+
+    @Test
+    void testInvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new EmailBloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new EmailBloomFilter(1000, 1));
+    }
+}
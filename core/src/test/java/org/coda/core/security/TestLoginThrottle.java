@@ -0,0 +1,75 @@
+package org.coda.core.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the per account and per address login throttle
+ */
+class TestLoginThrottle {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private LoginThrottle throttle;
+
+    @BeforeEach
+    void setUp() {
+        throttle = new LoginThrottle(new LoginThrottle.Limit(2, 6), new LoginThrottle.Limit(3, 60), 100, clock::get);
+    }
+
+    @Test
+    void testAccountBurstThenRefill() {
+        assertTrue(throttle.tryAcquire("cc@test.com", null));
+        assertTrue(throttle.tryAcquire("CC@test.com", null));
+        assertFalse(throttle.tryAcquire("cc@test.com", null));
+        assertEquals(1, throttle.getThrottledCount());
+
+        //== 6 per minute: one token every 10 seconds ==
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(throttle.tryAcquire("cc@test.com", null));
+        assertFalse(throttle.tryAcquire("cc@test.com", null));
+    }
+
+    @Test
+    void testAddressLimitSpansAccounts() {
+        assertTrue(throttle.tryAcquire("a@test.com", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("b@test.com", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("c@test.com", "10.0.0.1"));
+        assertFalse(throttle.tryAcquire("d@test.com", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("d@test.com", "10.0.0.2"));
+    }
+
+    @Test
+    void testMaxKeysUnderSpray() {
+        //== an account under attack, throttled once its burst is used ==
+        assertTrue(throttle.tryAcquire("cc@test.com", null));
+        assertTrue(throttle.tryAcquire("cc@test.com", null));
+
+        //== ten times max-keys one-off accounts and addresses, none refilled, with the attack going on ==
+        for (int i = 0; i < 1000; i++) {
+            throttle.tryAcquire("spray" + i + "@test.com", "10.0." + (i / 250) + "." + (i % 250));
+            if (i % 100 == 0) {
+                assertFalse(throttle.tryAcquire("cc@test.com", null));
+            }
+        }
+
+        assertTrue(throttle.getTrackedKeys() <= 200);
+        assertFalse(throttle.tryAcquire("cc@test.com", null));
+    }
+
+    @Test
+    void testIdleBucketsAreDropped() {
+        throttle.tryAcquire("a@test.com", "10.0.0.1");
+        throttle.tryAcquire("b@test.com", "10.0.0.2");
+        assertEquals(4, throttle.getTrackedKeys());
+
+        //== the account buckets are full again after 20 seconds, the address buckets after 3 ==
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        assertEquals(0, throttle.getTrackedKeys());
+    }
+}
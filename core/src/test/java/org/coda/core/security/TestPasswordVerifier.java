@@ -0,0 +1,95 @@
+package org.coda.core.security;
+
+import org.coda.core.exceptions.LoginRejectedException;
+import org.coda.core.projection.PasswordVerificationStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the bounded password verification pool
+ */
+class TestPasswordVerifier {
+
+    private PasswordVerifier verifier;
+
+    @AfterEach
+    void tearDown() {
+        verifier.shutdown();
+    }
+
+    @Test
+    void testMatchesAndRecordsTimings() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        verifier = new PasswordVerifier(encoder, 1, 4, 5000);
+        String hash = encoder.encode("secret");
+
+        assertTrue(verifier.matches("secret", hash));
+        assertFalse(verifier.matches("wrong", hash));
+
+        PasswordVerificationStats stats = verifier.getStats();
+        assertEquals(2, stats.verified());
+        assertTrue(stats.meanHashMillis() > 0);
+        assertEquals(0, stats.rejectedOverloaded());
+    }
+
+    @Test
+    void testFullQueueIsRejectedAtOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch hashing = new CountDownLatch(1);
+        verifier = new PasswordVerifier(blockingEncoder(hashing, release), 1, 1, 5000);
+
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> verifier.matches("a", "a"));
+        assertTrue(hashing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> verifier.matches("b", "b"));
+        while (verifier.getStats().queueDepth() == 0) {
+            Thread.onSpinWait();
+        }
+
+        LoginRejectedException rejected = assertThrows(LoginRejectedException.class, () -> verifier.matches("c", "c"));
+        assertEquals(LoginRejectedException.Reason.OVERLOADED, rejected.getReason());
+        assertEquals(1, verifier.getStats().rejectedOverloaded());
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSlowCheckTimesOut() {
+        CountDownLatch release = new CountDownLatch(1);
+        verifier = new PasswordVerifier(blockingEncoder(new CountDownLatch(1), release), 1, 1, 50);
+
+        assertThrows(LoginRejectedException.class, () -> verifier.matches("a", "a"));
+        assertEquals(1, verifier.getStats().timedOut());
+        release.countDown();
+    }
+
+    //== an encoder that holds its thread until released ==
+    private static PasswordEncoder blockingEncoder(CountDownLatch hashing, CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                hashing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+    }
+}
@@ -1,14 +1,30 @@
 package org.coda.core.service;
 
+import org.coda.core.analytics.IntakeColumnStore;
 import org.coda.core.entities.CalorieInTake;
+import org.coda.core.entities.DailyIntakeSummary;
+import org.coda.core.entities.Food;
+import org.coda.core.entities.User;
+import org.coda.core.projection.DailyIntakeTotals;
+import org.coda.core.projection.IntakePeriodTotals;
+import org.coda.core.projection.IntakeRangeStats;
+import org.coda.core.projection.IntakeRow;
 import org.coda.core.repository.CalorieInTakeRepository;
+import org.coda.core.repository.DailyIntakeSummaryRepository;
+import org.coda.core.repository.PersistenceContextSupport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +36,15 @@ class TestCalorieInTakeService {
     @Mock
     private CalorieInTakeRepository calorieInTakeRepository;
 
+    @Mock
+    private DailyIntakeSummaryRepository dailyIntakeSummaryRepository;
+
+    @Mock
+    private PersistenceContextSupport persistenceContextSupport;
+
+    @Mock
+    private IntakeColumnStore intakeColumnStore;
+
     @InjectMocks
     private CalorieInTakeService calorieInTakeService;
 
@@ -77,6 +102,31 @@ class TestCalorieInTakeService {
         verify(calorieInTakeRepository, times(1)).save(calorieInTake);
     }
 
+    /**
+     * @Test annotation to test that updating an intake takes the stored values, not those of the instance
+     * passed in, out of the daily rollup before adding the new ones
+     * @verify() method to verify the negative delta of the stored row and the positive one of the update
+     * return void
+     */
+
+    @Test
+    void updateCalorieInTake_RevertsStoredValues() {
+        CalorieInTake intake = intakeOf(user(7L), food(250, 10, 5, 30));
+        intake.setId(3L);
+        LocalDateTime stored = intake.getDateTime().minusDays(1);
+        when(calorieInTakeRepository.findIntakeRowById(3L))
+                .thenReturn(Optional.of(new IntakeRow(3L, 7L, stored, 100, 1, 2, 3)));
+
+        calorieInTakeService.updateCalorieInTake(intake);
+
+        verify(dailyIntakeSummaryRepository, times(1))
+                .applyDelta(7L, stored.toLocalDate(), -100.0, -1.0, -2.0, -3.0, -1L);
+        verify(dailyIntakeSummaryRepository, times(1)).deleteIfEmpty(7L, stored.toLocalDate());
+        verify(dailyIntakeSummaryRepository, times(1))
+                .applyDelta(7L, intake.getIntakeDate(), 250.0, 10.0, 5.0, 30.0, 1L);
+        verify(calorieInTakeRepository, never()).findById(anyLong());
+    }
+
     /**
      * @Test annotation to test the getCalorieInTakeById method
      * @when() method to mock the getCalorieInTakeById method of CalorieInTakeService
@@ -137,12 +187,45 @@ class TestCalorieInTakeService {
 
     @Test
     void getCalorieInTakeByUserAndMonth_Success() {
-        when(calorieInTakeRepository.findAllCalorieIntakeByUserAndMonth(anyLong(), anyInt())).thenReturn(List.of(calorieInTake));
+        when(calorieInTakeRepository.findAllCalorieIntakeByUserAndDateTimeRange(anyLong(), any(), any()))
+                .thenReturn(List.of(calorieInTake));
 
         List<CalorieInTake> result = calorieInTakeService.getCalorieInTakeByUserAndMonth(userId, month);
 
         assertFalse(result.isEmpty());
         assertEquals(1, result.size());
+        verify(calorieInTakeRepository).findAllCalorieIntakeByUserAndDateTimeRange(userId,
+                Year.now().atMonth(month).atDay(1).atStartOfDay(),
+                Year.now().atMonth(month + 1).atDay(1).atStartOfDay());
+    }
+
+    /**
+     * @Test annotation to test that a year-month is turned into a half-open range crossing the year end
+     * @verify() method to verify the range passed to findAllCalorieIntakeByUserAndDateTimeRange
+     * return void
+     */
+
+    @Test
+    void getCalorieInTakeByUserAndYearMonth_UsesHalfOpenRange() {
+        calorieInTakeService.getCalorieInTakeByUserAndMonth(userId, YearMonth.of(2023, 12));
+
+        verify(calorieInTakeRepository).findAllCalorieIntakeByUserAndDateTimeRange(userId,
+                LocalDateTime.of(2023, 12, 1, 0, 0), LocalDateTime.of(2024, 1, 1, 0, 0));
+    }
+
+    /**
+     * @Test annotation to test that an ISO week starts on Monday and spans seven days
+     * @verify() method to verify the range passed to findAllCalorieIntakeByUserAndDateTimeRange
+     * return void
+     */
+
+    @Test
+    void getCalorieInTakeByUserAndWeek_UsesIsoWeek() {
+        // ISO week 1 of 2021 starts on Monday 4 January 2021
+        calorieInTakeService.getCalorieInTakeByUserAndWeek(userId, 2021, 1);
+
+        verify(calorieInTakeRepository).findAllCalorieIntakeByUserAndDateTimeRange(userId,
+                LocalDateTime.of(2021, 1, 4, 0, 0), LocalDateTime.of(2021, 1, 11, 0, 0));
     }
 
 
@@ -182,9 +265,291 @@ class TestCalorieInTakeService {
         verify(calorieInTakeRepository, times(1)).deleteAll();
     }
 
+    /**
+     * @Test annotation to test that saving an intake adds its food to the daily rollup
+     * @verify() method to verify that applyDelta of DailyIntakeSummaryRepository is called with the food values
+     * return void
+     */
+
+    @Test
+    void saveCalorieInTake_UpdatesDailySummary() {
+        CalorieInTake intake = intakeOf(user(7L), food(250, 10, 5, 30));
+        when(calorieInTakeRepository.save(any(CalorieInTake.class))).thenReturn(intake);
+
+        calorieInTakeService.saveCalorieInTake(intake);
+
+        verify(dailyIntakeSummaryRepository, times(1))
+                .applyDelta(7L, intake.getIntakeDate(), 250.0, 10.0, 5.0, 30.0, 1L);
+    }
+
+    /**
+     * @Test annotation to test that deleting an intake takes the stored values out of the daily rollup
+     * @verify() method to verify that a negative delta is applied and the row of the day is removed once empty
+     * return void
+     */
+
+    @Test
+    void deleteCalorieInTake_RevertsDailySummary() {
+        CalorieInTake intake = intakeOf(user(7L), food(250, 10, 5, 30));
+        when(calorieInTakeRepository.findById(3L)).thenReturn(Optional.of(intake));
+
+        calorieInTakeService.deleteCalorieInTake(3L);
+
+        verify(dailyIntakeSummaryRepository, times(1))
+                .applyDelta(7L, intake.getIntakeDate(), -250.0, -10.0, -5.0, -30.0, -1L);
+        verify(dailyIntakeSummaryRepository, times(1)).deleteIfEmpty(7L, intake.getIntakeDate());
+        verify(calorieInTakeRepository, times(1)).deleteById(3L);
+    }
+
+    /**
+     * @Test annotation to test that getDailySummary is a primary key lookup on the rollup
+     * return void
+     */
+
+    @Test
+    void getDailySummary_Success() {
+        LocalDate today = LocalDate.now();
+        DailyIntakeSummary.Key key = new DailyIntakeSummary.Key(userId, today);
+        DailyIntakeSummary summary = new DailyIntakeSummary(key, 1800, 90, 60, 200, 4);
+        when(dailyIntakeSummaryRepository.findById(key)).thenReturn(Optional.of(summary));
+
+        Optional<DailyIntakeSummary> result = calorieInTakeService.getDailySummary(userId, today);
+
+        assertTrue(result.isPresent());
+        assertEquals(1800, result.get().getCalories());
+    }
+
+    /**
+     * @Test annotation to test that rebuildDailySummaries replaces the rollup with the raw aggregate
+     * return void
+     */
+
+    @Test
+    void rebuildDailySummaries_Success() {
+        LocalDate today = LocalDate.now();
+        when(calorieInTakeRepository.aggregateIntakeByUserAndDay())
+                .thenReturn(List.of(new DailyIntakeTotals(userId, today, 500, 20, 10, 60, 2)));
+
+        int rebuilt = calorieInTakeService.rebuildDailySummaries();
+
+        assertEquals(1, rebuilt);
+        verify(dailyIntakeSummaryRepository, times(1)).deleteAllInBatch();
+        verify(dailyIntakeSummaryRepository, times(1)).saveAll(anyList());
+    }
+
+    /**
+     * @Test annotation to test that findInconsistentDailySummaries reports stale and orphaned rollup rows
+     * return void
+     */
+
+    @Test
+    void findInconsistentDailySummaries_ReportsDrift() {
+        LocalDate today = LocalDate.now();
+        DailyIntakeSummary.Key consistent = new DailyIntakeSummary.Key(userId, today);
+        DailyIntakeSummary.Key stale = new DailyIntakeSummary.Key(userId, today.minusDays(1));
+        DailyIntakeSummary.Key orphan = new DailyIntakeSummary.Key(userId, today.minusDays(2));
+        when(dailyIntakeSummaryRepository.findAll()).thenReturn(List.of(
+                new DailyIntakeSummary(consistent, 500, 20, 10, 60, 2),
+                new DailyIntakeSummary(stale, 100, 0, 0, 0, 1),
+                new DailyIntakeSummary(orphan, 100, 0, 0, 0, 1)));
+        when(calorieInTakeRepository.aggregateIntakeByUserAndDay()).thenReturn(List.of(
+                new DailyIntakeTotals(userId, today, 500, 20, 10, 60, 2),
+                new DailyIntakeTotals(userId, today.minusDays(1), 300, 0, 0, 0, 2)));
+
+        List<DailyIntakeSummary.Key> result = calorieInTakeService.findInconsistentDailySummaries();
+
+        assertEquals(2, result.size());
+        assertTrue(result.containsAll(List.of(stale, orphan)));
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private static Food food(double calories, float protein, float fat, float carbohydrates) {
+        Food.Nutrition nutrition = new Food.Nutrition();
+        nutrition.setProtein(protein);
+        nutrition.setFat(fat);
+        nutrition.setCarbohydrates(carbohydrates);
+        return new Food("Rice", "Boiled", nutrition, calories);
+    }
+
+    private static CalorieInTake intakeOf(User user, Food food) {
+        return new CalorieInTake(null, user, food);
+    }
+
+    /**
+     * @Test annotation to test that the first page is read without a seek position
+     * and the next page seeks after the (dateTime, id) of the last calorieInTake
+     * return void
+     */
+
+    @Test
+    void getCalorieInTakePageAfter_SeeksOnDateTimeAndId() {
+        calorieInTake.setId(42L);
+        when(calorieInTakeRepository.findFirstCalorieIntakePage(Limit.of(2))).thenReturn(List.of(calorieInTake));
+
+        List<CalorieInTake> first = calorieInTakeService.getCalorieInTakePageAfter(null, 2);
+        calorieInTakeService.getCalorieInTakePageAfter(first.get(0), 2);
+
+        verify(calorieInTakeRepository).findCalorieIntakePageAfter(calorieInTake.getDateTime(), 42L, Limit.of(2));
+    }
+
+    /**
+     * @Test annotation to test that the dashboard reads one whole day through the dashboard fetch plan
+     * return void
+     */
+
+    @Test
+    void getDashboardCalorieInTake_ReadsWholeDay() {
+        LocalDate day = LocalDate.of(2023, 6, 1);
+        when(calorieInTakeRepository.findDashboardCalorieIntake(userId, day.atStartOfDay(),
+                day.plusDays(1).atStartOfDay())).thenReturn(List.of(calorieInTake));
+
+        List<CalorieInTake> result = calorieInTakeService.getDashboardCalorieInTake(userId, day);
+
+        assertEquals(1, result.size());
+    }
+
+    /**
+     * @Test annotation to test that range stats come from the intake store once it is loaded
+     * return void
+     */
+
+    @Test
+    void getIntakeStats_UsesStoreWhenReady() {
+        LocalDateTime from = LocalDateTime.of(2023, 6, 1, 0, 0);
+        LocalDateTime to = from.plusDays(7);
+        IntakeRangeStats stats = new IntakeRangeStats(userId, from, to, 3, 2, 1500, 0, 0, 0);
+        when(intakeColumnStore.isReady()).thenReturn(true);
+        when(intakeColumnStore.sum(userId, from, to)).thenReturn(stats);
+
+        assertSame(stats, calorieInTakeService.getIntakeStats(userId, from, to));
+        verifyNoInteractions(calorieInTakeRepository);
+    }
+
+    /**
+     * @Test annotation to test that range stats are summed by the database while the store is not loaded
+     * return void
+     */
+
+    @Test
+    void getIntakeStats_FallsBackToAggregateQuery() {
+        LocalDateTime from = LocalDateTime.of(2023, 6, 1, 0, 0);
+        LocalDateTime to = from.plusDays(7);
+        IntakeRangeStats stats = new IntakeRangeStats(userId, from, to, 2, 1, 104, 0, 0, 0);
+        when(calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(userId, from, to)).thenReturn(Optional.of(stats));
+
+        assertSame(stats, calorieInTakeService.getIntakeStats(userId, from, to));
+        verify(calorieInTakeRepository, never()).findAllCalorieIntakeByUserAndDateTimeRange(anyLong(), any(), any());
+    }
+
+    /**
+     * @Test annotation to test that a range without intakes has zero stats
+     * return void
+     */
+
+    @Test
+    void getIntakeStats_EmptyRange() {
+        LocalDateTime from = LocalDateTime.of(2023, 6, 1, 0, 0);
+        LocalDateTime to = from.plusDays(7);
+        when(calorieInTakeRepository.sumIntakeByUserAndDateTimeRange(userId, from, to)).thenReturn(Optional.empty());
+
+        IntakeRangeStats stats = calorieInTakeService.getIntakeStats(userId, from, to);
+
+        assertEquals(0, stats.entryCount());
+        assertEquals(from, stats.from());
+        assertEquals(0, stats.averageCaloriesPerDay());
+    }
+
+    /**
+     * @Test annotation to test that the daily totals are folded into ISO weeks starting on Monday
+     * return void
+     */
+
+    @Test
+    void getIntakeTotals_FoldsDaysIntoWeeks() {
+        LocalDate from = LocalDate.of(2023, 6, 1);
+        LocalDate to = LocalDate.of(2023, 7, 1);
+        when(calorieInTakeRepository.sumIntakeByUserAndDay(userId, from.atStartOfDay(), to.atStartOfDay()))
+                .thenReturn(List.of(
+                        new IntakePeriodTotals(userId, LocalDate.of(2023, 6, 1), 2, 1, 500, 10, 5, 50),
+                        new IntakePeriodTotals(userId, LocalDate.of(2023, 6, 4), 1, 1, 300, 0, 0, 0),
+                        new IntakePeriodTotals(userId, LocalDate.of(2023, 6, 5), 3, 1, 900, 0, 0, 0)));
+
+        List<IntakePeriodTotals> weeks = calorieInTakeService.getIntakeTotals(userId, from, to, ChronoUnit.WEEKS);
+
+        assertEquals(2, weeks.size());
+        assertEquals(LocalDate.of(2023, 5, 29), weeks.get(0).periodStart());
+        assertEquals(3, weeks.get(0).entryCount());
+        assertEquals(2, weeks.get(0).days());
+        assertEquals(800, weeks.get(0).calories(), 0.001);
+        assertEquals(10, weeks.get(0).protein(), 0.001);
+        assertEquals(LocalDate.of(2023, 6, 5), weeks.get(1).periodStart());
+        assertEquals(900, weeks.get(1).calories(), 0.001);
+    }
 
+    /**
+     * @Test annotation to test that months are grouped by the database and other units are rejected
+     * return void
+     */
+
+    @Test
+    void getIntakeTotals_MonthsAndUnsupportedPeriod() {
+        LocalDate from = LocalDate.of(2023, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 1);
+        List<IntakePeriodTotals> months = List.of(new IntakePeriodTotals(userId, 2023, 6, 3, 2, 800, 0, 0, 0));
+        when(calorieInTakeRepository.sumIntakeByUserAndMonth(userId, from.atStartOfDay(), to.atStartOfDay()))
+                .thenReturn(months);
+
+        assertSame(months, calorieInTakeService.getIntakeTotals(userId, from, to, ChronoUnit.MONTHS));
+        assertEquals(LocalDate.of(2023, 6, 1), months.get(0).periodStart());
+        assertThrows(IllegalArgumentException.class,
+                () -> calorieInTakeService.getIntakeTotals(userId, from, to, ChronoUnit.YEARS));
+    }
+
+    /**
+     * @Test annotation to test that a saved intake reaches the enabled intake store with its food values
+     * return void
+     */
 
+    @Test
+    void saveCalorieInTake_AddsToIntakeStore() {
+        User user = new User();
+        user.setId(userId);
+        Food food = new Food("apple", null, new Food.Nutrition(), 52);
+        CalorieInTake intake = new CalorieInTake(null, user, food, LocalDateTime.of(2023, 6, 1, 8, 0));
+        when(intakeColumnStore.isEnabled()).thenReturn(true);
 
+        calorieInTakeService.saveCalorieInTake(intake);
 
+        verify(intakeColumnStore).add(new IntakeRow(0, userId, intake.getDateTime(), 52, 0, 0, 0));
+    }
 
+    /**
+     * @Test annotation to test that a batch applies one rollup delta per user and day
+     * return void
+     */
+
+    @Test
+    void saveAllCalorieInTake_AppliesOneDeltaPerUserAndDay() {
+        User user = new User();
+        user.setId(userId);
+        Food food = new Food("apple", null, new Food.Nutrition(), 52);
+        LocalDateTime morning = LocalDateTime.of(2023, 6, 1, 8, 0);
+        List<CalorieInTake> batch = List.of(new CalorieInTake(null, user, food, morning),
+                new CalorieInTake(null, user, food, morning.plusHours(4)),
+                new CalorieInTake(null, user, food, morning.plusDays(1)));
+        when(persistenceContextSupport.chunks(batch)).thenReturn(List.of(batch));
+        when(calorieInTakeRepository.saveAll(batch)).thenReturn(batch);
+
+        List<CalorieInTake> saved = calorieInTakeService.saveAllCalorieInTake(batch);
+
+        assertEquals(3, saved.size());
+        verify(dailyIntakeSummaryRepository).applyDelta(userId, morning.toLocalDate(), 104, 0, 0, 0, 2);
+        verify(dailyIntakeSummaryRepository).applyDelta(userId, morning.toLocalDate().plusDays(1), 52, 0, 0, 0, 1);
+        verify(persistenceContextSupport).flushAndClear();
+    }
 }
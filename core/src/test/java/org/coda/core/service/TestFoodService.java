@@ -2,18 +2,29 @@ package org.coda.core.service;
 
 import org.coda.core.entities.Food;
 import org.coda.core.entities.Meal;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.coda.core.projection.FoodSearchHit;
 import org.coda.core.repository.FoodRepository;
+import org.coda.core.repository.MealRepository;
+import org.coda.core.repository.PersistenceContextSupport;
+import org.coda.core.repository.SecondLevelCacheSupport;
+import org.coda.core.search.FoodSearchIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,6 +33,21 @@ class TestFoodService {
     @Mock
     private FoodRepository foodRepository;
 
+    @Mock
+    private MealRepository mealRepository;
+
+    @Mock
+    private PersistenceContextSupport persistenceContextSupport;
+
+    @Mock
+    private SecondLevelCacheSupport secondLevelCacheSupport;
+
+    @Mock
+    private FoodSearchIndex foodSearchIndex;
+
+    @Mock
+    private CalorieInTakeService calorieInTakeService;
+
     @InjectMocks
     private FoodService foodService;
 
@@ -82,6 +108,7 @@ class TestFoodService {
         //Assert
 
         verify(foodRepository, times(1)).save(food);
+        verify(foodSearchIndex, times(1)).index(food.getId(), "Apple");
 
     }
 
@@ -95,6 +122,7 @@ class TestFoodService {
     @Test
     void testSaveAllFoods() {
         //Arrange
+        when(persistenceContextSupport.chunks(foods)).thenReturn(List.of(foods));
         when(foodRepository.saveAll(foods)).thenReturn(foods);
 
         //Act
@@ -102,8 +130,32 @@ class TestFoodService {
 
         //Assert
         verify(foodRepository, times(1)).saveAll(foods);
+        verify(persistenceContextSupport, times(1)).flushAndClear();
+
+
+    }
+
+    /**
+     * @Test annotation to test that saveAllFoods writes one chunk per batch
+     * and flushes and clears the persistence context after each one
+     * return void
+     */
+
+    @Test
+    void testSaveAllFoodsInBatches() {
+        //Arrange
+        Food banana = new Food("Banana", "Ripe", new Food.Nutrition(), 105);
+        List<Food> twoFoods = List.of(food, banana);
+        when(persistenceContextSupport.chunks(twoFoods)).thenReturn(List.of(List.of(food), List.of(banana)));
+        when(foodRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
 
+        //Act
+        List<Food> saved = foodService.saveAllFoods(twoFoods);
 
+        //Assert
+        verify(foodRepository, times(2)).saveAll(anyList());
+        verify(persistenceContextSupport, times(2)).flushAndClear();
+        assertEquals(twoFoods, saved);
     }
 
 
@@ -181,19 +233,47 @@ class TestFoodService {
     @Test
     void testUpdateFood() {
         //Arrange
-        when(foodRepository.save(food)).thenReturn(food);
+        when(foodRepository.updateIfUnchanged(food)).thenReturn(1);
+        when(calorieInTakeService.applyFoodChange(eq(food.getId()), any()))
+                .thenAnswer(invocation -> invocation.<IntSupplier>getArgument(1).getAsInt());
 
         //Act
      Food updatedFood = foodService.updateFood(food);
 
         //Assert
-        verify(foodRepository, times(1)).save(food);
+        verify(foodRepository, times(1)).updateIfUnchanged(food);
+        verify(foodRepository, never()).save(food);
+        verify(mealRepository, times(1)).refreshTotalsForFood(food.getId());
+        verify(calorieInTakeService, times(1)).applyFoodChange(eq(food.getId()), any());
+        //== before the intakes are read again, and after the commit (at once without a transaction) ==
+        verify(secondLevelCacheSupport, times(2)).evictFood(food.getId());
+        verify(secondLevelCacheSupport, never()).evictAllFoods();
+        assertEquals(1, updatedFood.getVersion());
         assertEquals(updatedFood.getName(), "Apple");
         assertEquals(updatedFood.getCalories(), 95);
         assertEquals(updatedFood.getDetails(), "An apple a day keeps the doctor away");
         assertEquals(updatedFood.getNutrition().getCarbohydrates(), 25);
     }
 
+    /**
+     * Test that updating a food changed since it was read fails, and leaves the meal totals alone
+     * return void
+     */
+
+    @Test
+    void testUpdateFoodConflict() {
+        //Arrange
+        when(foodRepository.updateIfUnchanged(food)).thenReturn(0);
+        when(calorieInTakeService.applyFoodChange(eq(food.getId()), any()))
+                .thenAnswer(invocation -> invocation.<IntSupplier>getArgument(1).getAsInt());
+        when(foodRepository.existsById(food.getId())).thenReturn(true);
+
+        //Act & Assert
+        assertThrows(ConcurrentUpdateException.class, () -> foodService.updateFood(food));
+        verify(mealRepository, never()).refreshTotalsForFood(anyLong());
+        verify(foodSearchIndex, never()).index(anyLong(), anyString());
+    }
+
     /**
      * Test method to delete a food by id
      * return void
@@ -209,6 +289,8 @@ class TestFoodService {
 
         //Assert
         verify(foodRepository, times(1)).deleteById(1L);
+        verify(secondLevelCacheSupport, times(1)).evictFood(1L);
+        verify(foodSearchIndex, times(1)).remove(1L);
 
     }
 
@@ -227,7 +309,84 @@ class TestFoodService {
 
         //Assert
         verify(foodRepository, times(1)).deleteAll();
+        verify(secondLevelCacheSupport, times(1)).evictAllFoods();
+        verify(foodSearchIndex, times(1)).clear();
 
     }
 
+    /**
+     * Test method to read a page of foods after a given id
+     * return void
+     */
+
+    @Test
+    void testGetFoodsAfter() {
+        //Arrange
+        when(foodRepository.findByIdGreaterThanOrderByIdAsc(10L, Limit.of(50))).thenReturn(foods);
+
+        //Act
+        List<Food> page = foodService.getFoodsAfter(10L, 50);
+
+        //Assert
+        verify(foodRepository, times(1)).findByIdGreaterThanOrderByIdAsc(10L, Limit.of(50));
+        assertEquals(1, page.size());
+    }
+
+    /**
+     * Test method to stream all foods through the persistence context clearing wrapper
+     * return void
+     */
+
+    @Test
+    void testStreamAllFoods() {
+        //Arrange
+        Stream<Food> stream = foods.stream();
+        when(foodRepository.streamAllFoods()).thenReturn(stream);
+        when(persistenceContextSupport.clearingEvery(stream)).thenReturn(stream);
+
+        //Act
+        List<Food> streamed = foodService.streamAllFoods().toList();
+
+        //Assert
+        verify(persistenceContextSupport, times(1)).clearingEvery(stream);
+        assertEquals(foods, streamed);
+    }
+
+    /**
+     * Test method to search foods by name through the search index
+     * return void
+     */
+
+    @Test
+    void testSearchFoods() {
+        //Arrange
+        List<FoodSearchHit> hits = List.of(new FoodSearchHit(1L, "Apple", 1f));
+        when(foodSearchIndex.search("appl", 5)).thenReturn(hits);
+
+        //Act
+        List<FoodSearchHit> result = foodService.searchFoods("appl", 5);
+
+        //Assert
+        assertEquals(hits, result);
+        verifyNoInteractions(foodRepository);
+    }
+
+    /**
+     * Test method to rebuild the search index from the stored foods
+     * return void
+     */
+
+    @Test
+    void testRebuildSearchIndex() {
+        //Arrange
+        Stream<Food> stream = foods.stream();
+        when(foodRepository.streamAllFoods()).thenReturn(stream);
+        when(persistenceContextSupport.clearingEvery(stream)).thenReturn(stream);
+
+        //Act
+        foodService.rebuildSearchIndex();
+
+        //Assert
+        verify(foodSearchIndex, times(1)).rebuild(Map.of(food.getId(), "Apple"));
+    }
 }
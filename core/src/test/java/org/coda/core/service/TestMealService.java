@@ -3,19 +3,28 @@ package org.coda.core.service;
 import org.coda.core.entities.Food;
 import org.coda.core.entities.Meal;
 import org.coda.core.entities.User;
+import org.coda.core.exceptions.ConcurrentUpdateException;
 import org.coda.core.repository.MealRepository;
+import org.coda.core.repository.PersistenceContextSupport;
+import org.coda.core.repository.SecondLevelCacheSupport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.IntSupplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -28,6 +37,15 @@ class TestMealService {
     @Mock
     MealRepository mealRepository;
 
+    @Mock
+    PersistenceContextSupport persistenceContextSupport;
+
+    @Mock
+    SecondLevelCacheSupport secondLevelCacheSupport;
+
+    @Mock
+    CalorieInTakeService calorieInTakeService;
+
     @InjectMocks
     MealService mealService;
 
@@ -97,6 +115,7 @@ class TestMealService {
     @Test
     void testSaveAllMeals_Success() {
         //Arrange
+        when(persistenceContextSupport.chunks(anyList())).thenReturn(List.of(List.of(meal)));
         when(mealRepository.saveAll(anyList())).thenReturn(List.of(meal));
 
         //Act
@@ -117,6 +136,7 @@ class TestMealService {
 
     void testSaveAllMeals_Fail() {
         //Arrange
+        when(persistenceContextSupport.chunks(anyList())).thenReturn(List.of(List.of(meal)));
         doThrow(RuntimeException.class).when(mealRepository).saveAll(anyList());
 
         //Act & Assert
@@ -168,41 +188,46 @@ class TestMealService {
     /**
      * Test the updateMeal method of the MealService
      * This test checks if the meal is updated successfully
-     * and if the meal is saved in the database
+     * with a conditional update instead of a merge, and left at its new version
      */
 
     @Test
     void testUpdateMeal_Success() {
         //Arrange
-        when(mealRepository.save(any(Meal.class))).thenReturn(meal);
+        when(mealRepository.updateIfUnchanged(meal)).thenReturn(1);
+        when(calorieInTakeService.applyMealChange(eq(meal.getId()), any()))
+                .thenAnswer(invocation -> invocation.<IntSupplier>getArgument(1).getAsInt());
 
         //Act
         boolean result = mealService.updateMeal(meal);
 
         //Assert
         assertTrue(result);
-        verify(mealRepository, times(1)).save(any(Meal.class));
-
-
-
+        verify(mealRepository, times(1)).updateIfUnchanged(meal);
+        verify(mealRepository, never()).save(any(Meal.class));
+        //== before the intakes are read again, and after the commit (at once without a transaction) ==
+        verify(secondLevelCacheSupport, times(2)).evictMealFoods(meal.getId());
+        assertEquals(1, meal.getVersion());
     }
 
     /**
      * Test the updateMeal method of the MealService for failure
-     * This test checks if the meal is not updated successfully
-     * and if the meal is not saved in the database
-     * This test is expected to fail
-     * The test will pass if the updateMeal method throws an exception
+     * This test checks that a meal updated since it was read is not overwritten
+     * The test will pass if the updateMeal method throws a ConcurrentUpdateException
      */
 
     @Test
     void testUpdateMeal_Fail() {
         //Arrange
-        doThrow(RuntimeException.class).when(mealRepository).save(any(Meal.class));
+        when(mealRepository.updateIfUnchanged(meal)).thenReturn(0);
+        when(calorieInTakeService.applyMealChange(eq(meal.getId()), any()))
+                .thenAnswer(invocation -> invocation.<IntSupplier>getArgument(1).getAsInt());
+        when(mealRepository.existsById(meal.getId())).thenReturn(true);
 
         //Act & Assert
-        assertThrows(RuntimeException.class, () -> mealService.updateMeal(meal));
-        verify(mealRepository, times(1)).save(any(Meal.class));
+        assertThrows(ConcurrentUpdateException.class, () -> mealService.updateMeal(meal));
+        verify(secondLevelCacheSupport, never()).evictMealFoods(anyLong());
+        assertEquals(0, meal.getVersion());
     }
 
     /**
@@ -355,10 +380,82 @@ class TestMealService {
         verify(mealRepository, times(1)).findAllMealsWithLowCalories(anyInt());
     }
 
+    /**
+     * Test getMealsAfter method of the MealService
+     * This test checks that the keyset page query is called with the last id and page size
+     */
 
+    @Test
+    void testGetMealsAfter_Success() {
+        //Arrange
+        when(mealRepository.findByIdGreaterThanOrderByIdAsc(1L, Limit.of(20))).thenReturn(List.of(meal));
 
+        //Act
+        List<Meal> page = mealService.getMealsAfter(1L, 20);
 
+        //Assert
+        assertEquals(1, page.size());
+        verify(mealRepository, times(1)).findByIdGreaterThanOrderByIdAsc(1L, Limit.of(20));
+    }
 
+    /**
+     * Test findMealsWithCaloriesBetween method of the MealService
+     * This test checks that the range query on the stored totals is used
+     */
 
+    @Test
+    void testFindMealsWithCaloriesBetween_Success() {
+        //Arrange
+        when(mealRepository.findAllMealsWithCaloriesBetween(50.0, 150.0)).thenReturn(List.of(meal));
 
+        //Act
+        List<Meal> meals = mealService.findMealsWithCaloriesBetween(50.0, 150.0);
+
+        //Assert
+        assertEquals(1, meals.size());
+        verify(mealRepository, times(1)).findAllMealsWithCaloriesBetween(50.0, 150.0);
+    }
+
+    /**
+     * Test updateMeal method of the MealService
+     * This test checks that the totals are recomputed from the foods before they are written
+     */
+
+    @Test
+    void testUpdateMeal_RefreshesTotals() {
+        //Arrange
+        meal.setTotalCalories(0.0);
+        when(mealRepository.updateIfUnchanged(meal)).thenCallRealMethod();
+        when(mealRepository.updateIfUnchanged(anyLong(), anyLong(), anyString(), anyDouble(), anyDouble(),
+                anyDouble(), anyDouble())).thenReturn(1);
+        when(mealRepository.findFoodIds(meal.getId())).thenReturn(List.of(food.getId()));
+        when(calorieInTakeService.applyMealChange(eq(meal.getId()), any()))
+                .thenAnswer(invocation -> invocation.<IntSupplier>getArgument(1).getAsInt());
+
+        //Act
+        mealService.updateMeal(meal);
+
+        //Assert
+        assertEquals(100.0, meal.getTotalCalories());
+        assertEquals(10.0, meal.getTotalProtein());
+    }
+
+    /**
+     * Test getMealDetailById method of the MealService
+     * This test checks that the detail fetch plan query is used
+     */
+
+    @Test
+    void testGetMealDetailById_Success() {
+        //Arrange
+        when(mealRepository.findMealDetailById(1L)).thenReturn(Optional.of(meal));
+
+        //Act
+        Meal detail = mealService.getMealDetailById(1L);
+
+        //Assert
+        assertEquals(meal, detail);
+        verify(mealRepository, times(1)).findMealDetailById(1L);
+        verify(mealRepository, never()).findById(anyLong());
+    }
 }
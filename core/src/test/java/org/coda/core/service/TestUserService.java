@@ -1,13 +1,23 @@
 package org.coda.core.service;
 
 import org.coda.core.entities.User;
+import org.coda.core.exceptions.ConcurrentUpdateException;
+import org.coda.core.exceptions.DuplicateEmailException;
+import org.coda.core.exceptions.LoginRejectedException;
+import org.coda.core.exceptions.UserNotFoundException;
+import org.coda.core.repository.PersistenceContextSupport;
 import org.coda.core.repository.UserRepository;
+import org.coda.core.security.EmailBloomFilter;
+import org.coda.core.security.LoginThrottle;
+import org.coda.core.security.PasswordVerifier;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.Arrays;
@@ -34,6 +44,18 @@ class TestUserService {
     @Mock
     BCryptPasswordEncoder encoder;
 
+    @Mock
+    PersistenceContextSupport persistenceContextSupport;
+
+    @Mock
+    PasswordVerifier passwordVerifier;
+
+    @Mock
+    LoginThrottle loginThrottle;
+
+    @Mock
+    EmailBloomFilter emailFilter;
+
     @InjectMocks
     UserService userService;
 
@@ -64,7 +86,8 @@ class TestUserService {
     void testCreateUser_Success() {
 
         // Arrange
-        when(userRepository.save(any(User.class))).thenReturn(user);
+        when(emailFilter.mightContain("cc@test.com")).thenReturn(false);
+        when(userRepository.saveAndFlush(any(User.class))).thenReturn(user);
 
         // Act
         Optional<User> result = userService.createUser(user);
@@ -72,7 +95,9 @@ class TestUserService {
         // Assert
         assertTrue(result.isPresent());
         assertEquals(user, result.get());
-        verify(userRepository, times(1)).save(any(User.class));
+        verify(userRepository, times(1)).saveAndFlush(any(User.class));
+        verify(userRepository, never()).findUserByEmail(anyString());
+        verify(emailFilter).put("cc@test.com");
     }
 
     /**
@@ -87,11 +112,90 @@ class TestUserService {
     void testCreateUser_Fail() {
 
         // Arrange
-        doThrow(RuntimeException.class).when(userRepository).save(any(User.class));
+        doThrow(RuntimeException.class).when(userRepository).saveAndFlush(any(User.class));
 
         // Act & Assert
         assertThrows(RuntimeException.class, () -> userService.createUser(user));
-        verify(userRepository, times(1)).save(any(User.class));
+        verify(userRepository, times(1)).saveAndFlush(any(User.class));
+        verify(emailFilter, never()).put(anyString());
+    }
+
+    /**
+     * Test the createUser method of the UserService with an email that is already registered
+     * The filter might contain the email, so the lookup runs and finds the existing user
+     */
+
+    @Test
+    void testCreateUser_DuplicateEmail() {
+
+        // Arrange
+        when(emailFilter.mightContain("cc@test.com")).thenReturn(true);
+        when(userRepository.findUserByEmail("cc@test.com")).thenReturn(Optional.of(new User()));
+
+        // Act & Assert
+        assertThrows(DuplicateEmailException.class, () -> userService.createUser(user));
+        verify(userRepository, never()).saveAndFlush(any(User.class));
+        verify(encoder, never()).encode(anyString());
+    }
+
+    /**
+     * Test the updateUser method of the UserService
+     * The user is written by one conditional update and comes back at its next version
+     */
+
+    @Test
+    void testUpdateUser_Success() {
+
+        // Arrange
+        user.setId(7);
+        user.setVersion(3);
+        when(encoder.encode("$2a$10")).thenReturn("encoded");
+        when(userRepository.updateIfUnchanged(user)).thenReturn(1);
+
+        // Act
+        User result = userService.updateUser(user);
+
+        // Assert
+        assertEquals(4, result.getVersion());
+        assertEquals("encoded", result.getPassword());
+        verify(userRepository, never()).save(any(User.class));
+        verify(emailFilter).put("cc@test.com");
+    }
+
+    /**
+     * Test the updateUser method of the UserService with a user updated since it was read,
+     * and with a user that does not exist
+     */
+
+    @Test
+    void testUpdateUser_ConflictOrMissing() {
+
+        // Arrange
+        user.setId(7);
+        when(userRepository.updateIfUnchanged(user)).thenReturn(0);
+        when(userRepository.existsById(7L)).thenReturn(true, false);
+
+        // Act & Assert
+        assertThrows(ConcurrentUpdateException.class, () -> userService.updateUser(user));
+        assertThrows(UserNotFoundException.class, () -> userService.updateUser(user));
+        verify(emailFilter, never()).put(anyString());
+    }
+
+    /**
+     * Test the createUser method of the UserService losing a race with a concurrent signup
+     * The unique email constraint rejects the insert and the violation is reported as a duplicate email
+     */
+
+    @Test
+    void testCreateUser_UniqueConstraintViolation() {
+
+        // Arrange
+        when(emailFilter.mightContain("cc@test.com")).thenReturn(false);
+        when(userRepository.saveAndFlush(any(User.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_user_email"));
+
+        // Act & Assert
+        assertThrows(DuplicateEmailException.class, () -> userService.createUser(user));
     }
 
     /**
@@ -116,8 +220,10 @@ class TestUserService {
         contact.setEmail(email);
         user.setContact(contact);
 
+        when(loginThrottle.tryAcquire(email, null)).thenReturn(true);
+        when(emailFilter.mightContain(email)).thenReturn(true);
         when(userRepository.findUserByEmail(anyString())).thenReturn(Optional.of(user));
-        when(encoder.matches(rawPassword, encodedPassword)).thenReturn(true);
+        when(passwordVerifier.matches(rawPassword, encodedPassword)).thenReturn(true);
 
         //== Act ==
         Optional<User> result = userService.loginUser(email, rawPassword);
@@ -126,7 +232,7 @@ class TestUserService {
         assertTrue(result.isPresent());
         assertEquals(user, result.get()); // Check if the returned user is the same as the input user
         verify(userRepository).findUserByEmail(email);
-        verify(encoder).matches(rawPassword, encodedPassword); // Verify that the password check is performed
+        verify(passwordVerifier).matches(rawPassword, encodedPassword); // Verify that the password check is performed
 
     }
 
@@ -147,6 +253,8 @@ class TestUserService {
         String email = "nonexistent@example.com";
         String password = "password";
 
+        when(loginThrottle.tryAcquire(email, null)).thenReturn(true);
+        when(emailFilter.mightContain(email)).thenReturn(true);
         when(userRepository.findUserByEmail(email)).thenReturn(Optional.empty());
 
         // Act
@@ -155,7 +263,28 @@ class TestUserService {
         // Assert
         assertFalse(result.isPresent());
         verify(userRepository).findUserByEmail(email);
-        verify(encoder, never()).matches(anyString(), anyString());
+        verify(passwordVerifier, never()).matches(anyString(), anyString());
+        verify(emailFilter).recordFalsePositive();
+    }
+
+    /**
+     * Test the loginUser method of the UserService with an email the filter has never seen
+     * The attempt must be answered without querying the database or hashing the password
+     */
+
+    @Test
+    void testLoginUser_UnknownEmailSkipsLookup() {
+        // Arrange
+        String email = "unknown@example.com";
+        when(loginThrottle.tryAcquire(email, null)).thenReturn(true);
+        when(emailFilter.mightContain(email)).thenReturn(false);
+
+        // Act
+        Optional<User> result = userService.loginUser(email, "password");
+
+        // Assert
+        assertFalse(result.isPresent());
+        verifyNoInteractions(userRepository, passwordVerifier);
     }
 
     /**
@@ -175,8 +304,10 @@ class TestUserService {
         User foundUser = new User();
         foundUser.setPassword(encoder.encode(correctPassword));
 
+        when(loginThrottle.tryAcquire(email, null)).thenReturn(true);
+        when(emailFilter.mightContain(email)).thenReturn(true);
         when(userRepository.findUserByEmail(email)).thenReturn(Optional.of(foundUser));
-        when(encoder.matches(wrongPassword, foundUser.getPassword())).thenReturn(false);
+        when(passwordVerifier.matches(wrongPassword, foundUser.getPassword())).thenReturn(false);
 
         // Act
         Optional<User> result = userService.loginUser(email, wrongPassword);
@@ -184,7 +315,26 @@ class TestUserService {
         // Assert
         assertFalse(result.isPresent());
         verify(userRepository).findUserByEmail(email);
-        verify(encoder).matches(wrongPassword, foundUser.getPassword());
+        verify(passwordVerifier).matches(wrongPassword, foundUser.getPassword());
+    }
+
+    /**
+     * Test the loginUser method of the UserService when the caller is throttled
+     * The attempt must be refused before the user is looked up or any password is hashed
+     */
+
+    @Test
+    void testLoginUser_Throttled() {
+        // Arrange
+        when(loginThrottle.tryAcquire("user@example.com", "10.0.0.1")).thenReturn(false);
+
+        // Act
+        LoginRejectedException rejected = assertThrows(LoginRejectedException.class,
+                () -> userService.loginUser("user@example.com", "password", "10.0.0.1"));
+
+        // Assert
+        assertEquals(LoginRejectedException.Reason.THROTTLED, rejected.getReason());
+        verifyNoInteractions(userRepository, passwordVerifier);
     }
 
     /**
@@ -209,5 +359,21 @@ class TestUserService {
         verify(userRepository).getUsersWithHighCalorieConsumption();
     }
 
+    /**
+     * Test the getUsersAfter method of the UserService
+     * This test checks that the keyset page query is called with the last id and page size
+     */
+    @Test
+    void testGetUsersAfter() {
+
+        // Arrange
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(100))).thenReturn(List.of(user));
+
+        // Act
+        List<User> result = userService.getUsersAfter(0L, 100);
 
-}
\ No newline at end of file
+        // Assert
+        assertEquals(1, result.size());
+        verify(userRepository).findByIdGreaterThanOrderByIdAsc(0L, Limit.of(100));
+    }
+}